@@ -1,36 +1,35 @@
 package com.example.android.members;
 
 import android.content.ContentUris;
-import android.content.ContentValues;
 import android.content.Intent;
-import android.database.Cursor;
 import android.net.Uri;
 import android.os.Bundle;
 import android.support.design.widget.FloatingActionButton;
-import android.support.v4.app.LoaderManager;
-import android.support.v4.content.CursorLoader;
-import android.support.v4.content.Loader;
 import android.support.v7.app.AppCompatActivity;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
-import android.widget.AdapterView;
-import android.widget.ListView;
 import android.widget.Toast;
 
 
+import com.example.android.members.data.Member;
 import com.example.android.members.data.MemberContract.MemberEntry;
+import com.example.android.members.data.MemberDates;
+import com.example.android.members.data.MemberWriter;
 
 
 /**
  * Displays list of members that were entered and stored in the app.
  */
-public class CatalogActivity extends AppCompatActivity implements LoaderManager.LoaderCallbacks<Cursor> {
+public class CatalogActivity extends AppCompatActivity implements
+        MemberPageAdapter.OnMemberClickListener {
 
+    private MemberPageAdapter mPageAdapter;
 
-    private static final int MEMBER_LOADER = 0;
-
-    private MemberCursorAdapter mCursorAdapter;
+    /** Shown instead of the list while there are no members */
+    private View mEmptyView;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -47,102 +46,99 @@ public class CatalogActivity extends AppCompatActivity implements LoaderManager.
             }
         });
 
-        // Find the ListView which will be populated with the member data
-        ListView memberListView = (ListView) findViewById(R.id.list_view_member);
-
-        // Find and set empty view on the ListView, so that it only shows when the list has 0 items.
-        View emptyView = findViewById(R.id.empty_view);
-        memberListView.setEmptyView(emptyView);
+        // Find the RecyclerView which will be populated with the member data
+        RecyclerView memberRecyclerView = (RecyclerView) findViewById(R.id.list_member);
+        memberRecyclerView.setLayoutManager(new LinearLayoutManager(this));
 
-        // Setup an Adapter to create a list item for each row of member data in the Cursor.
-        // There is no member data yet (until the loader finishes) so pass in null for the Cursor.
-        mCursorAdapter = new MemberCursorAdapter(this, null);
-        memberListView.setAdapter(mCursorAdapter);
+        // Find the empty view, so that it only shows when the list has 0 items.
+        mEmptyView = findViewById(R.id.empty_view);
 
-        // Setup the item click listener
-        memberListView.setOnItemClickListener(new AdapterView.OnItemClickListener() {
+        // Setup an Adapter that loads the members a page at a time as the list scrolls.
+        mPageAdapter = new MemberPageAdapter(getContentResolver(), this);
+        mPageAdapter.registerAdapterDataObserver(new RecyclerView.AdapterDataObserver() {
             @Override
-            public void onItemClick(AdapterView<?> adapterView, View view, int position, long id) {
-                // Create new intent to go to {@link EditorActivity}
-                Intent intent = new Intent(CatalogActivity.this, EditorActivity.class);
-
-                // Form the content URI that represents the specific member that was clicked on,
-                // by appending the "id" (passed as input to this method) onto the
-                // {@link PetEntry#CONTENT_URI}.
-                // For example, the URI would be "content://com.example.android.members/members/2"
-                // if the member with ID 2 was clicked on.
-                Uri currentPetUri = ContentUris.withAppendedId(MemberEntry.CONTENT_URI, id);
+            public void onChanged() {
+                updateEmptyView();
+            }
 
-                // Set the URI on the data field of the intent
-                intent.setData(currentPetUri);
+            @Override
+            public void onItemRangeInserted(int positionStart, int itemCount) {
+                updateEmptyView();
+            }
 
-                // Launch the {@link EditorActivity} to display the data for the current member.
-                startActivity(intent);
+            @Override
+            public void onItemRangeRemoved(int positionStart, int itemCount) {
+                updateEmptyView();
             }
         });
+        memberRecyclerView.setAdapter(mPageAdapter);
 
-        // Kick off the loader
-       getLoaderManager().initLoader(MEMBER_LOADER, null, this);
+        // Kick off loading the first page
+        mPageAdapter.start();
     }
 
-
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        mPageAdapter.close();
+    }
 
     /**
-     * Temporary helper method to display information in the onscreen TextView about the state of
-     * the members database.
+     * Show the empty view only while the list has no members.
      */
-    private void displayDatabaseInfo() {
-
-        // Define a projection that specifies which columns from the database
-        // you will actually use after this query.
-        String[] projection = {
-                MemberEntry._ID,
-                MemberEntry.COLUMN_MEMBER_NAME,
-                MemberEntry.COLUMN_MEMBER_FATHER_NAME,
-                MemberEntry.COLUMN_MEMBER_CODE,
-                MemberEntry.COLUMN_MEMBER_PHONE,
-                MemberEntry.COLUMN_MEMBER_DATE,
-                MemberEntry.COLUMN_MEMBER_WEIGHT };
+    private void updateEmptyView() {
+        mEmptyView.setVisibility(mPageAdapter.getItemCount() == 0 ? View.VISIBLE : View.GONE);
+    }
 
-        Cursor cursor = getContentResolver().query(MemberEntry.CONTENT_URI,projection, null, null, null);
+    @Override
+    public void onMemberClick(long id) {
+        // Create new intent to go to {@link EditorActivity}
+        Intent intent = new Intent(CatalogActivity.this, EditorActivity.class);
 
-        // Find ListView to populate
-        ListView listViewItems = (ListView) findViewById(R.id.list_view_member);
-        // Setup cursor adapter using cursor from last step
-        MemberCursorAdapter memberAdapter = new MemberCursorAdapter(this, cursor);
-        // Attach cursor adapter to the ListView
-        listViewItems.setAdapter(memberAdapter);
+        // Form the content URI that represents the specific member that was clicked on,
+        // by appending the "id" onto the {@link MemberEntry#CONTENT_URI}.
+        // For example, the URI would be "content://com.example.android.members/members/2"
+        // if the member with ID 2 was clicked on.
+        Uri currentMemberUri = ContentUris.withAppendedId(MemberEntry.CONTENT_URI, id);
 
+        // Set the URI on the data field of the intent
+        intent.setData(currentMemberUri);
 
+        // Launch the {@link EditorActivity} to display the data for the current member.
+        startActivity(intent);
     }
 
     /**
      * Helper method to insert hardcoded member data into the database. For debugging purposes only.
      */
     private void insertPet() {
-        // Create a ContentValues object where column names are the keys,
-        // and Toto's member attributes are the values.
-        ContentValues values = new ContentValues();
-        values.put(MemberEntry.COLUMN_MEMBER_NAME, "Jhon");
-        values.put(MemberEntry.COLUMN_MEMBER_FATHER_NAME, "Ross");
-        values.put(MemberEntry.COLUMN_MEMBER_CODE, 7);
-        values.put(MemberEntry.COLUMN_MEMBER_PHONE, "9876543210");
-        values.put(MemberEntry.COLUMN_MEMBER_DATE, "19/12/2016");
-        values.put(MemberEntry.COLUMN_MEMBER_WEIGHT, 70);
-
-        Uri newRowUri = getContentResolver().insert(MemberEntry.CONTENT_URI,values);
+        // Create a Member with Jhon's attributes
+        Member member = new Member("Jhon", "Ross", 7, "9876543210",
+                MemberDates.toEpochDay(2016, 12, 19), 70);
+
+        MemberWriter.getInstance(this).insert(MemberEntry.CONTENT_URI, member.toContentValues(), null);
     }
 
+    /**
+     * Delete every member in the background and report the outcome once it is done.
+     */
     private void deleteAll() {
-        int mRowUpdated = getContentResolver().delete(MemberEntry.CONTENT_URI, null, null);
-        if (mRowUpdated == 0) {
-            // If no rows were affected, then there was an error with the update.
-            Toast.makeText(this, getString(R.string.editor_delete_member_failed),
-                    Toast.LENGTH_SHORT).show();
-        } else {
-            // Show Toast message for updated member
-            Toast.makeText(this, R.string.editor_delete_member_successful,Toast.LENGTH_LONG).show();
-        }
+        MemberWriter.getInstance(this).delete(MemberEntry.CONTENT_URI, null, null,
+                new MemberWriter.Callback() {
+                    @Override
+                    public void onWriteComplete(Uri uri, int rows) {
+                        if (rows == 0) {
+                            // If no rows were affected, then there was an error with the delete.
+                            Toast.makeText(CatalogActivity.this,
+                                    getString(R.string.editor_delete_member_failed),
+                                    Toast.LENGTH_SHORT).show();
+                        } else {
+                            // Show Toast message for deleted members
+                            Toast.makeText(CatalogActivity.this,
+                                    R.string.editor_delete_member_successful, Toast.LENGTH_LONG).show();
+                        }
+                    }
+                });
     }
 
     @Override
@@ -169,35 +165,4 @@ public class CatalogActivity extends AppCompatActivity implements LoaderManager.
         return super.onOptionsItemSelected(item);
     }
 
-    @Override
-    public Loader<Cursor> onCreateLoader(int id, Bundle args) {
-        String[] projection = {
-                MemberEntry._ID,
-                MemberEntry.COLUMN_MEMBER_NAME,
-                MemberEntry.COLUMN_MEMBER_FATHER_NAME
-        };
-
-        return new CursorLoader(this, // context
-                MemberEntry.CONTENT_URI, // content provider Uri
-                projection, // projection
-                null, // selection
-                null, // selection args
-                null // sort order
-        );
-    }
-
-
-    @Override
-    public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
-        mCursorAdapter.swapCursor(data);
-    }
-
-    @Override
-    public void onLoaderReset(Loader<Cursor> loader) {
-
-        mCursorAdapter.swapCursor(null);
-
-    }
-
-
 }
\ No newline at end of file
@@ -18,6 +18,7 @@ package com.example.android.members;
 import android.app.AlertDialog;
 import android.app.LoaderManager;
 import android.content.ContentValues;
+import android.content.Context;
 import android.content.CursorLoader;
 import android.content.DialogInterface;
 import android.content.Intent;
@@ -38,7 +39,11 @@ import android.widget.EditText;
 import android.widget.Spinner;
 import android.widget.Toast;
 
+import com.example.android.members.data.Member;
 import com.example.android.members.data.MemberContract.MemberEntry;
+import com.example.android.members.data.MemberDates;
+import com.example.android.members.data.MemberRepository;
+import com.example.android.members.data.MemberWriter;
 
 
 /**
@@ -194,8 +199,10 @@ public class EditorActivity extends AppCompatActivity implements
 
     /**
      * Get all user data from editor and insert pet into database
+     *
+     * @return false if the input can't be saved and the editor should stay open
      */
-    private void savePet() {
+    private boolean savePet() {
 
 
         // Get all user data from editor
@@ -211,7 +218,16 @@ public class EditorActivity extends AppCompatActivity implements
                 TextUtils.isEmpty(nameString) || TextUtils.isEmpty(fatherString) || TextUtils.isEmpty(codeString)
                 || TextUtils.isEmpty(phoneString) || TextUtils.isEmpty(dateString) || TextUtils.isEmpty(weightString)
                 ) {
-            finish();
+            return true;
+        }
+
+        // The date is stored as a day count, so it has to be a real date
+        long date;
+        try {
+            date = MemberDates.parse(dateString);
+        } catch (IllegalArgumentException e) {
+            Toast.makeText(this, R.string.editor_invalid_date, Toast.LENGTH_SHORT).show();
+            return false;
         }
 
         // change
@@ -224,38 +240,51 @@ public class EditorActivity extends AppCompatActivity implements
             code = Integer.parseInt(codeString);
         }
 
-        // Create a new map of values, where column names are the keys
-        ContentValues values = new ContentValues();
-        values.put(MemberEntry.COLUMN_MEMBER_NAME, nameString);
-        values.put(MemberEntry.COLUMN_MEMBER_FATHER_NAME, fatherString);
-        values.put(MemberEntry.COLUMN_MEMBER_CODE, code);
-        values.put(MemberEntry.COLUMN_MEMBER_PHONE, phoneString);
-        values.put(MemberEntry.COLUMN_MEMBER_DATE, dateString);
-        values.put(MemberEntry.COLUMN_MEMBER_WEIGHT, weight);
+        // Create the member and the map of values the provider stores
+        Member member = new Member(nameString, fatherString, code, phoneString, date, weight);
+        ContentValues values = member.toContentValues();
 
+        // The write runs in the background; the Toast uses the application context since
+        // this activity finishes right after saving
+        final Context appContext = getApplicationContext();
         if (mIsNewMember) {
+            final int savedCode = code;
             // Insert the new row, returning the primary key value of the new row
-            Uri newRowUri = getContentResolver().insert(MemberEntry.CONTENT_URI, values);
-
-            // Show Toast message for saved member
-            Toast.makeText(this, R.string.save_message,Toast.LENGTH_LONG).show();
-
-
+            MemberWriter.getInstance(this).insert(MemberEntry.CONTENT_URI, values,
+                    new MemberWriter.Callback() {
+                        @Override
+                        public void onWriteComplete(Uri uri, int rows) {
+                            if (uri == null) {
+                                // The only constraint a complete member can break is the
+                                // unique code
+                                Toast.makeText(appContext, appContext.getString(
+                                        R.string.editor_code_in_use, savedCode),
+                                        Toast.LENGTH_LONG).show();
+                            } else {
+                                // Show Toast message for saved member
+                                Toast.makeText(appContext, R.string.save_message,
+                                        Toast.LENGTH_LONG).show();
+                            }
+                        }
+                    });
         } else {
-            int mRowUpdated = getContentResolver().update(mCurrentMemberUri, values, null, null);
-
-            if (mRowUpdated == 0) {
-                // If no rows were affected, then there was an error with the update.
-                Toast.makeText(this, getString(R.string.editor_update_pet_failed),
-                        Toast.LENGTH_SHORT).show();
-            } else {
-                // Show Toast message for updated member
-                Toast.makeText(this, R.string.save_message,Toast.LENGTH_LONG).show();
-            }
-
+            MemberWriter.getInstance(this).update(mCurrentMemberUri, values,
+                    new MemberWriter.Callback() {
+                        @Override
+                        public void onWriteComplete(Uri uri, int rows) {
+                            if (rows == 0) {
+                                // If no rows were affected, then there was an error with the update.
+                                Toast.makeText(appContext, R.string.editor_update_pet_failed,
+                                        Toast.LENGTH_SHORT).show();
+                            } else {
+                                // Show Toast message for updated member
+                                Toast.makeText(appContext, R.string.save_message,
+                                        Toast.LENGTH_LONG).show();
+                            }
+                        }
+                    });
         }
-
-
+        return true;
     }
 
     private void showDeleteConfirmationDialog() {
@@ -292,16 +321,22 @@ public class EditorActivity extends AppCompatActivity implements
     private void deletePet() {
         // TODO: Implement this method
         if (mCurrentMemberUri != null) {
-            int mRowUpdated = getContentResolver().delete(mCurrentMemberUri, null, null);
-
-            if (mRowUpdated == 0) {
-                // If no rows were affected, then there was an error with the update.
-                Toast.makeText(this, getString(R.string.editor_delete_member_failed),
-                        Toast.LENGTH_SHORT).show();
-            } else {
-                // Show Toast message for updated member
-                Toast.makeText(this, R.string.editor_delete_member_successful,Toast.LENGTH_LONG).show();
-            }
+            final Context appContext = getApplicationContext();
+            MemberWriter.getInstance(this).delete(mCurrentMemberUri, null, null,
+                    new MemberWriter.Callback() {
+                        @Override
+                        public void onWriteComplete(Uri uri, int rows) {
+                            if (rows == 0) {
+                                // If no rows were affected, then there was an error with the delete.
+                                Toast.makeText(appContext, R.string.editor_delete_member_failed,
+                                        Toast.LENGTH_SHORT).show();
+                            } else {
+                                // Show Toast message for deleted member
+                                Toast.makeText(appContext, R.string.editor_delete_member_successful,
+                                        Toast.LENGTH_LONG).show();
+                            }
+                        }
+                    });
         }
         // Close the Activity
         finish();
@@ -326,10 +361,10 @@ public class EditorActivity extends AppCompatActivity implements
         switch (item.getItemId()) {
             // Respond to a click on the "Save" menu option
             case R.id.action_save:
-                // Save pet to database
-                savePet();
-                // Exit Activity
-                finish();
+                // Save pet to database, and exit Activity unless the input was rejected
+                if (savePet()) {
+                    finish();
+                }
                 return true;
             // Respond to a click on the "Delete" menu option
             case R.id.action_delete:
@@ -367,19 +402,9 @@ public class EditorActivity extends AppCompatActivity implements
 
     @Override
     public Loader<Cursor> onCreateLoader(int id, Bundle args) {
-        String[] projection = {
-                MemberEntry._ID,
-                MemberEntry.COLUMN_MEMBER_NAME,
-                MemberEntry.COLUMN_MEMBER_FATHER_NAME,
-                MemberEntry.COLUMN_MEMBER_CODE,
-                MemberEntry.COLUMN_MEMBER_PHONE,
-                MemberEntry.COLUMN_MEMBER_DATE,
-                MemberEntry.COLUMN_MEMBER_WEIGHT
-        };
-
         return new CursorLoader(this, // context
                 mCurrentMemberUri, // content provider Uri
-                projection, // projection
+                MemberRepository.PROJECTION, // projection
                 null, // selection
                 null, // selection args
                 null // sort order
@@ -393,29 +418,16 @@ public class EditorActivity extends AppCompatActivity implements
         // (This should be the only row in the mCursor)
         if (data.moveToFirst() ) {
 
-            // Find the columns of member attributes that we're interested in
-            int nameIndex = data.getColumnIndex(MemberEntry.COLUMN_MEMBER_NAME);
-            int fatherIndex = data.getColumnIndex(MemberEntry.COLUMN_MEMBER_FATHER_NAME);
-            int codeIndex = data.getColumnIndex(MemberEntry.COLUMN_MEMBER_CODE);
-            int phoneIndex = data.getColumnIndex(MemberEntry.COLUMN_MEMBER_PHONE);
-            int dateIndex = data.getColumnIndex(MemberEntry.COLUMN_MEMBER_DATE);
-            int weightIndex = data.getColumnIndex(MemberEntry.COLUMN_MEMBER_WEIGHT);
-
-            // Extract out the value from the Cursor for the given column index
-            String mName = data.getString(nameIndex);
-            String mFatherName = data.getString(fatherIndex);
-            int mCode = data.getInt(codeIndex);
-            String mPhone = data.getString(phoneIndex);
-            String mDate = data.getString(dateIndex);
-            int mWeight = data.getInt(weightIndex);
+            // Extract the member from the row; the mapper finds the columns once
+            Member member = new MemberRepository.RowMapper(data).map(data);
 
             // Update the views on the screen with the values from the database
-            mNameEditText.setText(mName);
-            mFatherEditText.setText(mFatherName);
-            mCodeEditText.setText(mCode);
-            mPhoneEditText.setText(mPhone);
-            mDateEditText.setText(mDate);
-            mWeightEditText.setText(mWeight);
+            mNameEditText.setText(member.getName());
+            mFatherEditText.setText(member.getFatherName());
+            mCodeEditText.setText(String.valueOf(member.getCode()));
+            mPhoneEditText.setText(member.getPhone());
+            mDateEditText.setText(MemberDates.format(member.getDate()));
+            mWeightEditText.setText(String.valueOf(member.getWeight()));
 
         }
     }
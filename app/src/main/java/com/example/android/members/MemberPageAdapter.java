@@ -0,0 +1,765 @@
+package com.example.android.members;
+
+import android.content.ContentResolver;
+import android.database.CharArrayBuffer;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v7.util.DiffUtil;
+import android.support.v7.widget.RecyclerView;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import com.example.android.members.data.MemberContract;
+import com.example.android.members.data.MemberContract.MemberEntry;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * {@link RecyclerView.Adapter} that shows the members table a page at a time. Pages are loaded
+ * from the {@link com.example.android.members.data.MemberProvider} with keyset paging on _ID,
+ * the next (or previous) page is fetched as the list nears the end of what is loaded, and at
+ * most {@link #MAX_PAGES} pages are kept in memory. When single members change, only those rows
+ * are re-read and merged into the window; a change to the whole table re-reads the window.
+ * Either way only the rows that differ are updated in the list. The text buffers of a page
+ * dropped from the window are handed to the next page loaded, so scrolling through the table
+ * allocates them only until the window is full.
+ */
+public class MemberPageAdapter extends RecyclerView.Adapter<MemberPageAdapter.ViewHolder> {
+
+    /**
+     * Callback for a click on a member in the list.
+     */
+    public interface OnMemberClickListener {
+        void onMemberClick(long id);
+    }
+
+    /** Number of members fetched per query */
+    static final int PAGE_SIZE = 50;
+
+    /** Number of pages kept in memory; pages furthest from the scroll position are dropped */
+    static final int MAX_PAGES = 5;
+
+    /** Start loading the next page once the bound row is this close to the end of the window */
+    static final int PREFETCH_DISTANCE = 15;
+
+    private static final String[] PROJECTION = {
+            MemberEntry._ID,
+            MemberEntry.COLUMN_MEMBER_NAME,
+            MemberEntry.COLUMN_MEMBER_FATHER_NAME
+    };
+
+    private final ContentResolver mResolver;
+
+    private final OnMemberClickListener mListener;
+
+    /** The loaded window of members, in _ID order */
+    private final ArrayList<Page> mPages = new ArrayList<>();
+
+    /** Text buffers of the last page dropped from the window, names and fathers */
+    private final BufferPool mBufferPool = new BufferPool(2 * PAGE_SIZE);
+
+    /** Total number of rows in {@link #mPages} */
+    private int mItemCount;
+
+    /** Whether the window starts at the first member */
+    private boolean mReachedStart = true;
+
+    /** Whether the window ends at the last member */
+    private boolean mReachedEnd;
+
+    /** Only one load runs at a time, so the window never changes under a running load */
+    private boolean mLoading;
+
+    /** A change arrived while a load was running; apply it once the load is done */
+    private boolean mRefreshPending;
+
+    /** Bumped on close, so loads that finish afterwards are dropped */
+    private int mGeneration;
+
+    /** Wait this long after a change notification for more before acting on them */
+    private static final long CHANGE_DEBOUNCE_MS = 100;
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    /** Members reported changed by row URI and not yet re-read */
+    private final HashSet<Long> mChangedIds = new HashSet<>();
+
+    /** A change to the whole table was reported, so the window must be re-read */
+    private boolean mTableChanged;
+
+    private final ContentObserver mObserver = new ContentObserver(mHandler) {
+        @Override
+        public void onChange(boolean selfChange) {
+            // Before API 16 there is no URI, so anything may have changed
+            onChange(selfChange, null);
+        }
+
+        @Override
+        public void onChange(boolean selfChange, Uri uri) {
+            long id = rowId(uri);
+            if (id == -1) {
+                mTableChanged = true;
+            } else {
+                mChangedIds.add(id);
+            }
+            // Collect notifications arriving together, e.g. from one batch, into one reload
+            mHandler.removeCallbacks(mApplyChanges);
+            mHandler.postDelayed(mApplyChanges, CHANGE_DEBOUNCE_MS);
+        }
+    };
+
+    private final Runnable mApplyChanges = new Runnable() {
+        @Override
+        public void run() {
+            applyChanges();
+        }
+    };
+
+    public MemberPageAdapter(ContentResolver resolver, OnMemberClickListener listener) {
+        mResolver = resolver;
+        mListener = listener;
+        setHasStableIds(true);
+    }
+
+    /**
+     * Load the first page and start following changes to the members table.
+     */
+    public void start() {
+        mResolver.registerContentObserver(MemberEntry.CONTENT_URI, true, mObserver);
+        loadNext();
+    }
+
+    /**
+     * Stop following changes. Loads still running are discarded when they finish.
+     */
+    public void close() {
+        mResolver.unregisterContentObserver(mObserver);
+        mHandler.removeCallbacks(mApplyChanges);
+        mGeneration++;
+    }
+
+    @Override
+    public ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(parent.getContext())
+                .inflate(R.layout.list_item, parent, false);
+        return new ViewHolder(view);
+    }
+
+    @Override
+    public void onBindViewHolder(ViewHolder holder, int position) {
+        int row = position;
+        for (int i = 0; i < mPages.size(); i++) {
+            Page page = mPages.get(i);
+            if (row < page.size()) {
+                // Binding from char buffers lets TextView reuse its own wrapper, so a scroll
+                // frame allocates nothing here
+                CharArrayBuffer name = page.mNames[row];
+                CharArrayBuffer father = page.mFathers[row];
+                holder.mNameTextView.setText(name.data, 0, name.sizeCopied);
+                holder.mSummaryTextView.setText(father.data, 0, father.sizeCopied);
+                break;
+            }
+            row -= page.size();
+        }
+
+        // Fetch the neighbouring page before the user gets there
+        if (position >= mItemCount - PREFETCH_DISTANCE) {
+            loadNext();
+        } else if (position < PREFETCH_DISTANCE) {
+            loadPrevious();
+        }
+    }
+
+    @Override
+    public long getItemId(int position) {
+        int row = position;
+        for (int i = 0; i < mPages.size(); i++) {
+            Page page = mPages.get(i);
+            if (row < page.size()) {
+                return page.mIds[row];
+            }
+            row -= page.size();
+        }
+        return RecyclerView.NO_ID;
+    }
+
+    @Override
+    public int getItemCount() {
+        return mItemCount;
+    }
+
+    /**
+     * Load the page after the window, dropping the first page if the window gets too big.
+     */
+    private void loadNext() {
+        if (mLoading || mReachedEnd) {
+            return;
+        }
+        mLoading = true;
+        long afterId = mPages.isEmpty() ? 0 : mPages.get(mPages.size() - 1).lastId();
+        new PageTask(mGeneration, afterId, true).execute();
+    }
+
+    /**
+     * Load the page before the window, dropping the last page if the window gets too big.
+     */
+    private void loadPrevious() {
+        if (mLoading || mReachedStart || mPages.isEmpty()) {
+            return;
+        }
+        mLoading = true;
+        new PageTask(mGeneration, mPages.get(0).firstId(), false).execute();
+    }
+
+    /**
+     * Act on the change notifications collected so far: re-read just the changed members if
+     * they are few and known by _ID, otherwise the whole window.
+     */
+    private void applyChanges() {
+        if (mLoading) {
+            // Picked up again once the running load is done
+            mRefreshPending = true;
+            return;
+        }
+        if (mTableChanged || mChangedIds.size() > PAGE_SIZE || mPages.isEmpty()) {
+            refresh();
+            return;
+        }
+        if (mChangedIds.isEmpty()) {
+            return;
+        }
+        long[] changed = new long[mChangedIds.size()];
+        int i = 0;
+        for (Long id : mChangedIds) {
+            changed[i++] = id;
+        }
+        mChangedIds.clear();
+        mLoading = true;
+        new ChangedRowsTask(mGeneration, Page.concat(mPages), changed).execute();
+    }
+
+    /**
+     * Re-read the rows in the loaded window and apply the differences to the list.
+     */
+    private void refresh() {
+        if (mLoading) {
+            mRefreshPending = true;
+            return;
+        }
+        mRefreshPending = false;
+        // The window is read again in full, which covers any single-row changes too
+        mTableChanged = false;
+        mChangedIds.clear();
+        if (mPages.isEmpty()) {
+            // Nothing loaded yet, so there is nothing to diff against
+            mReachedEnd = false;
+            loadNext();
+            return;
+        }
+        mLoading = true;
+        new RefreshTask(mGeneration, Page.concat(mPages)).execute();
+    }
+
+    private void onLoadFinished() {
+        mLoading = false;
+        if (mRefreshPending) {
+            mRefreshPending = false;
+            applyChanges();
+        }
+    }
+
+    /**
+     * Return the _ID of a member row URI, or -1 for any other URI.
+     */
+    private static long rowId(Uri uri) {
+        if (uri == null) {
+            return -1;
+        }
+        List<String> segments = uri.getPathSegments();
+        if (segments.size() != 2 || !MemberContract.PATH_MEMBERS.equals(segments.get(0))) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(segments.get(1));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Add a freshly loaded page to the start or end of the window.
+     */
+    private void addPage(Page page, boolean forward) {
+        int count = page.size();
+        if (forward) {
+            if (count < PAGE_SIZE) {
+                mReachedEnd = true;
+            }
+            if (count > 0) {
+                mPages.add(page);
+                mItemCount += count;
+                notifyItemRangeInserted(mItemCount - count, count);
+            }
+            if (mPages.size() > MAX_PAGES) {
+                Page dropped = mPages.remove(0);
+                mItemCount -= dropped.size();
+                notifyItemRangeRemoved(0, dropped.size());
+                mReachedStart = false;
+                mBufferPool.recycle(dropped);
+            }
+        } else {
+            if (count < PAGE_SIZE) {
+                mReachedStart = true;
+            }
+            if (count > 0) {
+                mPages.add(0, page);
+                mItemCount += count;
+                notifyItemRangeInserted(0, count);
+            }
+            if (mPages.size() > MAX_PAGES) {
+                Page dropped = mPages.remove(mPages.size() - 1);
+                mItemCount -= dropped.size();
+                notifyItemRangeRemoved(mItemCount, dropped.size());
+                mReachedEnd = false;
+                mBufferPool.recycle(dropped);
+            }
+        }
+    }
+
+    /**
+     * Read every row of the cursor into a page, optionally in reverse order, and close it.
+     * Column indices are resolved once per cursor and text is copied straight out of the
+     * cursor window into char buffers, taken from the pool where it has some, instead of
+     * going through Strings.
+     */
+    private static Page readPage(Cursor cursor, boolean reverse, BufferPool pool) {
+        if (cursor == null) {
+            return new Page(0, pool);
+        }
+        try {
+            int idIndex = cursor.getColumnIndexOrThrow(MemberEntry._ID);
+            int nameIndex = cursor.getColumnIndexOrThrow(MemberEntry.COLUMN_MEMBER_NAME);
+            int fatherIndex = cursor.getColumnIndexOrThrow(MemberEntry.COLUMN_MEMBER_FATHER_NAME);
+            int count = cursor.getCount();
+            Page page = new Page(count, pool);
+            int row = 0;
+            while (cursor.moveToNext()) {
+                int slot = reverse ? count - 1 - row : row;
+                page.mIds[slot] = cursor.getLong(idIndex);
+                cursor.copyStringToBuffer(nameIndex, page.mNames[slot]);
+                cursor.copyStringToBuffer(fatherIndex, page.mFathers[slot]);
+                row++;
+            }
+            return page;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Loads one page next to the current window.
+     */
+    private class PageTask extends AsyncTask<Void, Void, Page> {
+
+        private final int mTaskGeneration;
+        private final long mKeyId;
+        private final boolean mForward;
+
+        PageTask(int generation, long keyId, boolean forward) {
+            mTaskGeneration = generation;
+            mKeyId = keyId;
+            mForward = forward;
+        }
+
+        @Override
+        protected Page doInBackground(Void... params) {
+            if (mForward) {
+                return readPage(mResolver.query(MemberEntry.buildPageUri(mKeyId, PAGE_SIZE),
+                        PROJECTION, null, null, null), false, mBufferPool);
+            }
+            // Walk backwards from the first loaded member, then put the rows back in order
+            Uri uri = MemberEntry.CONTENT_URI.buildUpon()
+                    .appendQueryParameter(MemberContract.QUERY_PARAMETER_LIMIT,
+                            String.valueOf(PAGE_SIZE))
+                    .build();
+            return readPage(mResolver.query(uri, PROJECTION, MemberEntry._ID + "<?",
+                    new String[]{String.valueOf(mKeyId)}, MemberEntry._ID + " DESC"), true,
+                    mBufferPool);
+        }
+
+        @Override
+        protected void onPostExecute(Page page) {
+            if (mTaskGeneration != mGeneration) {
+                return;
+            }
+            addPage(page, mForward);
+            onLoadFinished();
+        }
+    }
+
+    /**
+     * Works out a new version of the loaded window in the background and applies it with the
+     * smallest set of item updates.
+     */
+    private abstract class WindowTask extends AsyncTask<Void, Void, DiffUtil.DiffResult> {
+
+        private final int mTaskGeneration;
+        final Page mOld;
+        final boolean mFromStart;
+        final boolean mToEnd;
+        private Page mNew;
+
+        WindowTask(int generation, Page old) {
+            mTaskGeneration = generation;
+            mOld = old;
+            mFromStart = mReachedStart;
+            mToEnd = mReachedEnd;
+        }
+
+        /**
+         * Build the new window; runs in the background.
+         */
+        abstract Page loadWindow();
+
+        @Override
+        protected DiffUtil.DiffResult doInBackground(Void... params) {
+            mNew = loadWindow();
+            if (mNew.size() > MAX_PAGES * PAGE_SIZE) {
+                mNew = mNew.split(MAX_PAGES * PAGE_SIZE).get(0);
+            }
+            return DiffUtil.calculateDiff(new PageDiffCallback(mOld, mNew));
+        }
+
+        @Override
+        protected void onPostExecute(DiffUtil.DiffResult diff) {
+            if (mTaskGeneration != mGeneration) {
+                return;
+            }
+            mPages.clear();
+            mPages.addAll(mNew.split(PAGE_SIZE));
+            mItemCount = mNew.size();
+            if (mNew.size() == MAX_PAGES * PAGE_SIZE) {
+                // The window was cut short, so there may be more members after it
+                mReachedEnd = false;
+            } else if (mNew.size() == 0) {
+                // Everything in the window is gone; start over from the first member
+                mReachedStart = true;
+                mReachedEnd = false;
+            }
+            diff.dispatchUpdatesTo(MemberPageAdapter.this);
+            onLoadFinished();
+            if (mPages.isEmpty()) {
+                loadNext();
+            }
+        }
+    }
+
+    /**
+     * Re-reads the whole loaded window.
+     */
+    private class RefreshTask extends WindowTask {
+
+        RefreshTask(int generation, Page old) {
+            super(generation, old);
+        }
+
+        @Override
+        Page loadWindow() {
+            // Same bounds as the current window; open ends pick up members added or
+            // removed past the edge of what was loaded
+            String selection = null;
+            ArrayList<String> args = new ArrayList<>();
+            if (!mFromStart) {
+                selection = MemberEntry._ID + ">=?";
+                args.add(String.valueOf(mOld.firstId()));
+            }
+            if (!mToEnd) {
+                selection = (selection == null ? "" : selection + " AND ") + MemberEntry._ID + "<=?";
+                args.add(String.valueOf(mOld.lastId()));
+            }
+            Uri uri = MemberEntry.CONTENT_URI.buildUpon()
+                    .appendQueryParameter(MemberContract.QUERY_PARAMETER_LIMIT,
+                            String.valueOf(MAX_PAGES * PAGE_SIZE))
+                    .build();
+            return readPage(mResolver.query(uri, PROJECTION, selection,
+                    args.toArray(new String[args.size()]), MemberEntry._ID + " ASC"), false,
+                    mBufferPool);
+        }
+    }
+
+    /**
+     * Re-reads only the members that were reported changed, and merges them into the window:
+     * changed rows are replaced, deleted rows dropped, and new members appended if the window
+     * reaches the end of the table.
+     */
+    private class ChangedRowsTask extends WindowTask {
+
+        private final long[] mChanged;
+
+        ChangedRowsTask(int generation, Page old, long[] changed) {
+            super(generation, old);
+            mChanged = changed;
+        }
+
+        @Override
+        Page loadWindow() {
+            StringBuilder selection = new StringBuilder(MemberEntry._ID).append(" IN (");
+            String[] args = new String[mChanged.length];
+            for (int i = 0; i < mChanged.length; i++) {
+                selection.append(i == 0 ? "?" : ",?");
+                args[i] = String.valueOf(mChanged[i]);
+            }
+            selection.append(')');
+            Page fetched = readPage(mResolver.query(MemberEntry.CONTENT_URI, PROJECTION,
+                    selection.toString(), args, MemberEntry._ID + " ASC"), false, mBufferPool);
+
+            HashSet<Long> changed = new HashSet<>();
+            for (long id : mChanged) {
+                changed.add(id);
+            }
+            HashMap<Long, Integer> fetchedRows = new HashMap<>();
+            for (int i = 0; i < fetched.size(); i++) {
+                fetchedRows.put(fetched.mIds[i], i);
+            }
+
+            // Positions of the new window's rows: >= 0 is a row of the old window,
+            // < 0 is row (-position - 1) of the fetched page
+            int[] rows = new int[mOld.size() + fetched.size()];
+            int count = 0;
+            for (int i = 0; i < mOld.size(); i++) {
+                long id = mOld.mIds[i];
+                if (!changed.contains(id)) {
+                    rows[count++] = i;
+                } else if (fetchedRows.containsKey(id)) {
+                    rows[count++] = -fetchedRows.get(id) - 1;
+                }
+            }
+            if (mToEnd) {
+                long lastId = mOld.size() == 0 ? 0 : mOld.lastId();
+                for (int i = 0; i < fetched.size(); i++) {
+                    if (fetched.mIds[i] > lastId) {
+                        rows[count++] = -i - 1;
+                    }
+                }
+            }
+
+            // Only references: the rows keep the buffers they were read into
+            Page window = new Page(new long[count], new CharArrayBuffer[count],
+                    new CharArrayBuffer[count]);
+            for (int i = 0; i < count; i++) {
+                Page source = rows[i] >= 0 ? mOld : fetched;
+                int row = rows[i] >= 0 ? rows[i] : -rows[i] - 1;
+                window.mIds[i] = source.mIds[row];
+                window.mNames[i] = source.mNames[row];
+                window.mFathers[i] = source.mFathers[row];
+            }
+            return window;
+        }
+    }
+
+    /**
+     * Compares two windows of members by _ID, and by the shown text for changed rows.
+     */
+    private static class PageDiffCallback extends DiffUtil.Callback {
+
+        private final Page mOld;
+        private final Page mNew;
+
+        PageDiffCallback(Page oldPage, Page newPage) {
+            mOld = oldPage;
+            mNew = newPage;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return mOld.size();
+        }
+
+        @Override
+        public int getNewListSize() {
+            return mNew.size();
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+            return mOld.mIds[oldItemPosition] == mNew.mIds[newItemPosition];
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+            return sameText(mOld.mNames[oldItemPosition], mNew.mNames[newItemPosition])
+                    && sameText(mOld.mFathers[oldItemPosition], mNew.mFathers[newItemPosition]);
+        }
+
+        private static boolean sameText(CharArrayBuffer a, CharArrayBuffer b) {
+            if (a.sizeCopied != b.sizeCopied) {
+                return false;
+            }
+            for (int i = 0; i < a.sizeCopied; i++) {
+                if (a.data[i] != b.data[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * A run of consecutive members, stored column by column. Text is kept in
+     * {@link CharArrayBuffer}s so it can be bound without creating Strings.
+     */
+    static final class Page {
+
+        /** Initial capacity of the text buffers; they grow if a value is longer */
+        private static final int TEXT_CAPACITY = 32;
+
+        final long[] mIds;
+        final CharArrayBuffer[] mNames;
+        final CharArrayBuffer[] mFathers;
+
+        /**
+         * Create a page of {@code size} rows, with text buffers from the pool.
+         */
+        Page(int size, BufferPool pool) {
+            mIds = new long[size];
+            mNames = new CharArrayBuffer[size];
+            mFathers = new CharArrayBuffer[size];
+            for (int i = 0; i < size; i++) {
+                mNames[i] = pool.obtain();
+                mFathers[i] = pool.obtain();
+            }
+        }
+
+        /**
+         * Create a page that takes over rows of other pages; the buffers are shared, not copied.
+         */
+        private Page(long[] ids, CharArrayBuffer[] names, CharArrayBuffer[] fathers) {
+            mIds = ids;
+            mNames = names;
+            mFathers = fathers;
+        }
+
+        int size() {
+            return mIds.length;
+        }
+
+        long firstId() {
+            return mIds[0];
+        }
+
+        long lastId() {
+            return mIds[mIds.length - 1];
+        }
+
+        /**
+         * Join pages into one.
+         */
+        static Page concat(List<Page> pages) {
+            int size = 0;
+            for (Page page : pages) {
+                size += page.size();
+            }
+            Page joined = new Page(new long[size], new CharArrayBuffer[size],
+                    new CharArrayBuffer[size]);
+            int offset = 0;
+            for (Page page : pages) {
+                System.arraycopy(page.mIds, 0, joined.mIds, offset, page.size());
+                System.arraycopy(page.mNames, 0, joined.mNames, offset, page.size());
+                System.arraycopy(page.mFathers, 0, joined.mFathers, offset, page.size());
+                offset += page.size();
+            }
+            return joined;
+        }
+
+        /**
+         * Cut this page into pages of at most {@code pageSize} rows.
+         */
+        List<Page> split(int pageSize) {
+            ArrayList<Page> pages = new ArrayList<>();
+            for (int offset = 0; offset < size(); offset += pageSize) {
+                int size = Math.min(pageSize, size() - offset);
+                Page page = new Page(new long[size], new CharArrayBuffer[size],
+                        new CharArrayBuffer[size]);
+                System.arraycopy(mIds, offset, page.mIds, 0, page.size());
+                System.arraycopy(mNames, offset, page.mNames, 0, page.size());
+                System.arraycopy(mFathers, offset, page.mFathers, 0, page.size());
+                pages.add(page);
+            }
+            return pages;
+        }
+    }
+
+    /**
+     * Text buffers of pages dropped from the window, for the pages loaded next to fill. A page
+     * is only dropped by {@link #addPage} while no other load runs, and its rows have just been
+     * removed from the list, so nothing shows or reads its buffers any more. Pages are dropped
+     * on the main thread and filled in the background, hence the locking.
+     */
+    static final class BufferPool {
+
+        private final CharArrayBuffer[] mBuffers;
+
+        /** Number of buffers in the pool; guarded by this */
+        private int mCount;
+
+        BufferPool(int capacity) {
+            mBuffers = new CharArrayBuffer[capacity];
+        }
+
+        /**
+         * Return a buffer from the pool, or a new one if it is empty.
+         */
+        synchronized CharArrayBuffer obtain() {
+            if (mCount == 0) {
+                return new CharArrayBuffer(Page.TEXT_CAPACITY);
+            }
+            CharArrayBuffer buffer = mBuffers[--mCount];
+            mBuffers[mCount] = null;
+            return buffer;
+        }
+
+        /**
+         * Keep the text buffers of a page that is no longer used, as far as there is room.
+         */
+        synchronized void recycle(Page page) {
+            for (int i = 0; i < page.size() && mCount + 2 <= mBuffers.length; i++) {
+                mBuffers[mCount++] = page.mNames[i];
+                mBuffers[mCount++] = page.mFathers[i];
+            }
+        }
+    }
+
+    /**
+     * Holds the views of one list item, so findViewById runs once per view rather than on
+     * every bind.
+     */
+    class ViewHolder extends RecyclerView.ViewHolder implements View.OnClickListener {
+
+        final TextView mNameTextView;
+        final TextView mSummaryTextView;
+
+        ViewHolder(View itemView) {
+            super(itemView);
+            mNameTextView = (TextView) itemView.findViewById(R.id.name);
+            mSummaryTextView = (TextView) itemView.findViewById(R.id.summary);
+            itemView.setOnClickListener(this);
+        }
+
+        @Override
+        public void onClick(View view) {
+            int position = getAdapterPosition();
+            if (position != RecyclerView.NO_POSITION && mListener != null) {
+                mListener.onMemberClick(getItemId());
+            }
+        }
+    }
+}
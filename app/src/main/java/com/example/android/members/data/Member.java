@@ -0,0 +1,144 @@
+package com.example.android.members.data;
+
+import android.content.ContentValues;
+
+import com.example.android.members.data.MemberContract.MemberEntry;
+
+/**
+ * Immutable value object for one row of the members table.
+ */
+public final class Member {
+
+    /** _ID of a member that has not been stored yet */
+    public static final long NO_ID = 0;
+
+    private final long mId;
+    private final String mName;
+    private final String mFatherName;
+    private final int mCode;
+    private final String mPhone;
+    private final long mDate;
+    private final int mWeight;
+
+    /**
+     * @param date admission date, in days since 01/01/1970; see {@link MemberDates}
+     */
+    public Member(long id, String name, String fatherName, int code, String phone, long date,
+                  int weight) {
+        mId = id;
+        mName = name;
+        mFatherName = fatherName;
+        mCode = code;
+        mPhone = phone;
+        mDate = date;
+        mWeight = weight;
+    }
+
+    /**
+     * Create a member that has not been stored yet.
+     */
+    public Member(String name, String fatherName, int code, String phone, long date, int weight) {
+        this(NO_ID, name, fatherName, code, phone, date, weight);
+    }
+
+    public long getId() {
+        return mId;
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    public String getFatherName() {
+        return mFatherName;
+    }
+
+    public int getCode() {
+        return mCode;
+    }
+
+    public String getPhone() {
+        return mPhone;
+    }
+
+    /**
+     * Return the admission date, in days since 01/01/1970.
+     */
+    public long getDate() {
+        return mDate;
+    }
+
+    public int getWeight() {
+        return mWeight;
+    }
+
+    /**
+     * Return a copy of this member with the given _ID.
+     */
+    public Member withId(long id) {
+        return new Member(id, mName, mFatherName, mCode, mPhone, mDate, mWeight);
+    }
+
+    /**
+     * Write the stored attributes of this member (everything but the _ID) into {@code values},
+     * which is cleared first so it can be reused across calls.
+     */
+    public ContentValues toContentValues(ContentValues values) {
+        values.clear();
+        values.put(MemberEntry.COLUMN_MEMBER_NAME, mName);
+        values.put(MemberEntry.COLUMN_MEMBER_FATHER_NAME, mFatherName);
+        values.put(MemberEntry.COLUMN_MEMBER_CODE, mCode);
+        values.put(MemberEntry.COLUMN_MEMBER_PHONE, mPhone);
+        values.put(MemberEntry.COLUMN_MEMBER_DATE, mDate);
+        values.put(MemberEntry.COLUMN_MEMBER_WEIGHT, mWeight);
+        return values;
+    }
+
+    /**
+     * Return the stored attributes of this member in new content values.
+     */
+    public ContentValues toContentValues() {
+        return toContentValues(new ContentValues(6));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Member)) {
+            return false;
+        }
+        Member other = (Member) o;
+        return mId == other.mId
+                && mCode == other.mCode
+                && mWeight == other.mWeight
+                && mDate == other.mDate
+                && equal(mName, other.mName)
+                && equal(mFatherName, other.mFatherName)
+                && equal(mPhone, other.mPhone);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = (int) (mId ^ (mId >>> 32));
+        result = 31 * result + mCode;
+        result = 31 * result + mWeight;
+        result = 31 * result + (mName == null ? 0 : mName.hashCode());
+        result = 31 * result + (mFatherName == null ? 0 : mFatherName.hashCode());
+        result = 31 * result + (mPhone == null ? 0 : mPhone.hashCode());
+        result = 31 * result + (int) (mDate ^ (mDate >>> 32));
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "Member{id=" + mId + ", name=" + mName + ", father=" + mFatherName
+                + ", code=" + mCode + ", phone=" + mPhone + ", date=" + MemberDates.format(mDate)
+                + ", weight=" + mWeight + "}";
+    }
+
+    private static boolean equal(Object a, Object b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
@@ -0,0 +1,253 @@
+package com.example.android.members.data;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+import android.util.LruCache;
+
+import com.example.android.members.data.MemberContract.AggregateEntry;
+import com.example.android.members.data.MemberContract.MemberEntry;
+
+/**
+ * Computes the {@link AggregateEntry} statistics for the {@link MemberProvider} with SQL
+ * aggregation, and caches the small results until the next write. A statistic over all
+ * members is read from the {@link MemberSummaries} tables, so it costs the same however many
+ * members there are. The admission date bounds of a request become a range on the date
+ * index, so a dashboard never loads member rows.
+ */
+final class MemberAggregates {
+
+    /** Most distinct aggregate requests kept */
+    private static final int CACHE_ENTRIES = 32;
+
+    /** Bucket width for weight buckets when the URI gives none, in kg */
+    private static final int DEFAULT_BUCKET_SIZE = 10;
+
+    /** SQLite date modifier turning the stored day count into a date */
+    private static final String DATE_EXPRESSION =
+            "(" + MemberEntry.COLUMN_MEMBER_DATE + " * 86400), 'unixepoch'";
+
+    /** A computed result: its columns and rows */
+    private static final class Result {
+
+        final String[] mColumns;
+        final Object[][] mRows;
+
+        Result(String[] columns, Object[][] rows) {
+            mColumns = columns;
+            mRows = rows;
+        }
+    }
+
+    private final LruCache<String, Result> mResults = new LruCache<>(CACHE_ENTRIES);
+
+    /** Bumped by every invalidation, so a result computed before a write is not cached after */
+    private long mGeneration;
+
+    /**
+     * Drop every cached result; call after every write.
+     */
+    void invalidate() {
+        synchronized (this) {
+            mGeneration++;
+        }
+        mResults.evictAll();
+    }
+
+    /**
+     * Answer an aggregate URI, from the cache if possible.
+     *
+     * @throws IllegalArgumentException for an unknown aggregate or bad parameter
+     */
+    Cursor query(SQLiteDatabase database, Uri uri, String selection, String[] selectionArgs) {
+        String key = cacheKey(uri, selection, selectionArgs);
+        Result result = mResults.get(key);
+        if (result == null) {
+            long generation;
+            synchronized (this) {
+                generation = mGeneration;
+            }
+            result = compute(database, uri, selection, selectionArgs);
+            synchronized (this) {
+                if (generation == mGeneration) {
+                    mResults.put(key, result);
+                }
+            }
+        }
+        MatrixCursor cursor = new MatrixCursor(result.mColumns, result.mRows.length);
+        for (Object[] row : result.mRows) {
+            cursor.addRow(row);
+        }
+        return cursor;
+    }
+
+    private Result compute(SQLiteDatabase database, Uri uri, String selection,
+                           String[] selectionArgs) {
+        // Admission date bounds, as for the joined URI
+        String from = uri.getQueryParameter(MemberContract.QUERY_PARAMETER_FROM);
+        if (from != null) {
+            selection = and(selection, MemberEntry.COLUMN_MEMBER_DATE + ">=" + parseLong(from, uri));
+        }
+        String to = uri.getQueryParameter(MemberContract.QUERY_PARAMETER_TO);
+        if (to != null) {
+            selection = and(selection, MemberEntry.COLUMN_MEMBER_DATE + "<" + parseLong(to, uri));
+        }
+
+        String name = uri.getLastPathSegment();
+        switch (name) {
+            case AggregateEntry.AGGREGATE_COUNT:
+                if (isEmpty(selection)) {
+                    return run(database, "SELECT " + MemberSummaries.COLUMN_MEMBERS + " AS "
+                            + AggregateEntry.COLUMN_COUNT
+                            + " FROM " + MemberSummaries.TABLE_TOTALS, null);
+                }
+                return run(database, "SELECT COUNT(*) AS " + AggregateEntry.COLUMN_COUNT
+                        + " FROM " + MemberEntry.TABLE_NAME + where(selection), selectionArgs);
+            case AggregateEntry.AGGREGATE_WEIGHT:
+                if (isEmpty(selection)) {
+                    // The minimum and maximum each read one end of the weight index
+                    return run(database, "SELECT " + MemberSummaries.COLUMN_MEMBERS + " AS "
+                            + AggregateEntry.COLUMN_COUNT
+                            + ", (SELECT MIN(" + MemberEntry.COLUMN_MEMBER_WEIGHT + ") FROM "
+                            + MemberEntry.TABLE_NAME + ") AS " + AggregateEntry.COLUMN_MIN
+                            + ", (SELECT MAX(" + MemberEntry.COLUMN_MEMBER_WEIGHT + ") FROM "
+                            + MemberEntry.TABLE_NAME + ") AS " + AggregateEntry.COLUMN_MAX
+                            + ", CASE WHEN " + MemberSummaries.COLUMN_MEMBERS + " > 0 THEN "
+                            + MemberSummaries.COLUMN_WEIGHT_SUM + " * 1.0 / "
+                            + MemberSummaries.COLUMN_MEMBERS + " END AS "
+                            + AggregateEntry.COLUMN_AVERAGE
+                            + " FROM " + MemberSummaries.TABLE_TOTALS, null);
+                }
+                return run(database, "SELECT COUNT(*) AS " + AggregateEntry.COLUMN_COUNT
+                        + ", MIN(" + MemberEntry.COLUMN_MEMBER_WEIGHT + ") AS "
+                        + AggregateEntry.COLUMN_MIN
+                        + ", MAX(" + MemberEntry.COLUMN_MEMBER_WEIGHT + ") AS "
+                        + AggregateEntry.COLUMN_MAX
+                        + ", AVG(" + MemberEntry.COLUMN_MEMBER_WEIGHT + ") AS "
+                        + AggregateEntry.COLUMN_AVERAGE
+                        + " FROM " + MemberEntry.TABLE_NAME + where(selection), selectionArgs);
+            case AggregateEntry.AGGREGATE_JOINS:
+                String format = periodFormat(uri);
+                if (isEmpty(selection) && !"%Y-%m-%d".equals(format)) {
+                    // Months straight from the summary, years by adding their months up
+                    String group = "%Y".equals(format)
+                            ? "substr(" + MemberSummaries.COLUMN_MONTH + ", 1, 4)"
+                            : MemberSummaries.COLUMN_MONTH;
+                    return run(database, "SELECT " + group + " AS " + AggregateEntry.COLUMN_GROUP
+                            + ", SUM(" + MemberSummaries.COLUMN_MEMBERS + ") AS "
+                            + AggregateEntry.COLUMN_COUNT
+                            + " FROM " + MemberSummaries.TABLE_JOINS_BY_MONTH
+                            + " GROUP BY 1 ORDER BY 1", null);
+                }
+                return run(database, "SELECT strftime('" + format + "', " + DATE_EXPRESSION
+                        + ") AS " + AggregateEntry.COLUMN_GROUP
+                        + ", COUNT(*) AS " + AggregateEntry.COLUMN_COUNT
+                        + " FROM " + MemberEntry.TABLE_NAME + where(selection)
+                        + " GROUP BY 1 ORDER BY 1", selectionArgs);
+            case AggregateEntry.AGGREGATE_WEIGHT_BUCKETS:
+                String size = uri.getQueryParameter(AggregateEntry.QUERY_PARAMETER_BUCKET_SIZE);
+                long bucket = size == null ? DEFAULT_BUCKET_SIZE : parseLong(size, uri);
+                if (bucket <= 0) {
+                    throw new IllegalArgumentException("Invalid bucket size in " + uri);
+                }
+                if (isEmpty(selection) && bucket % MemberSummaries.WEIGHT_BUCKET_SIZE == 0) {
+                    // Wider buckets are whole numbers of summary buckets
+                    return run(database, "SELECT (" + MemberSummaries.COLUMN_BUCKET + " / "
+                            + bucket + ") * " + bucket + " AS " + AggregateEntry.COLUMN_GROUP
+                            + ", SUM(" + MemberSummaries.COLUMN_MEMBERS + ") AS "
+                            + AggregateEntry.COLUMN_COUNT
+                            + " FROM " + MemberSummaries.TABLE_WEIGHT_BUCKETS
+                            + " GROUP BY 1 ORDER BY 1", null);
+                }
+                return run(database, "SELECT (" + MemberEntry.COLUMN_MEMBER_WEIGHT + " / "
+                        + bucket + ") * " + bucket + " AS " + AggregateEntry.COLUMN_GROUP
+                        + ", COUNT(*) AS " + AggregateEntry.COLUMN_COUNT
+                        + " FROM " + MemberEntry.TABLE_NAME + where(selection)
+                        + " GROUP BY 1 ORDER BY 1", selectionArgs);
+            default:
+                throw new IllegalArgumentException("Unknown aggregate " + name + " in " + uri);
+        }
+    }
+
+    /**
+     * Run an aggregate query and copy its rows out, so the cursor can be closed.
+     */
+    private static Result run(SQLiteDatabase database, String sql, String[] args) {
+        Cursor cursor = database.rawQuery(sql, args);
+        try {
+            String[] columns = cursor.getColumnNames();
+            Object[][] rows = new Object[cursor.getCount()][];
+            for (int i = 0; cursor.moveToNext(); i++) {
+                Object[] row = new Object[columns.length];
+                for (int column = 0; column < columns.length; column++) {
+                    switch (cursor.getType(column)) {
+                        case Cursor.FIELD_TYPE_INTEGER:
+                            row[column] = cursor.getLong(column);
+                            break;
+                        case Cursor.FIELD_TYPE_FLOAT:
+                            row[column] = cursor.getDouble(column);
+                            break;
+                        case Cursor.FIELD_TYPE_NULL:
+                            row[column] = null;
+                            break;
+                        default:
+                            row[column] = cursor.getString(column);
+                            break;
+                    }
+                }
+                rows[i] = row;
+            }
+            return new Result(columns, rows);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static String periodFormat(Uri uri) {
+        String period = uri.getQueryParameter(AggregateEntry.QUERY_PARAMETER_PERIOD);
+        if (period == null || AggregateEntry.PERIOD_MONTH.equals(period)) {
+            return "%Y-%m";
+        }
+        if (AggregateEntry.PERIOD_YEAR.equals(period)) {
+            return "%Y";
+        }
+        if (AggregateEntry.PERIOD_DAY.equals(period)) {
+            return "%Y-%m-%d";
+        }
+        throw new IllegalArgumentException("Unknown period " + period + " in " + uri);
+    }
+
+    private static String cacheKey(Uri uri, String selection, String[] selectionArgs) {
+        StringBuilder key = new StringBuilder(uri.toString());
+        if (selection != null) {
+            key.append('\u0000').append(selection);
+        }
+        if (selectionArgs != null) {
+            for (String arg : selectionArgs) {
+                key.append('\u0000').append(arg);
+            }
+        }
+        return key.toString();
+    }
+
+    private static boolean isEmpty(String selection) {
+        return selection == null || selection.isEmpty();
+    }
+
+    private static String and(String selection, String condition) {
+        return isEmpty(selection) ? condition : "(" + selection + ") AND " + condition;
+    }
+
+    private static String where(String selection) {
+        return isEmpty(selection) ? "" : " WHERE " + selection;
+    }
+
+    private static long parseLong(String value, Uri uri) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid number " + value + " in " + uri);
+        }
+    }
+}
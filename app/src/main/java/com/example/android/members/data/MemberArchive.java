@@ -0,0 +1,326 @@
+package com.example.android.members.data;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.util.Log;
+
+import com.example.android.members.data.MemberContract.MemberEntry;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Exports the members table to a compact binary file and imports it back, for moving a roster
+ * between devices. Members are streamed in both directions, so neither side holds the whole
+ * roster in memory.
+ *
+ * <p>A file starts with a header of {@link #MAGIC}, the format {@link #VERSION} and a flags
+ * byte. Then come the records, optionally deflated together. Each record is an int byte count
+ * followed by the name, father's name, code, phone, admission date and weight, with strings as
+ * in {@link DataOutputStream#writeUTF(String)}. _IDs are not exported; imported members get new
+ * ones.
+ *
+ * <p>Export is written through a {@link FileChannel}. Import reads the file through memory
+ * mapped windows and hands the members to {@link MemberProvider#bulkInsert} in chunks of
+ * {@link #IMPORT_CHUNK_ROWS}, one transaction per chunk. Both do I/O, so call them off the
+ * main thread.
+ */
+public final class MemberArchive {
+
+    public static final String LOG_TAG = MemberArchive.class.getSimpleName();
+
+    /** First four bytes of every archive: "GYMM" */
+    public static final int MAGIC = 0x47594D4D;
+
+    /** Format version written by this class */
+    public static final int VERSION = 1;
+
+    /** Header flag: the records are deflate compressed */
+    private static final int FLAG_COMPRESSED = 1;
+
+    /** Members read from the provider per page during an export */
+    private static final int EXPORT_PAGE_ROWS = 500;
+
+    /** Members handed to the provider per bulk insert during an import */
+    static final int IMPORT_CHUNK_ROWS = 500;
+
+    /** Size of the output buffer in front of the file channel */
+    private static final int WRITE_BUFFER_BYTES = 64 * 1024;
+
+    /** Largest part of the file mapped at a time during an import */
+    private static final int MAP_WINDOW_BYTES = 16 * 1024 * 1024;
+
+    /** A record bigger than this can only come from a corrupt file */
+    private static final int MAX_RECORD_BYTES = 1024 * 1024;
+
+    private static final String[] EXPORT_PROJECTION = {
+            MemberEntry._ID,
+            MemberEntry.COLUMN_MEMBER_NAME,
+            MemberEntry.COLUMN_MEMBER_FATHER_NAME,
+            MemberEntry.COLUMN_MEMBER_CODE,
+            MemberEntry.COLUMN_MEMBER_PHONE,
+            MemberEntry.COLUMN_MEMBER_DATE,
+            MemberEntry.COLUMN_MEMBER_WEIGHT
+    };
+
+    private MemberArchive() {}
+
+    /**
+     * Write every member to {@code file}, replacing it.
+     *
+     * @param compress whether to deflate the records; smaller, but slower to write and read
+     * @return the number of members written
+     */
+    public static int export(ContentResolver resolver, File file, boolean compress)
+            throws IOException {
+        FileOutputStream fileStream = new FileOutputStream(file);
+        FileChannel channel = fileStream.getChannel();
+        try {
+            OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel),
+                    WRITE_BUFFER_BYTES);
+            DataOutputStream header = new DataOutputStream(out);
+            header.writeInt(MAGIC);
+            header.writeInt(VERSION);
+            header.writeByte(compress ? FLAG_COMPRESSED : 0);
+            if (compress) {
+                // Buffer again in front of the deflater, so records are not compressed piecemeal
+                out = new BufferedOutputStream(new DeflaterOutputStream(out), WRITE_BUFFER_BYTES);
+            }
+            DataOutputStream records = new DataOutputStream(out);
+
+            RecordBuffer record = new RecordBuffer();
+            DataOutputStream fields = new DataOutputStream(record);
+            int count = 0;
+            long afterId = 0;
+            while (true) {
+                // Keyset pages keep every query cheap and the cursor window small
+                Cursor cursor = resolver.query(
+                        MemberEntry.buildPageUri(afterId, EXPORT_PAGE_ROWS),
+                        EXPORT_PROJECTION, null, null, null);
+                if (cursor == null) {
+                    throw new IOException("Members query failed");
+                }
+                int rows;
+                try {
+                    rows = cursor.getCount();
+                    while (cursor.moveToNext()) {
+                        record.reset();
+                        fields.writeUTF(cursor.getString(1));
+                        fields.writeUTF(cursor.getString(2));
+                        fields.writeInt(cursor.getInt(3));
+                        fields.writeUTF(cursor.getString(4));
+                        fields.writeLong(cursor.getLong(5));
+                        fields.writeInt(cursor.getInt(6));
+                        records.writeInt(record.size());
+                        records.write(record.array(), 0, record.size());
+                        afterId = cursor.getLong(0);
+                        count++;
+                    }
+                } finally {
+                    cursor.close();
+                }
+                if (rows < EXPORT_PAGE_ROWS) {
+                    break;
+                }
+            }
+            // Closing the outermost stream finishes the deflater and flushes to the channel
+            records.close();
+            Log.i(LOG_TAG, "Exported " + count + " members to " + file);
+            return count;
+        } finally {
+            fileStream.close();
+        }
+    }
+
+    /**
+     * Insert every member stored in {@code file}. Each chunk of {@link #IMPORT_CHUNK_ROWS}
+     * members is inserted atomically; if a chunk is rejected, because a member code is already
+     * taken, its members are inserted one at a time and only those with a taken code are
+     * skipped.
+     *
+     * @return the number of members inserted
+     * @throws IOException if the file can't be read or is not a member archive
+     */
+    public static int importFrom(ContentResolver resolver, File file) throws IOException {
+        FileInputStream fileStream = new FileInputStream(file);
+        try {
+            InputStream in = new MappedInputStream(fileStream.getChannel());
+            DataInputStream header = new DataInputStream(in);
+            if (header.readInt() != MAGIC) {
+                throw new IOException(file + " is not a member archive");
+            }
+            int version = header.readInt();
+            if (version > VERSION) {
+                throw new IOException(file + " has unsupported version " + version);
+            }
+            if ((header.readByte() & FLAG_COMPRESSED) != 0) {
+                in = new InflaterInputStream(in, new Inflater(), WRITE_BUFFER_BYTES);
+            }
+            DataInputStream records = new DataInputStream(in);
+
+            RecordBuffer recordBytes = new RecordBuffer();
+            ContentValues[] chunk = new ContentValues[IMPORT_CHUNK_ROWS];
+            int chunkSize = 0;
+            int count = 0;
+            while (true) {
+                int length;
+                try {
+                    length = records.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                if (length < 0 || length > MAX_RECORD_BYTES) {
+                    throw new IOException("Corrupt record of " + length + " bytes in " + file);
+                }
+                byte[] bytes = recordBytes.ensureCapacity(length);
+                records.readFully(bytes, 0, length);
+                // Fields a later version appends to a record are skipped with the rest of it
+                DataInputStream fields = new DataInputStream(
+                        new ByteArrayInputStream(bytes, 0, length));
+                ContentValues row = new ContentValues(6);
+                row.put(MemberEntry.COLUMN_MEMBER_NAME, fields.readUTF());
+                row.put(MemberEntry.COLUMN_MEMBER_FATHER_NAME, fields.readUTF());
+                row.put(MemberEntry.COLUMN_MEMBER_CODE, fields.readInt());
+                row.put(MemberEntry.COLUMN_MEMBER_PHONE, fields.readUTF());
+                row.put(MemberEntry.COLUMN_MEMBER_DATE, fields.readLong());
+                row.put(MemberEntry.COLUMN_MEMBER_WEIGHT, fields.readInt());
+
+                chunk[chunkSize++] = row;
+                if (chunkSize == IMPORT_CHUNK_ROWS) {
+                    count += store(resolver, chunk);
+                    chunkSize = 0;
+                }
+            }
+            if (chunkSize > 0) {
+                ContentValues[] last = new ContentValues[chunkSize];
+                System.arraycopy(chunk, 0, last, 0, chunkSize);
+                count += store(resolver, last);
+            }
+            Log.i(LOG_TAG, "Imported " + count + " members from " + file);
+            return count;
+        } finally {
+            fileStream.close();
+        }
+    }
+
+    /**
+     * Insert a chunk of members in one transaction, or one at a time if the provider rejects
+     * the chunk for a code that is already taken.
+     *
+     * @return the number of members inserted
+     */
+    private static int store(ContentResolver resolver, ContentValues[] chunk) {
+        int stored = resolver.bulkInsert(MemberEntry.CONTENT_URI, chunk);
+        if (stored == 0) {
+            for (ContentValues row : chunk) {
+                Uri uri = resolver.insert(MemberEntry.CONTENT_URI, row);
+                if (uri != null && ContentUris.parseId(uri) != -1) {
+                    stored++;
+                } else {
+                    Log.w(LOG_TAG, "Skipped member code "
+                            + row.getAsInteger(MemberEntry.COLUMN_MEMBER_CODE)
+                            + ", which is already taken");
+                }
+            }
+        }
+        return stored;
+    }
+
+    /**
+     * A byte array output stream whose array can be used directly, and grown for reading.
+     */
+    private static final class RecordBuffer extends ByteArrayOutputStream {
+
+        byte[] array() {
+            return buf;
+        }
+
+        /**
+         * Return the backing array, grown to hold at least {@code length} bytes.
+         */
+        byte[] ensureCapacity(int length) {
+            if (buf.length < length) {
+                buf = new byte[Math.max(length, 2 * buf.length)];
+            }
+            return buf;
+        }
+    }
+
+    /**
+     * Reads a file channel through read-only memory mapped windows, mapping the next window
+     * when the current one runs out, so files larger than the address space can still be read.
+     */
+    private static final class MappedInputStream extends InputStream {
+
+        private final FileChannel mChannel;
+        private final long mSize;
+
+        /** File offset of the end of the current window */
+        private long mMappedTo;
+
+        private MappedByteBuffer mWindow;
+
+        MappedInputStream(FileChannel channel) throws IOException {
+            mChannel = channel;
+            mSize = channel.size();
+        }
+
+        /**
+         * Make sure the current window has bytes left; return false at the end of the file.
+         */
+        private boolean fill() throws IOException {
+            if (mWindow != null && mWindow.hasRemaining()) {
+                return true;
+            }
+            if (mMappedTo >= mSize) {
+                return false;
+            }
+            long length = Math.min(MAP_WINDOW_BYTES, mSize - mMappedTo);
+            mWindow = mChannel.map(FileChannel.MapMode.READ_ONLY, mMappedTo, length);
+            mMappedTo += length;
+            return true;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return fill() ? mWindow.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            if (!fill()) {
+                return -1;
+            }
+            int n = Math.min(length, mWindow.remaining());
+            mWindow.get(buffer, offset, n);
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return mWindow == null ? 0 : mWindow.remaining();
+        }
+    }
+}
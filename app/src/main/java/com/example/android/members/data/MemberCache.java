@@ -0,0 +1,220 @@
+package com.example.android.members.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.util.LruCache;
+
+import com.example.android.members.data.MemberContract.MemberEntry;
+
+import java.io.PrintWriter;
+import java.util.HashMap;
+
+/**
+ * Bounded LRU cache of complete member rows, looked up by _ID or by member code. Used by the
+ * {@link MemberProvider} to answer single-member queries without touching the database. The
+ * provider invalidates rows as it writes them, so the cache never serves stale data.
+ */
+final class MemberCache {
+
+    /** Every column of the members table, in table order; the shape of a cached row */
+    static final String[] ALL_COLUMNS = {
+            MemberEntry._ID,
+            MemberEntry.COLUMN_MEMBER_NAME,
+            MemberEntry.COLUMN_MEMBER_FATHER_NAME,
+            MemberEntry.COLUMN_MEMBER_CODE,
+            MemberEntry.COLUMN_MEMBER_PHONE,
+            MemberEntry.COLUMN_MEMBER_DATE,
+            MemberEntry.COLUMN_MEMBER_WEIGHT
+    };
+
+    /** Rough fixed cost of a cached row: the ContentValues, its map, keys and boxed numbers */
+    private static final int ROW_OVERHEAD_BYTES = 400;
+
+    private final LruCache<Long, ContentValues> mById;
+
+    /** Member code to _ID, for the rows in {@link #mById} only; guarded by this */
+    private final HashMap<Integer, Long> mIdByCode = new HashMap<>();
+
+    /** Code lookups that missed before reaching {@link #mById}; guarded by this */
+    private int mCodeMissCount;
+
+    /**
+     * Bumped by every invalidation, so a row read from the database before a write can't be
+     * cached after it; guarded by this
+     */
+    private long mGeneration;
+
+    /**
+     * @param maxBytes approximate memory the cached rows may use
+     */
+    MemberCache(int maxBytes) {
+        mById = new LruCache<Long, ContentValues>(maxBytes) {
+            @Override
+            protected int sizeOf(Long id, ContentValues row) {
+                int chars = length(row, MemberEntry.COLUMN_MEMBER_NAME)
+                        + length(row, MemberEntry.COLUMN_MEMBER_FATHER_NAME)
+                        + length(row, MemberEntry.COLUMN_MEMBER_PHONE);
+                return ROW_OVERHEAD_BYTES + 2 * chars;
+            }
+
+            @Override
+            protected void entryRemoved(boolean evicted, Long id, ContentValues oldRow,
+                                        ContentValues newRow) {
+                // Called with the cache's lock released, so take ours for the code index
+                synchronized (MemberCache.this) {
+                    Integer code = oldRow.getAsInteger(MemberEntry.COLUMN_MEMBER_CODE);
+                    if (code != null && id.equals(mIdByCode.get(code))) {
+                        mIdByCode.remove(code);
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * Return the cached row with the given _ID, or null.
+     */
+    ContentValues get(long id) {
+        return mById.get(id);
+    }
+
+    /**
+     * Return the cached row with the given member code, or null.
+     */
+    synchronized ContentValues getByCode(int code) {
+        Long id = mIdByCode.get(code);
+        if (id == null) {
+            mCodeMissCount++;
+            return null;
+        }
+        return mById.get(id);
+    }
+
+    /**
+     * Return the current generation; pass it to {@link #put(ContentValues, long)} for a row
+     * read from the database after this call.
+     */
+    synchronized long generation() {
+        return mGeneration;
+    }
+
+    /**
+     * Cache a complete row, as read with {@link #ALL_COLUMNS}. The row is dropped if anything
+     * was invalidated since {@code generation} was taken, since it may already be stale.
+     */
+    synchronized void put(ContentValues row, long generation) {
+        Long id = row.getAsLong(MemberEntry._ID);
+        Integer code = row.getAsInteger(MemberEntry.COLUMN_MEMBER_CODE);
+        if (id == null || code == null || generation != mGeneration) {
+            return;
+        }
+        mById.put(id, row);
+        mIdByCode.put(code, id);
+    }
+
+    /**
+     * Drop the rows with the given _IDs, if they are cached.
+     */
+    void invalidate(long[] ids) {
+        synchronized (this) {
+            mGeneration++;
+        }
+        for (long id : ids) {
+            mById.remove(id);
+        }
+    }
+
+    /**
+     * Drop every cached row.
+     */
+    void invalidateAll() {
+        synchronized (this) {
+            mGeneration++;
+        }
+        mById.evictAll();
+    }
+
+    int hitCount() {
+        return mById.hitCount();
+    }
+
+    synchronized int missCount() {
+        return mById.missCount() + mCodeMissCount;
+    }
+
+    int evictionCount() {
+        return mById.evictionCount();
+    }
+
+    /** Approximate bytes currently used by cached rows */
+    int size() {
+        return mById.size();
+    }
+
+    int maxSize() {
+        return mById.maxSize();
+    }
+
+    /**
+     * Print the size and hit rate of the cache, for dumpsys.
+     */
+    void dump(PrintWriter writer) {
+        int hits = hitCount();
+        int misses = missCount();
+        int lookups = hits + misses;
+        writer.println(String.format("row cache: %d of %d bytes, %d hits, %d misses (%.1f%% hit "
+                        + "rate), %d evictions", size(), maxSize(), hits, misses,
+                lookups == 0 ? 0.0 : 100.0 * hits / lookups, evictionCount()));
+    }
+
+    /**
+     * Read the current row of the cursor, which must have been queried with
+     * {@link #ALL_COLUMNS}, into a row suitable for {@link #put(ContentValues, long)}.
+     */
+    static ContentValues readRow(Cursor cursor) {
+        ContentValues row = new ContentValues(ALL_COLUMNS.length);
+        row.put(MemberEntry._ID, cursor.getLong(0));
+        row.put(MemberEntry.COLUMN_MEMBER_NAME, cursor.getString(1));
+        row.put(MemberEntry.COLUMN_MEMBER_FATHER_NAME, cursor.getString(2));
+        row.put(MemberEntry.COLUMN_MEMBER_CODE, cursor.getInt(3));
+        row.put(MemberEntry.COLUMN_MEMBER_PHONE, cursor.getString(4));
+        row.put(MemberEntry.COLUMN_MEMBER_DATE, cursor.getLong(5));
+        row.put(MemberEntry.COLUMN_MEMBER_WEIGHT, cursor.getInt(6));
+        return row;
+    }
+
+    /**
+     * Build a one-row cursor holding the given columns of a cached row. Returns null if the
+     * projection asks for anything that is not a plain column, so the caller can fall back to
+     * the database.
+     */
+    static Cursor toCursor(ContentValues row, String[] projection) {
+        return toCursor(new ContentValues[]{row}, projection);
+    }
+
+    /**
+     * Build a cursor holding the given columns of cached rows, in order, like
+     * {@link #toCursor(ContentValues, String[])}.
+     */
+    static Cursor toCursor(ContentValues[] rows, String[] projection) {
+        String[] columns = projection == null ? ALL_COLUMNS : projection;
+        MatrixCursor cursor = new MatrixCursor(columns, rows.length);
+        for (ContentValues row : rows) {
+            Object[] values = new Object[columns.length];
+            for (int i = 0; i < columns.length; i++) {
+                if (!row.containsKey(columns[i])) {
+                    return null;
+                }
+                values[i] = row.get(columns[i]);
+            }
+            cursor.addRow(values);
+        }
+        return cursor;
+    }
+
+    private static int length(ContentValues row, String column) {
+        String value = row.getAsString(column);
+        return value == null ? 0 : value.length();
+    }
+}
@@ -0,0 +1,244 @@
+package com.example.android.members.data;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+import com.example.android.members.data.MemberContract.CheckInEntry;
+import com.example.android.members.data.MemberContract.MemberEntry;
+
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Append-only write path for {@link CheckInEntry}. A check-in is only added to an in-memory
+ * group, so the caller never waits for the disk; a background thread commits each group in one
+ * transaction at most {@link #COMMIT_INTERVAL_MS} later, or as soon as it holds
+ * {@link #MAX_GROUP} check-ins. _IDs are handed out here, so the caller gets its row URI at
+ * once. With synchronous=NORMAL a WAL commit is not flushed to disk by itself, so the log is
+ * checkpointed, which syncs it, at most every {@link #SYNC_INTERVAL_MS}; a commit too soon
+ * after the last sync schedules one, so no group stays unsynced longer than that. Readers call
+ * {@link #commit()} first to see every check-in appended before them.
+ */
+final class MemberCheckIns {
+
+    private static final String LOG_TAG = MemberCheckIns.class.getSimpleName();
+
+    /** Longest a check-in waits in memory before its group is committed */
+    static final long COMMIT_INTERVAL_MS = 100;
+
+    /** A group this large is committed at once, without waiting for the timer */
+    static final int MAX_GROUP = 256;
+
+    /** Shortest time between two syncs of the write-ahead log */
+    static final long SYNC_INTERVAL_MS = 1000;
+
+    /** Skips the check-ins of members deleted while they waited */
+    private static final String SQL_INSERT = "INSERT INTO " + CheckInEntry.TABLE_NAME + " ("
+            + CheckInEntry._ID + ", "
+            + CheckInEntry.COLUMN_MEMBER_ID + ", "
+            + CheckInEntry.COLUMN_TIME_IN + ") SELECT ?, ?, ? WHERE EXISTS (SELECT 1 FROM "
+            + MemberEntry.TABLE_NAME + " WHERE " + MemberEntry._ID + "=?)";
+
+    private final MemberDbHelper mDbHelper;
+
+    private final ContentResolver mResolver;
+
+    private final ScheduledExecutorService mExecutor =
+            Executors.newSingleThreadScheduledExecutor();
+
+    private final Runnable mCommitTask = new Runnable() {
+        @Override
+        public void run() {
+            commit();
+        }
+    };
+
+    /** Guards the group being filled */
+    private final Object mLock = new Object();
+
+    // The group being filled: _ID, member _ID and time of each check-in; guarded by mLock
+    private long[] mIds = new long[MAX_GROUP];
+    private long[] mMemberIds = new long[MAX_GROUP];
+    private long[] mTimes = new long[MAX_GROUP];
+    private int mSize;
+
+    /** The next _ID to hand out, or -1 until read from the database; guarded by mLock */
+    private long mNextId = -1;
+
+    /** Whether a timed commit is pending; guarded by mLock */
+    private boolean mCommitScheduled;
+
+    /** Held while committing, so groups reach the database in the order they were filled */
+    private final Object mCommitLock = new Object();
+
+    /** When the write-ahead log was last synced; guarded by mCommitLock */
+    private long mLastSyncNanos = System.nanoTime();
+
+    /** Whether a group has committed since the last sync; guarded by mCommitLock */
+    private boolean mUnsynced;
+
+    /** Whether a timed sync is pending; guarded by mCommitLock */
+    private boolean mSyncScheduled;
+
+    private final Runnable mSyncTask = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (mCommitLock) {
+                mSyncScheduled = false;
+                if (mUnsynced) {
+                    sync(mDbHelper.getWritableDatabase());
+                    mUnsynced = false;
+                    mLastSyncNanos = System.nanoTime();
+                }
+            }
+        }
+    };
+
+    MemberCheckIns(MemberDbHelper dbHelper, ContentResolver resolver) {
+        mDbHelper = dbHelper;
+        mResolver = resolver;
+    }
+
+    /**
+     * Add a check-in to the next group.
+     *
+     * @return the _ID the check-in will be stored under
+     */
+    long append(long memberId, long timeIn) {
+        synchronized (mLock) {
+            if (mNextId < 0) {
+                mNextId = readLastId() + 1;
+            }
+            if (mSize == mIds.length) {
+                // Commits are falling behind; let the group grow rather than block the caller
+                int capacity = mIds.length * 2;
+                mIds = Arrays.copyOf(mIds, capacity);
+                mMemberIds = Arrays.copyOf(mMemberIds, capacity);
+                mTimes = Arrays.copyOf(mTimes, capacity);
+            }
+            long id = mNextId++;
+            mIds[mSize] = id;
+            mMemberIds[mSize] = memberId;
+            mTimes[mSize] = timeIn;
+            mSize++;
+
+            if (mSize == MAX_GROUP) {
+                mExecutor.execute(mCommitTask);
+            } else if (!mCommitScheduled) {
+                mCommitScheduled = true;
+                mExecutor.schedule(mCommitTask, COMMIT_INTERVAL_MS, TimeUnit.MILLISECONDS);
+            }
+            return id;
+        }
+    }
+
+    /**
+     * Commit the check-ins appended so far, on the calling thread, and notify the check-ins
+     * URI. If the transaction fails its check-ins are logged as lost rather than retried, so
+     * one bad group can't hold up the ones behind it.
+     */
+    void commit() {
+        synchronized (mCommitLock) {
+            long[] ids;
+            long[] memberIds;
+            long[] times;
+            int size;
+            synchronized (mLock) {
+                mCommitScheduled = false;
+                if (mSize == 0) {
+                    return;
+                }
+                ids = mIds;
+                memberIds = mMemberIds;
+                times = mTimes;
+                size = mSize;
+                mIds = new long[MAX_GROUP];
+                mMemberIds = new long[MAX_GROUP];
+                mTimes = new long[MAX_GROUP];
+                mSize = 0;
+            }
+
+            SQLiteDatabase database = mDbHelper.getWritableDatabase();
+            try {
+                SQLiteStatement insert = database.compileStatement(SQL_INSERT);
+                database.beginTransaction();
+                try {
+                    for (int i = 0; i < size; i++) {
+                        insert.bindLong(1, ids[i]);
+                        insert.bindLong(2, memberIds[i]);
+                        insert.bindLong(3, times[i]);
+                        insert.bindLong(4, memberIds[i]);
+                        insert.executeInsert();
+                    }
+                    database.setTransactionSuccessful();
+                } finally {
+                    database.endTransaction();
+                    insert.close();
+                }
+            } catch (SQLException e) {
+                Log.e(LOG_TAG, "commit: lost " + size + " check-ins", e);
+                return;
+            }
+
+            long sinceSync = System.nanoTime() - mLastSyncNanos;
+            if (sinceSync >= SYNC_INTERVAL_MS * 1000000L) {
+                sync(database);
+                mUnsynced = false;
+                mLastSyncNanos = System.nanoTime();
+            } else {
+                // Too soon to sync again; make sure the end of a burst still gets synced
+                mUnsynced = true;
+                if (!mSyncScheduled) {
+                    mSyncScheduled = true;
+                    mExecutor.schedule(mSyncTask, SYNC_INTERVAL_MS * 1000000L - sinceSync,
+                            TimeUnit.NANOSECONDS);
+                }
+            }
+            mResolver.notifyChange(CheckInEntry.CONTENT_URI, null);
+        }
+    }
+
+    /**
+     * Whether a committed group is still waiting for the write-ahead log to be synced.
+     */
+    boolean hasUnsyncedCommits() {
+        synchronized (mCommitLock) {
+            return mUnsynced;
+        }
+    }
+
+    /**
+     * Return the highest _ID ever given to a check-in, including deleted ones.
+     */
+    private long readLastId() {
+        return DatabaseUtils.longForQuery(mDbHelper.getReadableDatabase(),
+                "SELECT MAX(IFNULL((SELECT seq FROM sqlite_sequence WHERE name = ?), 0), "
+                        + "IFNULL((SELECT MAX(" + CheckInEntry._ID + ") FROM "
+                        + CheckInEntry.TABLE_NAME + "), 0))",
+                new String[]{CheckInEntry.TABLE_NAME});
+    }
+
+    /**
+     * Sync the write-ahead log to disk by checkpointing it. PASSIVE never waits for readers;
+     * without WAL this does nothing, and every commit was synced already.
+     */
+    private static void sync(SQLiteDatabase database) {
+        try {
+            Cursor cursor = database.rawQuery("PRAGMA wal_checkpoint(PASSIVE)", null);
+            try {
+                cursor.moveToFirst();
+            } finally {
+                cursor.close();
+            }
+        } catch (SQLException e) {
+            Log.w(LOG_TAG, "sync: " + e.getMessage());
+        }
+    }
+}
@@ -32,6 +32,174 @@ public final class MemberContract {
      */
     public static final String PATH_MEMBERS = "members";
 
+    /**
+     * Path appended to the members URI for full-text search. The search text follows as the
+     * last path segment, e.g. content://com.example.android.members/members/search/ram
+     */
+    public static final String PATH_SEARCH = "search";
+
+    /**
+     * Path appended to the members URI for typo-tolerant search by name and father name. The
+     * search text follows as the last path segment, e.g.
+     * content://com.example.android.members/members/fuzzy/ashutos
+     */
+    public static final String PATH_FUZZY = "fuzzy";
+
+    /**
+     * Path appended to the members URI for a range query on the admission date, bounded by the
+     * {@link #QUERY_PARAMETER_FROM} and {@link #QUERY_PARAMETER_TO} parameters, e.g.
+     * content://com.example.android.members/members/joined?from=17167&to=17198
+     */
+    public static final String PATH_JOINED = "joined";
+
+    /**
+     * Query parameter for the first admission date (inclusive) of a {@link #PATH_JOINED} query,
+     * in days since 01/01/1970. Leave it out for no lower bound.
+     */
+    public static final String QUERY_PARAMETER_FROM = "from";
+
+    /**
+     * Query parameter for the end (exclusive) of a {@link #PATH_JOINED} query, in days since
+     * 01/01/1970. Leave it out for no upper bound.
+     */
+    public static final String QUERY_PARAMETER_TO = "to";
+
+    /**
+     * Query parameter limiting the number of rows a members query returns,
+     * e.g. content://com.example.android.members/members?limit=50
+     */
+    public static final String QUERY_PARAMETER_LIMIT = "limit";
+
+    /**
+     * Query parameter skipping the given number of rows before the first one returned.
+     * Only meaningful together with {@link #QUERY_PARAMETER_LIMIT}.
+     */
+    public static final String QUERY_PARAMETER_OFFSET = "offset";
+
+    /**
+     * Query parameter for keyset paging: only members with an _ID greater than the given one are
+     * returned, in _ID order unless a sort order is given. Cheaper than a large offset, since
+     * the rows before the key are never visited.
+     */
+    public static final String QUERY_PARAMETER_AFTER_ID = "after_id";
+
+    /**
+     * Path appended to the members URI for the provider's performance statistics,
+     * see {@link StatsEntry}.
+     */
+    public static final String PATH_STATS = "_stats";
+
+    /**
+     * Path appended to the members URI for the log of slow statements,
+     * see {@link SlowQueryEntry}.
+     */
+    public static final String PATH_SLOW_QUERIES = "_slow_queries";
+
+    /**
+     * Provider method, for {@link ContentResolver#call}, setting the slow statement threshold
+     * to the number of milliseconds given as the argument.
+     */
+    public static final String METHOD_SET_SLOW_QUERY_THRESHOLD = "set_slow_query_threshold";
+
+    /**
+     * Provider method, for {@link ContentResolver#call}, checking the statistics summaries
+     * against the members table and rebuilding them if they differ. Reads every member, so
+     * call it rarely and off the main thread. The result holds
+     * {@link #EXTRA_SUMMARIES_CONSISTENT}.
+     */
+    public static final String METHOD_CHECK_SUMMARIES = "check_summaries";
+
+    /**
+     * Boolean result of {@link #METHOD_CHECK_SUMMARIES}: false if the summaries had to be
+     * rebuilt.
+     */
+    public static final String EXTRA_SUMMARIES_CONSISTENT = "summaries_consistent";
+
+    /**
+     * Path appended to the members URI for statistics over the members, followed by the name
+     * of the statistic; see {@link AggregateEntry}.
+     */
+    public static final String PATH_AGGREGATE = "_aggregate";
+
+    /**
+     * Path for member check-ins at the gym, e.g.
+     * content://com.example.android.members/check_ins; see {@link CheckInEntry}.
+     */
+    public static final String PATH_CHECK_INS = "check_ins";
+
+    /** Path appended to the check-ins URI for the members in the gym right now */
+    public static final String PATH_PRESENT = "present";
+
+    /**
+     * Path appended to the check-ins URI for the number of visits per member, bounded by the
+     * {@link #QUERY_PARAMETER_FROM} and {@link #QUERY_PARAMETER_TO} parameters, here in
+     * milliseconds since the epoch.
+     */
+    public static final String PATH_VISITS = "visits";
+
+    /**
+     * Query parameter limiting a {@link #PATH_VISITS}, {@link #PATH_HISTORY} or
+     * {@link #PATH_DUPLICATES} query to the member with this _ID
+     */
+    public static final String QUERY_PARAMETER_MEMBER = "member";
+
+    /**
+     * Path for the time-stamped history of members, e.g. their weight over time; see
+     * {@link HistoryEntry}.
+     */
+    public static final String PATH_HISTORY = "history";
+
+    /** Query parameter limiting a {@link #PATH_HISTORY} query to records of one kind */
+    public static final String QUERY_PARAMETER_KIND = "kind";
+
+    /**
+     * Query parameter that, set to "true", lets a {@link #PATH_HISTORY} query read archived
+     * months too. Slower, since their archive files are decompressed for the query.
+     */
+    public static final String QUERY_PARAMETER_INCLUDE_ARCHIVED = "include_archived";
+
+    /**
+     * Provider method, for {@link ContentResolver#call}, archiving every month of history
+     * before the last {@link HistoryEntry#LIVE_MONTHS} now rather than at the next daily run.
+     * The result holds {@link #EXTRA_ARCHIVED_MONTHS}.
+     */
+    public static final String METHOD_ARCHIVE_HISTORY = "archive_history";
+
+    /** Int result of {@link #METHOD_ARCHIVE_HISTORY}: the number of months archived */
+    public static final String EXTRA_ARCHIVED_MONTHS = "archived_months";
+
+    /**
+     * Path appended to the members URI for the report of likely duplicate members; see
+     * {@link DuplicateEntry}.
+     */
+    public static final String PATH_DUPLICATES = "duplicates";
+
+    /**
+     * Provider method, for {@link ContentResolver#call}, finding the members a new member
+     * would likely duplicate, before it is inserted. The extras hold its
+     * {@link MemberEntry#COLUMN_MEMBER_NAME}, {@link MemberEntry#COLUMN_MEMBER_FATHER_NAME} and
+     * {@link MemberEntry#COLUMN_MEMBER_PHONE} as strings. The result holds
+     * {@link #EXTRA_DUPLICATE_IDS} and {@link #EXTRA_DUPLICATE_SCORES}.
+     */
+    public static final String METHOD_CHECK_DUPLICATES = "check_duplicates";
+
+    /** Long array result of {@link #METHOD_CHECK_DUPLICATES}: _IDs of the matches, best first */
+    public static final String EXTRA_DUPLICATE_IDS = "duplicate_ids";
+
+    /** Float array result of {@link #METHOD_CHECK_DUPLICATES}: the score of each match */
+    public static final String EXTRA_DUPLICATE_SCORES = "duplicate_scores";
+
+    /**
+     * Provider method, for {@link ContentResolver#call}, comparing every member with the
+     * others and replacing the duplicates report. Reads every member, so call it rarely and
+     * off the main thread, e.g. after importing a roster. The result holds
+     * {@link #EXTRA_DUPLICATE_PAIRS}.
+     */
+    public static final String METHOD_FIND_DUPLICATES = "find_duplicates";
+
+    /** Int result of {@link #METHOD_FIND_DUPLICATES}: the number of pairs found */
+    public static final String EXTRA_DUPLICATE_PAIRS = "duplicate_pairs";
+
 
     /**
      * Inner class that defines constant values for the members database table.
@@ -41,6 +209,58 @@ public final class MemberContract {
 
         /** The content URI to access the pet data in the provider */
         public static final Uri CONTENT_URI = Uri.withAppendedPath(BASE_CONTENT_URI,PATH_MEMBERS);
+
+        /** The content URI to search members by name, father name or phone */
+        public static final Uri CONTENT_SEARCH_URI = Uri.withAppendedPath(CONTENT_URI, PATH_SEARCH);
+
+        /**
+         * Build a URI for one page of members: at most {@code limit} rows whose _ID is greater
+         * than {@code afterId}. Pass 0 as {@code afterId} for the first page.
+         */
+        public static Uri buildPageUri(long afterId, int limit) {
+            return CONTENT_URI.buildUpon()
+                    .appendQueryParameter(QUERY_PARAMETER_AFTER_ID, String.valueOf(afterId))
+                    .appendQueryParameter(QUERY_PARAMETER_LIMIT, String.valueOf(limit))
+                    .build();
+        }
+
+        /** The content URI to query members by admission date */
+        public static final Uri CONTENT_JOINED_URI = Uri.withAppendedPath(CONTENT_URI, PATH_JOINED);
+
+        /**
+         * Build a URI for the members who joined on or after {@code fromDay} and before
+         * {@code toDay}, both in days since 01/01/1970, in admission date order. The same query
+         * finds expiring memberships: for a one-year plan, members whose year ends in the next
+         * 30 days joined between today - 365 and today - 335.
+         */
+        public static Uri buildJoinedUri(long fromDay, long toDay) {
+            return CONTENT_JOINED_URI.buildUpon()
+                    .appendQueryParameter(QUERY_PARAMETER_FROM, String.valueOf(fromDay))
+                    .appendQueryParameter(QUERY_PARAMETER_TO, String.valueOf(toDay))
+                    .build();
+        }
+
+        /**
+         * Build a URI that searches members for the given text. Every word is matched as a
+         * prefix against name, father name and phone; results come back best match first.
+         */
+        public static Uri buildSearchUri(String query) {
+            return Uri.withAppendedPath(CONTENT_SEARCH_URI, Uri.encode(query));
+        }
+
+        /** The content URI to search members by name or father name, allowing for typos */
+        public static final Uri CONTENT_FUZZY_URI = Uri.withAppendedPath(CONTENT_URI, PATH_FUZZY);
+
+        /**
+         * Build a URI for the {@code limit} members whose name or father name is most similar
+         * to the given text, most similar first, with their {@link #COLUMN_SIMILARITY}.
+         * Misspelt names are found as long as enough of their three-letter pieces match.
+         */
+        public static Uri buildFuzzyUri(String query, int limit) {
+            return Uri.withAppendedPath(CONTENT_FUZZY_URI, Uri.encode(query)).buildUpon()
+                    .appendQueryParameter(QUERY_PARAMETER_LIMIT, String.valueOf(limit))
+                    .build();
+        }
         /**
          * The MIME type of the {@link #CONTENT_URI} for a list of members.
          */
@@ -88,9 +308,10 @@ public final class MemberContract {
          */
         public static final String COLUMN_MEMBER_PHONE = "phone";
         /**
-         * Addmision date of member
+         * Addmision date of member, as the number of days since 01/01/1970.
+         * Use {@link MemberDates} to convert from and to day/month/year text.
          *
-         * Type TEXT
+         * Type INTEGER
          */
         public static final String COLUMN_MEMBER_DATE = "date";
         /**
@@ -99,6 +320,427 @@ public final class MemberContract {
          * Type INTEGER
          */
         public static final String COLUMN_MEMBER_WEIGHT = "weight";
+        /**
+         * Similarity of a member's closer name to the text of a fuzzy search, from 0 to 1.
+         * Only in the results of {@link #CONTENT_FUZZY_URI}, where it is returned when the
+         * projection is null or names it.
+         *
+         * Type REAL
+         */
+        public static final String COLUMN_SIMILARITY = "similarity";
     }
 
+    /**
+     * Performance statistics of the provider since it started, read only. There is one row per
+     * operation and URI pattern that has been used. Latency percentiles are estimated from
+     * power-of-two buckets of microseconds.
+     */
+    public static final class StatsEntry {
+
+        /** The content URI for the statistics */
+        public static final Uri CONTENT_URI =
+                Uri.withAppendedPath(MemberEntry.CONTENT_URI, PATH_STATS);
+
+        /** The MIME type of the {@link #CONTENT_URI} */
+        public static final String CONTENT_LIST_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_STATS;
+
+        /** query, insert, bulkInsert, update, delete or applyBatch. Type TEXT */
+        public static final String COLUMN_OPERATION = "operation";
+
+        /** The URI pattern called, e.g. members/#. Type TEXT */
+        public static final String COLUMN_ROUTE = "route";
+
+        /** Number of calls. Type INTEGER */
+        public static final String COLUMN_CALLS = "calls";
+
+        /** Rows returned by queries, or written by writes. Type INTEGER */
+        public static final String COLUMN_ROWS = "rows";
+
+        /** Transactions committed. Type INTEGER */
+        public static final String COLUMN_TRANSACTIONS = "transactions";
+
+        /** Mean latency in milliseconds. Type REAL */
+        public static final String COLUMN_MEAN_MS = "mean_ms";
+
+        /** Highest latency in milliseconds. Type REAL */
+        public static final String COLUMN_MAX_MS = "max_ms";
+
+        /** Median latency in milliseconds. Type REAL */
+        public static final String COLUMN_P50_MS = "p50_ms";
+
+        /** 90th percentile latency in milliseconds. Type REAL */
+        public static final String COLUMN_P90_MS = "p90_ms";
+
+        /** 99th percentile latency in milliseconds. Type REAL */
+        public static final String COLUMN_P99_MS = "p99_ms";
+
+        /** Every column, in the order a null projection returns them */
+        public static final String[] ALL_COLUMNS = {
+                COLUMN_OPERATION, COLUMN_ROUTE, COLUMN_CALLS, COLUMN_ROWS, COLUMN_TRANSACTIONS,
+                COLUMN_MEAN_MS, COLUMN_MAX_MS, COLUMN_P50_MS, COLUMN_P90_MS, COLUMN_P99_MS
+        };
+
+        private StatsEntry() {}
+    }
+
+    /**
+     * Statements that took longer than the slow statement threshold, newest first, read only.
+     * Only the most recent ones are kept. The threshold is set with
+     * {@link #METHOD_SET_SLOW_QUERY_THRESHOLD}.
+     */
+    public static final class SlowQueryEntry implements BaseColumns {
+
+        /** The content URI for the slow statement log */
+        public static final Uri CONTENT_URI =
+                Uri.withAppendedPath(MemberEntry.CONTENT_URI, PATH_SLOW_QUERIES);
+
+        /** The MIME type of the {@link #CONTENT_URI} */
+        public static final String CONTENT_LIST_TYPE = ContentResolver.CURSOR_DIR_BASE_TYPE
+                + "/" + CONTENT_AUTHORITY + "/" + PATH_SLOW_QUERIES;
+
+        /** When the statement finished, in milliseconds since the epoch. Type INTEGER */
+        public static final String COLUMN_TIME = "time";
+
+        /** query, update or delete. Type TEXT */
+        public static final String COLUMN_OPERATION = "operation";
+
+        /** The statement, with ? for each argument. Type TEXT */
+        public static final String COLUMN_SQL = "sql";
+
+        /** The type and length of each argument, never the value. Type TEXT */
+        public static final String COLUMN_ARGUMENTS = "arguments";
+
+        /** Rows returned or written. Type INTEGER */
+        public static final String COLUMN_ROWS = "rows";
+
+        /** How long the statement took, in milliseconds. Type REAL */
+        public static final String COLUMN_DURATION_MS = "duration_ms";
+
+        /** SQLite's EXPLAIN QUERY PLAN output, one step per line. Type TEXT */
+        public static final String COLUMN_PLAN = "plan";
+
+        /** Every column, in the order a null projection returns them */
+        public static final String[] ALL_COLUMNS = {
+                _ID, COLUMN_TIME, COLUMN_OPERATION, COLUMN_SQL, COLUMN_ARGUMENTS, COLUMN_ROWS,
+                COLUMN_DURATION_MS, COLUMN_PLAN
+        };
+
+        private SlowQueryEntry() {}
+    }
+
+    /**
+     * Statistics over the members, computed by the database and cached until the next write,
+     * e.g. content://com.example.android.members/members/_aggregate/joins?period=month
+     * Every statistic takes the {@link #QUERY_PARAMETER_FROM} and {@link #QUERY_PARAMETER_TO}
+     * admission date bounds and a selection on the members table. The projection is ignored;
+     * each statistic returns the columns listed with it.
+     */
+    public static final class AggregateEntry {
+
+        /** Number of members: {@link #COLUMN_COUNT} */
+        public static final String AGGREGATE_COUNT = "count";
+
+        /**
+         * Weight statistics: {@link #COLUMN_COUNT}, {@link #COLUMN_MIN}, {@link #COLUMN_MAX}
+         * and {@link #COLUMN_AVERAGE}
+         */
+        public static final String AGGREGATE_WEIGHT = "weight";
+
+        /**
+         * Members who joined per period, oldest first: {@link #COLUMN_GROUP}, the period as
+         * yyyy-mm, yyyy or yyyy-mm-dd, and {@link #COLUMN_COUNT}
+         */
+        public static final String AGGREGATE_JOINS = "joins";
+
+        /**
+         * Members per weight range: {@link #COLUMN_GROUP}, the lowest weight of the range,
+         * and {@link #COLUMN_COUNT}
+         */
+        public static final String AGGREGATE_WEIGHT_BUCKETS = "weight_buckets";
+
+        /** Query parameter choosing the period of {@link #AGGREGATE_JOINS}; month by default */
+        public static final String QUERY_PARAMETER_PERIOD = "period";
+
+        public static final String PERIOD_DAY = "day";
+        public static final String PERIOD_MONTH = "month";
+        public static final String PERIOD_YEAR = "year";
+
+        /** Query parameter for the width of {@link #AGGREGATE_WEIGHT_BUCKETS} in kg; 10 by default */
+        public static final String QUERY_PARAMETER_BUCKET_SIZE = "bucket_size";
+
+        /** The content URI all statistics are under */
+        public static final Uri CONTENT_URI =
+                Uri.withAppendedPath(MemberEntry.CONTENT_URI, PATH_AGGREGATE);
+
+        /** The MIME type of a statistic */
+        public static final String CONTENT_LIST_TYPE = ContentResolver.CURSOR_DIR_BASE_TYPE
+                + "/" + CONTENT_AUTHORITY + "/" + PATH_AGGREGATE;
+
+        /** Number of members. Type INTEGER */
+        public static final String COLUMN_COUNT = "count";
+
+        /** Lowest value. Type INTEGER */
+        public static final String COLUMN_MIN = "min";
+
+        /** Highest value. Type INTEGER */
+        public static final String COLUMN_MAX = "max";
+
+        /** Mean value. Type REAL */
+        public static final String COLUMN_AVERAGE = "average";
+
+        /** What a row of a grouped statistic counts. Type TEXT or INTEGER */
+        public static final String COLUMN_GROUP = "grp";
+
+        /**
+         * Build the URI of a statistic, e.g. {@link #AGGREGATE_WEIGHT}.
+         */
+        public static Uri buildUri(String aggregate) {
+            return Uri.withAppendedPath(CONTENT_URI, aggregate);
+        }
+
+        /**
+         * Build the URI of a statistic over the members who joined on or after {@code fromDay}
+         * and before {@code toDay}, in days since 01/01/1970.
+         */
+        public static Uri buildUri(String aggregate, long fromDay, long toDay) {
+            return buildUri(aggregate).buildUpon()
+                    .appendQueryParameter(QUERY_PARAMETER_FROM, String.valueOf(fromDay))
+                    .appendQueryParameter(QUERY_PARAMETER_TO, String.valueOf(toDay))
+                    .build();
+        }
+
+        private AggregateEntry() {}
+    }
+
+    /**
+     * Check-ins of members at the gym. Inserts are buffered and committed in groups a few
+     * times a second, so the turnstile never waits on the disk; the URI returned by an insert
+     * is valid at once, but a crash can lose the last fraction of a second of check-ins.
+     * Queries always see every check-in inserted before them. Being buffered, an insert is
+     * never part of an applyBatch transaction. A member checks out by updating their check-in
+     * with {@link #COLUMN_TIME_OUT}. Deleting a member deletes their check-ins.
+     */
+    public static final class CheckInEntry implements BaseColumns {
+
+        /** The content URI for check-ins */
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(BASE_CONTENT_URI, PATH_CHECK_INS);
+
+        /**
+         * The content URI for the open check-ins of the last {@link #PRESENT_WINDOW_MILLIS},
+         * newest first: the members in the gym now.
+         */
+        public static final Uri CONTENT_PRESENT_URI = Uri.withAppendedPath(CONTENT_URI, PATH_PRESENT);
+
+        /** The content URI for visit counts, see {@link #buildVisitsUri} */
+        public static final Uri CONTENT_VISITS_URI = Uri.withAppendedPath(CONTENT_URI, PATH_VISITS);
+
+        /**
+         * An open check-in older than this is taken for a missed check-out, not a member who is
+         * still in the gym.
+         */
+        public static final long PRESENT_WINDOW_MILLIS = 12 * 60 * 60 * 1000L;
+
+        /**
+         * Build a URI for the number of visits of every member who checked in on or after
+         * {@code fromMillis} and before {@code toMillis}: {@link #COLUMN_MEMBER_ID} and
+         * {@link #COLUMN_VISITS}, most visits first.
+         */
+        public static Uri buildVisitsUri(long fromMillis, long toMillis) {
+            return CONTENT_VISITS_URI.buildUpon()
+                    .appendQueryParameter(QUERY_PARAMETER_FROM, String.valueOf(fromMillis))
+                    .appendQueryParameter(QUERY_PARAMETER_TO, String.valueOf(toMillis))
+                    .build();
+        }
+
+        /**
+         * Build a URI for the number of visits of one member between {@code fromMillis}
+         * (inclusive) and {@code toMillis} (exclusive).
+         */
+        public static Uri buildVisitsUri(long memberId, long fromMillis, long toMillis) {
+            return buildVisitsUri(fromMillis, toMillis).buildUpon()
+                    .appendQueryParameter(QUERY_PARAMETER_MEMBER, String.valueOf(memberId))
+                    .build();
+        }
+
+        /** The MIME type of the {@link #CONTENT_URI} for a list of check-ins */
+        public static final String CONTENT_LIST_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_CHECK_INS;
+
+        /** The MIME type of the {@link #CONTENT_URI} for a single check-in */
+        public static final String CONTENT_ITEM_TYPE =
+                ContentResolver.CURSOR_ITEM_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_CHECK_INS;
+
+        /** Constants for database schema */
+        public static final String TABLE_NAME = "check_ins";
+
+        /**
+         * _ID of the member who checked in
+         *
+         * Type INTEGER
+         */
+        public static final String COLUMN_MEMBER_ID = "member_id";
+
+        /**
+         * When the member checked in, in milliseconds since the epoch. Defaults to the time of
+         * the insert.
+         *
+         * Type INTEGER
+         */
+        public static final String COLUMN_TIME_IN = "time_in";
+
+        /**
+         * When the member checked out, in milliseconds since the epoch; null while they are in
+         * the gym.
+         *
+         * Type INTEGER
+         */
+        public static final String COLUMN_TIME_OUT = "time_out";
+
+        /**
+         * Number of visits, in the rows of {@link #CONTENT_VISITS_URI}
+         *
+         * Type INTEGER
+         */
+        public static final String COLUMN_VISITS = "visits";
+
+        private CheckInEntry() {}
+    }
+
+    /**
+     * Time-stamped history records of members, such as a weight measurement, stored in one
+     * table per calendar month (UTC). A query only reads the months its
+     * {@link #QUERY_PARAMETER_FROM} and {@link #QUERY_PARAMETER_TO} bounds cover, so its cost
+     * doesn't grow with the years of history. Months before the last {@link #LIVE_MONTHS} are
+     * moved into compressed, read-only archive files once a day. Archived months are only read
+     * when {@link #QUERY_PARAMETER_INCLUDE_ARCHIVED} is set, and then answer the URI's own
+     * filters only: no selection, sort order or limit, results in time order. They can't be
+     * written to. The provider records a weight entry whenever a member's weight is saved.
+     */
+    public static final class HistoryEntry implements BaseColumns {
+
+        /** The content URI for history records */
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(BASE_CONTENT_URI, PATH_HISTORY);
+
+        /** Months of history kept in the database, the current one included */
+        public static final int LIVE_MONTHS = 12;
+
+        /** Kind of a weight measurement, with the weight in kg as {@link #COLUMN_VALUE} */
+        public static final String KIND_WEIGHT = "weight";
+
+        /**
+         * Build a URI for the history of one member recorded on or after {@code fromMillis}
+         * and before {@code toMillis}, in milliseconds since the epoch.
+         */
+        public static Uri buildUri(long memberId, long fromMillis, long toMillis) {
+            return CONTENT_URI.buildUpon()
+                    .appendQueryParameter(QUERY_PARAMETER_MEMBER, String.valueOf(memberId))
+                    .appendQueryParameter(QUERY_PARAMETER_FROM, String.valueOf(fromMillis))
+                    .appendQueryParameter(QUERY_PARAMETER_TO, String.valueOf(toMillis))
+                    .build();
+        }
+
+        /** The MIME type of the {@link #CONTENT_URI} for a list of history records */
+        public static final String CONTENT_LIST_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_HISTORY;
+
+        /** The MIME type of the {@link #CONTENT_URI} for a single history record */
+        public static final String CONTENT_ITEM_TYPE =
+                ContentResolver.CURSOR_ITEM_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_HISTORY;
+
+        /**
+         * _ID of the member the record is about
+         *
+         * Type INTEGER
+         */
+        public static final String COLUMN_MEMBER_ID = "member_id";
+
+        /**
+         * When the record was made, in milliseconds since the epoch. Defaults to the time of
+         * the insert.
+         *
+         * Type INTEGER
+         */
+        public static final String COLUMN_TIME = "time";
+
+        /**
+         * What the record is, e.g. {@link #KIND_WEIGHT}
+         *
+         * Type TEXT
+         */
+        public static final String COLUMN_KIND = "kind";
+
+        /**
+         * The measured value, if the kind has one
+         *
+         * Type INTEGER
+         */
+        public static final String COLUMN_VALUE = "value";
+
+        /** Every column, in the order a null projection returns them */
+        public static final String[] ALL_COLUMNS = {
+                _ID, COLUMN_MEMBER_ID, COLUMN_TIME, COLUMN_KIND, COLUMN_VALUE
+        };
+
+        private HistoryEntry() {}
+    }
+
+    /**
+     * Report of pairs of members that are likely the same person, read only. A pair is found
+     * when two members share a phone number or a name, ignoring formatting, and scores at least
+     * {@link #MIN_SCORE}. Pairs are added as members are inserted or changed one at a time;
+     * members added by a bulk insert are paired when the whole report is rebuilt by
+     * {@link #METHOD_FIND_DUPLICATES}. Deleting either member removes the pair.
+     */
+    public static final class DuplicateEntry implements BaseColumns {
+
+        /** The content URI for the duplicates report */
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(MemberEntry.CONTENT_URI,
+                PATH_DUPLICATES);
+
+        /**
+         * Lowest score reported. Sharing a phone counts 0.3, and the similarity of the names
+         * and of the father names up to 0.4 and 0.3, so a pair needs the same name on top of
+         * the phone, or the same name and father name without it. A phone and a father name
+         * alone, as siblings have, are not enough.
+         */
+        public static final float MIN_SCORE = 0.65f;
+
+        /** Build a URI for the likely duplicates of one member */
+        public static Uri buildMemberUri(long memberId) {
+            return CONTENT_URI.buildUpon()
+                    .appendQueryParameter(QUERY_PARAMETER_MEMBER, String.valueOf(memberId))
+                    .build();
+        }
+
+        /** The MIME type of the {@link #CONTENT_URI} for a list of pairs */
+        public static final String CONTENT_LIST_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_DUPLICATES;
+
+        /** Name of database table for the report */
+        public static final String TABLE_NAME = "member_duplicates";
+
+        /**
+         * The lower _ID of the two members
+         *
+         * Type INTEGER
+         */
+        public static final String COLUMN_MEMBER_ID = "member_id";
+
+        /**
+         * The higher _ID of the two members
+         *
+         * Type INTEGER
+         */
+        public static final String COLUMN_DUPLICATE_ID = "duplicate_id";
+
+        /**
+         * How alike the two members are, from {@link #MIN_SCORE} to 1
+         *
+         * Type REAL
+         */
+        public static final String COLUMN_SCORE = "score";
+
+        private DuplicateEntry() {}
+    }
 }
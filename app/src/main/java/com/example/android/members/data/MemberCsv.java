@@ -0,0 +1,403 @@
+package com.example.android.members.data;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.util.Log;
+
+import com.example.android.members.data.MemberContract.MemberEntry;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+
+/**
+ * Imports members from CSV files, such as a spreadsheet export of an old register, and exports
+ * them back. The first line names the columns {@link #COLUMNS} in any order. Dates are written
+ * as day/month/year, see {@link MemberDates}. Fields follow RFC 4180: a field holding commas,
+ * quotes or line breaks is quoted, and quotes inside it are doubled.
+ *
+ * <p>Import reads one record at a time and checks it with the same rules as the provider's
+ * insert. Valid rows are collected into batches, and each batch is one bulk insert transaction.
+ * The next line is read only after the batch is stored, so memory stays at one batch whatever
+ * the file size. Export writes rows straight from a single forward-only cursor. Both do I/O,
+ * so call them off the main thread.
+ */
+public final class MemberCsv {
+
+    public static final String LOG_TAG = MemberCsv.class.getSimpleName();
+
+    /** Default number of rows stored per transaction during an import */
+    public static final int DEFAULT_BATCH_ROWS = 200;
+
+    /** The columns of a member CSV file, in the order export writes them */
+    public static final String[] COLUMNS = {
+            MemberEntry.COLUMN_MEMBER_NAME,
+            MemberEntry.COLUMN_MEMBER_FATHER_NAME,
+            MemberEntry.COLUMN_MEMBER_CODE,
+            MemberEntry.COLUMN_MEMBER_PHONE,
+            MemberEntry.COLUMN_MEMBER_DATE,
+            MemberEntry.COLUMN_MEMBER_WEIGHT
+    };
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Receives the progress of an import, on the importing thread.
+     */
+    public interface Listener {
+        /**
+         * Called after each batch is stored.
+         *
+         * @param rowsRead   data rows read so far, valid or not
+         * @param bytesRead  bytes of the file read so far
+         * @param totalBytes size of the file, or -1 if not known
+         */
+        void onProgress(int rowsRead, long bytesRead, long totalBytes);
+
+        /**
+         * Called for a row that was skipped.
+         *
+         * @param line   line of the file the row starts on, counting from 1
+         * @param reason why the row was rejected
+         */
+        void onRowError(int line, String reason);
+    }
+
+    private MemberCsv() {}
+
+    /**
+     * Import the members in a CSV stream. The stream is read to the end but not closed.
+     *
+     * @param totalBytes size of the stream for progress reports, or -1 if not known
+     * @param batchRows  rows stored per transaction
+     * @param listener   told about progress and skipped rows; may be null
+     * @return the number of members inserted
+     * @throws IOException if the stream can't be read or has no valid header line
+     */
+    public static int importFrom(ContentResolver resolver, InputStream in, long totalBytes,
+                                 int batchRows, Listener listener) throws IOException {
+        if (batchRows <= 0) {
+            throw new IllegalArgumentException("batchRows must be positive: " + batchRows);
+        }
+        CountingInputStream counter = new CountingInputStream(in);
+        Parser parser = new Parser(new BufferedReader(new InputStreamReader(counter, UTF_8)));
+
+        ArrayList<String> fields = new ArrayList<>(COLUMNS.length);
+        if (!parser.next(fields)) {
+            throw new IOException("CSV file is empty");
+        }
+        int[] fieldOf = mapHeader(fields);
+
+        ArrayList<ContentValues> batch = new ArrayList<>(batchRows);
+        ArrayList<Integer> batchLines = new ArrayList<>(batchRows);
+        int rowsRead = 0;
+        int inserted = 0;
+        while (true) {
+            int line = parser.line();
+            if (!parser.next(fields)) {
+                break;
+            }
+            if (fields.size() == 1 && fields.get(0).isEmpty()) {
+                // Blank line, as spreadsheets like to leave at the end
+                continue;
+            }
+            rowsRead++;
+            try {
+                ContentValues row = toValues(fields, fieldOf);
+                MemberProvider.validateMember(row);
+                batch.add(row);
+                batchLines.add(line);
+            } catch (IllegalArgumentException e) {
+                reportError(listener, line, e.getMessage());
+            }
+            if (batch.size() == batchRows) {
+                inserted += store(resolver, batch, batchLines, listener);
+                if (listener != null) {
+                    listener.onProgress(rowsRead, counter.count(), totalBytes);
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            inserted += store(resolver, batch, batchLines, listener);
+        }
+        if (listener != null) {
+            listener.onProgress(rowsRead, counter.count(), totalBytes);
+        }
+        Log.i(LOG_TAG, "Imported " + inserted + " of " + rowsRead + " CSV rows");
+        return inserted;
+    }
+
+    /**
+     * Write every member as CSV, header line first. The stream is flushed but not closed.
+     *
+     * @return the number of members written
+     */
+    public static int export(ContentResolver resolver, OutputStream out) throws IOException {
+        Cursor cursor = resolver.query(MemberEntry.CONTENT_URI, COLUMNS.clone(), null, null,
+                MemberEntry._ID + " ASC");
+        if (cursor == null) {
+            throw new IOException("Members query failed");
+        }
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, UTF_8));
+        int count = 0;
+        try {
+            writeRecord(writer, COLUMNS);
+            String[] fields = new String[COLUMNS.length];
+            while (cursor.moveToNext()) {
+                fields[0] = cursor.getString(0);
+                fields[1] = cursor.getString(1);
+                fields[2] = String.valueOf(cursor.getInt(2));
+                fields[3] = cursor.getString(3);
+                fields[4] = MemberDates.format(cursor.getLong(4));
+                fields[5] = String.valueOf(cursor.getInt(5));
+                writeRecord(writer, fields);
+                count++;
+            }
+            writer.flush();
+        } finally {
+            cursor.close();
+        }
+        return count;
+    }
+
+    /**
+     * Store a batch in one transaction, and clear it. If the provider rejects the batch, which
+     * happens when a member code is already taken, the rows are inserted one at a time so only
+     * the offending ones are lost.
+     */
+    private static int store(ContentResolver resolver, ArrayList<ContentValues> batch,
+                             ArrayList<Integer> lines, Listener listener) {
+        int stored = resolver.bulkInsert(MemberEntry.CONTENT_URI,
+                batch.toArray(new ContentValues[batch.size()]));
+        if (stored == 0) {
+            for (int i = 0; i < batch.size(); i++) {
+                Uri uri = resolver.insert(MemberEntry.CONTENT_URI, batch.get(i));
+                if (uri != null && ContentUris.parseId(uri) != -1) {
+                    stored++;
+                } else {
+                    reportError(listener, lines.get(i), "Member code "
+                            + batch.get(i).getAsInteger(MemberEntry.COLUMN_MEMBER_CODE)
+                            + " is already taken");
+                }
+            }
+        }
+        batch.clear();
+        lines.clear();
+        return stored;
+    }
+
+    /**
+     * Return, for each of {@link #COLUMNS}, its position in the header line.
+     */
+    private static int[] mapHeader(ArrayList<String> header) throws IOException {
+        int[] fieldOf = new int[COLUMNS.length];
+        for (int i = 0; i < COLUMNS.length; i++) {
+            fieldOf[i] = -1;
+            for (int j = 0; j < header.size(); j++) {
+                if (COLUMNS[i].equalsIgnoreCase(header.get(j).trim())) {
+                    fieldOf[i] = j;
+                    break;
+                }
+            }
+            if (fieldOf[i] == -1) {
+                throw new IOException("CSV header has no " + COLUMNS[i] + " column");
+            }
+        }
+        return fieldOf;
+    }
+
+    /**
+     * Convert the fields of a row into provider values.
+     *
+     * @throws IllegalArgumentException if a field is missing or can't be converted
+     */
+    private static ContentValues toValues(ArrayList<String> fields, int[] fieldOf) {
+        ContentValues row = new ContentValues(COLUMNS.length);
+        row.put(MemberEntry.COLUMN_MEMBER_NAME, field(fields, fieldOf[0]));
+        row.put(MemberEntry.COLUMN_MEMBER_FATHER_NAME, field(fields, fieldOf[1]));
+        row.put(MemberEntry.COLUMN_MEMBER_CODE, parseInt(field(fields, fieldOf[2]), "code"));
+        row.put(MemberEntry.COLUMN_MEMBER_PHONE, field(fields, fieldOf[3]));
+        row.put(MemberEntry.COLUMN_MEMBER_DATE, MemberDates.parse(field(fields, fieldOf[4])));
+        row.put(MemberEntry.COLUMN_MEMBER_WEIGHT, parseInt(field(fields, fieldOf[5]), "weight"));
+        return row;
+    }
+
+    private static String field(ArrayList<String> fields, int index) {
+        if (index >= fields.size()) {
+            throw new IllegalArgumentException("Row has only " + fields.size() + " fields");
+        }
+        return fields.get(index).trim();
+    }
+
+    private static int parseInt(String value, String column) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + column + " " + value);
+        }
+    }
+
+    private static void reportError(Listener listener, int line, String reason) {
+        if (listener != null) {
+            listener.onRowError(line, reason);
+        }
+    }
+
+    private static void writeRecord(Writer writer, String[] fields) throws IOException {
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            String field = fields[i] == null ? "" : fields[i];
+            if (field.indexOf(',') >= 0 || field.indexOf('"') >= 0
+                    || field.indexOf('\n') >= 0 || field.indexOf('\r') >= 0) {
+                writer.write('"');
+                writer.write(field.replace("\"", "\"\""));
+                writer.write('"');
+            } else {
+                writer.write(field);
+            }
+        }
+        writer.write("\r\n");
+    }
+
+    /**
+     * Splits CSV text into records, one at a time. A quoted field may span lines.
+     */
+    private static final class Parser {
+
+        private final BufferedReader mReader;
+        private final StringBuilder mField = new StringBuilder();
+
+        /** Line the next record starts on */
+        private int mLine = 1;
+
+        /** A character read ahead, or -2 for none */
+        private int mPeeked = -2;
+
+        Parser(BufferedReader reader) {
+            mReader = reader;
+        }
+
+        int line() {
+            return mLine;
+        }
+
+        /**
+         * Read the next record into {@code fields}.
+         *
+         * @return false at the end of the input
+         */
+        boolean next(ArrayList<String> fields) throws IOException {
+            fields.clear();
+            mField.setLength(0);
+            int c = read();
+            if (c == -1) {
+                return false;
+            }
+            boolean quoted = false;
+            while (true) {
+                if (quoted) {
+                    if (c == -1) {
+                        throw new IOException("Unterminated quoted field at line " + mLine);
+                    }
+                    if (c == '"') {
+                        c = read();
+                        if (c == '"') {
+                            mField.append('"');
+                        } else {
+                            quoted = false;
+                            continue;
+                        }
+                    } else {
+                        if (c == '\n') {
+                            mLine++;
+                        }
+                        mField.append((char) c);
+                    }
+                } else if (c == '"' && mField.length() == 0) {
+                    quoted = true;
+                } else if (c == ',') {
+                    fields.add(mField.toString());
+                    mField.setLength(0);
+                } else if (c == '\r' || c == '\n' || c == -1) {
+                    if (c == '\r') {
+                        int after = read();
+                        if (after != '\n') {
+                            mPeeked = after;
+                        }
+                    }
+                    if (c != -1) {
+                        mLine++;
+                    }
+                    fields.add(mField.toString());
+                    return true;
+                } else {
+                    mField.append((char) c);
+                }
+                c = read();
+            }
+        }
+
+        private int read() throws IOException {
+            if (mPeeked != -2) {
+                int c = mPeeked;
+                mPeeked = -2;
+                return c;
+            }
+            return mReader.read();
+        }
+    }
+
+    /**
+     * Counts the bytes read through it, for progress reports.
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+
+        private long mCount;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        long count() {
+            return mCount;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                mCount++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int n = super.read(buffer, offset, length);
+            if (n > 0) {
+                mCount += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            mCount += skipped;
+            return skipped;
+        }
+    }
+}
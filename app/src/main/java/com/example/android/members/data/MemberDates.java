@@ -0,0 +1,119 @@
+package com.example.android.members.data;
+
+/**
+ * Conversions between the admission date stored in
+ * {@link MemberContract.MemberEntry#COLUMN_MEMBER_DATE}, a count of days since 1970-01-01, and
+ * the "day/month/year" text shown in the app. Plain calendar arithmetic, so no time zone or
+ * locale is involved.
+ */
+public final class MemberDates {
+
+    private MemberDates() {}
+
+    /**
+     * Parse "day/month/year" text, e.g. "19/12/2016", into days since 1970-01-01.
+     *
+     * @throws IllegalArgumentException if the text is not a valid date
+     */
+    public static long parse(String text) {
+        String[] parts = text.trim().split("/");
+        if (parts.length != 3) {
+            throw new IllegalArgumentException("Date must be day/month/year: " + text);
+        }
+        int day;
+        int month;
+        int year;
+        try {
+            day = Integer.parseInt(parts[0].trim());
+            month = Integer.parseInt(parts[1].trim());
+            year = Integer.parseInt(parts[2].trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Date must be day/month/year: " + text);
+        }
+        if (month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month)) {
+            throw new IllegalArgumentException("No such date: " + text);
+        }
+        return toEpochDay(year, month, day);
+    }
+
+    /**
+     * Format days since 1970-01-01 as "dd/mm/yyyy".
+     */
+    public static String format(long epochDay) {
+        long[] date = toDate(epochDay);
+        return pad(date[2]) + "/" + pad(date[1]) + "/" + date[0];
+    }
+
+    /**
+     * The month of a day as the number yyyymm, e.g. 201612 for 19/12/2016.
+     */
+    public static int toMonth(long epochDay) {
+        long[] date = toDate(epochDay);
+        return (int) (date[0] * 100 + date[1]);
+    }
+
+    /**
+     * Days since 1970-01-01 of the first day of a yyyymm month.
+     */
+    public static long firstDayOfMonth(int month) {
+        return toEpochDay(month / 100, month % 100, 1);
+    }
+
+    /**
+     * The yyyymm month {@code months} after the given one; negative to go back.
+     */
+    public static int addMonths(int month, int months) {
+        // Months since year 0; every real month is past it, so plain division floors
+        int index = (month / 100) * 12 + month % 100 - 1 + months;
+        return (index / 12) * 100 + index % 12 + 1;
+    }
+
+    /**
+     * Year, month and day of days since 1970-01-01.
+     */
+    private static long[] toDate(long epochDay) {
+        // Inverse of toEpochDay, counting from 0000-03-01 so leap days fall at the year's end
+        long days = epochDay + 719468;
+        long era = (days >= 0 ? days : days - 146096) / 146097;
+        long dayOfEra = days - era * 146097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long shiftedMonth = (5 * dayOfYear + 2) / 153;
+        long day = dayOfYear - (153 * shiftedMonth + 2) / 5 + 1;
+        long month = shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9;
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+        return new long[]{year, month, day};
+    }
+
+    /**
+     * Days since 1970-01-01 for the given calendar date.
+     */
+    public static long toEpochDay(int year, int month, int day) {
+        // Count from 0000-03-01 so leap days fall at the end of the counted year
+        long y = month <= 2 ? year - 1 : year;
+        long era = (y >= 0 ? y : y - 399) / 400;
+        long yearOfEra = y - era * 400;
+        long dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    private static int daysInMonth(int year, int month) {
+        switch (month) {
+            case 2:
+                boolean leap = (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+                return leap ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+    private static String pad(long value) {
+        return value < 10 ? "0" + value : String.valueOf(value);
+    }
+}
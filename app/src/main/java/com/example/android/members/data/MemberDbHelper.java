@@ -1,6 +1,7 @@
 package com.example.android.members.data;
 
 import android.content.Context;
+import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 
@@ -19,15 +20,106 @@ public class MemberDbHelper extends SQLiteOpenHelper {
     /**
      * Database version. If you change the database schema, you must increment the database version.
      */
-    private static final int DATABASE_VERSION = 1;
+    private static final int DATABASE_VERSION = 9;
 
     /**
-     * Constructs a new instance of {@link MemberDbHelper}.
+     * Connection settings applied every time the database is opened. The defaults suit the app:
+     * write-ahead logging so readers don't wait behind writers, and synchronous=NORMAL, which
+     * is durable across app crashes in WAL mode and saves an fsync per commit. The pragmas only
+     * reach the primary connection, which carries every write; the pool's reader connections
+     * keep SQLite's defaults.
+     */
+    public static final class Settings {
+
+        /** Open the database in write-ahead logging mode */
+        public boolean writeAheadLogging = true;
+
+        /** Value for PRAGMA synchronous: OFF, NORMAL, FULL or EXTRA */
+        public String synchronous = "NORMAL";
+
+        /** Page cache size in KiB, passed to PRAGMA cache_size as a negative number */
+        public int cacheSizeKb = 2048;
+
+        /** Bytes of the file to memory-map, for PRAGMA mmap_size; 0 turns it off */
+        public long mmapSize = 0;
+
+        /** Value for PRAGMA temp_store: DEFAULT, FILE or MEMORY */
+        public String tempStore = "MEMORY";
+    }
+
+    private final Settings mSettings;
+
+    /** Whether the code index is unique; false while a migrated roster still repeats codes */
+    private volatile boolean mUniqueCodes = true;
+
+    /**
+     * Constructs a new instance of {@link MemberDbHelper} with the default {@link Settings}.
      *
      * @param context of the app
      */
     public MemberDbHelper(Context context) {
+        this(context, new Settings());
+    }
+
+    /**
+     * Constructs a new instance of {@link MemberDbHelper}.
+     *
+     * @param context of the app
+     * @param settings applied to the connection whenever the database is opened
+     */
+    public MemberDbHelper(Context context, Settings settings) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        mSettings = settings;
+    }
+
+    /**
+     * This is called every time the database is opened, after any create or upgrade.
+     */
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        super.onOpen(db);
+        if (db.isReadOnly()) {
+            return;
+        }
+        // With WAL the framework keeps a pool of connections, so CursorLoader reads run
+        // alongside the provider's writes instead of queueing behind them
+        if (mSettings.writeAheadLogging) {
+            db.enableWriteAheadLogging();
+        }
+        // These pragmas are per connection and reach only the primary one, which every write
+        // goes through. The framework opens the WAL pool's reader connections itself and offers
+        // no hook to configure them, so reads there keep SQLite's defaults for cache_size,
+        // mmap_size and temp_store. synchronous only matters for writes anyway.
+        runPragma(db, "synchronous", mSettings.synchronous);
+        runPragma(db, "cache_size", String.valueOf(-mSettings.cacheSizeKb));
+        runPragma(db, "mmap_size", String.valueOf(mSettings.mmapSize));
+        runPragma(db, "temp_store", mSettings.tempStore);
+        // Only a look at the schema; the duplicates themselves are counted by onCodesChanged
+        mUniqueCodes = MemberMigrations.hasUniqueCodes(db);
+    }
+
+    /**
+     * Called after a write that changed or deleted member codes. While a migrated roster still
+     * repeats codes, make the code index unique if this write resolved the last of them. Once
+     * the index is unique this does nothing, so the scan for duplicates never runs on open.
+     */
+    void onCodesChanged(SQLiteDatabase db) {
+        if (!mUniqueCodes) {
+            MemberMigrations.enforceUniqueCodes(db);
+            mUniqueCodes = MemberMigrations.hasUniqueCodes(db);
+        }
+    }
+
+    /**
+     * Set a pragma. Some pragmas answer with a row, which execSQL refuses, so go through a query.
+     */
+    private static void runPragma(SQLiteDatabase db, String name, String value) {
+        Cursor cursor = db.rawQuery("PRAGMA " + name + "=" + value, null);
+        try {
+            cursor.moveToFirst();
+        } finally {
+            cursor.close();
+        }
     }
 
     /**
@@ -47,6 +139,9 @@ public class MemberDbHelper extends SQLiteOpenHelper {
 
         // Execute the SQL statement
         db.execSQL(SQL_CREATE_MEMBERS_TABLE);
+
+        // The statement above is the version 1 schema; bring it up to date
+        MemberMigrations.migrate(db, 1, DATABASE_VERSION);
     }
 
     /**
@@ -54,6 +149,7 @@ public class MemberDbHelper extends SQLiteOpenHelper {
      */
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        // The database is still at version 1, so there's nothing to do be done here.
+        // Apply each schema step between the two versions, in order
+        MemberMigrations.migrate(db, oldVersion, newVersion);
     }
 }
\ No newline at end of file
@@ -0,0 +1,661 @@
+package com.example.android.members.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+import com.example.android.members.data.MemberContract.DuplicateEntry;
+import com.example.android.members.data.MemberContract.MemberEntry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Finds members that are likely the same person, for the {@link DuplicateEntry} report.
+ * Comparing every member with every other is out of the question for a large roster, so
+ * members are first grouped into blocks by two normalized keys: the last ten digits of the
+ * phone, and the words of the name, lowercased and sorted. Only members sharing a block are
+ * scored, as in {@link DuplicateEntry#MIN_SCORE}, with names compared by their trigrams like
+ * {@link MemberTrigrams}.
+ *
+ * <p>Members inserted or changed one at a time are checked at once against the members sharing
+ * their keys, kept in {@link #TABLE_KEYS}; a bulk insert only stores the keys.
+ * {@link #findAll(SQLiteDatabase)} rebuilds the report from scratch: it reads every member,
+ * then blocks and scores on all processors. Within a large block, a member is only compared
+ * with the {@link #WINDOW} members after it, which bounds the work when hundreds of members
+ * share, say, the gym's own phone number.
+ */
+final class MemberDuplicates {
+
+    private static final String LOG_TAG = MemberDuplicates.class.getSimpleName();
+
+    /** Blocking keys of every member, by member _ID */
+    static final String TABLE_KEYS = "member_keys";
+
+    static final String COLUMN_PHONE_KEY = "phone_key";
+
+    static final String COLUMN_NAME_KEY = "name_key";
+
+    /** Digits of a phone number that make its key; the rest is a country or trunk prefix */
+    static final int PHONE_KEY_DIGITS = 10;
+
+    /** Members a member is compared with after it in a block, in a bulk pass */
+    static final int WINDOW = 50;
+
+    /** Most members a new member is compared with */
+    static final int MAX_CANDIDATES = 200;
+
+    // Weights of the score; a name and a father name that match make a pair on their own
+    private static final float PHONE_WEIGHT = 0.3f;
+    private static final float NAME_WEIGHT = 0.4f;
+    private static final float FATHER_NAME_WEIGHT = 0.3f;
+
+    private static final String SQL_INSERT_PAIR = "INSERT OR REPLACE INTO "
+            + DuplicateEntry.TABLE_NAME + " (" + DuplicateEntry.COLUMN_MEMBER_ID + ", "
+            + DuplicateEntry.COLUMN_DUPLICATE_ID + ", " + DuplicateEntry.COLUMN_SCORE
+            + ") VALUES (?, ?, ?)";
+
+    private static final String SQL_DELETE_PAIRS = "DELETE FROM " + DuplicateEntry.TABLE_NAME
+            + " WHERE " + DuplicateEntry.COLUMN_MEMBER_ID + "=? OR "
+            + DuplicateEntry.COLUMN_DUPLICATE_ID + "=?";
+
+    private static final String SQL_INSERT_KEYS = "INSERT OR REPLACE INTO " + TABLE_KEYS + " ("
+            + MemberEntry._ID + ", " + COLUMN_PHONE_KEY + ", " + COLUMN_NAME_KEY
+            + ") VALUES (?, ?, ?)";
+
+    private static final String SQL_SELECT_MISSING = "SELECT " + MemberEntry._ID + ", "
+            + MemberEntry.COLUMN_MEMBER_NAME + ", " + MemberEntry.COLUMN_MEMBER_PHONE
+            + " FROM " + MemberEntry.TABLE_NAME + " WHERE "
+            + MemberEntry._ID + " NOT IN (SELECT " + MemberEntry._ID + " FROM " + TABLE_KEYS + ")";
+
+    private static final long[] NO_IDS = new long[0];
+
+    private static final float[] NO_SCORES = new float[0];
+
+    /** Members found alike, best first */
+    static final class Matches {
+
+        final long[] ids;
+        final float[] scores;
+
+        Matches(long[] ids, float[] scores) {
+            this.ids = ids;
+            this.scores = scores;
+        }
+    }
+
+    private MemberDuplicates() {}
+
+    /**
+     * Create the report and key tables with their indexes and triggers, and fill in the keys
+     * of the members already there. The report itself starts empty.
+     */
+    static void createSchema(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + DuplicateEntry.TABLE_NAME + " ("
+                + DuplicateEntry._ID + " INTEGER PRIMARY KEY, "
+                + DuplicateEntry.COLUMN_MEMBER_ID + " INTEGER NOT NULL, "
+                + DuplicateEntry.COLUMN_DUPLICATE_ID + " INTEGER NOT NULL, "
+                + DuplicateEntry.COLUMN_SCORE + " REAL NOT NULL, "
+                + "UNIQUE (" + DuplicateEntry.COLUMN_MEMBER_ID + ", "
+                + DuplicateEntry.COLUMN_DUPLICATE_ID + "));");
+        db.execSQL("CREATE INDEX index_member_duplicates_duplicate_id ON "
+                + DuplicateEntry.TABLE_NAME + " (" + DuplicateEntry.COLUMN_DUPLICATE_ID + ");");
+        db.execSQL("CREATE TABLE " + TABLE_KEYS + " ("
+                + MemberEntry._ID + " INTEGER PRIMARY KEY, "
+                + COLUMN_PHONE_KEY + " TEXT, "
+                + COLUMN_NAME_KEY + " TEXT);");
+        db.execSQL("CREATE INDEX index_member_keys_phone_key ON " + TABLE_KEYS + " ("
+                + COLUMN_PHONE_KEY + ");");
+        db.execSQL("CREATE INDEX index_member_keys_name_key ON " + TABLE_KEYS + " ("
+                + COLUMN_NAME_KEY + ");");
+        db.execSQL("CREATE TRIGGER member_duplicates_after_member_delete AFTER DELETE ON "
+                + MemberEntry.TABLE_NAME + " BEGIN "
+                + "DELETE FROM " + TABLE_KEYS + " WHERE " + MemberEntry._ID + " = old."
+                + MemberEntry._ID + "; "
+                + "DELETE FROM " + DuplicateEntry.TABLE_NAME + " WHERE "
+                + DuplicateEntry.COLUMN_MEMBER_ID + " = old." + MemberEntry._ID + " OR "
+                + DuplicateEntry.COLUMN_DUPLICATE_ID + " = old." + MemberEntry._ID + "; "
+                + "END;");
+        recordMissing(db);
+    }
+
+    /**
+     * Return the blocking key of a phone number: its last {@link #PHONE_KEY_DIGITS} digits,
+     * so "+91 98765-43210" and "098765 43210" agree, or null if it has no digits.
+     */
+    static String phoneKey(String phone) {
+        if (phone == null) {
+            return null;
+        }
+        StringBuilder digits = new StringBuilder(phone.length());
+        for (int i = 0; i < phone.length(); i++) {
+            char c = phone.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits.append(c);
+            }
+        }
+        if (digits.length() == 0) {
+            return null;
+        }
+        return digits.substring(Math.max(0, digits.length() - PHONE_KEY_DIGITS));
+    }
+
+    /**
+     * Return the blocking key of a name: its words lowercased and sorted, so "Kumar, Ram" and
+     * "ram  kumar" agree, or null if it has no words.
+     */
+    static String nameKey(String name) {
+        if (name == null) {
+            return null;
+        }
+        String[] words = name.toLowerCase(Locale.US).split("[^\\p{L}\\p{Nd}]+");
+        Arrays.sort(words);
+        StringBuilder key = new StringBuilder(name.length());
+        for (String word : words) {
+            if (!word.isEmpty()) {
+                key.append(key.length() == 0 ? "" : " ").append(word);
+            }
+        }
+        return key.length() == 0 ? null : key.toString();
+    }
+
+    /**
+     * Score two members from their phone keys and the trigrams of their names and father
+     * names.
+     */
+    static float score(String phoneKey, long[] name, long[] fatherName,
+                       String otherPhoneKey, long[] otherName, long[] otherFatherName) {
+        float score = phoneKey != null && phoneKey.equals(otherPhoneKey) ? PHONE_WEIGHT : 0;
+        return score + NAME_WEIGHT * MemberTrigrams.similarity(name, otherName)
+                + FATHER_NAME_WEIGHT * MemberTrigrams.similarity(fatherName, otherFatherName);
+    }
+
+    /**
+     * Find the members that share a key with the given member and score at least
+     * {@link DuplicateEntry#MIN_SCORE}. Pass -1 as the _ID of a member not inserted yet.
+     */
+    static Matches check(SQLiteDatabase db, long id, String name, String fatherName,
+                         String phone) {
+        String phoneKey = phoneKey(phone);
+        String nameKey = nameKey(name);
+        ArrayList<String> args = new ArrayList<>();
+        StringBuilder blocks = new StringBuilder();
+        if (phoneKey != null) {
+            blocks.append("k.").append(COLUMN_PHONE_KEY).append("=?");
+            args.add(phoneKey);
+        }
+        if (nameKey != null) {
+            blocks.append(blocks.length() == 0 ? "" : " OR ").append("k.")
+                    .append(COLUMN_NAME_KEY).append("=?");
+            args.add(nameKey);
+        }
+        if (blocks.length() == 0) {
+            return new Matches(NO_IDS, NO_SCORES);
+        }
+        args.add(String.valueOf(id));
+        Cursor cursor = db.rawQuery("SELECT m." + MemberEntry._ID + ", m."
+                        + MemberEntry.COLUMN_MEMBER_NAME + ", m."
+                        + MemberEntry.COLUMN_MEMBER_FATHER_NAME + ", m."
+                        + MemberEntry.COLUMN_MEMBER_PHONE + " FROM " + TABLE_KEYS + " AS k JOIN "
+                        + MemberEntry.TABLE_NAME + " AS m ON m." + MemberEntry._ID + " = k."
+                        + MemberEntry._ID + " WHERE (" + blocks + ") AND k." + MemberEntry._ID
+                        + "<>? LIMIT " + MAX_CANDIDATES,
+                args.toArray(new String[args.size()]));
+
+        long[] nameTrigrams = MemberTrigrams.trigrams(name);
+        long[] fatherNameTrigrams = MemberTrigrams.trigrams(fatherName);
+        long[] ids = new long[cursor.getCount()];
+        float[] scores = new float[ids.length];
+        int count = 0;
+        try {
+            while (cursor.moveToNext()) {
+                float score = score(phoneKey, nameTrigrams, fatherNameTrigrams,
+                        phoneKey(cursor.getString(3)), MemberTrigrams.trigrams(cursor.getString(1)),
+                        MemberTrigrams.trigrams(cursor.getString(2)));
+                if (score >= DuplicateEntry.MIN_SCORE) {
+                    ids[count] = cursor.getLong(0);
+                    scores[count] = score;
+                    count++;
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+
+        // Best first; there are only a handful
+        for (int i = 1; i < count; i++) {
+            for (int j = i; j > 0 && scores[j] > scores[j - 1]; j--) {
+                float score = scores[j];
+                scores[j] = scores[j - 1];
+                scores[j - 1] = score;
+                long match = ids[j];
+                ids[j] = ids[j - 1];
+                ids[j - 1] = match;
+            }
+        }
+        return new Matches(Arrays.copyOf(ids, count), Arrays.copyOf(scores, count));
+    }
+
+    /**
+     * Store the keys of a member that was just inserted or changed, and replace its pairs in
+     * the report with those it forms now.
+     */
+    static void record(SQLiteDatabase db, long id, String name, String fatherName,
+                       String phone) {
+        db.beginTransaction();
+        try {
+            SQLiteStatement keys = db.compileStatement(SQL_INSERT_KEYS);
+            try {
+                bindKeys(keys, id, name, phone);
+                keys.executeInsert();
+            } finally {
+                keys.close();
+            }
+            db.execSQL(SQL_DELETE_PAIRS, new Object[]{id, id});
+            Matches matches = check(db, id, name, fatherName, phone);
+            SQLiteStatement pair = db.compileStatement(SQL_INSERT_PAIR);
+            try {
+                for (int i = 0; i < matches.ids.length; i++) {
+                    bindPair(pair, id, matches.ids[i], matches.scores[i]);
+                    pair.executeInsert();
+                }
+            } finally {
+                pair.close();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * {@link #record} a member that was just changed, reading its current values.
+     */
+    static void recordById(SQLiteDatabase db, long id) {
+        Cursor cursor = db.query(MemberEntry.TABLE_NAME, new String[]{
+                        MemberEntry.COLUMN_MEMBER_NAME, MemberEntry.COLUMN_MEMBER_FATHER_NAME,
+                        MemberEntry.COLUMN_MEMBER_PHONE}, MemberEntry._ID + "=?",
+                new String[]{String.valueOf(id)}, null, null, null);
+        try {
+            if (cursor.moveToFirst()) {
+                record(db, id, cursor.getString(0), cursor.getString(1), cursor.getString(2));
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Store the keys of members just inserted in bulk, with the rows they were inserted from,
+     * in the caller's transaction. No pairs are scored here, which would make a large import
+     * quadratic; the new members' pairs come with the next {@link #findAll(SQLiteDatabase)}.
+     */
+    static void recordKeys(SQLiteDatabase db, long[] ids, ContentValues[] rows) {
+        SQLiteStatement keys = db.compileStatement(SQL_INSERT_KEYS);
+        try {
+            for (int i = 0; i < ids.length; i++) {
+                bindKeys(keys, ids[i], rows[i].getAsString(MemberEntry.COLUMN_MEMBER_NAME),
+                        rows[i].getAsString(MemberEntry.COLUMN_MEMBER_PHONE));
+                keys.executeInsert();
+            }
+        } finally {
+            keys.close();
+        }
+    }
+
+    /**
+     * Drop the keys and pairs of every member and store fresh keys, for a write that changed
+     * the names or phones of all of them. The pairs come back with the next
+     * {@link #findAll(SQLiteDatabase)}.
+     */
+    static void reset(SQLiteDatabase db) {
+        db.beginTransaction();
+        try {
+            db.delete(DuplicateEntry.TABLE_NAME, null, null);
+            db.delete(TABLE_KEYS, null, null);
+            recordMissing(db);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Store the keys of every member that has none yet.
+     */
+    private static void recordMissing(SQLiteDatabase db) {
+        // Read them all first: recording shrinks the query's result, and a cursor refilling
+        // its window would skip rows
+        Cursor cursor = db.rawQuery(SQL_SELECT_MISSING, null);
+        int count = cursor.getCount();
+        long[] ids = new long[count];
+        String[] names = new String[count];
+        String[] phones = new String[count];
+        try {
+            for (int i = 0; cursor.moveToNext(); i++) {
+                ids[i] = cursor.getLong(0);
+                names[i] = cursor.getString(1);
+                phones[i] = cursor.getString(2);
+            }
+        } finally {
+            cursor.close();
+        }
+
+        db.beginTransaction();
+        try {
+            SQLiteStatement keys = db.compileStatement(SQL_INSERT_KEYS);
+            try {
+                for (int i = 0; i < count; i++) {
+                    bindKeys(keys, ids[i], names[i], phones[i]);
+                    keys.executeInsert();
+                }
+            } finally {
+                keys.close();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Rebuild the report: read every member, find the pairs on all processors and replace the
+     * pairs among the members read. Members inserted meanwhile keep the pairs they were given.
+     *
+     * @return the number of pairs found
+     */
+    static int findAll(SQLiteDatabase db) {
+        long start = System.nanoTime();
+        Cursor cursor = db.query(MemberEntry.TABLE_NAME, new String[]{MemberEntry._ID,
+                        MemberEntry.COLUMN_MEMBER_NAME, MemberEntry.COLUMN_MEMBER_FATHER_NAME,
+                        MemberEntry.COLUMN_MEMBER_PHONE}, null, null, null, null,
+                MemberEntry._ID);
+        int count = cursor.getCount();
+        long[] ids = new long[count];
+        String[] names = new String[count];
+        String[] fatherNames = new String[count];
+        String[] phones = new String[count];
+        try {
+            for (int i = 0; cursor.moveToNext(); i++) {
+                ids[i] = cursor.getLong(0);
+                names[i] = cursor.getString(1);
+                fatherNames[i] = cursor.getString(2);
+                phones[i] = cursor.getString(3);
+            }
+        } finally {
+            cursor.close();
+        }
+        long read = System.nanoTime();
+
+        Pairs pairs = findPairs(ids, names, fatherNames, phones,
+                Runtime.getRuntime().availableProcessors());
+        long found = System.nanoTime();
+
+        long lastId = count == 0 ? 0 : ids[count - 1];
+        db.beginTransaction();
+        try {
+            db.delete(DuplicateEntry.TABLE_NAME, DuplicateEntry.COLUMN_DUPLICATE_ID + "<=?",
+                    new String[]{String.valueOf(lastId)});
+            SQLiteStatement pair = db.compileStatement(SQL_INSERT_PAIR);
+            try {
+                for (int i = 0; i < pairs.mSize; i++) {
+                    bindPair(pair, pairs.mIds[i], pairs.mOtherIds[i], pairs.mScores[i]);
+                    pair.executeInsert();
+                }
+            } finally {
+                pair.close();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        Log.i(LOG_TAG, "findAll: " + count + " members, " + pairs.mSize + " pairs; read "
+                + (read - start) / 1000000 + " ms, matched " + (found - read) / 1000000
+                + " ms, wrote " + (System.nanoTime() - found) / 1000000 + " ms");
+        return pairs.mSize;
+    }
+
+    /**
+     * Find every pair of likely duplicates among the given members, on {@code threads}
+     * threads. Runs in three stages: blocking keys are hashed in parallel slices, the entries
+     * are sorted so each block is a run, and the runs are scored in parallel slices. A pair
+     * sharing a phone is only scored in its phone block, so no pair is found twice.
+     */
+    static Pairs findPairs(final long[] ids, final String[] names, final String[] fatherNames,
+                           final String[] phones, int threads) {
+        final int count = ids.length;
+        final String[] phoneKeys = new String[count];
+        final String[] nameKeys = new String[count];
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            // Stage 1: keys, and entries of (key hash, member index) for each kind of block
+            List<Future<long[][]>> keyed = new ArrayList<>();
+            for (final int[] slice : slices(count, threads * 4)) {
+                keyed.add(executor.submit(new Callable<long[][]>() {
+                    @Override
+                    public long[][] call() {
+                        long[] phoneEntries = new long[slice[1] - slice[0]];
+                        long[] nameEntries = new long[slice[1] - slice[0]];
+                        int phoneCount = 0;
+                        int nameCount = 0;
+                        for (int i = slice[0]; i < slice[1]; i++) {
+                            phoneKeys[i] = phoneKey(phones[i]);
+                            nameKeys[i] = nameKey(names[i]);
+                            if (phoneKeys[i] != null) {
+                                phoneEntries[phoneCount++] = entry(phoneKeys[i], i);
+                            }
+                            if (nameKeys[i] != null) {
+                                nameEntries[nameCount++] = entry(nameKeys[i], i);
+                            }
+                        }
+                        return new long[][]{Arrays.copyOf(phoneEntries, phoneCount),
+                                Arrays.copyOf(nameEntries, nameCount)};
+                    }
+                }));
+            }
+            long[][] blocks = new long[2][];
+            for (int kind = 0; kind < 2; kind++) {
+                int size = 0;
+                for (Future<long[][]> slice : keyed) {
+                    size += get(slice)[kind].length;
+                }
+                blocks[kind] = new long[size];
+                size = 0;
+                for (Future<long[][]> slice : keyed) {
+                    long[] entries = get(slice)[kind];
+                    System.arraycopy(entries, 0, blocks[kind], size, entries.length);
+                    size += entries.length;
+                }
+                // Stage 2: a block is now a run of entries with the same key hash
+                Arrays.sort(blocks[kind]);
+            }
+
+            // Stage 3: score the runs, cutting the entries into slices at run boundaries
+            List<Future<Pairs>> scored = new ArrayList<>();
+            for (int kind = 0; kind < 2; kind++) {
+                final long[] entries = blocks[kind];
+                final boolean phoneBlocks = kind == 0;
+                for (final int[] slice : slices(entries.length, threads * 4)) {
+                    scored.add(executor.submit(new Callable<Pairs>() {
+                        @Override
+                        public Pairs call() {
+                            Pairs pairs = new Pairs();
+                            int from = runStart(entries, slice[0]);
+                            int to = runStart(entries, slice[1]);
+                            for (int run = from, end; run < to; run = end) {
+                                end = run + 1;
+                                while (end < entries.length
+                                        && entries[end] >>> 32 == entries[run] >>> 32) {
+                                    end++;
+                                }
+                                if (end - run > 1) {
+                                    scoreRun(entries, run, end, phoneBlocks, ids, names,
+                                            fatherNames, phoneKeys, nameKeys, pairs);
+                                }
+                            }
+                            return pairs;
+                        }
+                    }));
+                }
+            }
+            Pairs all = new Pairs();
+            for (Future<Pairs> slice : scored) {
+                all.addAll(get(slice));
+            }
+            return all;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Score each member of a run against the {@link #WINDOW} members after it, keeping the
+     * pairs that really share the block's key and score at least
+     * {@link DuplicateEntry#MIN_SCORE}.
+     */
+    private static void scoreRun(long[] entries, int from, int to, boolean phoneBlock,
+                                 long[] ids, String[] names, String[] fatherNames,
+                                 String[] phoneKeys, String[] nameKeys, Pairs pairs) {
+        int size = to - from;
+        long[][] nameTrigrams = new long[size][];
+        long[][] fatherNameTrigrams = new long[size][];
+        for (int i = 0; i < size; i++) {
+            int member = (int) entries[from + i];
+            nameTrigrams[i] = MemberTrigrams.trigrams(names[member]);
+            fatherNameTrigrams[i] = MemberTrigrams.trigrams(fatherNames[member]);
+        }
+        for (int i = 0; i < size; i++) {
+            int a = (int) entries[from + i];
+            for (int j = i + 1; j < size && j <= i + WINDOW; j++) {
+                int b = (int) entries[from + j];
+                boolean samePhone = phoneKeys[a] != null && phoneKeys[a].equals(phoneKeys[b]);
+                // Hash collisions share a run too; and pairs sharing a phone belong to the
+                // phone block
+                if (phoneBlock ? !samePhone : samePhone || !nameKeys[a].equals(nameKeys[b])) {
+                    continue;
+                }
+                float score = score(phoneKeys[a], nameTrigrams[i], fatherNameTrigrams[i],
+                        phoneKeys[b], nameTrigrams[j], fatherNameTrigrams[j]);
+                if (score >= DuplicateEntry.MIN_SCORE) {
+                    pairs.add(Math.min(ids[a], ids[b]), Math.max(ids[a], ids[b]), score);
+                }
+            }
+        }
+    }
+
+    /**
+     * Pack a key's hash and a member's index into one sortable entry.
+     */
+    private static long entry(String key, int member) {
+        return ((long) key.hashCode() << 32) | member;
+    }
+
+    /**
+     * Return the start of the run that holds {@code i}, or the first run after it if
+     * {@code i} starts one; the length of the entries for the end.
+     */
+    private static int runStart(long[] entries, int i) {
+        if (i >= entries.length) {
+            return entries.length;
+        }
+        while (i > 0 && entries[i - 1] >>> 32 == entries[i] >>> 32) {
+            i++;
+            if (i == entries.length) {
+                return i;
+            }
+        }
+        return i;
+    }
+
+    /**
+     * Cut {@code 0..count} into at most {@code pieces} contiguous [from, to) slices.
+     */
+    private static List<int[]> slices(int count, int pieces) {
+        List<int[]> slices = new ArrayList<>(pieces);
+        int size = Math.max(1, (count + pieces - 1) / pieces);
+        for (int from = 0; from < count; from += size) {
+            slices.add(new int[]{from, Math.min(count, from + size)});
+        }
+        return slices;
+    }
+
+    private static <T> T get(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while finding duplicates", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Finding duplicates failed", e.getCause());
+        }
+    }
+
+    private static void bindKeys(SQLiteStatement statement, long id, String name,
+                                 String phone) {
+        statement.bindLong(1, id);
+        bindNullable(statement, 2, phoneKey(phone));
+        bindNullable(statement, 3, nameKey(name));
+    }
+
+    private static void bindNullable(SQLiteStatement statement, int index, String value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else {
+            statement.bindString(index, value);
+        }
+    }
+
+    private static void bindPair(SQLiteStatement statement, long id, long otherId,
+                                 float score) {
+        statement.bindLong(1, Math.min(id, otherId));
+        statement.bindLong(2, Math.max(id, otherId));
+        statement.bindDouble(3, score);
+    }
+
+    /**
+     * A growable list of scored pairs, lower _ID first.
+     */
+    static final class Pairs {
+
+        long[] mIds = new long[16];
+        long[] mOtherIds = new long[16];
+        float[] mScores = new float[16];
+        int mSize;
+
+        void add(long id, long otherId, float score) {
+            if (mSize == mIds.length) {
+                grow(mSize + 1);
+            }
+            mIds[mSize] = id;
+            mOtherIds[mSize] = otherId;
+            mScores[mSize] = score;
+            mSize++;
+        }
+
+        void addAll(Pairs other) {
+            grow(mSize + other.mSize);
+            System.arraycopy(other.mIds, 0, mIds, mSize, other.mSize);
+            System.arraycopy(other.mOtherIds, 0, mOtherIds, mSize, other.mSize);
+            System.arraycopy(other.mScores, 0, mScores, mSize, other.mSize);
+            mSize += other.mSize;
+        }
+
+        private void grow(int capacity) {
+            if (capacity > mIds.length) {
+                capacity = Math.max(capacity, mIds.length * 2);
+                mIds = Arrays.copyOf(mIds, capacity);
+                mOtherIds = Arrays.copyOf(mOtherIds, capacity);
+                mScores = Arrays.copyOf(mScores, capacity);
+            }
+        }
+    }
+}
@@ -0,0 +1,717 @@
+package com.example.android.members.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.MatrixCursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.database.sqlite.SQLiteStatement;
+import android.net.Uri;
+import android.util.Log;
+
+import com.example.android.members.data.MemberContract.HistoryEntry;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Monthly partitions of {@link HistoryEntry}. The records of each calendar month (UTC) live in
+ * their own table, history_yyyymm, created with the month's first record and listed in
+ * {@link #TABLE_PARTITIONS}. A query reads only the tables of the months its time bounds cover.
+ * The _ID of a record is its month shifted left 32 bits plus its rowid in that month's table,
+ * so an _ID alone says where the record is.
+ *
+ * <p>Once a day, months before the last {@link HistoryEntry#LIVE_MONTHS} are archived: written
+ * in time order to a deflated, read-only file, then dropped from the database. An archived
+ * month is only read, by decompressing its file, when a query asks for archived months.
+ */
+final class MemberHistory {
+
+    private static final String LOG_TAG = MemberHistory.class.getSimpleName();
+
+    /** One row per month with history: {@link #COLUMN_MONTH}, {@link #COLUMN_ARCHIVE} */
+    static final String TABLE_PARTITIONS = "history_partitions";
+
+    /** The month as yyyymm */
+    static final String COLUMN_MONTH = "month";
+
+    /** File name of the month's archive, or null while its table is in the database */
+    static final String COLUMN_ARCHIVE = "archive";
+
+    /** Number of records archived */
+    static final String COLUMN_ROWS = "rows";
+
+    /** First four bytes of a history archive: "GYMH" */
+    private static final int MAGIC = 0x47594D48;
+
+    /** Archive format version written by this class */
+    private static final int VERSION = 1;
+
+    private static final long MILLIS_PER_DAY = 24 * 60 * 60 * 1000L;
+
+    /** Delay of the first archiving run, so it stays out of the way of app start */
+    private static final long ARCHIVE_DELAY_MINUTES = 1;
+
+    private static final long ARCHIVE_PERIOD_HOURS = 24;
+
+    private static final int BUFFER_BYTES = 64 * 1024;
+
+    /** Member _IDs per DELETE statement, well under SQLite's limit of 999 arguments */
+    private static final int DELETE_CHUNK = 500;
+
+    private final MemberDbHelper mDbHelper;
+
+    /** Where archive files are kept */
+    private final File mArchiveDir;
+
+    /** Runs the daily archiving, once scheduled; guarded by this */
+    private ScheduledExecutorService mArchiver;
+
+    MemberHistory(MemberDbHelper dbHelper, File archiveDir) {
+        mDbHelper = dbHelper;
+        mArchiveDir = archiveDir;
+    }
+
+    /**
+     * Create the table listing the months. The monthly tables are created as needed.
+     */
+    static void createSchema(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_PARTITIONS + " ("
+                + COLUMN_MONTH + " INTEGER PRIMARY KEY, "
+                + COLUMN_ARCHIVE + " TEXT, "
+                + COLUMN_ROWS + " INTEGER NOT NULL DEFAULT 0);");
+    }
+
+    /**
+     * Name of the table holding the records of a yyyymm month.
+     */
+    static String tableName(int month) {
+        return "history_" + month;
+    }
+
+    /**
+     * The yyyymm month, in UTC, of a time in milliseconds since the epoch.
+     */
+    static int monthOf(long millis) {
+        long day = millis >= 0 ? millis / MILLIS_PER_DAY : (millis + 1) / MILLIS_PER_DAY - 1;
+        return MemberDates.toMonth(day);
+    }
+
+    /**
+     * Add a record to the table of its month, creating the table for the month's first record.
+     *
+     * @return the _ID of the record
+     * @throws IllegalArgumentException if the month has been archived
+     */
+    long insert(SQLiteDatabase database, long memberId, long time, String kind, Long value) {
+        int month = monthOf(time);
+        ContentValues row = new ContentValues();
+        row.put(HistoryEntry.COLUMN_MEMBER_ID, memberId);
+        row.put(HistoryEntry.COLUMN_TIME, time);
+        row.put(HistoryEntry.COLUMN_KIND, kind);
+        row.put(HistoryEntry.COLUMN_VALUE, value);
+        // One transaction, so the archiver can't drop the table between the check and the insert
+        database.beginTransaction();
+        try {
+            openMonth(database, month);
+            long rowId = database.insertOrThrow(tableName(month), null, row);
+            database.setTransactionSuccessful();
+            return ((long) month << 32) | rowId;
+        } finally {
+            database.endTransaction();
+        }
+    }
+
+    /**
+     * Add a record of the same kind and time for each of the given members, with the value at
+     * the same index, through one compiled insert.
+     *
+     * @throws IllegalArgumentException if the month has been archived
+     */
+    void insertAll(SQLiteDatabase database, long[] memberIds, long time, String kind,
+                   long[] values) {
+        if (memberIds.length == 0) {
+            return;
+        }
+        int month = monthOf(time);
+        database.beginTransaction();
+        try {
+            openMonth(database, month);
+            SQLiteStatement insert = database.compileStatement("INSERT INTO " + tableName(month)
+                    + " (" + HistoryEntry.COLUMN_MEMBER_ID + ", " + HistoryEntry.COLUMN_TIME
+                    + ", " + HistoryEntry.COLUMN_KIND + ", " + HistoryEntry.COLUMN_VALUE
+                    + ") VALUES (?, ?, ?, ?)");
+            try {
+                insert.bindLong(2, time);
+                insert.bindString(3, kind);
+                for (int i = 0; i < memberIds.length; i++) {
+                    insert.bindLong(1, memberIds[i]);
+                    insert.bindLong(4, values[i]);
+                    insert.executeInsert();
+                }
+            } finally {
+                insert.close();
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+    }
+
+    /**
+     * Make sure the table of a month exists, creating and listing it for the month's first
+     * record. Runs inside the caller's transaction.
+     *
+     * @throws IllegalArgumentException if the month has been archived
+     */
+    private static void openMonth(SQLiteDatabase database, int month) {
+        String table = tableName(month);
+        SQLiteStatement register = database.compileStatement("INSERT OR IGNORE INTO "
+                + TABLE_PARTITIONS + " (" + COLUMN_MONTH + ") VALUES (?)");
+        try {
+            register.bindLong(1, month);
+            if (register.executeInsert() != -1) {
+                // The month's first record
+                database.execSQL("CREATE TABLE IF NOT EXISTS " + table + " ("
+                        + HistoryEntry._ID + " INTEGER PRIMARY KEY, "
+                        + HistoryEntry.COLUMN_MEMBER_ID + " INTEGER NOT NULL, "
+                        + HistoryEntry.COLUMN_TIME + " INTEGER NOT NULL, "
+                        + HistoryEntry.COLUMN_KIND + " TEXT NOT NULL, "
+                        + HistoryEntry.COLUMN_VALUE + " INTEGER);");
+                database.execSQL("CREATE INDEX IF NOT EXISTS " + table + "_member_id ON "
+                        + table + " (" + HistoryEntry.COLUMN_MEMBER_ID + ", "
+                        + HistoryEntry.COLUMN_TIME + ");");
+            } else if (isArchived(database, month)) {
+                throw new IllegalArgumentException("History of " + month + " is archived");
+            }
+        } finally {
+            register.close();
+        }
+    }
+
+    /**
+     * Delete one record by _ID.
+     *
+     * @return the number of records deleted, 0 or 1
+     * @throws IllegalArgumentException if its month has been archived
+     */
+    int delete(SQLiteDatabase database, long id) {
+        int month = (int) (id >>> 32);
+        long rowId = id & 0xffffffffL;
+        database.beginTransaction();
+        try {
+            int rows = 0;
+            if (isArchived(database, month)) {
+                throw new IllegalArgumentException("History of " + month + " is archived");
+            } else if (isLive(database, month)) {
+                rows = database.delete(tableName(month), HistoryEntry._ID + "=?",
+                        new String[]{String.valueOf(rowId)});
+            }
+            database.setTransactionSuccessful();
+            return rows;
+        } finally {
+            database.endTransaction();
+        }
+    }
+
+    /**
+     * Delete the history of the given members still in the database, or of every member for
+     * null ids. Archived months are read-only and keep theirs.
+     */
+    void deleteMembers(SQLiteDatabase database, long[] ids) {
+        for (int month : liveMonths(database, Integer.MIN_VALUE, Integer.MAX_VALUE)) {
+            String table = tableName(month);
+            if (ids == null) {
+                database.delete(table, null, null);
+                continue;
+            }
+            for (int start = 0; start < ids.length; start += DELETE_CHUNK) {
+                int end = Math.min(ids.length, start + DELETE_CHUNK);
+                StringBuilder in = new StringBuilder();
+                String[] args = new String[end - start];
+                for (int i = start; i < end; i++) {
+                    in.append(i == start ? "?" : ",?");
+                    args[i - start] = String.valueOf(ids[i]);
+                }
+                database.delete(table, HistoryEntry.COLUMN_MEMBER_ID + " IN (" + in + ")", args);
+            }
+        }
+    }
+
+    /**
+     * Query the history, reading only the months between the URI's time bounds.
+     *
+     * @param id the _ID of the one record wanted, or -1 for all that match
+     * @throws IllegalArgumentException for a bad parameter or projection, or for a selection,
+     *                                  sort order or limit on a query of archived months
+     */
+    Cursor query(SQLiteDatabase database, Uri uri, long id, String[] projection,
+                 String selection, String[] selectionArgs, String sortOrder, String limit) {
+        String[] columns = projection == null ? HistoryEntry.ALL_COLUMNS : projection;
+        for (String column : columns) {
+            if (!Arrays.asList(HistoryEntry.ALL_COLUMNS).contains(column)) {
+                throw new IllegalArgumentException("Unknown history column " + column);
+            }
+        }
+        Filter filter = new Filter(uri, id);
+        boolean includeArchived = Boolean.parseBoolean(
+                uri.getQueryParameter(MemberContract.QUERY_PARAMETER_INCLUDE_ARCHIVED));
+
+        try {
+            return query(database, filter, includeArchived, columns, selection, selectionArgs,
+                    sortOrder, limit);
+        } catch (SQLiteException e) {
+            // The archiver may have dropped a month between listing and reading it; list again
+            Log.w(LOG_TAG, "query: retrying after " + e.getMessage());
+            return query(database, filter, includeArchived, columns, selection, selectionArgs,
+                    sortOrder, limit);
+        }
+    }
+
+    private Cursor query(SQLiteDatabase database, Filter filter, boolean includeArchived,
+                         String[] columns, String selection, String[] selectionArgs,
+                         String sortOrder, String limit) {
+        ArrayList<Integer> live = new ArrayList<>();
+        ArrayList<String> archives = new ArrayList<>();
+        Cursor months = database.query(TABLE_PARTITIONS, new String[]{COLUMN_MONTH, COLUMN_ARCHIVE},
+                COLUMN_MONTH + ">=? AND " + COLUMN_MONTH + "<=?",
+                new String[]{String.valueOf(filter.mFirstMonth), String.valueOf(filter.mLastMonth)},
+                null, null, COLUMN_MONTH);
+        try {
+            while (months.moveToNext()) {
+                if (months.isNull(1)) {
+                    live.add(months.getInt(0));
+                } else if (includeArchived) {
+                    archives.add(months.getString(1));
+                }
+            }
+        } finally {
+            months.close();
+        }
+        boolean hasSelection = selection != null && !selection.isEmpty();
+        if (!archives.isEmpty() && (hasSelection || sortOrder != null || limit != null)) {
+            throw new IllegalArgumentException("Archived history takes no selection, sort order or limit");
+        }
+
+        Cursor cursor;
+        if (live.isEmpty()) {
+            cursor = new MatrixCursor(columns);
+        } else {
+            // Each month filters its own table, so its index does the work; the outer query
+            // only orders and projects
+            ArrayList<String> args = new ArrayList<>();
+            StringBuilder sql = new StringBuilder("SELECT ");
+            appendColumns(sql, columns);
+            sql.append(" FROM (");
+            for (int i = 0; i < live.size(); i++) {
+                int month = live.get(i);
+                if (i > 0) {
+                    sql.append(" UNION ALL ");
+                }
+                sql.append("SELECT (").append((long) month << 32).append(" | ")
+                        .append(HistoryEntry._ID).append(") AS ").append(HistoryEntry._ID);
+                for (int column = 1; column < HistoryEntry.ALL_COLUMNS.length; column++) {
+                    sql.append(", ").append(HistoryEntry.ALL_COLUMNS[column]);
+                }
+                sql.append(" FROM ").append(tableName(month));
+                String where = filter.appendWhere(args, month);
+                if (hasSelection) {
+                    where = where == null ? "(" + selection + ")" : where + " AND (" + selection + ")";
+                    if (selectionArgs != null) {
+                        args.addAll(Arrays.asList(selectionArgs));
+                    }
+                }
+                if (where != null) {
+                    sql.append(" WHERE ").append(where);
+                }
+            }
+            sql.append(") ORDER BY ").append(sortOrder == null ? HistoryEntry.COLUMN_TIME : sortOrder);
+            if (limit != null) {
+                sql.append(" LIMIT ").append(limit);
+            }
+            cursor = database.rawQuery(sql.toString(), args.toArray(new String[args.size()]));
+        }
+        // Run it now, inside the retry, rather than on the caller's first read
+        cursor.getCount();
+        if (archives.isEmpty()) {
+            return cursor;
+        }
+
+        // Archived months are older than every month in the database, so they come first
+        MatrixCursor result = new MatrixCursor(columns);
+        for (String archive : archives) {
+            readArchive(new File(mArchiveDir, archive), filter, columns, result);
+        }
+        try {
+            while (cursor.moveToNext()) {
+                Object[] row = new Object[columns.length];
+                for (int column = 0; column < columns.length; column++) {
+                    switch (cursor.getType(column)) {
+                        case Cursor.FIELD_TYPE_INTEGER:
+                            row[column] = cursor.getLong(column);
+                            break;
+                        case Cursor.FIELD_TYPE_NULL:
+                            row[column] = null;
+                            break;
+                        default:
+                            row[column] = cursor.getString(column);
+                            break;
+                    }
+                }
+                result.addRow(row);
+            }
+        } finally {
+            cursor.close();
+        }
+        return result;
+    }
+
+    /**
+     * Run {@link #archive(int)} with {@link HistoryEntry#LIVE_MONTHS} once a day in the
+     * background, starting shortly after the call. Later calls do nothing.
+     */
+    synchronized void scheduleArchiving() {
+        if (mArchiver != null) {
+            return;
+        }
+        mArchiver = Executors.newSingleThreadScheduledExecutor();
+        mArchiver.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                // An exception would cancel every later run
+                try {
+                    archive(HistoryEntry.LIVE_MONTHS);
+                } catch (RuntimeException e) {
+                    Log.e(LOG_TAG, "Archiving failed", e);
+                }
+            }
+        }, ARCHIVE_DELAY_MINUTES, TimeUnit.HOURS.toMinutes(ARCHIVE_PERIOD_HOURS),
+                TimeUnit.MINUTES);
+    }
+
+    /**
+     * Archive every month in the database before the last {@code liveMonths}, the current
+     * month included, oldest first.
+     *
+     * @return the number of months archived
+     */
+    int archive(int liveMonths) {
+        int firstLive = MemberDates.addMonths(monthOf(System.currentTimeMillis()), 1 - liveMonths);
+        int archived = 0;
+        for (int month : liveMonths(mDbHelper.getReadableDatabase(), Integer.MIN_VALUE,
+                firstLive - 1)) {
+            if (!archiveMonth(month)) {
+                // Leave the later months for the next run, so archives stay oldest first
+                break;
+            }
+            archived++;
+        }
+        return archived;
+    }
+
+    /**
+     * Move one month into its archive file. The month's table is only dropped once the file
+     * is complete and synced to disk.
+     */
+    private boolean archiveMonth(int month) {
+        String table = tableName(month);
+        String name = table + ".arc";
+        File file = new File(mArchiveDir, name);
+        File temporary = new File(mArchiveDir, name + ".tmp");
+        if (!mArchiveDir.isDirectory() && !mArchiveDir.mkdirs()) {
+            Log.e(LOG_TAG, "Can't create " + mArchiveDir);
+            return false;
+        }
+
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+        // Writes to the month wait until it is either archived or left as it was
+        database.beginTransaction();
+        boolean done = false;
+        try {
+            if (!isLive(database, month)) {
+                // Archived by another call in the meantime
+                done = true;
+                return true;
+            }
+            int rows = writeArchive(database, month, temporary);
+            if (file.exists() && !file.delete()) {
+                throw new IOException("Can't replace " + file);
+            }
+            if (!temporary.renameTo(file)) {
+                throw new IOException("Can't rename " + temporary);
+            }
+            file.setReadOnly();
+
+            ContentValues values = new ContentValues();
+            values.put(COLUMN_ARCHIVE, name);
+            values.put(COLUMN_ROWS, rows);
+            database.update(TABLE_PARTITIONS, values, COLUMN_MONTH + "=?",
+                    new String[]{String.valueOf(month)});
+            // Drops the month's index as well
+            database.execSQL("DROP TABLE IF EXISTS " + table + ";");
+            database.setTransactionSuccessful();
+            done = true;
+            Log.i(LOG_TAG, "Archived " + rows + " records of " + month);
+            return true;
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Archiving " + month + " failed", e);
+            return false;
+        } finally {
+            database.endTransaction();
+            if (!done) {
+                temporary.delete();
+            }
+        }
+    }
+
+    /**
+     * Write the records of a month to a file in time order: the header uncompressed, then the
+     * records deflated, each preceded by true and the last followed by false.
+     *
+     * @return the number of records written
+     */
+    private static int writeArchive(SQLiteDatabase database, int month, File file)
+            throws IOException {
+        FileOutputStream fileStream = new FileOutputStream(file);
+        try {
+            BufferedOutputStream buffered = new BufferedOutputStream(fileStream, BUFFER_BYTES);
+            DataOutputStream header = new DataOutputStream(buffered);
+            header.writeInt(MAGIC);
+            header.writeInt(VERSION);
+            header.writeInt(month);
+            DeflaterOutputStream deflater = new DeflaterOutputStream(buffered);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(deflater,
+                    BUFFER_BYTES));
+
+            int rows = 0;
+            Cursor cursor = database.query(tableName(month), new String[]{
+                    HistoryEntry._ID,
+                    HistoryEntry.COLUMN_MEMBER_ID,
+                    HistoryEntry.COLUMN_TIME,
+                    HistoryEntry.COLUMN_KIND,
+                    HistoryEntry.COLUMN_VALUE}, null, null, null, null,
+                    HistoryEntry.COLUMN_TIME + ", " + HistoryEntry._ID);
+            try {
+                while (cursor.moveToNext()) {
+                    out.writeBoolean(true);
+                    out.writeLong(cursor.getLong(0));
+                    out.writeLong(cursor.getLong(1));
+                    out.writeLong(cursor.getLong(2));
+                    out.writeUTF(cursor.getString(3));
+                    out.writeBoolean(!cursor.isNull(4));
+                    out.writeLong(cursor.isNull(4) ? 0 : cursor.getLong(4));
+                    rows++;
+                }
+            } finally {
+                cursor.close();
+            }
+            out.writeBoolean(false);
+            out.flush();
+            deflater.finish();
+            buffered.flush();
+            // On disk before the table goes
+            fileStream.getFD().sync();
+            return rows;
+        } finally {
+            fileStream.close();
+        }
+    }
+
+    /**
+     * Add the records of an archive file that pass the filter to the cursor.
+     */
+    private static void readArchive(File file, Filter filter, String[] columns,
+                                    MatrixCursor cursor) {
+        try {
+            DataInputStream header = new DataInputStream(new BufferedInputStream(
+                    new FileInputStream(file), BUFFER_BYTES));
+            try {
+                if (header.readInt() != MAGIC || header.readInt() != VERSION) {
+                    throw new IOException("Not a history archive");
+                }
+                long month = header.readInt();
+                DataInputStream in = new DataInputStream(new BufferedInputStream(
+                        new InflaterInputStream(header), BUFFER_BYTES));
+                Object[] row = new Object[columns.length];
+                while (in.readBoolean()) {
+                    long rowId = in.readLong();
+                    long memberId = in.readLong();
+                    long time = in.readLong();
+                    String kind = in.readUTF();
+                    boolean hasValue = in.readBoolean();
+                    long value = in.readLong();
+                    if (!filter.matches(rowId, memberId, time, kind)) {
+                        continue;
+                    }
+                    for (int i = 0; i < columns.length; i++) {
+                        switch (columns[i]) {
+                            case HistoryEntry._ID:
+                                row[i] = (month << 32) | rowId;
+                                break;
+                            case HistoryEntry.COLUMN_MEMBER_ID:
+                                row[i] = memberId;
+                                break;
+                            case HistoryEntry.COLUMN_TIME:
+                                row[i] = time;
+                                break;
+                            case HistoryEntry.COLUMN_KIND:
+                                row[i] = kind;
+                                break;
+                            default:
+                                row[i] = hasValue ? value : null;
+                                break;
+                        }
+                    }
+                    cursor.addRow(row);
+                }
+            } finally {
+                header.close();
+            }
+        } catch (IOException e) {
+            // One unreadable month shouldn't hide the others
+            Log.e(LOG_TAG, "Can't read " + file, e);
+        }
+    }
+
+    /**
+     * The months between the two, inclusive, whose records are in the database, oldest first.
+     */
+    private static ArrayList<Integer> liveMonths(SQLiteDatabase database, int first, int last) {
+        ArrayList<Integer> months = new ArrayList<>();
+        Cursor cursor = database.query(TABLE_PARTITIONS, new String[]{COLUMN_MONTH},
+                COLUMN_ARCHIVE + " IS NULL AND " + COLUMN_MONTH + ">=? AND " + COLUMN_MONTH + "<=?",
+                new String[]{String.valueOf(first), String.valueOf(last)}, null, null, COLUMN_MONTH);
+        try {
+            while (cursor.moveToNext()) {
+                months.add(cursor.getInt(0));
+            }
+        } finally {
+            cursor.close();
+        }
+        return months;
+    }
+
+    private static boolean isLive(SQLiteDatabase database, int month) {
+        return DatabaseUtils.longForQuery(database, "SELECT COUNT(*) FROM " + TABLE_PARTITIONS
+                + " WHERE " + COLUMN_MONTH + "=? AND " + COLUMN_ARCHIVE + " IS NULL",
+                new String[]{String.valueOf(month)}) > 0;
+    }
+
+    private static boolean isArchived(SQLiteDatabase database, int month) {
+        return DatabaseUtils.longForQuery(database, "SELECT COUNT(*) FROM " + TABLE_PARTITIONS
+                + " WHERE " + COLUMN_MONTH + "=? AND " + COLUMN_ARCHIVE + " IS NOT NULL",
+                new String[]{String.valueOf(month)}) > 0;
+    }
+
+    /**
+     * The filters a history URI gives: member, kind and time bounds, and the months they cover.
+     */
+    private static final class Filter {
+
+        final Long mMemberId;
+        final String mKind;
+        final Long mFrom;
+        final Long mTo;
+        /** Rowid of the one record wanted, or -1 */
+        final long mRowId;
+        final int mFirstMonth;
+        final int mLastMonth;
+
+        Filter(Uri uri, long id) {
+            mMemberId = parse(uri, MemberContract.QUERY_PARAMETER_MEMBER);
+            mKind = uri.getQueryParameter(MemberContract.QUERY_PARAMETER_KIND);
+            Long from = parse(uri, MemberContract.QUERY_PARAMETER_FROM);
+            Long to = parse(uri, MemberContract.QUERY_PARAMETER_TO);
+            if (id >= 0) {
+                // The _ID gives the month
+                int month = (int) (id >>> 32);
+                mRowId = id & 0xffffffffL;
+                mFirstMonth = month;
+                mLastMonth = month;
+            } else {
+                mRowId = -1;
+                mFirstMonth = from == null ? Integer.MIN_VALUE : monthOf(from);
+                mLastMonth = to == null ? Integer.MAX_VALUE : monthOf(to - 1);
+            }
+            mFrom = from;
+            mTo = to;
+        }
+
+        /**
+         * Append the arguments of the WHERE clause for a month's table to {@code args}, and
+         * return the clause, or null if nothing is filtered. Bounds the month lies within
+         * entirely are left out.
+         */
+        String appendWhere(ArrayList<String> args, int month) {
+            StringBuilder where = new StringBuilder();
+            if (mRowId >= 0) {
+                and(where, HistoryEntry._ID + "=?", args, String.valueOf(mRowId));
+            }
+            if (mMemberId != null) {
+                and(where, HistoryEntry.COLUMN_MEMBER_ID + "=?", args, String.valueOf(mMemberId));
+            }
+            if (mKind != null) {
+                and(where, HistoryEntry.COLUMN_KIND + "=?", args, mKind);
+            }
+            if (mFrom != null && month == mFirstMonth) {
+                and(where, HistoryEntry.COLUMN_TIME + ">=?", args, String.valueOf(mFrom));
+            }
+            if (mTo != null && month == mLastMonth) {
+                and(where, HistoryEntry.COLUMN_TIME + "<?", args, String.valueOf(mTo));
+            }
+            return where.length() == 0 ? null : where.toString();
+        }
+
+        boolean matches(long rowId, long memberId, long time, String kind) {
+            return (mRowId < 0 || rowId == mRowId)
+                    && (mMemberId == null || memberId == mMemberId)
+                    && (mKind == null || mKind.equals(kind))
+                    && (mFrom == null || time >= mFrom)
+                    && (mTo == null || time < mTo);
+        }
+
+        private static void and(StringBuilder where, String condition, ArrayList<String> args,
+                                String arg) {
+            if (where.length() > 0) {
+                where.append(" AND ");
+            }
+            where.append(condition);
+            args.add(arg);
+        }
+
+        private static Long parse(Uri uri, String parameter) {
+            String value = uri.getQueryParameter(parameter);
+            if (value == null) {
+                return null;
+            }
+            try {
+                return Long.parseLong(value);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid number " + value + " in " + uri);
+            }
+        }
+    }
+
+    private static void appendColumns(StringBuilder sql, String[] columns) {
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) {
+                sql.append(", ");
+            }
+            sql.append(columns[i]);
+        }
+    }
+}
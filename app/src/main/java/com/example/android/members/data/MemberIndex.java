@@ -0,0 +1,613 @@
+package com.example.android.members.data;
+
+import android.database.Cursor;
+import android.database.SQLException;
+import android.util.Log;
+
+import com.example.android.members.data.MemberContract.MemberEntry;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory index from member code and phone to _ID, so the {@link MemberProvider} can find a
+ * member without asking SQLite. Codes and phones are spread over {@link #STRIPES} stripes, each
+ * an open-addressing table of primitive arrays behind its own read-write lock: a lookup only
+ * read-locks the one stripe its key hashes to, so lookups never wait for each other.
+ *
+ * <p>Writers are serialized among themselves. A write locks every stripe it changes before
+ * changing any, so a lookup never sees half of a changed code or phone. The index is loaded in
+ * the background; until then, and again after {@link #invalidate()}, lookups answer
+ * {@link #UNKNOWN} and the caller asks the database instead.
+ */
+final class MemberIndex {
+
+    private static final String LOG_TAG = MemberIndex.class.getSimpleName();
+
+    /** Lookup result: no member has the key, and no write that could add it is under way */
+    static final long ABSENT = -1;
+
+    /** Lookup result: the index is not loaded, so ask the database */
+    static final long UNKNOWN = -2;
+
+    /** Number of stripes; a power of two, picked by the top bits of a key's hash */
+    private static final int STRIPES = 16;
+
+    private static final int STRIPE_SHIFT = 32 - Integer.numberOfTrailingZeros(STRIPES);
+
+    /** Slots a new table starts with; a power of two */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /** A load that keeps being overtaken by writes gives up after this many tries */
+    private static final int MAX_LOAD_ATTEMPTS = 3;
+
+    private static final long[] NO_IDS = new long[0];
+
+    private final MemberDbHelper mDbHelper;
+
+    private final Stripe[] mStripes = new Stripe[STRIPES];
+
+    /** Serializes writers, and guards {@link #mMembers} and {@link #mLoaded} */
+    private final Object mWriteLock = new Object();
+
+    /** Code and phone of every member by _ID, to find the keys a write replaces */
+    private MemberTable mMembers = new MemberTable(INITIAL_CAPACITY);
+
+    /** Whether the stripes hold every member; also set in each stripe for its readers */
+    private boolean mLoaded;
+
+    /** Counts every write, so a load can tell whether one happened while it read the table */
+    private final AtomicLong mWrites = new AtomicLong();
+
+    private final AtomicBoolean mLoadPending = new AtomicBoolean();
+
+    /** Writes between {@link #beginWrite()} and {@link #endWrite()} */
+    private final AtomicInteger mWritesInProgress = new AtomicInteger();
+
+    private final ExecutorService mLoader = Executors.newSingleThreadExecutor();
+
+    MemberIndex(MemberDbHelper dbHelper) {
+        mDbHelper = dbHelper;
+        for (int i = 0; i < STRIPES; i++) {
+            mStripes[i] = new Stripe(new CodeTable(INITIAL_CAPACITY),
+                    new PhoneTable(INITIAL_CAPACITY));
+        }
+    }
+
+    /**
+     * Return the _ID of the member with the given code, {@link #ABSENT} or {@link #UNKNOWN}.
+     * A code that is missing while a write is under way is {@link #UNKNOWN}: the write may have
+     * committed it without having recorded it here yet.
+     */
+    long findByCode(int code) {
+        int hash = hash(code);
+        Stripe stripe = mStripes[hash >>> STRIPE_SHIFT];
+        long id;
+        stripe.mLock.readLock().lock();
+        try {
+            id = stripe.mLoaded ? stripe.mCodes.get(code, hash) : UNKNOWN;
+        } finally {
+            stripe.mLock.readLock().unlock();
+        }
+        return id == ABSENT && mWritesInProgress.get() > 0 ? UNKNOWN : id;
+    }
+
+    /**
+     * Call before a write that may add or change codes reaches the database, and
+     * {@link #endWrite()} once the index has been told about it, so that in between a missing
+     * code isn't taken as absent.
+     */
+    void beginWrite() {
+        mWritesInProgress.incrementAndGet();
+    }
+
+    /**
+     * End a write started with {@link #beginWrite()}.
+     */
+    void endWrite() {
+        mWritesInProgress.decrementAndGet();
+    }
+
+    /**
+     * Return the _IDs of the members with exactly the given phone, or null if the index is
+     * not loaded.
+     */
+    long[] findByPhone(String phone) {
+        int hash = hash(phone.hashCode());
+        Stripe stripe = mStripes[hash >>> STRIPE_SHIFT];
+        stripe.mLock.readLock().lock();
+        try {
+            return stripe.mLoaded ? stripe.mPhones.get(phone, hash) : null;
+        } finally {
+            stripe.mLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Load the index in the background, unless a load is already waiting.
+     */
+    void load() {
+        if (mLoadPending.compareAndSet(false, true)) {
+            mLoader.execute(new Runnable() {
+                @Override
+                public void run() {
+                    mLoadPending.set(false);
+                    loadNow();
+                }
+            });
+        }
+    }
+
+    /**
+     * Record a member that was just inserted.
+     */
+    void put(long id, int code, String phone) {
+        update(id, code, phone);
+    }
+
+    /**
+     * Record the new code or phone of a member that was just updated; null for the one that
+     * did not change.
+     */
+    void update(long id, Integer code, String phone) {
+        mWrites.incrementAndGet();
+        synchronized (mWriteLock) {
+            if (!mLoaded) {
+                return;
+            }
+            int slot = mMembers.find(id);
+            boolean known = slot >= 0;
+            int oldCode = known ? mMembers.mCodes[slot] : 0;
+            String oldPhone = known ? mMembers.mPhones[slot] : null;
+            int newCode = code != null ? code : oldCode;
+            String newPhone = phone != null ? phone : oldPhone;
+            if (newCode == 0 || newPhone == null) {
+                // Only part of a member we never saw; let a reload sort it out
+                invalidateLocked();
+                return;
+            }
+
+            int oldCodeHash = hash(oldCode);
+            int newCodeHash = hash(newCode);
+            int oldPhoneHash = oldPhone == null ? 0 : hash(oldPhone.hashCode());
+            int newPhoneHash = hash(newPhone.hashCode());
+            boolean[] locked = new boolean[STRIPES];
+            if (known) {
+                locked[oldCodeHash >>> STRIPE_SHIFT] = true;
+                locked[oldPhoneHash >>> STRIPE_SHIFT] = true;
+            }
+            locked[newCodeHash >>> STRIPE_SHIFT] = true;
+            locked[newPhoneHash >>> STRIPE_SHIFT] = true;
+            lock(locked);
+            try {
+                if (known) {
+                    mStripes[oldCodeHash >>> STRIPE_SHIFT].mCodes.remove(oldCode, oldCodeHash);
+                    mStripes[oldPhoneHash >>> STRIPE_SHIFT].mPhones
+                            .remove(oldPhone, oldPhoneHash, id);
+                }
+                mStripes[newCodeHash >>> STRIPE_SHIFT].mCodes.put(newCode, newCodeHash, id);
+                mStripes[newPhoneHash >>> STRIPE_SHIFT].mPhones.add(newPhone, newPhoneHash, id);
+            } finally {
+                unlock(locked);
+            }
+            mMembers = mMembers.put(id, newCode, newPhone);
+        }
+    }
+
+    /**
+     * Forget members that were just deleted.
+     */
+    void remove(long[] ids) {
+        mWrites.incrementAndGet();
+        synchronized (mWriteLock) {
+            if (!mLoaded) {
+                return;
+            }
+            for (long id : ids) {
+                int slot = mMembers.find(id);
+                if (slot < 0) {
+                    continue;
+                }
+                int code = mMembers.mCodes[slot];
+                String phone = mMembers.mPhones[slot];
+                int codeHash = hash(code);
+                int phoneHash = hash(phone.hashCode());
+                boolean[] locked = new boolean[STRIPES];
+                locked[codeHash >>> STRIPE_SHIFT] = true;
+                locked[phoneHash >>> STRIPE_SHIFT] = true;
+                lock(locked);
+                try {
+                    mStripes[codeHash >>> STRIPE_SHIFT].mCodes.remove(code, codeHash);
+                    mStripes[phoneHash >>> STRIPE_SHIFT].mPhones.remove(phone, phoneHash, id);
+                } finally {
+                    unlock(locked);
+                }
+                mMembers.remove(id);
+            }
+        }
+    }
+
+    /**
+     * Drop the whole index and load it again in the background, for writes whose rows are not
+     * known one by one: bulk inserts, writes to every member, and batches, which may roll back.
+     */
+    void invalidate() {
+        mWrites.incrementAndGet();
+        synchronized (mWriteLock) {
+            invalidateLocked();
+        }
+        load();
+    }
+
+    private void invalidateLocked() {
+        boolean[] all = new boolean[STRIPES];
+        Arrays.fill(all, true);
+        lock(all);
+        try {
+            for (Stripe stripe : mStripes) {
+                stripe.mLoaded = false;
+                stripe.mCodes = new CodeTable(INITIAL_CAPACITY);
+                stripe.mPhones = new PhoneTable(INITIAL_CAPACITY);
+            }
+        } finally {
+            unlock(all);
+        }
+        mMembers = new MemberTable(INITIAL_CAPACITY);
+        mLoaded = false;
+    }
+
+    /**
+     * Read every member's code and phone and install them, unless a write happened meanwhile,
+     * in which case the read is repeated.
+     */
+    private void loadNow() {
+        for (int attempt = 0; attempt < MAX_LOAD_ATTEMPTS; attempt++) {
+            long writes = mWrites.get();
+            CodeTable[] codes = new CodeTable[STRIPES];
+            PhoneTable[] phones = new PhoneTable[STRIPES];
+            for (int i = 0; i < STRIPES; i++) {
+                codes[i] = new CodeTable(INITIAL_CAPACITY);
+                phones[i] = new PhoneTable(INITIAL_CAPACITY);
+            }
+            MemberTable members = new MemberTable(INITIAL_CAPACITY);
+            try {
+                Cursor cursor = mDbHelper.getReadableDatabase().query(MemberEntry.TABLE_NAME,
+                        new String[]{MemberEntry._ID, MemberEntry.COLUMN_MEMBER_CODE,
+                                MemberEntry.COLUMN_MEMBER_PHONE}, null, null, null, null, null);
+                try {
+                    while (cursor.moveToNext()) {
+                        long id = cursor.getLong(0);
+                        int code = cursor.getInt(1);
+                        String phone = cursor.getString(2);
+                        int codeHash = hash(code);
+                        int phoneHash = hash(phone.hashCode());
+                        codes[codeHash >>> STRIPE_SHIFT].put(code, codeHash, id);
+                        phones[phoneHash >>> STRIPE_SHIFT].add(phone, phoneHash, id);
+                        members = members.put(id, code, phone);
+                    }
+                } finally {
+                    cursor.close();
+                }
+            } catch (SQLException e) {
+                Log.e(LOG_TAG, "Loading the member index failed", e);
+                return;
+            }
+
+            synchronized (mWriteLock) {
+                if (mWrites.get() != writes) {
+                    continue;
+                }
+                boolean[] all = new boolean[STRIPES];
+                Arrays.fill(all, true);
+                lock(all);
+                try {
+                    for (int i = 0; i < STRIPES; i++) {
+                        mStripes[i].mCodes = codes[i];
+                        mStripes[i].mPhones = phones[i];
+                        mStripes[i].mLoaded = true;
+                    }
+                } finally {
+                    unlock(all);
+                }
+                mMembers = members;
+                mLoaded = true;
+                return;
+            }
+        }
+        Log.w(LOG_TAG, "Member index not loaded: members kept changing");
+    }
+
+    /**
+     * Write-lock the marked stripes, always in stripe order so writers can't deadlock.
+     */
+    private void lock(boolean[] stripes) {
+        for (int i = 0; i < STRIPES; i++) {
+            if (stripes[i]) {
+                mStripes[i].mLock.writeLock().lock();
+            }
+        }
+    }
+
+    private void unlock(boolean[] stripes) {
+        for (int i = STRIPES - 1; i >= 0; i--) {
+            if (stripes[i]) {
+                mStripes[i].mLock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Spread the bits of a hash code, so the top bits pick the stripe and the low bits the slot.
+     */
+    private static int hash(int value) {
+        int hash = value * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    private static int hash(long value) {
+        return hash((int) (value ^ (value >>> 32)));
+    }
+
+    /**
+     * One stripe: its tables, and whether they are loaded, guarded by its lock.
+     */
+    private static final class Stripe {
+
+        final ReentrantReadWriteLock mLock = new ReentrantReadWriteLock();
+        CodeTable mCodes;
+        PhoneTable mPhones;
+        boolean mLoaded;
+
+        Stripe(CodeTable codes, PhoneTable phones) {
+            mCodes = codes;
+            mPhones = phones;
+        }
+    }
+
+    /**
+     * Member code to _ID, with linear probing. Codes are positive, so 0 marks a free slot.
+     */
+    private static final class CodeTable {
+
+        int[] mKeys;
+        long[] mIds;
+        int mSize;
+
+        CodeTable(int capacity) {
+            mKeys = new int[capacity];
+            mIds = new long[capacity];
+        }
+
+        long get(int code, int hash) {
+            int mask = mKeys.length - 1;
+            for (int i = hash & mask; mKeys[i] != 0; i = (i + 1) & mask) {
+                if (mKeys[i] == code) {
+                    return mIds[i];
+                }
+            }
+            return ABSENT;
+        }
+
+        void put(int code, int hash, long id) {
+            if ((mSize + 1) * 4 > mKeys.length * 3) {
+                grow();
+            }
+            int mask = mKeys.length - 1;
+            int i = hash & mask;
+            while (mKeys[i] != 0 && mKeys[i] != code) {
+                i = (i + 1) & mask;
+            }
+            if (mKeys[i] == 0) {
+                mKeys[i] = code;
+                mSize++;
+            }
+            mIds[i] = id;
+        }
+
+        void remove(int code, int hash) {
+            int mask = mKeys.length - 1;
+            int i = hash & mask;
+            while (mKeys[i] != code) {
+                if (mKeys[i] == 0) {
+                    return;
+                }
+                i = (i + 1) & mask;
+            }
+            // Shift later entries of the probe run back, so no lookup stops short at the gap
+            for (int j = (i + 1) & mask; mKeys[j] != 0; j = (j + 1) & mask) {
+                if (shouldMove(hash(mKeys[j]) & mask, i, j)) {
+                    mKeys[i] = mKeys[j];
+                    mIds[i] = mIds[j];
+                    i = j;
+                }
+            }
+            mKeys[i] = 0;
+            mSize--;
+        }
+
+        private void grow() {
+            int[] keys = mKeys;
+            long[] ids = mIds;
+            mKeys = new int[keys.length * 2];
+            mIds = new long[keys.length * 2];
+            mSize = 0;
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != 0) {
+                    put(keys[i], hash(keys[i]), ids[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Phone to _IDs, with linear probing. Members may share a phone, so a phone can fill several
+     * slots, one per member; null marks a free slot.
+     */
+    private static final class PhoneTable {
+
+        String[] mKeys;
+        int[] mHashes;
+        long[] mIds;
+        int mSize;
+
+        PhoneTable(int capacity) {
+            mKeys = new String[capacity];
+            mHashes = new int[capacity];
+            mIds = new long[capacity];
+        }
+
+        long[] get(String phone, int hash) {
+            int mask = mKeys.length - 1;
+            long[] ids = NO_IDS;
+            for (int i = hash & mask; mKeys[i] != null; i = (i + 1) & mask) {
+                if (mHashes[i] == hash && mKeys[i].equals(phone)) {
+                    ids = Arrays.copyOf(ids, ids.length + 1);
+                    ids[ids.length - 1] = mIds[i];
+                }
+            }
+            return ids;
+        }
+
+        void add(String phone, int hash, long id) {
+            if ((mSize + 1) * 4 > mKeys.length * 3) {
+                grow();
+            }
+            int mask = mKeys.length - 1;
+            int i = hash & mask;
+            while (mKeys[i] != null) {
+                i = (i + 1) & mask;
+            }
+            mKeys[i] = phone;
+            mHashes[i] = hash;
+            mIds[i] = id;
+            mSize++;
+        }
+
+        void remove(String phone, int hash, long id) {
+            int mask = mKeys.length - 1;
+            int i = hash & mask;
+            while (mIds[i] != id || mHashes[i] != hash || !phone.equals(mKeys[i])) {
+                if (mKeys[i] == null) {
+                    return;
+                }
+                i = (i + 1) & mask;
+            }
+            for (int j = (i + 1) & mask; mKeys[j] != null; j = (j + 1) & mask) {
+                if (shouldMove(mHashes[j] & mask, i, j)) {
+                    mKeys[i] = mKeys[j];
+                    mHashes[i] = mHashes[j];
+                    mIds[i] = mIds[j];
+                    i = j;
+                }
+            }
+            mKeys[i] = null;
+            mSize--;
+        }
+
+        private void grow() {
+            String[] keys = mKeys;
+            int[] hashes = mHashes;
+            long[] ids = mIds;
+            mKeys = new String[keys.length * 2];
+            mHashes = new int[keys.length * 2];
+            mIds = new long[keys.length * 2];
+            mSize = 0;
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != null) {
+                    add(keys[i], hashes[i], ids[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * _ID to code and phone, with linear probing; only used by writers. _IDs are positive, so
+     * 0 marks a free slot.
+     */
+    private static final class MemberTable {
+
+        final long[] mIds;
+        final int[] mCodes;
+        final String[] mPhones;
+        int mSize;
+
+        MemberTable(int capacity) {
+            mIds = new long[capacity];
+            mCodes = new int[capacity];
+            mPhones = new String[capacity];
+        }
+
+        /**
+         * Return the slot of the member, or -1.
+         */
+        int find(long id) {
+            int mask = mIds.length - 1;
+            for (int i = hash(id) & mask; mIds[i] != 0; i = (i + 1) & mask) {
+                if (mIds[i] == id) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Add or replace a member, returning the table to use from now on: this one, or a
+         * larger copy.
+         */
+        MemberTable put(long id, int code, String phone) {
+            if ((mSize + 1) * 4 > mIds.length * 3) {
+                MemberTable larger = new MemberTable(mIds.length * 2);
+                for (int i = 0; i < mIds.length; i++) {
+                    if (mIds[i] != 0) {
+                        larger.put(mIds[i], mCodes[i], mPhones[i]);
+                    }
+                }
+                return larger.put(id, code, phone);
+            }
+            int mask = mIds.length - 1;
+            int i = hash(id) & mask;
+            while (mIds[i] != 0 && mIds[i] != id) {
+                i = (i + 1) & mask;
+            }
+            if (mIds[i] == 0) {
+                mIds[i] = id;
+                mSize++;
+            }
+            mCodes[i] = code;
+            mPhones[i] = phone;
+            return this;
+        }
+
+        void remove(long id) {
+            int i = find(id);
+            if (i < 0) {
+                return;
+            }
+            int mask = mIds.length - 1;
+            for (int j = (i + 1) & mask; mIds[j] != 0; j = (j + 1) & mask) {
+                if (shouldMove(hash(mIds[j]) & mask, i, j)) {
+                    mIds[i] = mIds[j];
+                    mCodes[i] = mCodes[j];
+                    mPhones[i] = mPhones[j];
+                    i = j;
+                }
+            }
+            mIds[i] = 0;
+            mPhones[i] = null;
+            mSize--;
+        }
+    }
+
+    /**
+     * Whether the entry in slot {@code j}, whose home slot is {@code home}, must move back into
+     * the gap at {@code i}: true unless its home lies cyclically after the gap, up to {@code j}.
+     */
+    private static boolean shouldMove(int home, int i, int j) {
+        return i <= j ? (home <= i || home > j) : (home <= i && home > j);
+    }
+}
@@ -0,0 +1,384 @@
+package com.example.android.members.data;
+
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+import com.example.android.members.data.MemberContract.CheckInEntry;
+import com.example.android.members.data.MemberContract.MemberEntry;
+
+import java.util.ArrayList;
+
+/**
+ * Ordered schema migrations for the members database. Each {@link Migration} moves the schema
+ * from {@code version - 1} to {@code version}; {@link MemberDbHelper} runs them in order, both
+ * when upgrading an existing database and after creating a fresh version 1 schema.
+ */
+final class MemberMigrations {
+
+    public static final String LOG_TAG = MemberMigrations.class.getSimpleName();
+
+    /** Name of the index on the member code; unique unless a migrated roster repeats codes */
+    static final String INDEX_MEMBER_CODE = "index_members_code";
+
+    /** Name of the index on the member phone number */
+    static final String INDEX_MEMBER_PHONE = "index_members_phone";
+
+    /** Name of the case-insensitive index on the member name */
+    static final String INDEX_MEMBER_NAME = "index_members_name";
+
+    /** Name of the index on the admission date */
+    static final String INDEX_MEMBER_DATE = "index_members_date";
+
+    /** Name of the index on the member weight */
+    static final String INDEX_MEMBER_WEIGHT = "index_members_weight";
+
+    /** Name of the index on the check-in time */
+    static final String INDEX_CHECK_IN_TIME = "index_check_ins_time_in";
+
+    /** Name of the index on the member and time of a check-in */
+    static final String INDEX_CHECK_IN_MEMBER = "index_check_ins_member_id";
+
+    /** Name of the full-text search table over member name, father name and phone */
+    static final String TABLE_MEMBERS_FTS = "members_fts";
+
+    /**
+     * Name of the table that keeps, by member _ID, the text of each admission date version 4
+     * could not read. The member's date is 0 until it is corrected, which drops the text.
+     */
+    static final String TABLE_LEGACY_DATES = "member_legacy_dates";
+
+    private MemberMigrations() {}
+
+    /**
+     * A single step in the schema history.
+     */
+    abstract static class Migration {
+
+        /** The schema version the database is at once this step has run */
+        final int version;
+
+        Migration(int version) {
+            this.version = version;
+        }
+
+        /** Apply this step. Runs inside the transaction opened by SQLiteOpenHelper. */
+        abstract void apply(SQLiteDatabase db);
+    }
+
+    /**
+     * All migrations, ordered by the version they produce. Append new steps at the end and bump
+     * {@link MemberDbHelper}'s DATABASE_VERSION to match the last one.
+     */
+    static final Migration[] MIGRATIONS = {
+            // Version 2: lookup indexes for code, phone, name and admission date
+            new Migration(2) {
+                @Override
+                void apply(SQLiteDatabase db) {
+                    createLookupIndexes(db);
+                }
+            },
+            // Version 3: FTS4 search table kept in sync with the members table by triggers
+            new Migration(3) {
+                @Override
+                void apply(SQLiteDatabase db) {
+                    // External content table: the text lives in members, the FTS table only
+                    // stores the index, keyed by docid = members._id
+                    db.execSQL("CREATE VIRTUAL TABLE " + TABLE_MEMBERS_FTS + " USING fts4("
+                            + "content=\"" + MemberEntry.TABLE_NAME + "\", "
+                            + MemberEntry.COLUMN_MEMBER_NAME + ", "
+                            + MemberEntry.COLUMN_MEMBER_FATHER_NAME + ", "
+                            + MemberEntry.COLUMN_MEMBER_PHONE + ");");
+                    createFtsTriggers(db);
+                    rebuildFts(db);
+                }
+            },
+            // Version 4: admission date stored as an INTEGER count of days since 1970-01-01
+            new Migration(4) {
+                @Override
+                void apply(SQLiteDatabase db) {
+                    // SQLite can't change a column's type, so copy into a new table,
+                    // parsing each "day/month/year" date on the way
+                    String newTable = MemberEntry.TABLE_NAME + "_v4";
+                    db.execSQL("CREATE TABLE " + newTable + " ("
+                            + MemberEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                            + MemberEntry.COLUMN_MEMBER_NAME + " TEXT NOT NULL, "
+                            + MemberEntry.COLUMN_MEMBER_FATHER_NAME + " TEXT NOT NULL, "
+                            + MemberEntry.COLUMN_MEMBER_CODE + " INTEGER NOT NULL, "
+                            + MemberEntry.COLUMN_MEMBER_PHONE + " TEXT NOT NULL, "
+                            + MemberEntry.COLUMN_MEMBER_DATE + " INTEGER NOT NULL, "
+                            + MemberEntry.COLUMN_MEMBER_WEIGHT + " INTEGER NOT NULL );");
+
+                    SQLiteStatement insert = db.compileStatement("INSERT INTO " + newTable
+                            + " VALUES (?, ?, ?, ?, ?, ?, ?)");
+                    Cursor cursor = db.query(MemberEntry.TABLE_NAME, new String[]{
+                            MemberEntry._ID,
+                            MemberEntry.COLUMN_MEMBER_NAME,
+                            MemberEntry.COLUMN_MEMBER_FATHER_NAME,
+                            MemberEntry.COLUMN_MEMBER_CODE,
+                            MemberEntry.COLUMN_MEMBER_PHONE,
+                            MemberEntry.COLUMN_MEMBER_DATE,
+                            MemberEntry.COLUMN_MEMBER_WEIGHT}, null, null, null, null, null);
+                    // Dates that don't parse, kept as they were typed
+                    ArrayList<Long> legacyIds = new ArrayList<>();
+                    ArrayList<String> legacyDates = new ArrayList<>();
+                    try {
+                        while (cursor.moveToNext()) {
+                            long day;
+                            try {
+                                day = MemberDates.parse(cursor.getString(5));
+                            } catch (IllegalArgumentException e) {
+                                // Keep the member with day 0, and its date in TABLE_LEGACY_DATES
+                                Log.w(LOG_TAG, "Member " + cursor.getLong(0) + ": " + e.getMessage()
+                                        + "; kept in " + TABLE_LEGACY_DATES);
+                                legacyIds.add(cursor.getLong(0));
+                                legacyDates.add(cursor.getString(5));
+                                day = 0;
+                            }
+                            insert.bindLong(1, cursor.getLong(0));
+                            insert.bindString(2, cursor.getString(1));
+                            insert.bindString(3, cursor.getString(2));
+                            insert.bindLong(4, cursor.getLong(3));
+                            insert.bindString(5, cursor.getString(4));
+                            insert.bindLong(6, day);
+                            insert.bindLong(7, cursor.getLong(6));
+                            insert.executeInsert();
+                        }
+                    } finally {
+                        cursor.close();
+                        insert.close();
+                    }
+
+                    // Keep AUTOINCREMENT from reusing the _IDs of deleted members
+                    long sequence = DatabaseUtils.longForQuery(db, "SELECT IFNULL(MAX(seq), 0) "
+                            + "FROM sqlite_sequence WHERE name = ?",
+                            new String[]{MemberEntry.TABLE_NAME});
+
+                    // Dropping the old table drops its indexes and triggers as well
+                    db.execSQL("DROP TABLE " + MemberEntry.TABLE_NAME + ";");
+                    db.execSQL("ALTER TABLE " + newTable + " RENAME TO " + MemberEntry.TABLE_NAME + ";");
+                    // The copy may have left no sequence row at all, e.g. when the table was empty
+                    sequence = Math.max(sequence, DatabaseUtils.longForQuery(db,
+                            "SELECT IFNULL(MAX(seq), 0) FROM sqlite_sequence WHERE name = ?",
+                            new String[]{MemberEntry.TABLE_NAME}));
+                    db.delete("sqlite_sequence", "name = ?", new String[]{MemberEntry.TABLE_NAME});
+                    db.execSQL("INSERT INTO sqlite_sequence (name, seq) VALUES (?, ?)",
+                            new Object[]{MemberEntry.TABLE_NAME, sequence});
+
+                    createLookupIndexes(db);
+                    createFtsTriggers(db);
+                    rebuildFts(db);
+
+                    createLegacyDates(db);
+                    SQLiteStatement keep = db.compileStatement("INSERT INTO " + TABLE_LEGACY_DATES
+                            + " (" + MemberEntry._ID + ", " + MemberEntry.COLUMN_MEMBER_DATE
+                            + ") VALUES (?, ?)");
+                    try {
+                        for (int i = 0; i < legacyIds.size(); i++) {
+                            keep.bindLong(1, legacyIds.get(i));
+                            keep.bindString(2, legacyDates.get(i));
+                            keep.executeInsert();
+                        }
+                    } finally {
+                        keep.close();
+                    }
+                }
+            },
+            // Version 5: trigger-maintained summary tables for the member statistics
+            new Migration(5) {
+                @Override
+                void apply(SQLiteDatabase db) {
+                    // Lets MIN and MAX weight read one end of an index instead of every row
+                    db.execSQL("CREATE INDEX IF NOT EXISTS " + INDEX_MEMBER_WEIGHT + " ON "
+                            + MemberEntry.TABLE_NAME + " (" + MemberEntry.COLUMN_MEMBER_WEIGHT
+                            + ");");
+                    MemberSummaries.createSchema(db);
+                    MemberSummaries.rebuild(db);
+                }
+            },
+            // Version 6: check-ins, indexed for visits by member and by time
+            new Migration(6) {
+                @Override
+                void apply(SQLiteDatabase db) {
+                    db.execSQL("CREATE TABLE " + CheckInEntry.TABLE_NAME + " ("
+                            + CheckInEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                            + CheckInEntry.COLUMN_MEMBER_ID + " INTEGER NOT NULL, "
+                            + CheckInEntry.COLUMN_TIME_IN + " INTEGER NOT NULL, "
+                            + CheckInEntry.COLUMN_TIME_OUT + " INTEGER);");
+                    // Who is in now and visits in a range read the recent end of this one
+                    db.execSQL("CREATE INDEX " + INDEX_CHECK_IN_TIME + " ON "
+                            + CheckInEntry.TABLE_NAME + " (" + CheckInEntry.COLUMN_TIME_IN + ");");
+                    // One member's visits, and their deletion along with the member
+                    db.execSQL("CREATE INDEX " + INDEX_CHECK_IN_MEMBER + " ON "
+                            + CheckInEntry.TABLE_NAME + " (" + CheckInEntry.COLUMN_MEMBER_ID
+                            + ", " + CheckInEntry.COLUMN_TIME_IN + ");");
+                    createCheckInTriggers(db);
+                }
+            },
+            // Version 7: the list of monthly history tables; the tables come with their records
+            new Migration(7) {
+                @Override
+                void apply(SQLiteDatabase db) {
+                    MemberHistory.createSchema(db);
+                }
+            },
+            // Version 8: blocking keys of every member and the report of likely duplicates
+            new Migration(8) {
+                @Override
+                void apply(SQLiteDatabase db) {
+                    MemberDuplicates.createSchema(db);
+                }
+            },
+            // Version 9: the dates version 4 could not read; it now keeps them. Databases that
+            // went through version 4 before get the table empty, their dates are lost already
+            new Migration(9) {
+                @Override
+                void apply(SQLiteDatabase db) {
+                    createLegacyDates(db);
+                }
+            },
+    };
+
+    /**
+     * Create the indexes for lookups by code, phone, name and admission date. Codes were not
+     * unique before version 2 and migrated rosters do repeat some; those are logged and get a
+     * plain code index, which {@link #enforceUniqueCodes(SQLiteDatabase)} replaces once edits
+     * through the provider have sorted them out.
+     */
+    private static void createLookupIndexes(SQLiteDatabase db) {
+        db.execSQL("CREATE " + (hasDuplicateCodes(db) ? "" : "UNIQUE ") + "INDEX IF NOT EXISTS "
+                + INDEX_MEMBER_CODE + " ON "
+                + MemberEntry.TABLE_NAME + " (" + MemberEntry.COLUMN_MEMBER_CODE + ");");
+        db.execSQL("CREATE INDEX IF NOT EXISTS " + INDEX_MEMBER_PHONE + " ON "
+                + MemberEntry.TABLE_NAME + " (" + MemberEntry.COLUMN_MEMBER_PHONE + ");");
+        db.execSQL("CREATE INDEX IF NOT EXISTS " + INDEX_MEMBER_NAME + " ON "
+                + MemberEntry.TABLE_NAME + " (" + MemberEntry.COLUMN_MEMBER_NAME
+                + " COLLATE NOCASE);");
+        db.execSQL("CREATE INDEX IF NOT EXISTS " + INDEX_MEMBER_DATE + " ON "
+                + MemberEntry.TABLE_NAME + " (" + MemberEntry.COLUMN_MEMBER_DATE + ");");
+    }
+
+    /**
+     * Return whether some code is shared by more than one member, logging each such code.
+     */
+    private static boolean hasDuplicateCodes(SQLiteDatabase db) {
+        Cursor cursor = db.rawQuery("SELECT " + MemberEntry.COLUMN_MEMBER_CODE
+                + ", GROUP_CONCAT(" + MemberEntry._ID + ") FROM " + MemberEntry.TABLE_NAME
+                + " GROUP BY " + MemberEntry.COLUMN_MEMBER_CODE + " HAVING COUNT(*) > 1", null);
+        try {
+            while (cursor.moveToNext()) {
+                Log.w(LOG_TAG, "Code " + cursor.getInt(0) + " is shared by members "
+                        + cursor.getString(1) + "; it stays unenforced until they get their own");
+            }
+            return cursor.getCount() > 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Return whether the code index enforces unique codes. It doesn't while a migrated roster
+     * still repeats some, and lookups by code may then match several members.
+     */
+    static boolean hasUniqueCodes(SQLiteDatabase db) {
+        String sql = DatabaseUtils.stringForQuery(db, "SELECT IFNULL(MAX(sql), '') FROM "
+                + "sqlite_master WHERE type = 'index' AND name = ?",
+                new String[]{INDEX_MEMBER_CODE});
+        return sql.startsWith("CREATE UNIQUE");
+    }
+
+    /**
+     * Make the code index unique if it was left plain for duplicate codes that have since been
+     * resolved. Does nothing while duplicates remain.
+     */
+    static void enforceUniqueCodes(SQLiteDatabase db) {
+        if (hasUniqueCodes(db) || hasDuplicateCodes(db)) {
+            return;
+        }
+        db.beginTransaction();
+        try {
+            db.execSQL("DROP INDEX IF EXISTS " + INDEX_MEMBER_CODE + ";");
+            db.execSQL("CREATE UNIQUE INDEX " + INDEX_MEMBER_CODE + " ON "
+                    + MemberEntry.TABLE_NAME + " (" + MemberEntry.COLUMN_MEMBER_CODE + ");");
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Create the triggers that keep the FTS table in step with the members table.
+     */
+    private static void createFtsTriggers(SQLiteDatabase db) {
+        String insertIndex = "INSERT INTO " + TABLE_MEMBERS_FTS + " (docid, "
+                + MemberEntry.COLUMN_MEMBER_NAME + ", "
+                + MemberEntry.COLUMN_MEMBER_FATHER_NAME + ", "
+                + MemberEntry.COLUMN_MEMBER_PHONE + ") VALUES (new." + MemberEntry._ID
+                + ", new." + MemberEntry.COLUMN_MEMBER_NAME
+                + ", new." + MemberEntry.COLUMN_MEMBER_FATHER_NAME
+                + ", new." + MemberEntry.COLUMN_MEMBER_PHONE + "); ";
+        String deleteIndex = "DELETE FROM " + TABLE_MEMBERS_FTS
+                + " WHERE docid = old." + MemberEntry._ID + "; ";
+
+        db.execSQL("CREATE TRIGGER members_fts_before_update BEFORE UPDATE ON "
+                + MemberEntry.TABLE_NAME + " BEGIN " + deleteIndex + "END;");
+        db.execSQL("CREATE TRIGGER members_fts_before_delete BEFORE DELETE ON "
+                + MemberEntry.TABLE_NAME + " BEGIN " + deleteIndex + "END;");
+        db.execSQL("CREATE TRIGGER members_fts_after_update AFTER UPDATE ON "
+                + MemberEntry.TABLE_NAME + " BEGIN " + insertIndex + "END;");
+        db.execSQL("CREATE TRIGGER members_fts_after_insert AFTER INSERT ON "
+                + MemberEntry.TABLE_NAME + " BEGIN " + insertIndex + "END;");
+    }
+
+    /**
+     * Create the trigger that deletes a member's check-ins along with the member. Like every
+     * trigger on members, it has to be created again whenever the table is rebuilt.
+     */
+    private static void createCheckInTriggers(SQLiteDatabase db) {
+        db.execSQL("CREATE TRIGGER check_ins_after_member_delete AFTER DELETE ON "
+                + MemberEntry.TABLE_NAME + " BEGIN DELETE FROM " + CheckInEntry.TABLE_NAME
+                + " WHERE " + CheckInEntry.COLUMN_MEMBER_ID + " = old." + MemberEntry._ID
+                + "; END;");
+    }
+
+    /**
+     * Create {@link #TABLE_LEGACY_DATES}, unless version 4 already has, with the triggers that
+     * drop a member's date text along with the member or once its date is changed.
+     */
+    private static void createLegacyDates(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE_LEGACY_DATES + " ("
+                + MemberEntry._ID + " INTEGER PRIMARY KEY, "
+                + MemberEntry.COLUMN_MEMBER_DATE + " TEXT NOT NULL);");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS legacy_dates_after_member_delete AFTER DELETE ON "
+                + MemberEntry.TABLE_NAME + " BEGIN DELETE FROM " + TABLE_LEGACY_DATES + " WHERE "
+                + MemberEntry._ID + " = old." + MemberEntry._ID + "; END;");
+        // The editor saves every column, so only a date that really changed counts
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS legacy_dates_after_date_update AFTER UPDATE OF "
+                + MemberEntry.COLUMN_MEMBER_DATE + " ON " + MemberEntry.TABLE_NAME + " WHEN new."
+                + MemberEntry.COLUMN_MEMBER_DATE + " <> old." + MemberEntry.COLUMN_MEMBER_DATE
+                + " BEGIN DELETE FROM " + TABLE_LEGACY_DATES + " WHERE " + MemberEntry._ID
+                + " = new." + MemberEntry._ID + "; END;");
+    }
+
+    /**
+     * Re-index every member in the FTS table.
+     */
+    private static void rebuildFts(SQLiteDatabase db) {
+        db.execSQL("INSERT INTO " + TABLE_MEMBERS_FTS + " (" + TABLE_MEMBERS_FTS
+                + ") VALUES ('rebuild');");
+    }
+
+    /**
+     * Run every migration that takes the schema from {@code oldVersion} up to
+     * {@code newVersion}, in order.
+     */
+    static void migrate(SQLiteDatabase db, int oldVersion, int newVersion) {
+        for (Migration migration : MIGRATIONS) {
+            if (migration.version > oldVersion && migration.version <= newVersion) {
+                migration.apply(db);
+            }
+        }
+    }
+}
@@ -1,14 +1,32 @@
 package com.example.android.members.data;
 
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentUris;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
+import android.database.sqlite.SQLiteConstraintException;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteQueryBuilder;
 import android.net.Uri;
+import android.os.Bundle;
+import android.provider.BaseColumns;
 import android.util.Log;
 
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Locale;
+
+import com.example.android.members.R;
+import com.example.android.members.data.MemberContract.CheckInEntry;
+import com.example.android.members.data.MemberContract.DuplicateEntry;
+import com.example.android.members.data.MemberContract.HistoryEntry;
 import com.example.android.members.data.MemberContract.MemberEntry;
 
 /**
@@ -22,6 +40,60 @@ public class MemberProvider extends ContentProvider {
 
     private MemberDbHelper mDbHelper;
 
+    /** Cache of single member rows, serving MEMBER_ID and code lookups */
+    private MemberCache mCache;
+
+    /** Member code and phone to _ID, answering code and phone lookups without SQLite */
+    private MemberIndex mIndex;
+
+    /** Trigrams of member names, serving MEMBER_FUZZY */
+    private MemberTrigrams mTrigrams;
+
+    /** Latency and row counts of every call, served by MEMBER_STATS and dump() */
+    private final MemberStats mStats = new MemberStats(MEMBERS, ROUTE_NAMES);
+
+    /** Statements slower than a threshold, with their plans, served by MEMBER_SLOW_QUERIES */
+    private final MemberSlowLog mSlowLog = new MemberSlowLog();
+
+    /** Cached statistics for MEMBER_AGGREGATE, dropped on every write */
+    private final MemberAggregates mAggregates = new MemberAggregates();
+
+    /** Buffered, group-committed writer for check-ins */
+    private MemberCheckIns mCheckIns;
+
+    /** Monthly history tables and their archives */
+    private MemberHistory mHistory;
+
+    /** Compiled statements for the fixed-shape writes, one set per binder thread */
+    private final ThreadLocal<MemberStatements> mStatements = new ThreadLocal<>();
+
+    /**
+     * Set while {@link #applyBatch(ArrayList)} runs on the calling thread. The single operations
+     * it dispatches collect their change notifications here, to be sent once the batch commits.
+     */
+    private final ThreadLocal<ArrayList<Uri>> mBatchChanges = new ThreadLocal<>();
+
+    /**
+     * Most row URIs notified for one write or batch. Past this, observers get a single
+     * notification for the whole members URI instead.
+     */
+    private static final int MAX_ROW_NOTIFICATIONS = 32;
+
+    /**
+     * Whether the database enforces unique codes, so a lookup by code can be answered with a
+     * single cached member; null until the first such lookup checks
+     */
+    private volatile Boolean mUniqueCodes;
+
+    /** Selection for a lookup by member code, which can be answered from the cache */
+    private static final String CODE_SELECTION = MemberEntry.COLUMN_MEMBER_CODE + "=?";
+
+    /** Full-text matches ranked by a fuzzy search while the trigram index loads */
+    private static final int FUZZY_FALLBACK_CANDIDATES = 500;
+
+    /** Selection for a lookup by phone, which can be answered from the index */
+    private static final String PHONE_SELECTION = MemberEntry.COLUMN_MEMBER_PHONE + "=?";
+
     /**
      * URI matcher code for the content URI for the members table
      */
@@ -32,6 +104,97 @@ public class MemberProvider extends ContentProvider {
      */
     private static final int MEMBER_ID = 101;
 
+    /**
+     * URI matcher code for the content URI for a full-text search over the members table
+     */
+    private static final int MEMBER_SEARCH = 102;
+
+    /**
+     * URI matcher code for the content URI for members by admission date range
+     */
+    private static final int MEMBERS_JOINED = 103;
+
+    /**
+     * URI matcher code for the content URI for the provider's statistics
+     */
+    private static final int MEMBER_STATS = 104;
+
+    /**
+     * URI matcher code for the content URI for the slow statement log
+     */
+    private static final int MEMBER_SLOW_QUERIES = 105;
+
+    /**
+     * URI matcher code for the content URIs for statistics over the members
+     */
+    private static final int MEMBER_AGGREGATE = 106;
+
+    /**
+     * URI matcher code for the content URI for the check-ins table
+     */
+    private static final int CHECK_INS = 107;
+
+    /**
+     * URI matcher code for the content URI for a single check-in
+     */
+    private static final int CHECK_IN_ID = 108;
+
+    /**
+     * URI matcher code for the content URI for the members in the gym now
+     */
+    private static final int CHECK_INS_PRESENT = 109;
+
+    /**
+     * URI matcher code for the content URI for visits per member
+     */
+    private static final int CHECK_IN_VISITS = 110;
+
+    /**
+     * URI matcher code for the content URI for member history
+     */
+    private static final int HISTORY = 111;
+
+    /**
+     * URI matcher code for the content URI for a single history record
+     */
+    private static final int HISTORY_ID = 112;
+
+    /**
+     * URI matcher code for the content URI for a typo-tolerant search by name
+     */
+    private static final int MEMBER_FUZZY = 113;
+
+    /**
+     * URI matcher code for the content URI for the duplicates report
+     */
+    private static final int MEMBER_DUPLICATES = 114;
+
+    /** Names of the URI patterns in the statistics, by matcher code starting at MEMBERS */
+    private static final String[] ROUTE_NAMES = {
+            "members", "members/#", "members/search/*", "members/joined", "members/_stats",
+            "members/_slow_queries", "members/_aggregate/*", "check_ins", "check_ins/#",
+            "check_ins/present", "check_ins/visits", "history", "history/#", "members/fuzzy/*",
+            "members/duplicates"
+    };
+
+    /** Columns of a visits query */
+    private static final String[] VISITS_COLUMNS = {
+            CheckInEntry.COLUMN_MEMBER_ID, "COUNT(*) AS " + CheckInEntry.COLUMN_VISITS
+    };
+
+    /**
+     * Tables for a search: members joined to the FTS hits for the match expression. The hits
+     * are ranked by the length of offsets(), which grows with the number of matched terms.
+     */
+    private static final String SEARCH_TABLES = MemberEntry.TABLE_NAME + " JOIN (SELECT docid, "
+            + "length(offsets(" + MemberMigrations.TABLE_MEMBERS_FTS + ")) AS rank FROM "
+            + MemberMigrations.TABLE_MEMBERS_FTS + " WHERE " + MemberMigrations.TABLE_MEMBERS_FTS
+            + " MATCH ?) AS hits ON " + MemberEntry.TABLE_NAME + "." + MemberEntry._ID + " = hits.docid";
+
+    /** Default order for search results: best match first, then by name */
+    private static final String SEARCH_SORT_ORDER = "hits.rank DESC, "
+            + MemberEntry.COLUMN_MEMBER_NAME + " COLLATE NOCASE";
+
     /**
      * UriMatcher object to match a content URI to a corresponding code.
      * The input passed into the constructor represents the code to return for the root URI.
@@ -48,6 +211,33 @@ public class MemberProvider extends ContentProvider {
         // TODO: Add 2 content URIs to URI matcher
         sUriMatcher.addURI(MemberContract.CONTENT_AUTHORITY, MemberContract.PATH_MEMBERS, MEMBERS);
         sUriMatcher.addURI(MemberContract.CONTENT_AUTHORITY, MemberContract.PATH_MEMBERS + "/#", MEMBER_ID);
+        sUriMatcher.addURI(MemberContract.CONTENT_AUTHORITY,
+                MemberContract.PATH_MEMBERS + "/" + MemberContract.PATH_SEARCH + "/*", MEMBER_SEARCH);
+        sUriMatcher.addURI(MemberContract.CONTENT_AUTHORITY,
+                MemberContract.PATH_MEMBERS + "/" + MemberContract.PATH_FUZZY + "/*", MEMBER_FUZZY);
+        sUriMatcher.addURI(MemberContract.CONTENT_AUTHORITY,
+                MemberContract.PATH_MEMBERS + "/" + MemberContract.PATH_DUPLICATES,
+                MEMBER_DUPLICATES);
+        sUriMatcher.addURI(MemberContract.CONTENT_AUTHORITY,
+                MemberContract.PATH_MEMBERS + "/" + MemberContract.PATH_JOINED, MEMBERS_JOINED);
+        sUriMatcher.addURI(MemberContract.CONTENT_AUTHORITY,
+                MemberContract.PATH_MEMBERS + "/" + MemberContract.PATH_STATS, MEMBER_STATS);
+        sUriMatcher.addURI(MemberContract.CONTENT_AUTHORITY,
+                MemberContract.PATH_MEMBERS + "/" + MemberContract.PATH_SLOW_QUERIES,
+                MEMBER_SLOW_QUERIES);
+        sUriMatcher.addURI(MemberContract.CONTENT_AUTHORITY,
+                MemberContract.PATH_MEMBERS + "/" + MemberContract.PATH_AGGREGATE + "/*",
+                MEMBER_AGGREGATE);
+        sUriMatcher.addURI(MemberContract.CONTENT_AUTHORITY, MemberContract.PATH_CHECK_INS, CHECK_INS);
+        sUriMatcher.addURI(MemberContract.CONTENT_AUTHORITY, MemberContract.PATH_CHECK_INS + "/#",
+                CHECK_IN_ID);
+        sUriMatcher.addURI(MemberContract.CONTENT_AUTHORITY,
+                MemberContract.PATH_CHECK_INS + "/" + MemberContract.PATH_PRESENT, CHECK_INS_PRESENT);
+        sUriMatcher.addURI(MemberContract.CONTENT_AUTHORITY,
+                MemberContract.PATH_CHECK_INS + "/" + MemberContract.PATH_VISITS, CHECK_IN_VISITS);
+        sUriMatcher.addURI(MemberContract.CONTENT_AUTHORITY, MemberContract.PATH_HISTORY, HISTORY);
+        sUriMatcher.addURI(MemberContract.CONTENT_AUTHORITY, MemberContract.PATH_HISTORY + "/#",
+                HISTORY_ID);
     }
 
     /**
@@ -59,6 +249,15 @@ public class MemberProvider extends ContentProvider {
         // Make sure the variable is a global variable, so it can be referenced from other
         // ContentProvider methods.
         mDbHelper = new MemberDbHelper(getContext());
+        mCache = new MemberCache(
+                getContext().getResources().getInteger(R.integer.member_cache_kb) * 1024);
+        mIndex = new MemberIndex(mDbHelper);
+        mIndex.load();
+        mTrigrams = new MemberTrigrams(mDbHelper);
+        mTrigrams.load();
+        mCheckIns = new MemberCheckIns(mDbHelper, getContext().getContentResolver());
+        mHistory = new MemberHistory(mDbHelper, new File(getContext().getFilesDir(), "history"));
+        mHistory.scheduleArchiving();
 
         return true;
     }
@@ -69,6 +268,7 @@ public class MemberProvider extends ContentProvider {
     @Override
     public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs,
                         String sortOrder) {
+        long start = System.nanoTime();
         // Get readable database
         SQLiteDatabase database = mDbHelper.getReadableDatabase();
 
@@ -79,12 +279,43 @@ public class MemberProvider extends ContentProvider {
         int match = sUriMatcher.match(uri);
         switch (match) {
             case MEMBERS:
-                // For the PETS code, query the members table directly with the given
+                // For the MEMBERS code, query the members table directly with the given
                 // projection, selection, selection arguments, and sort order. The cursor
-                // could contain multiple rows of the members table.
-                // TODO: Perform database query on members table
-                cursor = database.query(MemberEntry.TABLE_NAME, projection, null, null,
-                        null, null, sortOrder);
+                // could contain multiple rows of the members table, bounded by the paging
+                // parameters of the URI if there are any.
+                String afterId = uri.getQueryParameter(MemberContract.QUERY_PARAMETER_AFTER_ID);
+                if (afterId == null && uri.getQueryParameter(MemberContract.QUERY_PARAMETER_LIMIT) == null
+                        && CODE_SELECTION.equals(selection)
+                        && selectionArgs != null && selectionArgs.length == 1) {
+                    // A lookup by member code can be answered from the cache
+                    Cursor cached = queryCachedMember(database, projection,
+                            MemberEntry.COLUMN_MEMBER_CODE, selectionArgs[0]);
+                    if (cached != null) {
+                        cursor = cached;
+                        break;
+                    }
+                }
+                if (afterId == null && uri.getQueryParameter(MemberContract.QUERY_PARAMETER_LIMIT) == null
+                        && PHONE_SELECTION.equals(selection) && sortOrder == null
+                        && selectionArgs != null && selectionArgs.length == 1) {
+                    // So can a lookup by phone, through the index
+                    Cursor indexed = queryIndexedPhone(database, projection, selectionArgs[0]);
+                    if (indexed != null) {
+                        cursor = indexed;
+                        break;
+                    }
+                }
+                if (afterId != null) {
+                    // Keyset paging: continue after the last _ID of the previous page
+                    selection = appendSelection(selection, MemberEntry._ID + ">?");
+                    selectionArgs = appendSelectionArg(selectionArgs,
+                            String.valueOf(parseNonNegative(afterId, uri)));
+                    if (sortOrder == null) {
+                        sortOrder = MemberEntry._ID + " ASC";
+                    }
+                }
+                cursor = database.query(MemberEntry.TABLE_NAME, projection, selection, selectionArgs,
+                        null, null, sortOrder, buildLimit(uri));
                 break;
             case MEMBER_ID:
                 // For the PET_ID code, extract out the ID from the URI.
@@ -98,29 +329,700 @@ public class MemberProvider extends ContentProvider {
                 selection = MemberEntry._ID + "=?";
                 selectionArgs = new String[]{String.valueOf(ContentUris.parseId(uri))};
 
+                // Members that were opened recently are served from the cache
+                Cursor cached = queryCachedMember(database, projection, MemberEntry._ID,
+                        selectionArgs[0]);
+                if (cached != null) {
+                    cursor = cached;
+                    break;
+                }
+
                 // This will perform a query on the members table where the _id equals 3 to return a
                 // Cursor containing that row of the table.
                 cursor = database.query(MemberEntry.TABLE_NAME, projection, selection, selectionArgs,
                         null, null, sortOrder);
                 break;
+            case MEMBER_SEARCH:
+                cursor = searchMembers(database, uri.getLastPathSegment(), projection, selection,
+                        selectionArgs, sortOrder, buildLimit(uri));
+                break;
+            case MEMBER_FUZZY:
+                cursor = fuzzySearchMembers(database, uri, projection, selection, selectionArgs,
+                        sortOrder);
+                break;
+            case MEMBER_DUPLICATES:
+                String pairMember = uri.getQueryParameter(MemberContract.QUERY_PARAMETER_MEMBER);
+                if (pairMember != null) {
+                    selection = appendSelection(selection, "(" + DuplicateEntry.COLUMN_MEMBER_ID
+                            + "=? OR " + DuplicateEntry.COLUMN_DUPLICATE_ID + "=?)");
+                    String memberId = String.valueOf(parseNonNegative(pairMember, uri));
+                    selectionArgs = appendSelectionArg(appendSelectionArg(selectionArgs, memberId),
+                            memberId);
+                }
+                if (sortOrder == null) {
+                    sortOrder = DuplicateEntry.COLUMN_SCORE + " DESC";
+                }
+                cursor = database.query(DuplicateEntry.TABLE_NAME, projection, selection,
+                        selectionArgs, null, null, sortOrder, buildLimit(uri));
+                break;
+            case MEMBERS_JOINED:
+                // A range scan over the admission date index
+                String from = uri.getQueryParameter(MemberContract.QUERY_PARAMETER_FROM);
+                if (from != null) {
+                    selection = appendSelection(selection, MemberEntry.COLUMN_MEMBER_DATE + ">=?");
+                    selectionArgs = appendSelectionArg(selectionArgs,
+                            String.valueOf(parseDay(from, uri)));
+                }
+                String to = uri.getQueryParameter(MemberContract.QUERY_PARAMETER_TO);
+                if (to != null) {
+                    selection = appendSelection(selection, MemberEntry.COLUMN_MEMBER_DATE + "<?");
+                    selectionArgs = appendSelectionArg(selectionArgs,
+                            String.valueOf(parseDay(to, uri)));
+                }
+                if (sortOrder == null) {
+                    sortOrder = MemberEntry.COLUMN_MEMBER_DATE + " ASC";
+                }
+                cursor = database.query(MemberEntry.TABLE_NAME, projection, selection, selectionArgs,
+                        null, null, sortOrder, buildLimit(uri));
+                break;
+            case MEMBER_STATS:
+                cursor = mStats.toCursor(projection);
+                break;
+            case MEMBER_SLOW_QUERIES:
+                cursor = mSlowLog.toCursor(projection);
+                break;
+            case MEMBER_AGGREGATE:
+                cursor = mAggregates.query(database, uri, selection, selectionArgs);
+                break;
+            case CHECK_INS:
+                // Check-ins still waiting in memory are committed first, here and below
+                mCheckIns.commit();
+                cursor = database.query(CheckInEntry.TABLE_NAME, projection, selection,
+                        selectionArgs, null, null, sortOrder, buildLimit(uri));
+                break;
+            case CHECK_IN_ID:
+                mCheckIns.commit();
+                selection = CheckInEntry._ID + "=?";
+                selectionArgs = new String[]{String.valueOf(ContentUris.parseId(uri))};
+                cursor = database.query(CheckInEntry.TABLE_NAME, projection, selection,
+                        selectionArgs, null, null, sortOrder);
+                break;
+            case CHECK_INS_PRESENT:
+                mCheckIns.commit();
+                // Only the recent end of the time index is read, however long the history
+                selection = appendSelection(selection, CheckInEntry.COLUMN_TIME_IN + ">=? AND "
+                        + CheckInEntry.COLUMN_TIME_OUT + " IS NULL");
+                selectionArgs = appendSelectionArg(selectionArgs, String.valueOf(
+                        System.currentTimeMillis() - CheckInEntry.PRESENT_WINDOW_MILLIS));
+                if (sortOrder == null) {
+                    sortOrder = CheckInEntry.COLUMN_TIME_IN + " DESC";
+                }
+                cursor = database.query(CheckInEntry.TABLE_NAME, projection, selection,
+                        selectionArgs, null, null, sortOrder, buildLimit(uri));
+                break;
+            case CHECK_IN_VISITS:
+                mCheckIns.commit();
+                // A range of the time index, or of the member index for a single member
+                String member = uri.getQueryParameter(MemberContract.QUERY_PARAMETER_MEMBER);
+                if (member != null) {
+                    selection = appendSelection(selection, CheckInEntry.COLUMN_MEMBER_ID + "=?");
+                    selectionArgs = appendSelectionArg(selectionArgs,
+                            String.valueOf(parseTime(member, uri)));
+                }
+                String since = uri.getQueryParameter(MemberContract.QUERY_PARAMETER_FROM);
+                if (since != null) {
+                    selection = appendSelection(selection, CheckInEntry.COLUMN_TIME_IN + ">=?");
+                    selectionArgs = appendSelectionArg(selectionArgs,
+                            String.valueOf(parseTime(since, uri)));
+                }
+                String until = uri.getQueryParameter(MemberContract.QUERY_PARAMETER_TO);
+                if (until != null) {
+                    selection = appendSelection(selection, CheckInEntry.COLUMN_TIME_IN + "<?");
+                    selectionArgs = appendSelectionArg(selectionArgs,
+                            String.valueOf(parseTime(until, uri)));
+                }
+                if (sortOrder == null) {
+                    sortOrder = CheckInEntry.COLUMN_VISITS + " DESC";
+                }
+                cursor = database.query(CheckInEntry.TABLE_NAME, VISITS_COLUMNS, selection,
+                        selectionArgs, CheckInEntry.COLUMN_MEMBER_ID, null, sortOrder,
+                        buildLimit(uri));
+                break;
+            case HISTORY:
+                // Only the monthly tables within the URI's time bounds are read
+                cursor = mHistory.query(database, uri, -1, projection, selection, selectionArgs,
+                        sortOrder, buildLimit(uri));
+                break;
+            case HISTORY_ID:
+                cursor = mHistory.query(database, uri, ContentUris.parseId(uri), projection,
+                        selection, selectionArgs, sortOrder, null);
+                break;
             default:
                 throw new IllegalArgumentException("Cannot query unknown URI " + uri);
         }
-        // Setting up the notificationUri method
-        cursor.setNotificationUri(getContext().getContentResolver(), uri);
+        // Setting up the notificationUri method. Searches, date ranges and statistics are not
+        // under a member's row URI, so they watch the whole members URI for changes; check-in
+        // lists watch the whole check-ins URI.
+        Uri notificationUri;
+        switch (match) {
+            case MEMBER_SEARCH:
+            case MEMBER_FUZZY:
+            case MEMBER_DUPLICATES:
+            case MEMBERS_JOINED:
+            case MEMBER_AGGREGATE:
+                notificationUri = MemberEntry.CONTENT_URI;
+                break;
+            case CHECK_INS_PRESENT:
+            case CHECK_IN_VISITS:
+                notificationUri = CheckInEntry.CONTENT_URI;
+                break;
+            default:
+                notificationUri = uri;
+                break;
+        }
+        cursor.setNotificationUri(getContext().getContentResolver(), notificationUri);
 
+        // Counting runs the query now rather than on the caller's first read, so the
+        // recorded time covers the real work; nearly every caller asks for the count anyway
+        int rows = cursor.getCount();
+        long nanos = mStats.record(MemberStats.OP_QUERY, match, start, rows, 0);
+        if (mSlowLog.isSlow(nanos)) {
+            logSlowQuery(database, match, uri, projection, selection, selectionArgs, sortOrder,
+                    rows, nanos);
+        }
         return cursor;
     }
 
+    /**
+     * Answer a single-member lookup from the cache, loading the complete row into the cache on
+     * a miss. A code is first looked up in the index, so an unknown code is answered without
+     * SQLite unless a write that may add it is under way. Returns null if the member does not
+     * exist or the projection can't be served from a cached row; the caller then queries the
+     * database as usual.
+     */
+    private Cursor queryCachedMember(SQLiteDatabase database, String[] projection, String column,
+                                     String value) {
+        ContentValues row;
+        try {
+            if (MemberEntry._ID.equals(column)) {
+                row = readMember(database, column, value);
+            } else {
+                if (mUniqueCodes == null) {
+                    mUniqueCodes = MemberMigrations.hasUniqueCodes(database);
+                }
+                if (!mUniqueCodes) {
+                    // A repeated code may match several members
+                    return null;
+                }
+                int code = Integer.parseInt(value);
+                long id = mIndex.findByCode(code);
+                if (id == MemberIndex.ABSENT) {
+                    return MemberCache.toCursor(new ContentValues[0], projection);
+                }
+                row = id == MemberIndex.UNKNOWN
+                        ? readMember(database, column, value)
+                        : readMember(database, MemberEntry._ID, String.valueOf(id));
+                // The index may be a write behind the row; let the database decide
+                if (row != null && code != row.getAsInteger(MemberEntry.COLUMN_MEMBER_CODE)) {
+                    return null;
+                }
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        return row == null ? null : MemberCache.toCursor(row, projection);
+    }
+
+    /**
+     * Answer a lookup by phone from the index, reading each member's row through the cache.
+     * Returns null if the index is not loaded, disagrees with a row, or the projection can't be
+     * served from cached rows; the caller then queries the database as usual.
+     */
+    private Cursor queryIndexedPhone(SQLiteDatabase database, String[] projection, String phone) {
+        long[] ids = mIndex.findByPhone(phone);
+        if (ids == null) {
+            return null;
+        }
+        Arrays.sort(ids);
+        ContentValues[] rows = new ContentValues[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            rows[i] = readMember(database, MemberEntry._ID, String.valueOf(ids[i]));
+            if (rows[i] == null
+                    || !phone.equals(rows[i].getAsString(MemberEntry.COLUMN_MEMBER_PHONE))) {
+                return null;
+            }
+        }
+        return MemberCache.toCursor(rows, projection);
+    }
+
+    /**
+     * Return the complete row of the member with the given _ID or code from the cache, loading
+     * it into the cache on a miss, or null if there is no such member.
+     */
+    private ContentValues readMember(SQLiteDatabase database, String column, String value) {
+        ContentValues row = MemberEntry._ID.equals(column)
+                ? mCache.get(Long.parseLong(value))
+                : mCache.getByCode(Integer.parseInt(value));
+        if (row == null) {
+            long generation = mCache.generation();
+            Cursor cursor = MemberEntry._ID.equals(column)
+                    ? MemberStatements.queryById(database, value)
+                    : MemberStatements.queryByCode(database, value);
+            try {
+                if (!cursor.moveToFirst()) {
+                    return null;
+                }
+                row = MemberCache.readRow(cursor);
+            } finally {
+                cursor.close();
+            }
+            mCache.put(row, generation);
+        }
+        return row;
+    }
+
+    /**
+     * Return the calling thread's compiled statements for the given database, compiling them
+     * on first use or after the database was reopened.
+     */
+    private MemberStatements statements(SQLiteDatabase database) {
+        MemberStatements statements = mStatements.get();
+        if (statements == null || !statements.isFor(database)) {
+            if (statements != null) {
+                statements.close();
+            }
+            statements = new MemberStatements(database);
+            mStatements.set(statements);
+        }
+        return statements;
+    }
+
+    /**
+     * Find the _IDs of the members a write with the given selection is about to touch, for
+     * cache invalidation and change notifications. Returns null for a write to the whole
+     * table, where the whole cache is dropped and the members URI notified instead.
+     */
+    private long[] findAffectedIds(SQLiteDatabase database, String selection,
+                                   String[] selectionArgs) {
+        if (selection == null) {
+            return null;
+        }
+        Cursor cursor = database.query(MemberEntry.TABLE_NAME, new String[]{MemberEntry._ID},
+                selection, selectionArgs, null, null, null);
+        try {
+            long[] ids = new long[cursor.getCount()];
+            for (int i = 0; cursor.moveToNext(); i++) {
+                ids[i] = cursor.getLong(0);
+            }
+            return ids;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Drop the rows a write touched from the cache, once the write is done. With null ids the
+     * whole cache is dropped.
+     */
+    private void invalidateCache(long[] ids) {
+        if (ids == null) {
+            mCache.invalidateAll();
+        } else {
+            mCache.invalidate(ids);
+        }
+    }
+
+    /**
+     * Record the new code, phone or names of the members a write touched in the in-memory
+     * indexes. With null ids the indexes concerned are reloaded. Inside a batch nothing is
+     * recorded: the batch may still roll back, and the indexes are reloaded once it ends.
+     */
+    private void updateIndexes(long[] ids, ContentValues values) {
+        if (mBatchChanges.get() != null) {
+            return;
+        }
+        if (values.containsKey(MemberEntry.COLUMN_MEMBER_CODE)
+                || values.containsKey(MemberEntry.COLUMN_MEMBER_PHONE)) {
+            Integer code = values.getAsInteger(MemberEntry.COLUMN_MEMBER_CODE);
+            String phone = values.getAsString(MemberEntry.COLUMN_MEMBER_PHONE);
+            if (ids == null) {
+                mIndex.invalidate();
+            } else {
+                for (long id : ids) {
+                    mIndex.update(id, code, phone);
+                }
+            }
+        }
+        if (values.containsKey(MemberEntry.COLUMN_MEMBER_NAME)
+                || values.containsKey(MemberEntry.COLUMN_MEMBER_FATHER_NAME)) {
+            String name = values.getAsString(MemberEntry.COLUMN_MEMBER_NAME);
+            String fatherName = values.getAsString(MemberEntry.COLUMN_MEMBER_FATHER_NAME);
+            if (ids == null) {
+                mTrigrams.invalidate();
+            } else {
+                for (long id : ids) {
+                    mTrigrams.update(id, name, fatherName);
+                }
+            }
+        }
+    }
+
+    /**
+     * Remove deleted members from the in-memory indexes, like
+     * {@link #updateIndexes(long[], ContentValues)}.
+     */
+    private void removeFromIndexes(long[] ids) {
+        if (mBatchChanges.get() != null) {
+            return;
+        }
+        if (ids == null) {
+            mIndex.invalidate();
+            mTrigrams.invalidate();
+        } else {
+            mIndex.remove(ids);
+            mTrigrams.remove(ids);
+        }
+    }
+
+    /**
+     * Search the FTS index for members whose name, father name or phone start with each word of
+     * the given text. The caller's selection is applied on top of the match.
+     */
+    private Cursor searchMembers(SQLiteDatabase database, String text, String[] projection,
+                                 String selection, String[] selectionArgs, String sortOrder,
+                                 String limit) {
+        String match = buildMatchExpression(text);
+        if (match == null) {
+            // Nothing searchable in the text, so nothing matches
+            return database.query(MemberEntry.TABLE_NAME, projection, "0", null, null, null, null);
+        }
+
+        // The MATCH argument comes first since it appears in the FROM clause
+        String[] args = prependSelectionArg(match, selectionArgs);
+
+        SQLiteQueryBuilder builder = new SQLiteQueryBuilder();
+        builder.setTables(SEARCH_TABLES);
+        return builder.query(database, projection, selection, args, null, null,
+                sortOrder == null ? SEARCH_SORT_ORDER : sortOrder, limit);
+    }
+
+    /**
+     * Rank members by the similarity of their names to the last path segment in the trigram
+     * index, then read the best {@link MemberContract#QUERY_PARAMETER_LIMIT} of them by _ID.
+     * The caller's selection is applied on top of those candidates. The similarity is
+     * returned as {@link MemberEntry#COLUMN_SIMILARITY} and orders the rows by default.
+     */
+    private Cursor fuzzySearchMembers(SQLiteDatabase database, Uri uri, String[] projection,
+                                      String selection, String[] selectionArgs,
+                                      String sortOrder) {
+        String limit = uri.getQueryParameter(MemberContract.QUERY_PARAMETER_LIMIT);
+        int count = limit == null ? MemberTrigrams.DEFAULT_LIMIT
+                : (int) Math.min(parseNonNegative(limit, uri), MemberTrigrams.MAX_LIMIT);
+        MemberTrigrams.Result result = mTrigrams.search(uri.getLastPathSegment(), count);
+        if (result == null) {
+            // The trigram index is still loading; rank what the full-text index finds instead
+            result = rankSearchCandidates(database, uri.getLastPathSegment(), count);
+        }
+
+        // The similarities are our own numbers, so they go into the SQL as literals
+        StringBuilder similarity = new StringBuilder("CASE ").append(MemberEntry._ID);
+        StringBuilder ids = new StringBuilder();
+        for (int i = 0; i < result.ids.length; i++) {
+            similarity.append(" WHEN ").append(result.ids[i])
+                    .append(" THEN ").append(result.similarities[i]);
+            ids.append(i == 0 ? "" : ",").append(result.ids[i]);
+        }
+        String similarityColumn = result.ids.length == 0 ? "0"
+                : similarity.append(" END").toString();
+
+        String[] columns;
+        if (projection == null) {
+            columns = Arrays.copyOf(MemberCache.ALL_COLUMNS, MemberCache.ALL_COLUMNS.length + 1);
+            columns[columns.length - 1] = similarityColumn + " AS " + MemberEntry.COLUMN_SIMILARITY;
+        } else {
+            columns = projection.clone();
+            for (int i = 0; i < columns.length; i++) {
+                if (MemberEntry.COLUMN_SIMILARITY.equals(columns[i])) {
+                    columns[i] = similarityColumn + " AS " + MemberEntry.COLUMN_SIMILARITY;
+                }
+            }
+        }
+        selection = appendSelection(selection, result.ids.length == 0 ? "0"
+                : MemberEntry._ID + " IN (" + ids + ")");
+        if (sortOrder == null) {
+            sortOrder = similarityColumn + " DESC, " + MemberEntry._ID;
+        }
+        return database.query(MemberEntry.TABLE_NAME, columns, selection, selectionArgs, null,
+                null, sortOrder);
+    }
+
+    /**
+     * Rank the members the full-text index finds for any word of the text by trigram
+     * similarity, for fuzzy searches while the trigram index is not loaded. Only names that
+     * start like one of the words are found this way, so typos early in a word are missed.
+     */
+    private static MemberTrigrams.Result rankSearchCandidates(SQLiteDatabase database,
+                                                              String text, int limit) {
+        String match = buildMatchExpression(text);
+        if (match == null) {
+            return MemberTrigrams.rank(text, new long[0], new String[0], new String[0], limit);
+        }
+        SQLiteQueryBuilder builder = new SQLiteQueryBuilder();
+        builder.setTables(SEARCH_TABLES);
+        Cursor cursor = builder.query(database, new String[]{
+                        MemberEntry.TABLE_NAME + "." + MemberEntry._ID,
+                        MemberEntry.COLUMN_MEMBER_NAME, MemberEntry.COLUMN_MEMBER_FATHER_NAME},
+                null, new String[]{match.replace(" ", " OR ")}, null, null, SEARCH_SORT_ORDER,
+                String.valueOf(FUZZY_FALLBACK_CANDIDATES));
+        try {
+            int count = cursor.getCount();
+            long[] ids = new long[count];
+            String[] names = new String[count];
+            String[] fatherNames = new String[count];
+            for (int i = 0; cursor.moveToNext(); i++) {
+                ids[i] = cursor.getLong(0);
+                names[i] = cursor.getString(1);
+                fatherNames[i] = cursor.getString(2);
+            }
+            return MemberTrigrams.rank(text, ids, names, fatherNames, limit);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Log a query that went over the slow statement threshold, rebuilding the SQL it ran from
+     * the final selection and sort order.
+     */
+    private void logSlowQuery(SQLiteDatabase database, int match, Uri uri, String[] projection,
+                              String selection, String[] selectionArgs, String sortOrder,
+                              long rows, long nanos) {
+        String sql;
+        String[] args = selectionArgs;
+        switch (match) {
+            case MEMBERS:
+            case MEMBERS_JOINED:
+                sql = SQLiteQueryBuilder.buildQueryString(false, MemberEntry.TABLE_NAME,
+                        projection, selection, null, null, sortOrder, buildLimit(uri));
+                break;
+            case MEMBER_ID:
+                sql = SQLiteQueryBuilder.buildQueryString(false, MemberEntry.TABLE_NAME,
+                        projection, selection, null, null, sortOrder, null);
+                break;
+            case CHECK_INS:
+            case CHECK_INS_PRESENT:
+                sql = SQLiteQueryBuilder.buildQueryString(false, CheckInEntry.TABLE_NAME,
+                        projection, selection, null, null, sortOrder, buildLimit(uri));
+                break;
+            case MEMBER_DUPLICATES:
+                sql = SQLiteQueryBuilder.buildQueryString(false, DuplicateEntry.TABLE_NAME,
+                        projection, selection, null, null, sortOrder, buildLimit(uri));
+                break;
+            case CHECK_IN_ID:
+                sql = SQLiteQueryBuilder.buildQueryString(false, CheckInEntry.TABLE_NAME,
+                        projection, selection, null, null, sortOrder, null);
+                break;
+            case CHECK_IN_VISITS:
+                sql = SQLiteQueryBuilder.buildQueryString(false, CheckInEntry.TABLE_NAME,
+                        VISITS_COLUMNS, selection, CheckInEntry.COLUMN_MEMBER_ID, null, sortOrder,
+                        buildLimit(uri));
+                break;
+            case MEMBER_SEARCH:
+                String matchExpression = buildMatchExpression(uri.getLastPathSegment());
+                if (matchExpression == null) {
+                    return;
+                }
+                sql = SQLiteQueryBuilder.buildQueryString(false, SEARCH_TABLES, projection,
+                        selection, null, null, sortOrder == null ? SEARCH_SORT_ORDER : sortOrder,
+                        buildLimit(uri));
+                args = prependSelectionArg(matchExpression, selectionArgs);
+                break;
+            default:
+                // The provider's own diagnostics are not SQL, history queries are built per
+                // month by MemberHistory, and fuzzy searches are ranked in memory
+                return;
+        }
+        mSlowLog.add(database, "query", sql, sql, args, rows, nanos);
+    }
+
+    /**
+     * Log an update or delete that went over the slow statement threshold. The plan shown is
+     * the one for finding the rows, which is where a missing index hurts.
+     */
+    private void logSlowWrite(SQLiteDatabase database, String operation, String table,
+                              String sql, String selection, String[] selectionArgs, long rows,
+                              long nanos) {
+        String planSql = SQLiteQueryBuilder.buildQueryString(false, table,
+                new String[]{BaseColumns._ID}, selection, null, null, null, null);
+        mSlowLog.add(database, operation, sql, planSql, selectionArgs, rows, nanos);
+    }
+
+    /**
+     * Build the SQL of an update with the given values, for the slow statement log.
+     */
+    private static String buildUpdateSql(String table, ContentValues values, String selection) {
+        StringBuilder sql = new StringBuilder("UPDATE ").append(table).append(" SET ");
+        boolean first = true;
+        for (String column : values.keySet()) {
+            sql.append(first ? "" : ", ").append(column).append("=?");
+            first = false;
+        }
+        if (selection != null && !selection.isEmpty()) {
+            sql.append(" WHERE ").append(selection);
+        }
+        return sql.toString();
+    }
+
+    /**
+     * Build the LIMIT clause for the paging parameters of the given URI, or null if it asks for
+     * every row.
+     */
+    private static String buildLimit(Uri uri) {
+        String limit = uri.getQueryParameter(MemberContract.QUERY_PARAMETER_LIMIT);
+        if (limit == null) {
+            return null;
+        }
+        String clause = String.valueOf(parseNonNegative(limit, uri));
+        String offset = uri.getQueryParameter(MemberContract.QUERY_PARAMETER_OFFSET);
+        if (offset != null) {
+            clause += " OFFSET " + parseNonNegative(offset, uri);
+        }
+        return clause;
+    }
+
+    /**
+     * Parse a paging parameter. Anything but a non-negative number is rejected, so the value
+     * can safely be placed into the SQL.
+     */
+    private static long parseNonNegative(String value, Uri uri) {
+        long number;
+        try {
+            number = Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid paging parameter " + value + " in " + uri);
+        }
+        if (number < 0) {
+            throw new IllegalArgumentException("Invalid paging parameter " + value + " in " + uri);
+        }
+        return number;
+    }
+
+    /**
+     * Parse a time bound in milliseconds since the epoch, or a member _ID.
+     */
+    private static long parseTime(String value, Uri uri) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid number " + value + " in " + uri);
+        }
+    }
+
+    /**
+     * Parse a date bound given in days since 01/01/1970.
+     */
+    private static long parseDay(String value, Uri uri) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid date " + value + " in " + uri);
+        }
+    }
+
+    /**
+     * AND an extra condition onto the caller's selection.
+     */
+    private static String appendSelection(String selection, String condition) {
+        if (selection == null || selection.isEmpty()) {
+            return condition;
+        }
+        return "(" + selection + ") AND " + condition;
+    }
+
+    /**
+     * Put an argument in front of the caller's selection arguments.
+     */
+    private static String[] prependSelectionArg(String arg, String[] selectionArgs) {
+        if (selectionArgs == null) {
+            return new String[]{arg};
+        }
+        String[] args = new String[selectionArgs.length + 1];
+        args[0] = arg;
+        System.arraycopy(selectionArgs, 0, args, 1, selectionArgs.length);
+        return args;
+    }
+
+    /**
+     * Append an argument to the caller's selection arguments.
+     */
+    private static String[] appendSelectionArg(String[] selectionArgs, String arg) {
+        if (selectionArgs == null) {
+            return new String[]{arg};
+        }
+        String[] args = new String[selectionArgs.length + 1];
+        System.arraycopy(selectionArgs, 0, args, 0, selectionArgs.length);
+        args[selectionArgs.length] = arg;
+        return args;
+    }
+
+    /**
+     * Turn free text into an FTS match expression of prefix terms, e.g. "ram  98" becomes
+     * "ram* 98*". Characters with a meaning in the FTS query syntax are dropped. Returns null
+     * if no terms are left.
+     */
+    private static String buildMatchExpression(String text) {
+        if (text == null) {
+            return null;
+        }
+        StringBuilder match = new StringBuilder();
+        for (String word : text.split("\\s+")) {
+            StringBuilder term = new StringBuilder();
+            for (int i = 0; i < word.length(); i++) {
+                char c = word.charAt(i);
+                if (Character.isLetterOrDigit(c)) {
+                    term.append(c);
+                }
+            }
+            if (term.length() > 0) {
+                if (match.length() > 0) {
+                    match.append(' ');
+                }
+                // Lower case so words like OR and NOT are never read as operators
+                match.append(term.toString().toLowerCase(Locale.ROOT)).append('*');
+            }
+        }
+        return match.length() == 0 ? null : match.toString();
+    }
+
     /**
      * Insert new data into the provider with the given ContentValues.
      */
     @Override
     public Uri insert(Uri uri, ContentValues contentValues) {
+        long start = System.nanoTime();
         final int match = sUriMatcher.match(uri);
         switch (match) {
             case MEMBERS:
-                return insertMember(uri, contentValues);
+                Uri newUri;
+                mIndex.beginWrite();
+                try {
+                    newUri = insertMember(uri, contentValues);
+                } finally {
+                    mIndex.endWrite();
+                }
+                boolean inserted = ContentUris.parseId(newUri) != -1;
+                mStats.record(MemberStats.OP_INSERT, match, start, inserted ? 1 : 0, ownTransactions());
+                return newUri;
+            case CHECK_INS:
+                // Buffered: nothing is written until the group commits
+                long id = mCheckIns.append(validateCheckIn(contentValues),
+                        checkInTime(contentValues));
+                mStats.record(MemberStats.OP_INSERT, match, start, 1, 0);
+                return ContentUris.withAppendedId(CheckInEntry.CONTENT_URI, id);
+            case HISTORY:
+                Uri historyUri = insertHistory(contentValues);
+                mStats.record(MemberStats.OP_INSERT, match, start, 1, ownTransactions());
+                return historyUri;
             default:
                 throw new IllegalArgumentException("Insertion is not supported for " + uri);
         }
@@ -131,10 +1033,58 @@ public class MemberProvider extends ContentProvider {
      * for that specific row in the database.
      */
     private Uri insertMember(Uri uri, ContentValues values) {
-
-        // TODO: Insert a new pet into the members database table with the given ContentValues
         // Get writable database
         SQLiteDatabase database = mDbHelper.getWritableDatabase();
+        // Make sure every required attribute is present and sane
+        validateMember(values);
+        // inserting values to database; the usual complete member goes through the
+        // compiled insert. The member, its first weighing and its duplicate keys and pairs are
+        // written in one transaction.
+        long id;
+        database.beginTransaction();
+        try {
+            id = MemberStatements.isCompleteMember(values)
+                    ? statements(database).insert(values)
+                    : database.insert(MemberEntry.TABLE_NAME, null, values);
+            if (id != -1) {
+                recordWeights(database, new long[]{id},
+                        new long[]{values.getAsLong(MemberEntry.COLUMN_MEMBER_WEIGHT)});
+                // Pairs it forms with members already there go into the duplicates report
+                MemberDuplicates.record(database, id,
+                        values.getAsString(MemberEntry.COLUMN_MEMBER_NAME),
+                        values.getAsString(MemberEntry.COLUMN_MEMBER_FATHER_NAME),
+                        values.getAsString(MemberEntry.COLUMN_MEMBER_PHONE));
+            }
+            // A rejected insert wrote nothing, and must not fail a batch around it
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+        // if id = -1, log insert failed to log
+        if (id == -1) {
+            Log.e(LOG_TAG, "insertMember: insert fail");
+        } else {
+            if (mBatchChanges.get() == null) {
+                mIndex.put(id, values.getAsInteger(MemberEntry.COLUMN_MEMBER_CODE),
+                        values.getAsString(MemberEntry.COLUMN_MEMBER_PHONE));
+                mTrigrams.put(id, values.getAsString(MemberEntry.COLUMN_MEMBER_NAME),
+                        values.getAsString(MemberEntry.COLUMN_MEMBER_FATHER_NAME));
+            }
+            // Notify all the users that the new member's URI has changed
+            notifyChange(ContentUris.withAppendedId(MemberEntry.CONTENT_URI, id));
+            notifyChange(HistoryEntry.CONTENT_URI);
+        }
+        // Once we know the ID of the new row in the table,
+        // return the new URI with the ID appended to the end of it
+        return ContentUris.withAppendedId(uri, id);
+    }
+
+    /**
+     * Check that the given content values describe a complete member. Throws an
+     * {@link IllegalArgumentException} naming the first attribute that is missing or invalid.
+     * Importers in this package run it on each row before batching it.
+     */
+    static void validateMember(ContentValues values) {
         // Check that the name is not null
         String name = values.getAsString(MemberEntry.COLUMN_MEMBER_NAME);
         if (name == null) {
@@ -155,27 +1105,250 @@ public class MemberProvider extends ContentProvider {
         if (phone == null) {
             throw new IllegalArgumentException("Member requires a phone");
         }
-        // Check that the date is not null
-        String date = values.getAsString(MemberEntry.COLUMN_MEMBER_DATE);
+        // Check that the date is a day count
+        Long date = values.getAsLong(MemberEntry.COLUMN_MEMBER_DATE);
         if (date == null) {
             throw new IllegalArgumentException("Member requires a date");
         }
-        // Check that the father name is not null
+        // Check that the weight is not null
         Integer weight = values.getAsInteger(MemberEntry.COLUMN_MEMBER_WEIGHT);
         if (weight == null || weight <= 0) {
             throw new IllegalArgumentException("Member requires a weight and weight must be non-negative");
         }
-        // inserting values to database
-        long id = database.insert(MemberEntry.TABLE_NAME, null, values);
-        // if id = -1, log insert failed to log
-        if (id == -1) {
-            Log.e(null, "insertMember: insert fail");
+    }
+
+    /**
+     * Add a record to the member history. Throws an {@link IllegalArgumentException} for
+     * incomplete values or a month that has been archived.
+     */
+    private Uri insertHistory(ContentValues values) {
+        Long memberId = values.getAsLong(HistoryEntry.COLUMN_MEMBER_ID);
+        if (memberId == null || memberId <= 0) {
+            throw new IllegalArgumentException("History record requires a member _ID");
+        }
+        String kind = values.getAsString(HistoryEntry.COLUMN_KIND);
+        if (kind == null || kind.isEmpty()) {
+            throw new IllegalArgumentException("History record requires a kind");
+        }
+        Long time = values.getAsLong(HistoryEntry.COLUMN_TIME);
+        if (values.containsKey(HistoryEntry.COLUMN_TIME) && time == null) {
+            throw new IllegalArgumentException("History record requires a valid time");
+        }
+        Long value = values.getAsLong(HistoryEntry.COLUMN_VALUE);
+        if (values.get(HistoryEntry.COLUMN_VALUE) != null && value == null) {
+            throw new IllegalArgumentException("History value must be a number");
+        }
+        long id = mHistory.insert(mDbHelper.getWritableDatabase(), memberId,
+                time == null ? System.currentTimeMillis() : time, kind, value);
+        Uri uri = ContentUris.withAppendedId(HistoryEntry.CONTENT_URI, id);
+        notifyChange(uri);
+        return uri;
+    }
+
+    /**
+     * Record a weighing of each of the given members, with the weight at the same index, in
+     * their history. The caller notifies the history URI once its transaction commits.
+     */
+    private void recordWeights(SQLiteDatabase database, long[] ids, long[] weights) {
+        mHistory.insertAll(database, ids, System.currentTimeMillis(), HistoryEntry.KIND_WEIGHT,
+                weights);
+    }
+
+    /**
+     * Check that the given content values describe a new check-in, returning the member _ID.
+     * The member is not looked up here, to keep the turnstile fast; a check-in of a member who
+     * does not exist is dropped when its group commits.
+     */
+    private static long validateCheckIn(ContentValues values) {
+        Long memberId = values.getAsLong(CheckInEntry.COLUMN_MEMBER_ID);
+        if (memberId == null || memberId <= 0) {
+            throw new IllegalArgumentException("Check-in requires a member _ID");
+        }
+        if (values.containsKey(CheckInEntry.COLUMN_TIME_IN)
+                && values.getAsLong(CheckInEntry.COLUMN_TIME_IN) == null) {
+            throw new IllegalArgumentException("Check-in requires a valid time");
+        }
+        if (values.containsKey(CheckInEntry.COLUMN_TIME_OUT)) {
+            throw new IllegalArgumentException("A new check-in can't be checked out yet");
+        }
+        return memberId;
+    }
+
+    /**
+     * Return the check-in time of validated values, now if they give none.
+     */
+    private static long checkInTime(ContentValues values) {
+        Long time = values.getAsLong(CheckInEntry.COLUMN_TIME_IN);
+        return time == null ? System.currentTimeMillis() : time;
+    }
+
+    /**
+     * Insert many members in a single transaction through the compiled insert. Every row is
+     * validated like {@link #insertMember(Uri, ContentValues)}; if any row is rejected, e.g. for
+     * a code that is already taken, nothing is written and 0 is returned. Each member's weight
+     * goes into its history in the same transaction. Listeners of the members and of the
+     * history are notified once each, after the batch commits.
+     */
+    @Override
+    public int bulkInsert(Uri uri, ContentValues[] values) {
+        long start = System.nanoTime();
+        final int match = sUriMatcher.match(uri);
+        if (match == CHECK_INS) {
+            // A burst from the turnstile, e.g. after it was offline: validate all, then buffer
+            for (ContentValues row : values) {
+                validateCheckIn(row);
+            }
+            for (ContentValues row : values) {
+                mCheckIns.append(row.getAsLong(CheckInEntry.COLUMN_MEMBER_ID), checkInTime(row));
+            }
+            mStats.record(MemberStats.OP_BULK_INSERT, match, start, values.length, 0);
+            return values.length;
+        }
+        if (match != MEMBERS) {
+            throw new IllegalArgumentException("Insertion is not supported for " + uri);
+        }
+
+        // Validate everything up front so a bad row can't leave half a batch behind
+        for (ContentValues row : values) {
+            validateMember(row);
+        }
+
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+        long[] ids;
+        mIndex.beginWrite();
+        try {
+            // The members, their first weighing and their duplicate keys are written together
+            database.beginTransaction();
+            try {
+                ids = statements(database).insertAll(values);
+                if (ids == null) {
+                    // A taken code: insertAll rolled back, and the transaction goes with it
+                    Log.e(LOG_TAG, "bulkInsert: batch of " + values.length + " rejected");
+                    mStats.record(MemberStats.OP_BULK_INSERT, match, start, 0, 1);
+                    return 0;
+                }
+                long[] weights = new long[ids.length];
+                for (int i = 0; i < ids.length; i++) {
+                    weights[i] = values[i].getAsLong(MemberEntry.COLUMN_MEMBER_WEIGHT);
+                }
+                recordWeights(database, ids, weights);
+                // Only the keys: scoring pairs per row would make a large import quadratic, so
+                // the new members are paired by the next duplicates pass
+                MemberDuplicates.recordKeys(database, ids, values);
+                database.setTransactionSuccessful();
+            } finally {
+                database.endTransaction();
+            }
+            // The new ids are known, so the indexes take just these rows
+            if (mBatchChanges.get() == null) {
+                for (int i = 0; i < ids.length; i++) {
+                    mIndex.put(ids[i], values[i].getAsInteger(MemberEntry.COLUMN_MEMBER_CODE),
+                            values[i].getAsString(MemberEntry.COLUMN_MEMBER_PHONE));
+                    mTrigrams.put(ids[i], values[i].getAsString(MemberEntry.COLUMN_MEMBER_NAME),
+                            values[i].getAsString(MemberEntry.COLUMN_MEMBER_FATHER_NAME));
+                }
+            }
+        } finally {
+            mIndex.endWrite();
+        }
+        int inserted = ids.length;
+
+        if (inserted > 0) {
+            notifyChange(uri);
+            notifyChange(HistoryEntry.CONTENT_URI);
+        }
+        mStats.record(MemberStats.OP_BULK_INSERT, match, start, inserted, 1);
+        return inserted;
+    }
+
+    /**
+     * Apply a batch of operations inside one transaction. Change notifications from the
+     * individual operations are collected and sent once per URI when the batch commits.
+     */
+    @Override
+    public ContentProviderResult[] applyBatch(ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        long start = System.nanoTime();
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+        ContentProviderResult[] results;
+        ArrayList<Uri> changes = new ArrayList<>();
+        mBatchChanges.set(changes);
+        mIndex.beginWrite();
+        database.beginTransaction();
+        try {
+            results = super.applyBatch(operations);
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+            mBatchChanges.remove();
+            // Rows and statistics cached while the batch was open may predate its writes
+            mCache.invalidateAll();
+            mAggregates.invalidate();
+            mIndex.invalidate();
+            mTrigrams.invalidate();
+            mIndex.endWrite();
+        }
+
+        // The whole batch is announced at once: each changed URI, except that member rows
+        // collapse into the members URI if the batch touched too many to list
+        int memberRows = 0;
+        for (Uri uri : changes) {
+            if (sUriMatcher.match(uri) == MEMBER_ID) {
+                memberRows++;
+            }
+        }
+        boolean collapse = memberRows > MAX_ROW_NOTIFICATIONS;
+        if (collapse) {
+            getContext().getContentResolver().notifyChange(MemberEntry.CONTENT_URI, null);
+        }
+        for (Uri uri : changes) {
+            if (collapse && (uri.equals(MemberEntry.CONTENT_URI)
+                    || sUriMatcher.match(uri) == MEMBER_ID)) {
+                continue;
+            }
+            getContext().getContentResolver().notifyChange(uri, null);
+        }
+        // The operations themselves are recorded one by one; this counts the whole batch
+        mStats.record(MemberStats.OP_BATCH, UriMatcher.NO_MATCH, start, operations.size(), 1);
+        return results;
+    }
+
+    /**
+     * Transactions a single write commits: its own implicit one, or none inside
+     * {@link #applyBatch(ArrayList)}, whose transaction is counted for the batch.
+     */
+    private int ownTransactions() {
+        return mBatchChanges.get() == null ? 1 : 0;
+    }
+
+    /**
+     * Notify listeners that the given URI changed. Inside {@link #applyBatch(ArrayList)} the
+     * URI is only recorded, and the batch notifies once after committing.
+     */
+    private void notifyChange(Uri uri) {
+        ArrayList<Uri> changes = mBatchChanges.get();
+        if (changes == null) {
+            // Every write that changed something ends up here, so cached statistics go too
+            mAggregates.invalidate();
+            getContext().getContentResolver().notifyChange(uri, null);
+        } else if (!changes.contains(uri)) {
+            changes.add(uri);
+        }
+    }
+
+    /**
+     * Notify listeners of the rows a write changed, each by its own URI, so observers can
+     * reload just those rows. Null ids, or more than {@link #MAX_ROW_NOTIFICATIONS} of them,
+     * notify the members URI instead.
+     */
+    private void notifyRows(long[] ids) {
+        if (ids == null || ids.length > MAX_ROW_NOTIFICATIONS) {
+            notifyChange(MemberEntry.CONTENT_URI);
+            return;
+        }
+        for (long id : ids) {
+            notifyChange(ContentUris.withAppendedId(MemberEntry.CONTENT_URI, id));
         }
-        // Notify all the users that content URI has changed
-        getContext().getContentResolver().notifyChange(uri, null);
-        // Once we know the ID of the new row in the table,
-        // return the new URI with the ID appended to the end of it
-        return ContentUris.withAppendedId(uri, id);
     }
 
     /**
@@ -184,26 +1357,54 @@ public class MemberProvider extends ContentProvider {
     @Override
     public int update(Uri uri, ContentValues contentValues, String selection,
                       String[] selectionArgs) {
+        long start = System.nanoTime();
         final int match = sUriMatcher.match(uri);
+        int rows;
         switch (match) {
             case MEMBERS:
-                return updatePet(uri, contentValues, selection, selectionArgs);
+                mIndex.beginWrite();
+                try {
+                    rows = updatePet(uri, contentValues, selection, selectionArgs);
+                } finally {
+                    mIndex.endWrite();
+                }
+                break;
             case MEMBER_ID:
                 // For the PET_ID code, extract out the ID from the URI,
                 // so we know which row to update. Selection will be "_id=?" and selection
                 // arguments will be a String array containing the actual ID.
                 selection = MemberEntry._ID + "=?";
                 selectionArgs = new String[]{String.valueOf(ContentUris.parseId(uri))};
-                return updatePet(uri, contentValues, selection, selectionArgs);
+                mIndex.beginWrite();
+                try {
+                    rows = updatePet(uri, contentValues, selection, selectionArgs);
+                } finally {
+                    mIndex.endWrite();
+                }
+                break;
+            case CHECK_IN_ID:
+                selection = CheckInEntry._ID + "=?";
+                selectionArgs = new String[]{String.valueOf(ContentUris.parseId(uri))};
+                rows = updateCheckIn(uri, contentValues, selection, selectionArgs);
+                break;
             default:
                 throw new IllegalArgumentException("Update is not supported for " + uri);
         }
+        long nanos = mStats.record(MemberStats.OP_UPDATE, match, start, rows, ownTransactions());
+        if (mSlowLog.isSlow(nanos)) {
+            String table = match == CHECK_IN_ID ? CheckInEntry.TABLE_NAME : MemberEntry.TABLE_NAME;
+            logSlowWrite(mDbHelper.getReadableDatabase(), "update", table,
+                    buildUpdateSql(table, contentValues, selection), selection, selectionArgs,
+                    rows, nanos);
+        }
+        return rows;
     }
 
     /**
      * Update members in the database with the given content values. Apply the changes to the rows
      * specified in the selection and selection arguments (which could be 0 or 1 or more members).
-     * Return the number of rows that were successfully updated.
+     * Return the number of rows that were successfully updated, 0 if the update was rejected
+     * because it would give a member a code another member holds.
      */
     private int updatePet(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
 
@@ -242,56 +1443,203 @@ public class MemberProvider extends ContentProvider {
             }
         }
         if (values.containsKey(MemberEntry.COLUMN_MEMBER_DATE)) {
-            // Check that the date is not null
-            String date = values.getAsString(MemberEntry.COLUMN_MEMBER_DATE);
+            // Check that the date is a day count
+            Long date = values.getAsLong(MemberEntry.COLUMN_MEMBER_DATE);
             if (date == null) {
                 throw new IllegalArgumentException("Member requires a date");
             }
         }
         if (values.containsKey(MemberEntry.COLUMN_MEMBER_WEIGHT)) {
-            // Check that the father name is not null
-            Integer weight = values.getAsInteger(MemberEntry.COLUMN_MEMBER_FATHER_NAME);
+            // Check that the weight is not null
+            Integer weight = values.getAsInteger(MemberEntry.COLUMN_MEMBER_WEIGHT);
             if (weight == null || weight <= 0) {
                 throw new IllegalArgumentException("Member requires a weight and weight must be non-negative");
             }
         }
 
 
-        // Update row
-        int id = database.update(MemberEntry.TABLE_NAME, values, selection, selectionArgs);
-        // Notify all the users that content URI has changed
-        getContext().getContentResolver().notifyChange(uri, null);
+        // Update row, then drop the old copies of the updated members from the cache. Saving a
+        // whole member by its URI, as the editor does, goes through the compiled update. The
+        // rows, their weight history and their duplicate keys change in one transaction.
+        long[] affectedIds;
+        long[] weighedIds = new long[0];
+        int id;
+        Long weight = values.getAsLong(MemberEntry.COLUMN_MEMBER_WEIGHT);
+        database.beginTransaction();
+        try {
+            if (weight != null) {
+                // The editor saves every column, so only a weight that differs is a weighing
+                weighedIds = findAffectedIds(database,
+                        appendSelection(selection, MemberEntry.COLUMN_MEMBER_WEIGHT + "<>?"),
+                        appendSelectionArg(selectionArgs, String.valueOf(weight)));
+            }
+            if (sUriMatcher.match(uri) == MEMBER_ID && MemberStatements.isCompleteMember(values)) {
+                affectedIds = new long[]{ContentUris.parseId(uri)};
+                id = statements(database).updateById(affectedIds[0], values);
+            } else {
+                affectedIds = findAffectedIds(database, selection, selectionArgs);
+                id = database.update(MemberEntry.TABLE_NAME, values, selection, selectionArgs);
+            }
+            if (id > 0) {
+                if (weighedIds.length > 0) {
+                    long[] weights = new long[weighedIds.length];
+                    Arrays.fill(weights, weight);
+                    recordWeights(database, weighedIds, weights);
+                }
+                if (values.containsKey(MemberEntry.COLUMN_MEMBER_NAME)
+                        || values.containsKey(MemberEntry.COLUMN_MEMBER_FATHER_NAME)
+                        || values.containsKey(MemberEntry.COLUMN_MEMBER_PHONE)) {
+                    if (affectedIds == null) {
+                        MemberDuplicates.reset(database);
+                    } else {
+                        for (long affectedId : affectedIds) {
+                            MemberDuplicates.recordById(database, affectedId);
+                        }
+                    }
+                }
+            }
+            database.setTransactionSuccessful();
+        } catch (SQLiteConstraintException e) {
+            // A code another member holds: like a rejected insert, nothing is written, and a
+            // batch around the update goes on
+            Log.e(LOG_TAG, "updatePet: " + e.getMessage());
+            return 0;
+        } finally {
+            database.endTransaction();
+        }
+        invalidateCache(affectedIds);
+        // Notify all the users of the members that changed
+        if (id > 0) {
+            if (values.containsKey(MemberEntry.COLUMN_MEMBER_CODE)) {
+                mDbHelper.onCodesChanged(database);
+            }
+            updateIndexes(affectedIds, values);
+            if (weighedIds.length > 0) {
+                notifyChange(HistoryEntry.CONTENT_URI);
+            }
+            notifyRows(affectedIds);
+        }
         // TODO: Return the number of rows that were affected
         return id;
     }
 
 
+    /**
+     * Check a member out, or correct the times of a check-in. The check-in may still be
+     * waiting in memory, so pending check-ins are committed first.
+     */
+    private int updateCheckIn(Uri uri, ContentValues values, String selection,
+                              String[] selectionArgs) {
+        for (String column : values.keySet()) {
+            if (!CheckInEntry.COLUMN_TIME_IN.equals(column)
+                    && !CheckInEntry.COLUMN_TIME_OUT.equals(column)) {
+                throw new IllegalArgumentException("Check-in column " + column + " can't be changed");
+            }
+        }
+        if (values.containsKey(CheckInEntry.COLUMN_TIME_IN)
+                && values.getAsLong(CheckInEntry.COLUMN_TIME_IN) == null) {
+            throw new IllegalArgumentException("Check-in requires a valid time");
+        }
+        mCheckIns.commit();
+        int rows = mDbHelper.getWritableDatabase().update(CheckInEntry.TABLE_NAME, values,
+                selection, selectionArgs);
+        if (rows > 0) {
+            notifyChange(uri);
+        }
+        return rows;
+    }
+
     /**
      * Delete the data at the given selection and selection arguments.
      */
     @Override
     public int delete(Uri uri, String selection, String[] selectionArgs) {
+        long start = System.nanoTime();
         // Get writeable database
         SQLiteDatabase database = mDbHelper.getWritableDatabase();
 
         final int match = sUriMatcher.match(uri);
+        int rows;
         switch (match) {
-            case MEMBERS:
-                // Delete all rows that match the selection and selection args
-                return database.delete(MemberEntry.TABLE_NAME, selection, selectionArgs);
-            case MEMBER_ID:
-                // Delete a single row given by the ID in the URI
+            case MEMBERS: {
+                // Delete all rows that match the selection and selection args. Like an update,
+                // the members and their weight history go in one transaction, so no writer
+                // can slip a matching member in between finding the rows and deleting them
+                long[] affectedIds;
+                database.beginTransaction();
+                try {
+                    affectedIds = findAffectedIds(database, selection, selectionArgs);
+                    rows = database.delete(MemberEntry.TABLE_NAME, selection, selectionArgs);
+                    if (rows > 0) {
+                        mHistory.deleteMembers(database, affectedIds);
+                    }
+                    database.setTransactionSuccessful();
+                } finally {
+                    database.endTransaction();
+                }
+                invalidateCache(affectedIds);
+                // Notify all the users of the members that were deleted
+                if (rows > 0) {
+                    removeFromIndexes(affectedIds);
+                    mDbHelper.onCodesChanged(database);
+                    notifyRows(affectedIds);
+                }
+                break;
+            }
+            case MEMBER_ID: {
+                // Delete a single row given by the ID in the URI, with its weight history
+                long id = ContentUris.parseId(uri);
                 selection = MemberEntry._ID + "=?";
-                selectionArgs = new String[]{String.valueOf(ContentUris.parseId(uri))};
-                // Notify all the users that content URI has changed
-                getContext().getContentResolver().notifyChange(uri, null);
+                selectionArgs = new String[]{String.valueOf(id)};
 
-                return database.delete(MemberEntry.TABLE_NAME, selection, selectionArgs);
+                database.beginTransaction();
+                try {
+                    rows = statements(database).deleteById(id);
+                    if (rows > 0) {
+                        mHistory.deleteMembers(database, new long[]{id});
+                    }
+                    database.setTransactionSuccessful();
+                } finally {
+                    database.endTransaction();
+                }
+                mCache.invalidate(new long[]{id});
+                // Notify all the users that content URI has changed
+                if (rows > 0) {
+                    removeFromIndexes(new long[]{id});
+                    mDbHelper.onCodesChanged(database);
+                    notifyChange(uri);
+                }
+                break;
+            }
+            case CHECK_IN_ID: {
+                // E.g. a mistaken turnstile read; it may still be waiting in memory
+                mCheckIns.commit();
+                selection = CheckInEntry._ID + "=?";
+                selectionArgs = new String[]{String.valueOf(ContentUris.parseId(uri))};
+                rows = database.delete(CheckInEntry.TABLE_NAME, selection, selectionArgs);
+                if (rows > 0) {
+                    notifyChange(uri);
+                }
+                break;
+            }
+            case HISTORY_ID: {
+                rows = mHistory.delete(database, ContentUris.parseId(uri));
+                if (rows > 0) {
+                    notifyChange(uri);
+                }
+                break;
+            }
             default:
                 throw new IllegalArgumentException("Deletion is not supported for " + uri);
         }
-
-
+        long nanos = mStats.record(MemberStats.OP_DELETE, match, start, rows, ownTransactions());
+        if (mSlowLog.isSlow(nanos) && match != HISTORY_ID) {
+            String table = match == CHECK_IN_ID ? CheckInEntry.TABLE_NAME : MemberEntry.TABLE_NAME;
+            String sql = "DELETE FROM " + table
+                    + (selection == null || selection.isEmpty() ? "" : " WHERE " + selection);
+            logSlowWrite(database, "delete", table, sql, selection, selectionArgs, rows, nanos);
+        }
+        return rows;
     }
 
     /**
@@ -305,8 +1653,123 @@ public class MemberProvider extends ContentProvider {
                 return MemberEntry.CONTENT_LIST_TYPE;
             case MEMBER_ID:
                 return MemberEntry.CONTENT_ITEM_TYPE;
+            case MEMBER_SEARCH:
+            case MEMBER_FUZZY:
+            case MEMBERS_JOINED:
+                return MemberEntry.CONTENT_LIST_TYPE;
+            case MEMBER_DUPLICATES:
+                return DuplicateEntry.CONTENT_LIST_TYPE;
+            case MEMBER_STATS:
+                return MemberContract.StatsEntry.CONTENT_LIST_TYPE;
+            case MEMBER_SLOW_QUERIES:
+                return MemberContract.SlowQueryEntry.CONTENT_LIST_TYPE;
+            case MEMBER_AGGREGATE:
+                return MemberContract.AggregateEntry.CONTENT_LIST_TYPE;
+            case CHECK_INS:
+            case CHECK_INS_PRESENT:
+            case CHECK_IN_VISITS:
+                return CheckInEntry.CONTENT_LIST_TYPE;
+            case CHECK_IN_ID:
+                return CheckInEntry.CONTENT_ITEM_TYPE;
+            case HISTORY:
+                return HistoryEntry.CONTENT_LIST_TYPE;
+            case HISTORY_ID:
+                return HistoryEntry.CONTENT_ITEM_TYPE;
             default:
                 throw new IllegalStateException("Unknown URI " + uri + " with match " + match);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Handle {@link MemberContract#METHOD_SET_SLOW_QUERY_THRESHOLD},
+     * {@link MemberContract#METHOD_CHECK_SUMMARIES},
+     * {@link MemberContract#METHOD_ARCHIVE_HISTORY},
+     * {@link MemberContract#METHOD_CHECK_DUPLICATES} and
+     * {@link MemberContract#METHOD_FIND_DUPLICATES}.
+     */
+    @Override
+    public Bundle call(String method, String arg, Bundle extras) {
+        if (MemberContract.METHOD_SET_SLOW_QUERY_THRESHOLD.equals(method)) {
+            try {
+                mSlowLog.setThresholdMillis(Long.parseLong(arg));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid slow query threshold " + arg);
+            }
+            return null;
+        }
+        if (MemberContract.METHOD_CHECK_SUMMARIES.equals(method)) {
+            SQLiteDatabase database = mDbHelper.getWritableDatabase();
+            boolean consistent;
+            // One transaction, so no write lands between the comparisons and the rebuild
+            database.beginTransaction();
+            try {
+                consistent = MemberSummaries.isConsistent(database);
+                if (!consistent) {
+                    MemberSummaries.rebuild(database);
+                }
+                database.setTransactionSuccessful();
+            } finally {
+                database.endTransaction();
+            }
+            if (!consistent) {
+                mAggregates.invalidate();
+            }
+            Bundle result = new Bundle();
+            result.putBoolean(MemberContract.EXTRA_SUMMARIES_CONSISTENT, consistent);
+            return result;
+        }
+        if (MemberContract.METHOD_ARCHIVE_HISTORY.equals(method)) {
+            int months = mHistory.archive(HistoryEntry.LIVE_MONTHS);
+            if (months > 0) {
+                getContext().getContentResolver().notifyChange(HistoryEntry.CONTENT_URI, null);
+            }
+            Bundle result = new Bundle();
+            result.putInt(MemberContract.EXTRA_ARCHIVED_MONTHS, months);
+            return result;
+        }
+        if (MemberContract.METHOD_CHECK_DUPLICATES.equals(method)) {
+            if (extras == null) {
+                throw new IllegalArgumentException("Checking for duplicates requires a member");
+            }
+            MemberDuplicates.Matches matches = MemberDuplicates.check(
+                    mDbHelper.getReadableDatabase(), -1,
+                    extras.getString(MemberEntry.COLUMN_MEMBER_NAME),
+                    extras.getString(MemberEntry.COLUMN_MEMBER_FATHER_NAME),
+                    extras.getString(MemberEntry.COLUMN_MEMBER_PHONE));
+            Bundle result = new Bundle();
+            result.putLongArray(MemberContract.EXTRA_DUPLICATE_IDS, matches.ids);
+            result.putFloatArray(MemberContract.EXTRA_DUPLICATE_SCORES, matches.scores);
+            return result;
+        }
+        if (MemberContract.METHOD_FIND_DUPLICATES.equals(method)) {
+            int pairs = MemberDuplicates.findAll(mDbHelper.getWritableDatabase());
+            getContext().getContentResolver().notifyChange(DuplicateEntry.CONTENT_URI, null);
+            Bundle result = new Bundle();
+            result.putInt(MemberContract.EXTRA_DUPLICATE_PAIRS, pairs);
+            return result;
+        }
+        return super.call(method, arg, extras);
+    }
+
+    /**
+     * Print the provider's statistics, e.g. with
+     * "adb shell dumpsys activity provider com.example.android.members".
+     */
+    @Override
+    public void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        mStats.dump(writer);
+        mCache.dump(writer);
+        writer.println("slow statements over " + mSlowLog.getThresholdMillis() + "ms:");
+        Cursor cursor = mSlowLog.toCursor(null);
+        try {
+            while (cursor.moveToNext()) {
+                writer.println(String.format("  %.1fms %d rows %s %s",
+                        cursor.getDouble(6), cursor.getLong(5), cursor.getString(3),
+                        cursor.getString(4)));
+                writer.println("    " + cursor.getString(7).replace("\n", "\n    "));
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+}
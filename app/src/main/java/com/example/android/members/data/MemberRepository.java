@@ -0,0 +1,230 @@
+package com.example.android.members.data;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.OperationApplicationException;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.RemoteException;
+import android.util.Log;
+
+import com.example.android.members.data.MemberContract.MemberEntry;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Typed access to the members in the {@link MemberProvider}. Rows are mapped to {@link Member}s
+ * with column indices resolved once per cursor, and single writes reuse one ContentValues.
+ * Every method does I/O, so call it off the main thread. An instance is not thread-safe.
+ */
+public final class MemberRepository {
+
+    public static final String LOG_TAG = MemberRepository.class.getSimpleName();
+
+    /** Every column a {@link Member} is built from */
+    public static final String[] PROJECTION = {
+            MemberEntry._ID,
+            MemberEntry.COLUMN_MEMBER_NAME,
+            MemberEntry.COLUMN_MEMBER_FATHER_NAME,
+            MemberEntry.COLUMN_MEMBER_CODE,
+            MemberEntry.COLUMN_MEMBER_PHONE,
+            MemberEntry.COLUMN_MEMBER_DATE,
+            MemberEntry.COLUMN_MEMBER_WEIGHT
+    };
+
+    /** Most _IDs put in one "IN (...)" clause, below SQLite's limit of 999 arguments */
+    private static final int MAX_IDS_PER_QUERY = 500;
+
+    private final ContentResolver mResolver;
+
+    /** Reused by the single-row writes */
+    private final ContentValues mValues = new ContentValues(6);
+
+    public MemberRepository(ContentResolver resolver) {
+        mResolver = resolver;
+    }
+
+    /**
+     * Maps cursor rows to {@link Member}s. The column indices are looked up once, when the
+     * mapper is created, instead of for every row.
+     */
+    public static final class RowMapper {
+
+        private final int mIdIndex;
+        private final int mNameIndex;
+        private final int mFatherIndex;
+        private final int mCodeIndex;
+        private final int mPhoneIndex;
+        private final int mDateIndex;
+        private final int mWeightIndex;
+
+        /**
+         * @param cursor a cursor holding at least the columns in {@link MemberRepository#PROJECTION}
+         */
+        public RowMapper(Cursor cursor) {
+            mIdIndex = cursor.getColumnIndexOrThrow(MemberEntry._ID);
+            mNameIndex = cursor.getColumnIndexOrThrow(MemberEntry.COLUMN_MEMBER_NAME);
+            mFatherIndex = cursor.getColumnIndexOrThrow(MemberEntry.COLUMN_MEMBER_FATHER_NAME);
+            mCodeIndex = cursor.getColumnIndexOrThrow(MemberEntry.COLUMN_MEMBER_CODE);
+            mPhoneIndex = cursor.getColumnIndexOrThrow(MemberEntry.COLUMN_MEMBER_PHONE);
+            mDateIndex = cursor.getColumnIndexOrThrow(MemberEntry.COLUMN_MEMBER_DATE);
+            mWeightIndex = cursor.getColumnIndexOrThrow(MemberEntry.COLUMN_MEMBER_WEIGHT);
+        }
+
+        /**
+         * Build a member from the row the cursor is on.
+         */
+        public Member map(Cursor cursor) {
+            return new Member(
+                    cursor.getLong(mIdIndex),
+                    cursor.getString(mNameIndex),
+                    cursor.getString(mFatherIndex),
+                    cursor.getInt(mCodeIndex),
+                    cursor.getString(mPhoneIndex),
+                    cursor.getLong(mDateIndex),
+                    cursor.getInt(mWeightIndex));
+        }
+    }
+
+    /**
+     * Return the member with the given _ID, or null if there is none.
+     */
+    public Member get(long id) {
+        Cursor cursor = mResolver.query(ContentUris.withAppendedId(MemberEntry.CONTENT_URI, id),
+                PROJECTION, null, null, null);
+        if (cursor == null) {
+            return null;
+        }
+        try {
+            return cursor.moveToFirst() ? new RowMapper(cursor).map(cursor) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Return the members with the given _IDs, in _ID order. _IDs without a member are skipped.
+     */
+    public List<Member> get(long[] ids) {
+        ArrayList<Member> members = new ArrayList<>(ids.length);
+        for (int start = 0; start < ids.length; start += MAX_IDS_PER_QUERY) {
+            int end = Math.min(ids.length, start + MAX_IDS_PER_QUERY);
+            Cursor cursor = mResolver.query(MemberEntry.CONTENT_URI, PROJECTION,
+                    inSelection(end - start), toArgs(ids, start, end), MemberEntry._ID + " ASC");
+            if (cursor == null) {
+                continue;
+            }
+            try {
+                RowMapper mapper = new RowMapper(cursor);
+                while (cursor.moveToNext()) {
+                    members.add(mapper.map(cursor));
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+        return members;
+    }
+
+    /**
+     * Store a member: insert it if it has no _ID yet, otherwise update the stored row.
+     *
+     * @return the content URI of the member, or null if the insert failed
+     */
+    public Uri put(Member member) {
+        member.toContentValues(mValues);
+        if (member.getId() == Member.NO_ID) {
+            return mResolver.insert(MemberEntry.CONTENT_URI, mValues);
+        }
+        Uri uri = ContentUris.withAppendedId(MemberEntry.CONTENT_URI, member.getId());
+        return mResolver.update(uri, mValues, null, null) > 0 ? uri : null;
+    }
+
+    /**
+     * Store many members at once. New members go through the provider's single-transaction
+     * bulk insert, and existing ones are updated in one batch.
+     *
+     * @return the number of members stored
+     */
+    public int putAll(List<Member> members) {
+        ArrayList<ContentValues> inserts = new ArrayList<>();
+        ArrayList<ContentProviderOperation> updates = new ArrayList<>();
+        for (Member member : members) {
+            if (member.getId() == Member.NO_ID) {
+                inserts.add(member.toContentValues());
+            } else {
+                updates.add(ContentProviderOperation
+                        .newUpdate(ContentUris.withAppendedId(MemberEntry.CONTENT_URI, member.getId()))
+                        .withValues(member.toContentValues())
+                        .build());
+            }
+        }
+
+        int stored = 0;
+        if (!inserts.isEmpty()) {
+            stored += mResolver.bulkInsert(MemberEntry.CONTENT_URI,
+                    inserts.toArray(new ContentValues[inserts.size()]));
+        }
+        if (!updates.isEmpty()) {
+            try {
+                for (ContentProviderResult result
+                        : mResolver.applyBatch(MemberContract.CONTENT_AUTHORITY, updates)) {
+                    if (result.count != null) {
+                        stored += result.count;
+                    }
+                }
+            } catch (RemoteException | OperationApplicationException e) {
+                Log.e(LOG_TAG, "putAll: update batch failed", e);
+            }
+        }
+        return stored;
+    }
+
+    /**
+     * Delete the member with the given _ID.
+     *
+     * @return the number of members deleted
+     */
+    public int delete(long id) {
+        return mResolver.delete(ContentUris.withAppendedId(MemberEntry.CONTENT_URI, id), null, null);
+    }
+
+    /**
+     * Delete the members with the given _IDs.
+     *
+     * @return the number of members deleted
+     */
+    public int deleteAll(long[] ids) {
+        int deleted = 0;
+        for (int start = 0; start < ids.length; start += MAX_IDS_PER_QUERY) {
+            int end = Math.min(ids.length, start + MAX_IDS_PER_QUERY);
+            deleted += mResolver.delete(MemberEntry.CONTENT_URI, inSelection(end - start),
+                    toArgs(ids, start, end));
+        }
+        return deleted;
+    }
+
+    /**
+     * Build "_id IN (?,?,...)" with the given number of arguments.
+     */
+    private static String inSelection(int count) {
+        StringBuilder selection = new StringBuilder(MemberEntry._ID.length() + 6 + 2 * count);
+        selection.append(MemberEntry._ID).append(" IN (");
+        for (int i = 0; i < count; i++) {
+            selection.append(i == 0 ? "?" : ",?");
+        }
+        return selection.append(')').toString();
+    }
+
+    private static String[] toArgs(long[] ids, int start, int end) {
+        String[] args = new String[end - start];
+        for (int i = start; i < end; i++) {
+            args[i - start] = String.valueOf(ids[i]);
+        }
+        return args;
+    }
+}
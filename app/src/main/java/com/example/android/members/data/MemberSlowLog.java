@@ -0,0 +1,205 @@
+package com.example.android.members.data;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.util.Log;
+
+import com.example.android.members.data.MemberContract.SlowQueryEntry;
+
+/**
+ * Bounded log of the {@link MemberProvider} statements that took longer than a threshold,
+ * with the query plan SQLite chose for each, so a missing index shows up on a real device.
+ * Only the newest {@link #CAPACITY} entries are kept. Selection arguments are redacted to
+ * their type and length, so no member data ends up in the log.
+ */
+final class MemberSlowLog {
+
+    private static final String LOG_TAG = MemberSlowLog.class.getSimpleName();
+
+    /** Default threshold above which a statement is logged */
+    static final long DEFAULT_THRESHOLD_MS = 50;
+
+    /** Number of entries kept */
+    static final int CAPACITY = 64;
+
+    private volatile long mThresholdNanos = DEFAULT_THRESHOLD_MS * 1000000L;
+
+    /** Ring buffer of entries, oldest overwritten first; guarded by this */
+    private final Entry[] mEntries = new Entry[CAPACITY];
+
+    /** Number of entries ever added; guarded by this */
+    private long mCount;
+
+    /**
+     * Whether a statement that took this long should be logged. Cheap enough to ask on
+     * every call.
+     */
+    boolean isSlow(long nanos) {
+        return nanos > mThresholdNanos;
+    }
+
+    /**
+     * Log statements that take longer than the given number of milliseconds from now on.
+     */
+    void setThresholdMillis(long millis) {
+        if (millis < 0) {
+            throw new IllegalArgumentException("Negative threshold " + millis);
+        }
+        mThresholdNanos = millis * 1000000L;
+    }
+
+    long getThresholdMillis() {
+        return mThresholdNanos / 1000000L;
+    }
+
+    /**
+     * Log a slow statement, with the plan of {@code planSql}: the statement itself for a
+     * query, or a SELECT with the same WHERE clause for an update or delete.
+     *
+     * @param args the arguments of {@code planSql}; only their shape is kept
+     */
+    void add(SQLiteDatabase database, String operation, String sql, String planSql,
+             String[] args, long rows, long nanos) {
+        Entry entry = new Entry(System.currentTimeMillis(), operation, sql, redact(args), rows,
+                nanos / 1e6, explain(database, planSql, args));
+        Log.w(LOG_TAG, operation + " took " + entry.mDurationMs + "ms: " + sql);
+        synchronized (this) {
+            mEntries[(int) (mCount % CAPACITY)] = entry;
+            mCount++;
+        }
+    }
+
+    /**
+     * Return the logged statements, newest first, with the given columns of
+     * {@link SlowQueryEntry}, or all of them for a null projection.
+     */
+    Cursor toCursor(String[] projection) {
+        Entry[] entries;
+        long count;
+        synchronized (this) {
+            entries = mEntries.clone();
+            count = mCount;
+        }
+        String[] columns = projection == null ? SlowQueryEntry.ALL_COLUMNS : projection;
+        MatrixCursor cursor = new MatrixCursor(columns);
+        for (long i = count - 1; i >= 0 && i >= count - CAPACITY; i--) {
+            Entry entry = entries[(int) (i % CAPACITY)];
+            MatrixCursor.RowBuilder row = cursor.newRow();
+            for (String column : columns) {
+                row.add(entry.get(column, i));
+            }
+        }
+        return cursor;
+    }
+
+    /**
+     * Return SQLite's plan for the statement, one step per line.
+     */
+    private static String explain(SQLiteDatabase database, String sql, String[] args) {
+        StringBuilder plan = new StringBuilder();
+        try {
+            Cursor cursor = database.rawQuery("EXPLAIN QUERY PLAN " + sql, args);
+            try {
+                // The step description is the last column
+                int detail = cursor.getColumnCount() - 1;
+                while (cursor.moveToNext()) {
+                    if (plan.length() > 0) {
+                        plan.append('\n');
+                    }
+                    plan.append(cursor.getString(detail));
+                }
+            } finally {
+                cursor.close();
+            }
+        } catch (SQLiteException e) {
+            return "unavailable: " + e.getMessage();
+        }
+        return plan.toString();
+    }
+
+    /**
+     * Replace each argument by its shape, e.g. "[<number>, <text 5>]".
+     */
+    private static String redact(String[] args) {
+        if (args == null || args.length == 0) {
+            return "[]";
+        }
+        StringBuilder redacted = new StringBuilder("[");
+        for (int i = 0; i < args.length; i++) {
+            if (i > 0) {
+                redacted.append(", ");
+            }
+            String arg = args[i];
+            if (arg == null) {
+                redacted.append("<null>");
+            } else if (isNumber(arg)) {
+                redacted.append("<number>");
+            } else {
+                redacted.append("<text ").append(arg.length()).append('>');
+            }
+        }
+        return redacted.append(']').toString();
+    }
+
+    private static boolean isNumber(String value) {
+        if (value.isEmpty() || value.length() > 19) {
+            return false;
+        }
+        for (int i = value.charAt(0) == '-' && value.length() > 1 ? 1 : 0; i < value.length(); i++) {
+            if (!Character.isDigit(value.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * One logged statement.
+     */
+    private static final class Entry {
+
+        final long mTime;
+        final String mOperation;
+        final String mSql;
+        final String mArguments;
+        final long mRows;
+        final double mDurationMs;
+        final String mPlan;
+
+        Entry(long time, String operation, String sql, String arguments, long rows,
+              double durationMs, String plan) {
+            mTime = time;
+            mOperation = operation;
+            mSql = sql;
+            mArguments = arguments;
+            mRows = rows;
+            mDurationMs = durationMs;
+            mPlan = plan;
+        }
+
+        Object get(String column, long sequence) {
+            switch (column) {
+                case SlowQueryEntry._ID:
+                    return sequence + 1;
+                case SlowQueryEntry.COLUMN_TIME:
+                    return mTime;
+                case SlowQueryEntry.COLUMN_OPERATION:
+                    return mOperation;
+                case SlowQueryEntry.COLUMN_SQL:
+                    return mSql;
+                case SlowQueryEntry.COLUMN_ARGUMENTS:
+                    return mArguments;
+                case SlowQueryEntry.COLUMN_ROWS:
+                    return mRows;
+                case SlowQueryEntry.COLUMN_DURATION_MS:
+                    return mDurationMs;
+                case SlowQueryEntry.COLUMN_PLAN:
+                    return mPlan;
+                default:
+                    throw new IllegalArgumentException("Unknown slow query column " + column);
+            }
+        }
+    }
+}
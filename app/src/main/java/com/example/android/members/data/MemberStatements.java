@@ -0,0 +1,213 @@
+package com.example.android.members.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteConstraintException;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+import com.example.android.members.data.MemberContract.MemberEntry;
+
+/**
+ * Compiled statements for the fixed-shape operations of the {@link MemberProvider}, prepared
+ * once instead of rebuilding and re-parsing their SQL on every call. A compiled statement
+ * holds its bindings, so an instance must only be used by one thread; the provider keeps one
+ * per binder thread rather than locking, since a lock held while waiting for the database
+ * could deadlock against a thread that holds a transaction. Row lookups can't use an
+ * {@link SQLiteStatement}, which only returns a single value, so they run constant SQL strings
+ * that the connection's own prepared statement cache recognizes instead.
+ */
+final class MemberStatements {
+
+    private static final String LOG_TAG = MemberStatements.class.getSimpleName();
+
+    /** The six stored attributes of a member, in the order the statements bind them */
+    private static final String[] MEMBER_COLUMNS = {
+            MemberEntry.COLUMN_MEMBER_NAME,
+            MemberEntry.COLUMN_MEMBER_FATHER_NAME,
+            MemberEntry.COLUMN_MEMBER_CODE,
+            MemberEntry.COLUMN_MEMBER_PHONE,
+            MemberEntry.COLUMN_MEMBER_DATE,
+            MemberEntry.COLUMN_MEMBER_WEIGHT
+    };
+
+    private static final String SQL_INSERT = "INSERT INTO " + MemberEntry.TABLE_NAME + " ("
+            + MemberEntry.COLUMN_MEMBER_NAME + ", "
+            + MemberEntry.COLUMN_MEMBER_FATHER_NAME + ", "
+            + MemberEntry.COLUMN_MEMBER_CODE + ", "
+            + MemberEntry.COLUMN_MEMBER_PHONE + ", "
+            + MemberEntry.COLUMN_MEMBER_DATE + ", "
+            + MemberEntry.COLUMN_MEMBER_WEIGHT + ") VALUES (?, ?, ?, ?, ?, ?)";
+
+    private static final String SQL_UPDATE_BY_ID = "UPDATE " + MemberEntry.TABLE_NAME + " SET "
+            + MemberEntry.COLUMN_MEMBER_NAME + "=?, "
+            + MemberEntry.COLUMN_MEMBER_FATHER_NAME + "=?, "
+            + MemberEntry.COLUMN_MEMBER_CODE + "=?, "
+            + MemberEntry.COLUMN_MEMBER_PHONE + "=?, "
+            + MemberEntry.COLUMN_MEMBER_DATE + "=?, "
+            + MemberEntry.COLUMN_MEMBER_WEIGHT + "=? WHERE " + MemberEntry._ID + "=?";
+
+    private static final String SQL_DELETE_BY_ID = "DELETE FROM " + MemberEntry.TABLE_NAME
+            + " WHERE " + MemberEntry._ID + "=?";
+
+    private static final String SQL_SELECT_ALL_COLUMNS = "SELECT "
+            + MemberEntry._ID + ", "
+            + MemberEntry.COLUMN_MEMBER_NAME + ", "
+            + MemberEntry.COLUMN_MEMBER_FATHER_NAME + ", "
+            + MemberEntry.COLUMN_MEMBER_CODE + ", "
+            + MemberEntry.COLUMN_MEMBER_PHONE + ", "
+            + MemberEntry.COLUMN_MEMBER_DATE + ", "
+            + MemberEntry.COLUMN_MEMBER_WEIGHT + " FROM " + MemberEntry.TABLE_NAME;
+
+    /** A complete row, in the column order of {@link MemberCache#ALL_COLUMNS}, by _ID */
+    private static final String SQL_SELECT_BY_ID = SQL_SELECT_ALL_COLUMNS
+            + " WHERE " + MemberEntry._ID + "=?";
+
+    /** A complete row, in the column order of {@link MemberCache#ALL_COLUMNS}, by code */
+    private static final String SQL_SELECT_BY_CODE = SQL_SELECT_ALL_COLUMNS
+            + " WHERE " + MemberEntry.COLUMN_MEMBER_CODE + "=?";
+
+    private final SQLiteDatabase mDatabase;
+    private final SQLiteStatement mInsert;
+    private final SQLiteStatement mUpdateById;
+    private final SQLiteStatement mDeleteById;
+
+    MemberStatements(SQLiteDatabase database) {
+        mDatabase = database;
+        mInsert = database.compileStatement(SQL_INSERT);
+        mUpdateById = database.compileStatement(SQL_UPDATE_BY_ID);
+        mDeleteById = database.compileStatement(SQL_DELETE_BY_ID);
+    }
+
+    /**
+     * Whether these statements were compiled for the given database.
+     */
+    boolean isFor(SQLiteDatabase database) {
+        return mDatabase == database;
+    }
+
+    /**
+     * Whether the values hold exactly the six stored attributes of a member, the shape the
+     * insert and update statements take.
+     */
+    static boolean isCompleteMember(ContentValues values) {
+        if (values.size() != MEMBER_COLUMNS.length) {
+            return false;
+        }
+        for (String column : MEMBER_COLUMNS) {
+            if (!values.containsKey(column)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Insert a validated, complete member.
+     *
+     * @return the new _ID, or -1 if the insert was rejected, e.g. for a duplicate code
+     */
+    long insert(ContentValues values) {
+        bindMember(mInsert, values);
+        try {
+            return mInsert.executeInsert();
+        } catch (SQLiteConstraintException e) {
+            Log.e(LOG_TAG, "insert: " + e.getMessage());
+            return -1;
+        } finally {
+            mInsert.clearBindings();
+        }
+    }
+
+    /**
+     * Insert validated, complete members in one transaction. Unlike {@link #insert}, a rejected
+     * row rolls the whole batch back, along with a transaction the caller has open around it.
+     *
+     * @return the _IDs of the new members, in the order of the rows, or null if a row was
+     * rejected, e.g. for a duplicate code, and nothing was written
+     */
+    long[] insertAll(ContentValues[] rows) {
+        long[] ids = new long[rows.length];
+        mDatabase.beginTransaction();
+        try {
+            for (int i = 0; i < rows.length; i++) {
+                bindMember(mInsert, rows[i]);
+                ids[i] = mInsert.executeInsert();
+            }
+            mDatabase.setTransactionSuccessful();
+        } catch (SQLiteConstraintException e) {
+            Log.e(LOG_TAG, "insertAll: " + e.getMessage());
+            return null;
+        } finally {
+            mInsert.clearBindings();
+            mDatabase.endTransaction();
+        }
+        return ids;
+    }
+
+    /**
+     * Overwrite every stored attribute of one member with validated, complete values.
+     *
+     * @return the number of rows updated, 0 or 1; 0 as well if the update was rejected, e.g.
+     * for a code another member holds
+     */
+    int updateById(long id, ContentValues values) {
+        bindMember(mUpdateById, values);
+        mUpdateById.bindLong(MEMBER_COLUMNS.length + 1, id);
+        try {
+            return mUpdateById.executeUpdateDelete();
+        } catch (SQLiteConstraintException e) {
+            Log.e(LOG_TAG, "updateById: " + e.getMessage());
+            return 0;
+        } finally {
+            mUpdateById.clearBindings();
+        }
+    }
+
+    /**
+     * @return the number of rows deleted, 0 or 1
+     */
+    int deleteById(long id) {
+        mDeleteById.bindLong(1, id);
+        try {
+            return mDeleteById.executeUpdateDelete();
+        } finally {
+            mDeleteById.clearBindings();
+        }
+    }
+
+    /**
+     * Return a cursor over the complete row with the given _ID, in the column order of
+     * {@link MemberCache#ALL_COLUMNS}.
+     */
+    static Cursor queryById(SQLiteDatabase database, String id) {
+        return database.rawQuery(SQL_SELECT_BY_ID, new String[]{id});
+    }
+
+    /**
+     * Return a cursor over the complete row with the given code, in the column order of
+     * {@link MemberCache#ALL_COLUMNS}.
+     */
+    static Cursor queryByCode(SQLiteDatabase database, String code) {
+        return database.rawQuery(SQL_SELECT_BY_CODE, new String[]{code});
+    }
+
+    /**
+     * Release the compiled statements.
+     */
+    void close() {
+        mInsert.close();
+        mUpdateById.close();
+        mDeleteById.close();
+    }
+
+    private static void bindMember(SQLiteStatement statement, ContentValues row) {
+        statement.bindString(1, row.getAsString(MemberEntry.COLUMN_MEMBER_NAME));
+        statement.bindString(2, row.getAsString(MemberEntry.COLUMN_MEMBER_FATHER_NAME));
+        statement.bindLong(3, row.getAsInteger(MemberEntry.COLUMN_MEMBER_CODE));
+        statement.bindString(4, row.getAsString(MemberEntry.COLUMN_MEMBER_PHONE));
+        statement.bindLong(5, row.getAsLong(MemberEntry.COLUMN_MEMBER_DATE));
+        statement.bindLong(6, row.getAsInteger(MemberEntry.COLUMN_MEMBER_WEIGHT));
+    }
+}
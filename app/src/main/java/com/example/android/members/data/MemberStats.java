@@ -0,0 +1,195 @@
+package com.example.android.members.data;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+
+import com.example.android.members.data.MemberContract.StatsEntry;
+
+import java.io.PrintWriter;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counters and latency histograms for the {@link MemberProvider}, one set per operation and
+ * URI matcher code. Recording is a handful of atomic adds into one preallocated array: no
+ * locks and no allocation, so it stays on in production. Latencies go into power-of-two
+ * buckets of microseconds, so percentiles are accurate to a factor of two.
+ */
+final class MemberStats {
+
+    static final int OP_QUERY = 0;
+    static final int OP_INSERT = 1;
+    static final int OP_BULK_INSERT = 2;
+    static final int OP_UPDATE = 3;
+    static final int OP_DELETE = 4;
+    static final int OP_BATCH = 5;
+
+    private static final String[] OP_NAMES = {
+            "query", "insert", "bulkInsert", "update", "delete", "applyBatch"
+    };
+
+    /** Latency buckets; bucket i counts calls of under 2^i microseconds, the last one the rest */
+    private static final int BUCKETS = 24;
+
+    // Offsets of the fields of one slot
+    private static final int FIELD_CALLS = 0;
+    private static final int FIELD_ROWS = 1;
+    private static final int FIELD_TRANSACTIONS = 2;
+    private static final int FIELD_TOTAL_NANOS = 3;
+    private static final int FIELD_MAX_NANOS = 4;
+    private static final int FIELD_BUCKETS = 5;
+    private static final int SLOT_FIELDS = FIELD_BUCKETS + BUCKETS;
+
+    /** URI matcher code of the first route */
+    private final int mFirstCode;
+
+    /** Route names by matcher code - first code; one more slot, "other", counts the rest */
+    private final String[] mRouteNames;
+
+    private final AtomicLongArray mCounters;
+
+    /**
+     * @param firstCode  the lowest URI matcher code of the provider
+     * @param routeNames a name for each matcher code, starting at {@code firstCode}
+     */
+    MemberStats(int firstCode, String[] routeNames) {
+        mFirstCode = firstCode;
+        mRouteNames = routeNames;
+        mCounters = new AtomicLongArray(OP_NAMES.length * (routeNames.length + 1) * SLOT_FIELDS);
+    }
+
+    /**
+     * Record one finished call.
+     *
+     * @param op           one of the OP_ constants
+     * @param match        the URI matcher code of the call
+     * @param startNanos   {@link System#nanoTime()} when the call started
+     * @param rows         rows returned or written
+     * @param transactions transactions committed by the call
+     * @return how long the call took, in nanoseconds
+     */
+    long record(int op, int match, long startNanos, long rows, int transactions) {
+        long nanos = System.nanoTime() - startNanos;
+        int slot = slot(op, match);
+        mCounters.incrementAndGet(slot + FIELD_CALLS);
+        mCounters.addAndGet(slot + FIELD_ROWS, rows);
+        if (transactions != 0) {
+            mCounters.addAndGet(slot + FIELD_TRANSACTIONS, transactions);
+        }
+        mCounters.addAndGet(slot + FIELD_TOTAL_NANOS, nanos);
+        long max;
+        do {
+            max = mCounters.get(slot + FIELD_MAX_NANOS);
+        } while (nanos > max && !mCounters.compareAndSet(slot + FIELD_MAX_NANOS, max, nanos));
+        mCounters.incrementAndGet(slot + FIELD_BUCKETS + bucket(nanos / 1000));
+        return nanos;
+    }
+
+    /**
+     * Return one row per operation and route that has been called, with the given columns of
+     * {@link StatsEntry}, or all of them for a null projection.
+     */
+    Cursor toCursor(String[] projection) {
+        String[] columns = projection == null ? StatsEntry.ALL_COLUMNS : projection;
+        int[] fields = new int[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            fields[i] = indexOf(StatsEntry.ALL_COLUMNS, columns[i]);
+            if (fields[i] < 0) {
+                throw new IllegalArgumentException("Unknown stats column " + columns[i]);
+            }
+        }
+
+        MatrixCursor cursor = new MatrixCursor(columns);
+        Object[] row = new Object[StatsEntry.ALL_COLUMNS.length];
+        long[] buckets = new long[BUCKETS];
+        for (int op = 0; op < OP_NAMES.length; op++) {
+            for (int route = 0; route <= mRouteNames.length; route++) {
+                int slot = (op * (mRouteNames.length + 1) + route) * SLOT_FIELDS;
+                long calls = mCounters.get(slot + FIELD_CALLS);
+                if (calls == 0) {
+                    continue;
+                }
+                for (int i = 0; i < BUCKETS; i++) {
+                    buckets[i] = mCounters.get(slot + FIELD_BUCKETS + i);
+                }
+                // In the order of StatsEntry.ALL_COLUMNS
+                row[0] = OP_NAMES[op];
+                row[1] = route < mRouteNames.length ? mRouteNames[route] : "other";
+                row[2] = calls;
+                row[3] = mCounters.get(slot + FIELD_ROWS);
+                row[4] = mCounters.get(slot + FIELD_TRANSACTIONS);
+                row[5] = mCounters.get(slot + FIELD_TOTAL_NANOS) / 1e6 / calls;
+                row[6] = mCounters.get(slot + FIELD_MAX_NANOS) / 1e6;
+                row[7] = percentile(buckets, 50);
+                row[8] = percentile(buckets, 90);
+                row[9] = percentile(buckets, 99);
+
+                MatrixCursor.RowBuilder builder = cursor.newRow();
+                for (int field : fields) {
+                    builder.add(row[field]);
+                }
+            }
+        }
+        return cursor;
+    }
+
+    /**
+     * Print the statistics as a table, for dumpsys.
+     */
+    void dump(PrintWriter writer) {
+        Cursor cursor = toCursor(null);
+        try {
+            writer.println("operation    route                  calls       rows   txns"
+                    + "   mean ms    max ms    p50 ms    p90 ms    p99 ms");
+            while (cursor.moveToNext()) {
+                writer.println(String.format("%-12s %-18s %9d %10d %6d %9.3f %9.3f %9.3f %9.3f %9.3f",
+                        cursor.getString(0), cursor.getString(1), cursor.getLong(2),
+                        cursor.getLong(3), cursor.getLong(4), cursor.getDouble(5),
+                        cursor.getDouble(6), cursor.getDouble(7), cursor.getDouble(8),
+                        cursor.getDouble(9)));
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private int slot(int op, int match) {
+        int route = match - mFirstCode;
+        if (route < 0 || route >= mRouteNames.length) {
+            route = mRouteNames.length;
+        }
+        return (op * (mRouteNames.length + 1) + route) * SLOT_FIELDS;
+    }
+
+    private static int bucket(long micros) {
+        int bucket = 64 - Long.numberOfLeadingZeros(micros);
+        return Math.min(bucket, BUCKETS - 1);
+    }
+
+    /**
+     * Estimate a percentile in milliseconds as the upper bound of the bucket it falls in.
+     */
+    private static double percentile(long[] buckets, double percent) {
+        long total = 0;
+        for (long count : buckets) {
+            total += count;
+        }
+        long rank = (long) Math.ceil(percent / 100 * total);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += buckets[i];
+            if (seen >= rank) {
+                return (1L << i) / 1000.0;
+            }
+        }
+        return (1L << (BUCKETS - 1)) / 1000.0;
+    }
+
+    private static int indexOf(String[] array, String value) {
+        for (int i = 0; i < array.length; i++) {
+            if (array[i].equals(value)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,190 @@
+package com.example.android.members.data;
+
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import com.example.android.members.data.MemberContract.MemberEntry;
+
+/**
+ * Summary tables of the members table, kept up to date by triggers on every insert, update and
+ * delete: the number of members and their total weight, the members who joined per month, and
+ * the members per {@link #WEIGHT_BUCKET_SIZE} kg weight range. Reading a whole-gym statistic
+ * from them costs the same however many members there are. {@link #isConsistent} compares them
+ * with the members table and {@link #rebuild} recomputes them, should they ever drift.
+ */
+final class MemberSummaries {
+
+    private static final String LOG_TAG = MemberSummaries.class.getSimpleName();
+
+    /** Single row: {@link #COLUMN_MEMBERS} and {@link #COLUMN_WEIGHT_SUM} */
+    static final String TABLE_TOTALS = "member_totals";
+
+    /** {@link #COLUMN_MONTH} and {@link #COLUMN_MEMBERS}, for months anyone joined in */
+    static final String TABLE_JOINS_BY_MONTH = "member_joins_by_month";
+
+    /** {@link #COLUMN_BUCKET} and {@link #COLUMN_MEMBERS}, for non-empty weight ranges */
+    static final String TABLE_WEIGHT_BUCKETS = "member_weight_buckets";
+
+    static final String COLUMN_MEMBERS = "members";
+    static final String COLUMN_WEIGHT_SUM = "weight_sum";
+
+    /** Month of admission as yyyy-mm */
+    static final String COLUMN_MONTH = "month";
+
+    /** Lowest weight of the range */
+    static final String COLUMN_BUCKET = "bucket";
+
+    /** Width of the weight ranges, in kg */
+    static final int WEIGHT_BUCKET_SIZE = 10;
+
+    private MemberSummaries() {}
+
+    /**
+     * SQL for the yyyy-mm month of a stored admission date column, e.g. "new.date".
+     */
+    static String monthOf(String date) {
+        return "strftime('%Y-%m', " + date + " * 86400, 'unixepoch')";
+    }
+
+    /**
+     * SQL for the weight range of a weight column, e.g. "new.weight".
+     */
+    static String bucketOf(String weight) {
+        return "((" + weight + " / " + WEIGHT_BUCKET_SIZE + ") * " + WEIGHT_BUCKET_SIZE + ")";
+    }
+
+    /**
+     * Create the summary tables and the triggers that maintain them. They start out empty;
+     * follow with {@link #rebuild}.
+     */
+    static void createSchema(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_TOTALS + " ("
+                + COLUMN_MEMBERS + " INTEGER NOT NULL, "
+                + COLUMN_WEIGHT_SUM + " INTEGER NOT NULL);");
+        db.execSQL("CREATE TABLE " + TABLE_JOINS_BY_MONTH + " ("
+                + COLUMN_MONTH + " TEXT PRIMARY KEY, "
+                + COLUMN_MEMBERS + " INTEGER NOT NULL);");
+        db.execSQL("CREATE TABLE " + TABLE_WEIGHT_BUCKETS + " ("
+                + COLUMN_BUCKET + " INTEGER PRIMARY KEY, "
+                + COLUMN_MEMBERS + " INTEGER NOT NULL);");
+
+        String newMonth = monthOf("new." + MemberEntry.COLUMN_MEMBER_DATE);
+        String oldMonth = monthOf("old." + MemberEntry.COLUMN_MEMBER_DATE);
+        String newBucket = bucketOf("new." + MemberEntry.COLUMN_MEMBER_WEIGHT);
+        String oldBucket = bucketOf("old." + MemberEntry.COLUMN_MEMBER_WEIGHT);
+
+        db.execSQL("CREATE TRIGGER member_summaries_after_insert AFTER INSERT ON "
+                + MemberEntry.TABLE_NAME + " BEGIN "
+                + "UPDATE " + TABLE_TOTALS + " SET " + COLUMN_MEMBERS + " = " + COLUMN_MEMBERS
+                + " + 1, " + COLUMN_WEIGHT_SUM + " = " + COLUMN_WEIGHT_SUM + " + new."
+                + MemberEntry.COLUMN_MEMBER_WEIGHT + "; "
+                + add(TABLE_JOINS_BY_MONTH, COLUMN_MONTH, newMonth)
+                + add(TABLE_WEIGHT_BUCKETS, COLUMN_BUCKET, newBucket)
+                + "END;");
+        db.execSQL("CREATE TRIGGER member_summaries_after_delete AFTER DELETE ON "
+                + MemberEntry.TABLE_NAME + " BEGIN "
+                + "UPDATE " + TABLE_TOTALS + " SET " + COLUMN_MEMBERS + " = " + COLUMN_MEMBERS
+                + " - 1, " + COLUMN_WEIGHT_SUM + " = " + COLUMN_WEIGHT_SUM + " - old."
+                + MemberEntry.COLUMN_MEMBER_WEIGHT + "; "
+                + remove(TABLE_JOINS_BY_MONTH, COLUMN_MONTH, oldMonth)
+                + remove(TABLE_WEIGHT_BUCKETS, COLUMN_BUCKET, oldBucket)
+                + "END;");
+        db.execSQL("CREATE TRIGGER member_summaries_after_update AFTER UPDATE OF "
+                + MemberEntry.COLUMN_MEMBER_DATE + ", " + MemberEntry.COLUMN_MEMBER_WEIGHT
+                + " ON " + MemberEntry.TABLE_NAME + " BEGIN "
+                + "UPDATE " + TABLE_TOTALS + " SET " + COLUMN_WEIGHT_SUM + " = "
+                + COLUMN_WEIGHT_SUM + " - old." + MemberEntry.COLUMN_MEMBER_WEIGHT + " + new."
+                + MemberEntry.COLUMN_MEMBER_WEIGHT + "; "
+                + remove(TABLE_JOINS_BY_MONTH, COLUMN_MONTH, oldMonth)
+                + add(TABLE_JOINS_BY_MONTH, COLUMN_MONTH, newMonth)
+                + remove(TABLE_WEIGHT_BUCKETS, COLUMN_BUCKET, oldBucket)
+                + add(TABLE_WEIGHT_BUCKETS, COLUMN_BUCKET, newBucket)
+                + "END;");
+    }
+
+    /**
+     * Recompute every summary from the members table, in one transaction.
+     */
+    static void rebuild(SQLiteDatabase db) {
+        db.beginTransaction();
+        try {
+            db.execSQL("DELETE FROM " + TABLE_TOTALS + ";");
+            db.execSQL("INSERT INTO " + TABLE_TOTALS + " (" + COLUMN_MEMBERS + ", "
+                    + COLUMN_WEIGHT_SUM + ") " + SQL_TOTALS + ";");
+            db.execSQL("DELETE FROM " + TABLE_JOINS_BY_MONTH + ";");
+            db.execSQL("INSERT INTO " + TABLE_JOINS_BY_MONTH + " (" + COLUMN_MONTH + ", "
+                    + COLUMN_MEMBERS + ") " + SQL_JOINS_BY_MONTH + ";");
+            db.execSQL("DELETE FROM " + TABLE_WEIGHT_BUCKETS + ";");
+            db.execSQL("INSERT INTO " + TABLE_WEIGHT_BUCKETS + " (" + COLUMN_BUCKET + ", "
+                    + COLUMN_MEMBERS + ") " + SQL_WEIGHT_BUCKETS + ";");
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Whether every summary matches the members table. Reads the whole table, so call it
+     * occasionally, off the main thread.
+     */
+    static boolean isConsistent(SQLiteDatabase db) {
+        boolean consistent =
+                differences(db, "SELECT " + COLUMN_MEMBERS + ", " + COLUMN_WEIGHT_SUM
+                        + " FROM " + TABLE_TOTALS, SQL_TOTALS) == 0
+                && differences(db, "SELECT " + COLUMN_MONTH + ", " + COLUMN_MEMBERS
+                        + " FROM " + TABLE_JOINS_BY_MONTH + " WHERE " + COLUMN_MEMBERS + " > 0",
+                        SQL_JOINS_BY_MONTH) == 0
+                && differences(db, "SELECT " + COLUMN_BUCKET + ", " + COLUMN_MEMBERS
+                        + " FROM " + TABLE_WEIGHT_BUCKETS + " WHERE " + COLUMN_MEMBERS + " > 0",
+                        SQL_WEIGHT_BUCKETS) == 0;
+        if (!consistent) {
+            Log.w(LOG_TAG, "Member summaries differ from the members table");
+        }
+        return consistent;
+    }
+
+    /** The totals, computed from the members table */
+    private static final String SQL_TOTALS = "SELECT COUNT(*), IFNULL(SUM("
+            + MemberEntry.COLUMN_MEMBER_WEIGHT + "), 0) FROM " + MemberEntry.TABLE_NAME;
+
+    /** Joins per month, computed from the members table */
+    private static final String SQL_JOINS_BY_MONTH = "SELECT "
+            + monthOf(MemberEntry.COLUMN_MEMBER_DATE) + ", COUNT(*) FROM "
+            + MemberEntry.TABLE_NAME + " GROUP BY 1";
+
+    /** Members per weight range, computed from the members table */
+    private static final String SQL_WEIGHT_BUCKETS = "SELECT "
+            + bucketOf(MemberEntry.COLUMN_MEMBER_WEIGHT) + ", COUNT(*) FROM "
+            + MemberEntry.TABLE_NAME + " GROUP BY 1";
+
+    /**
+     * Count the rows found in only one of the two queries.
+     */
+    private static long differences(SQLiteDatabase db, String summary, String computed) {
+        return DatabaseUtils.longForQuery(db, "SELECT COUNT(*) FROM ("
+                + summary + " EXCEPT " + computed + " UNION ALL "
+                + "SELECT * FROM (" + computed + " EXCEPT " + summary + "))", null);
+    }
+
+    /**
+     * Trigger statements counting one more member under the given key.
+     */
+    private static String add(String table, String keyColumn, String key) {
+        return "INSERT OR IGNORE INTO " + table + " (" + keyColumn + ", " + COLUMN_MEMBERS
+                + ") VALUES (" + key + ", 0); "
+                + "UPDATE " + table + " SET " + COLUMN_MEMBERS + " = " + COLUMN_MEMBERS
+                + " + 1 WHERE " + keyColumn + " = " + key + "; ";
+    }
+
+    /**
+     * Trigger statements counting one member less under the given key, dropping the key once
+     * nobody is left under it.
+     */
+    private static String remove(String table, String keyColumn, String key) {
+        return "UPDATE " + table + " SET " + COLUMN_MEMBERS + " = " + COLUMN_MEMBERS
+                + " - 1 WHERE " + keyColumn + " = " + key + "; "
+                + "DELETE FROM " + table + " WHERE " + keyColumn + " = " + key
+                + " AND " + COLUMN_MEMBERS + " <= 0; ";
+    }
+}
@@ -0,0 +1,706 @@
+package com.example.android.members.data;
+
+import android.database.Cursor;
+import android.database.SQLException;
+import android.util.Log;
+
+import com.example.android.members.data.MemberContract.MemberEntry;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory trigram index over member names and father names, for typo-tolerant search. Every
+ * word is padded, as in "  ram ", and cut into overlapping three-character trigrams; two names
+ * are similar when they share many of them, so a misspelling only costs the few trigrams
+ * around it. Similarity is shared / (query trigrams + name trigrams - shared), from 0 to 1.
+ *
+ * <p>Each indexed name is an entry, numbered densely, and every trigram keeps the list of
+ * entries that contain it. A search counts, per entry, how many of its trigrams it finds in
+ * those lists, so it only touches names that share at least one trigram with the text. A
+ * changed or deleted name leaves a dead entry behind in the lists, skipped by searches, until
+ * the dead outnumber the live and the lists are compacted.
+ *
+ * <p>The index is loaded in the background and then kept current by the {@link MemberProvider}
+ * write paths, like {@link MemberIndex}. Until it is loaded, searches fall back to candidates
+ * found by the caller.
+ */
+final class MemberTrigrams {
+
+    private static final String LOG_TAG = MemberTrigrams.class.getSimpleName();
+
+    /** Candidates returned when the caller doesn't say */
+    static final int DEFAULT_LIMIT = 10;
+
+    /** Most candidates a search returns */
+    static final int MAX_LIMIT = 100;
+
+    /** Names less similar than this to the search text are not candidates */
+    static final float MIN_SIMILARITY = 0.3f;
+
+    /** Compaction waits until there are at least this many dead entries */
+    private static final int MIN_DEAD_TO_COMPACT = 1024;
+
+    /** A load that keeps being overtaken by writes gives up installing after this many tries */
+    private static final int MAX_LOAD_ATTEMPTS = 3;
+
+    private static final long[] NO_TRIGRAMS = new long[0];
+
+    /** The ranked candidates of a search, best first */
+    static final class Result {
+
+        final long[] ids;
+        final float[] similarities;
+
+        Result(long[] ids, float[] similarities) {
+            this.ids = ids;
+            this.similarities = similarities;
+        }
+    }
+
+    private final MemberDbHelper mDbHelper;
+
+    /** Guards {@link #mTables} and {@link #mLoaded}; searches share it, writes take it alone */
+    private final ReentrantReadWriteLock mLock = new ReentrantReadWriteLock();
+
+    private Tables mTables = new Tables();
+
+    private boolean mLoaded;
+
+    /** Counts every write, so a load can tell whether one happened while it read the table */
+    private final AtomicLong mWrites = new AtomicLong();
+
+    private final AtomicBoolean mLoadPending = new AtomicBoolean();
+
+    private final ExecutorService mLoader = Executors.newSingleThreadExecutor();
+
+    /** Per-thread counters for searches, indexed by entry */
+    private final ThreadLocal<Scratch> mScratch = new ThreadLocal<Scratch>() {
+        @Override
+        protected Scratch initialValue() {
+            return new Scratch();
+        }
+    };
+
+    MemberTrigrams(MemberDbHelper dbHelper) {
+        mDbHelper = dbHelper;
+    }
+
+    /**
+     * Return up to {@code limit} members whose name or father name is most similar to the
+     * given text, best first. A member's similarity is that of the closer of its two names.
+     * Returns null while the index is not loaded, after starting a load: the caller ranks
+     * candidates of its own with {@link #rank}, since reading every name here would hold up
+     * the search, and every other search arriving meanwhile.
+     */
+    Result search(String text, int limit) {
+        long[] trigrams = trigrams(text);
+        mLock.readLock().lock();
+        try {
+            if (mLoaded) {
+                return mTables.search(trigrams, limit, mScratch.get());
+            }
+        } finally {
+            mLock.readLock().unlock();
+        }
+
+        load();
+        return null;
+    }
+
+    /**
+     * Rank the given members by the similarity of their names to the text, like
+     * {@link #search}, when the candidates come from elsewhere.
+     */
+    static Result rank(String text, long[] ids, String[] names, String[] fatherNames,
+                       int limit) {
+        long[] trigrams = trigrams(text);
+        TopEntries top = new TopEntries(Math.max(1, limit));
+        for (int i = 0; i < ids.length; i++) {
+            float best = Math.max(similarity(trigrams, trigrams(names[i])),
+                    similarity(trigrams, trigrams(fatherNames[i])));
+            if (best >= MIN_SIMILARITY) {
+                top.offer(best, ids[i]);
+            }
+        }
+        return top.toResult(limit);
+    }
+
+    /**
+     * Similarity of two sorted sets of trigrams: shared / (both - shared), from 0 to 1.
+     */
+    static float similarity(long[] trigrams, long[] otherTrigrams) {
+        int shared = 0;
+        for (int i = 0, j = 0; i < trigrams.length && j < otherTrigrams.length; ) {
+            if (trigrams[i] < otherTrigrams[j]) {
+                i++;
+            } else if (trigrams[i] > otherTrigrams[j]) {
+                j++;
+            } else {
+                shared++;
+                i++;
+                j++;
+            }
+        }
+        int all = trigrams.length + otherTrigrams.length - shared;
+        return all == 0 ? 0 : (float) shared / all;
+    }
+
+    /**
+     * Load the index in the background, unless a load is already waiting or running. A write
+     * during a running load makes it read again, so it needs no second load.
+     */
+    void load() {
+        if (mLoadPending.compareAndSet(false, true)) {
+            mLoader.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        loadNow();
+                    } catch (SQLException e) {
+                        Log.e(LOG_TAG, "Loading the trigram index failed", e);
+                    } finally {
+                        mLoadPending.set(false);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Index the names of a member that was just inserted.
+     */
+    void put(long id, String name, String fatherName) {
+        update(id, name, fatherName);
+    }
+
+    /**
+     * Index the new name or father name of a member that was just updated; null for the one
+     * that did not change.
+     */
+    void update(long id, String name, String fatherName) {
+        mWrites.incrementAndGet();
+        mLock.writeLock().lock();
+        try {
+            if (!mLoaded) {
+                return;
+            }
+            if (!mTables.update(id, name, fatherName)) {
+                // Only part of a member we never saw; let a reload sort it out
+                unloadLocked();
+                load();
+            }
+        } finally {
+            mLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Forget members that were just deleted.
+     */
+    void remove(long[] ids) {
+        mWrites.incrementAndGet();
+        mLock.writeLock().lock();
+        try {
+            if (mLoaded) {
+                mTables.remove(ids);
+            }
+        } finally {
+            mLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Drop the whole index and load it again in the background, for writes whose rows are not
+     * known one by one.
+     */
+    void invalidate() {
+        mWrites.incrementAndGet();
+        mLock.writeLock().lock();
+        try {
+            unloadLocked();
+        } finally {
+            mLock.writeLock().unlock();
+        }
+        load();
+    }
+
+    private void unloadLocked() {
+        mTables = new Tables();
+        mLoaded = false;
+    }
+
+    /**
+     * Read every member's names into new tables and install them, unless a write happened
+     * meanwhile, in which case the read is repeated.
+     */
+    private void loadNow() {
+        Tables tables = null;
+        for (int attempt = 0; attempt < MAX_LOAD_ATTEMPTS; attempt++) {
+            long writes = mWrites.get();
+            tables = new Tables();
+            Cursor cursor = mDbHelper.getReadableDatabase().query(MemberEntry.TABLE_NAME,
+                    new String[]{MemberEntry._ID, MemberEntry.COLUMN_MEMBER_NAME,
+                            MemberEntry.COLUMN_MEMBER_FATHER_NAME}, null, null, null, null, null);
+            try {
+                while (cursor.moveToNext()) {
+                    tables.update(cursor.getLong(0), cursor.getString(1), cursor.getString(2));
+                }
+            } finally {
+                cursor.close();
+            }
+
+            mLock.writeLock().lock();
+            try {
+                if (mWrites.get() == writes) {
+                    mTables = tables;
+                    mLoaded = true;
+                    return;
+                }
+            } finally {
+                mLock.writeLock().unlock();
+            }
+        }
+        Log.w(LOG_TAG, "Trigram index not loaded: members kept changing");
+    }
+
+    /**
+     * Return the distinct trigrams of the words of the given text, sorted. Each trigram packs
+     * its three characters into the low 48 bits of a long; the padding makes none of them 0.
+     */
+    static long[] trigrams(String text) {
+        if (text == null) {
+            return NO_TRIGRAMS;
+        }
+        String lower = text.toLowerCase(Locale.US);
+        long[] trigrams = new long[lower.length() + 2];
+        int count = 0;
+        int i = 0;
+        while (i < lower.length()) {
+            if (!Character.isLetterOrDigit(lower.charAt(i))) {
+                i++;
+                continue;
+            }
+            // One word, padded with two spaces in front and one behind
+            long window = ((long) ' ' << 16) | ' ';
+            for (; i <= lower.length(); i++) {
+                char c = i < lower.length() ? lower.charAt(i) : ' ';
+                boolean end = !Character.isLetterOrDigit(c);
+                window = ((window << 16) | (end ? ' ' : c)) & 0xFFFFFFFFFFFFL;
+                if (count == trigrams.length) {
+                    trigrams = Arrays.copyOf(trigrams, count * 2);
+                }
+                trigrams[count++] = window;
+                if (end) {
+                    break;
+                }
+            }
+        }
+        if (count == 0) {
+            return NO_TRIGRAMS;
+        }
+        Arrays.sort(trigrams, 0, count);
+        int distinct = 1;
+        for (int j = 1; j < count; j++) {
+            if (trigrams[j] != trigrams[distinct - 1]) {
+                trigrams[distinct++] = trigrams[j];
+            }
+        }
+        return Arrays.copyOf(trigrams, distinct);
+    }
+
+    /**
+     * Counters a search reuses: the count per entry, and the entries it set, to reset them.
+     */
+    private static final class Scratch {
+
+        int[] counts = new int[0];
+        int[] touched = new int[64];
+    }
+
+    /**
+     * The index proper. Not thread-safe; the enclosing class guards it.
+     */
+    private static final class Tables {
+
+        // Entries: the member of each indexed name and its number of trigrams, 0 once dead
+        long[] mEntryIds = new long[64];
+        int[] mEntrySizes = new int[64];
+        int mEntryCount;
+        int mDeadCount;
+
+        // Trigram to its list of entries, with linear probing; 0 marks a free slot
+        long[] mTrigrams = new long[64];
+        int[] mListIndex = new int[64];
+        int mTrigramCount;
+        int[][] mLists = new int[64][];
+        int[] mListSizes = new int[64];
+
+        // Member _ID to its name and father name entries, -1 for none; 0 marks a free slot
+        long[] mMemberIds = new long[64];
+        int[] mNameEntries = new int[64];
+        int[] mFatherNameEntries = new int[64];
+        int mMemberCount;
+
+        /**
+         * Index new names of a member; null for one that did not change. Returns false if a
+         * name is missing for a member that is not indexed yet.
+         */
+        boolean update(long id, String name, String fatherName) {
+            int slot = findMember(id);
+            if (slot < 0 && (name == null || fatherName == null)) {
+                return false;
+            }
+            if (slot < 0) {
+                slot = addMember(id);
+            }
+            if (name != null) {
+                kill(mNameEntries[slot]);
+                mNameEntries[slot] = addEntry(id, name);
+            }
+            if (fatherName != null) {
+                kill(mFatherNameEntries[slot]);
+                mFatherNameEntries[slot] = addEntry(id, fatherName);
+            }
+            compactIfWasteful();
+            return true;
+        }
+
+        void remove(long[] ids) {
+            for (long id : ids) {
+                int slot = findMember(id);
+                if (slot >= 0) {
+                    kill(mNameEntries[slot]);
+                    kill(mFatherNameEntries[slot]);
+                    removeMember(slot);
+                }
+            }
+            compactIfWasteful();
+        }
+
+        Result search(long[] trigrams, int limit, Scratch scratch) {
+            if (scratch.counts.length < mEntryCount) {
+                scratch.counts = new int[Math.max(mEntryCount, scratch.counts.length * 2)];
+            }
+            int[] counts = scratch.counts;
+            int touched = 0;
+            for (long trigram : trigrams) {
+                int list = findList(trigram);
+                if (list < 0) {
+                    continue;
+                }
+                int[] entries = mLists[list];
+                for (int i = mListSizes[list] - 1; i >= 0; i--) {
+                    int entry = entries[i];
+                    if (counts[entry]++ == 0) {
+                        if (touched == scratch.touched.length) {
+                            scratch.touched = Arrays.copyOf(scratch.touched, touched * 2);
+                        }
+                        scratch.touched[touched++] = entry;
+                    }
+                }
+            }
+
+            // Keep the best 2 * limit entries, enough for limit members with two names each
+            TopEntries top = new TopEntries(2 * limit);
+            for (int i = 0; i < touched; i++) {
+                int entry = scratch.touched[i];
+                int shared = counts[entry];
+                counts[entry] = 0;
+                int size = mEntrySizes[entry];
+                if (size == 0) {
+                    continue;
+                }
+                float similarity = (float) shared / (trigrams.length + size - shared);
+                if (similarity >= MIN_SIMILARITY) {
+                    top.offer(similarity, mEntryIds[entry]);
+                }
+            }
+            return top.toResult(limit);
+        }
+
+        private int addEntry(long id, String text) {
+            long[] trigrams = trigrams(text);
+            if (trigrams.length == 0) {
+                return -1;
+            }
+            if (mEntryCount == mEntryIds.length) {
+                mEntryIds = Arrays.copyOf(mEntryIds, mEntryCount * 2);
+                mEntrySizes = Arrays.copyOf(mEntrySizes, mEntryCount * 2);
+            }
+            int entry = mEntryCount++;
+            mEntryIds[entry] = id;
+            mEntrySizes[entry] = trigrams.length;
+            for (long trigram : trigrams) {
+                int list = findOrAddList(trigram);
+                if (mListSizes[list] == mLists[list].length) {
+                    mLists[list] = Arrays.copyOf(mLists[list], mListSizes[list] * 2);
+                }
+                mLists[list][mListSizes[list]++] = entry;
+            }
+            return entry;
+        }
+
+        private void kill(int entry) {
+            if (entry >= 0 && mEntrySizes[entry] != 0) {
+                mEntrySizes[entry] = 0;
+                mDeadCount++;
+            }
+        }
+
+        /**
+         * Drop dead entries from the lists and renumber the live ones, once the dead outnumber
+         * them.
+         */
+        private void compactIfWasteful() {
+            if (mDeadCount < MIN_DEAD_TO_COMPACT || mDeadCount * 2 < mEntryCount) {
+                return;
+            }
+            int[] renumbered = new int[mEntryCount];
+            int live = 0;
+            for (int entry = 0; entry < mEntryCount; entry++) {
+                if (mEntrySizes[entry] == 0) {
+                    renumbered[entry] = -1;
+                } else {
+                    renumbered[entry] = live;
+                    mEntryIds[live] = mEntryIds[entry];
+                    mEntrySizes[live] = mEntrySizes[entry];
+                    live++;
+                }
+            }
+            mEntryCount = live;
+            mDeadCount = 0;
+            for (int list = 0; list < mTrigramCount; list++) {
+                int[] entries = mLists[list];
+                int size = 0;
+                for (int i = 0; i < mListSizes[list]; i++) {
+                    int entry = renumbered[entries[i]];
+                    if (entry >= 0) {
+                        entries[size++] = entry;
+                    }
+                }
+                mListSizes[list] = size;
+            }
+            for (int slot = 0; slot < mMemberIds.length; slot++) {
+                if (mMemberIds[slot] != 0) {
+                    mNameEntries[slot] = renumber(renumbered, mNameEntries[slot]);
+                    mFatherNameEntries[slot] = renumber(renumbered, mFatherNameEntries[slot]);
+                }
+            }
+        }
+
+        private static int renumber(int[] renumbered, int entry) {
+            return entry < 0 ? -1 : renumbered[entry];
+        }
+
+        private int findList(long trigram) {
+            int mask = mTrigrams.length - 1;
+            for (int i = hash(trigram) & mask; mTrigrams[i] != 0; i = (i + 1) & mask) {
+                if (mTrigrams[i] == trigram) {
+                    return mListIndex[i];
+                }
+            }
+            return -1;
+        }
+
+        private int findOrAddList(long trigram) {
+            if ((mTrigramCount + 1) * 4 > mTrigrams.length * 3) {
+                long[] trigrams = mTrigrams;
+                int[] listIndex = mListIndex;
+                mTrigrams = new long[trigrams.length * 2];
+                mListIndex = new int[trigrams.length * 2];
+                for (int i = 0; i < trigrams.length; i++) {
+                    if (trigrams[i] != 0) {
+                        int slot = freeSlot(mTrigrams, trigrams[i]);
+                        mTrigrams[slot] = trigrams[i];
+                        mListIndex[slot] = listIndex[i];
+                    }
+                }
+            }
+            int mask = mTrigrams.length - 1;
+            int i = hash(trigram) & mask;
+            for (; mTrigrams[i] != 0; i = (i + 1) & mask) {
+                if (mTrigrams[i] == trigram) {
+                    return mListIndex[i];
+                }
+            }
+            if (mTrigramCount == mLists.length) {
+                mLists = Arrays.copyOf(mLists, mTrigramCount * 2);
+                mListSizes = Arrays.copyOf(mListSizes, mTrigramCount * 2);
+            }
+            int list = mTrigramCount++;
+            mLists[list] = new int[4];
+            mTrigrams[i] = trigram;
+            mListIndex[i] = list;
+            return list;
+        }
+
+        private int findMember(long id) {
+            int mask = mMemberIds.length - 1;
+            for (int i = hash(id) & mask; mMemberIds[i] != 0; i = (i + 1) & mask) {
+                if (mMemberIds[i] == id) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private int addMember(long id) {
+            if ((mMemberCount + 1) * 4 > mMemberIds.length * 3) {
+                long[] ids = mMemberIds;
+                int[] names = mNameEntries;
+                int[] fatherNames = mFatherNameEntries;
+                mMemberIds = new long[ids.length * 2];
+                mNameEntries = new int[ids.length * 2];
+                mFatherNameEntries = new int[ids.length * 2];
+                for (int i = 0; i < ids.length; i++) {
+                    if (ids[i] != 0) {
+                        int slot = freeSlot(mMemberIds, ids[i]);
+                        mMemberIds[slot] = ids[i];
+                        mNameEntries[slot] = names[i];
+                        mFatherNameEntries[slot] = fatherNames[i];
+                    }
+                }
+            }
+            int slot = freeSlot(mMemberIds, id);
+            mMemberIds[slot] = id;
+            mNameEntries[slot] = -1;
+            mFatherNameEntries[slot] = -1;
+            mMemberCount++;
+            return slot;
+        }
+
+        private void removeMember(int i) {
+            int mask = mMemberIds.length - 1;
+            // Shift later entries of the probe run back, so no lookup stops short at the gap
+            for (int j = (i + 1) & mask; mMemberIds[j] != 0; j = (j + 1) & mask) {
+                int home = hash(mMemberIds[j]) & mask;
+                if (i <= j ? (home <= i || home > j) : (home <= i && home > j)) {
+                    mMemberIds[i] = mMemberIds[j];
+                    mNameEntries[i] = mNameEntries[j];
+                    mFatherNameEntries[i] = mFatherNameEntries[j];
+                    i = j;
+                }
+            }
+            mMemberIds[i] = 0;
+            mMemberCount--;
+        }
+
+        private static int freeSlot(long[] keys, long key) {
+            int mask = keys.length - 1;
+            int i = hash(key) & mask;
+            while (keys[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            return i;
+        }
+
+        private static int hash(long value) {
+            int hash = (int) (value ^ (value >>> 32)) * 0x9E3779B9;
+            return hash ^ (hash >>> 16);
+        }
+    }
+
+    /**
+     * A bounded min-heap of the most similar entries seen, ties going to the lower _ID.
+     */
+    private static final class TopEntries {
+
+        final float[] mSimilarities;
+        final long[] mIds;
+        int mSize;
+
+        TopEntries(int capacity) {
+            mSimilarities = new float[capacity];
+            mIds = new long[capacity];
+        }
+
+        void offer(float similarity, long id) {
+            if (mSize < mIds.length) {
+                mSimilarities[mSize] = similarity;
+                mIds[mSize] = id;
+                siftUp(mSize++);
+            } else if (mSize > 0 && worse(mSimilarities[0], mIds[0], similarity, id)) {
+                mSimilarities[0] = similarity;
+                mIds[0] = id;
+                siftDown(0);
+            }
+        }
+
+        /**
+         * Empty the heap into a result, best first, keeping each member once.
+         */
+        Result toResult(int limit) {
+            long[] ids = new long[mSize];
+            float[] similarities = new float[mSize];
+            for (int i = mSize - 1; i >= 0; i--) {
+                ids[i] = mIds[0];
+                similarities[i] = mSimilarities[0];
+                mSize--;
+                mIds[0] = mIds[mSize];
+                mSimilarities[0] = mSimilarities[mSize];
+                siftDown(0);
+            }
+            int count = 0;
+            for (int i = 0; i < ids.length && count < limit; i++) {
+                boolean seen = false;
+                for (int j = 0; j < count && !seen; j++) {
+                    seen = ids[j] == ids[i];
+                }
+                if (!seen) {
+                    ids[count] = ids[i];
+                    similarities[count] = similarities[i];
+                    count++;
+                }
+            }
+            return new Result(Arrays.copyOf(ids, count), Arrays.copyOf(similarities, count));
+        }
+
+        private void siftUp(int i) {
+            while (i > 0) {
+                int parent = (i - 1) / 2;
+                if (!worse(mSimilarities[i], mIds[i], mSimilarities[parent], mIds[parent])) {
+                    return;
+                }
+                swap(i, parent);
+                i = parent;
+            }
+        }
+
+        private void siftDown(int i) {
+            while (true) {
+                int worst = i;
+                for (int child = 2 * i + 1; child <= 2 * i + 2 && child < mSize; child++) {
+                    if (worse(mSimilarities[child], mIds[child], mSimilarities[worst],
+                            mIds[worst])) {
+                        worst = child;
+                    }
+                }
+                if (worst == i) {
+                    return;
+                }
+                swap(i, worst);
+                i = worst;
+            }
+        }
+
+        private void swap(int i, int j) {
+            float similarity = mSimilarities[i];
+            mSimilarities[i] = mSimilarities[j];
+            mSimilarities[j] = similarity;
+            long id = mIds[i];
+            mIds[i] = mIds[j];
+            mIds[j] = id;
+        }
+
+        private static boolean worse(float similarity, long id, float otherSimilarity,
+                                     long otherId) {
+            return similarity < otherSimilarity || (similarity == otherSimilarity && id > otherId);
+        }
+    }
+}
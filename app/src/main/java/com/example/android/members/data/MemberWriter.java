@@ -0,0 +1,237 @@
+package com.example.android.members.data;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.SQLException;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs every insert, update and delete against the {@link MemberProvider} on one background
+ * thread, in the order they were submitted, so no write blocks the UI. Completion callbacks are
+ * posted back to the main thread. An update to a URI that is still waiting behind other writes
+ * absorbs any later update to the same URI, so rapid consecutive edits cost one write. The time
+ * each write takes is recorded, and percentiles are logged every {@link #LOG_EVERY} writes.
+ * A write the provider or the database rejects is logged and reported to its callback as
+ * failed, never thrown on the background thread.
+ */
+public final class MemberWriter {
+
+    public static final String LOG_TAG = MemberWriter.class.getSimpleName();
+
+    /**
+     * Called on the main thread once a write has finished.
+     */
+    public interface Callback {
+        /**
+         * @param uri  the URI of the inserted row for an insert, otherwise the URI written to;
+         *             null if the insert failed
+         * @param rows the number of rows affected; 0 if the write failed
+         */
+        void onWriteComplete(Uri uri, int rows);
+    }
+
+    /** Number of recent write latencies kept for the percentiles */
+    private static final int LATENCY_SAMPLES = 256;
+
+    /** Log the latency percentiles after this many writes */
+    private static final int LOG_EVERY = 64;
+
+    private static MemberWriter sInstance;
+
+    private final ContentResolver mResolver;
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+
+    /** The most recently queued update, while it has not started yet; guarded by this */
+    private PendingUpdate mLastQueuedUpdate;
+
+    /** Ring buffer of recent write latencies in nanoseconds; guarded by itself */
+    private final long[] mLatencies = new long[LATENCY_SAMPLES];
+
+    /** Number of writes measured so far; guarded by {@link #mLatencies} */
+    private long mWriteCount;
+
+    private MemberWriter(Context context) {
+        mResolver = context.getApplicationContext().getContentResolver();
+    }
+
+    /**
+     * Return the writer shared by the whole app.
+     */
+    public static synchronized MemberWriter getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new MemberWriter(context);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Insert a row in the background.
+     */
+    public void insert(final Uri uri, ContentValues values, final Callback callback) {
+        // Copy, so the caller may reuse its values while the write waits
+        final ContentValues copy = new ContentValues(values);
+        submit(new Runnable() {
+            @Override
+            public void run() {
+                Uri newUri = null;
+                long start = System.nanoTime();
+                try {
+                    newUri = mResolver.insert(uri, copy);
+                } catch (IllegalArgumentException | SQLException e) {
+                    Log.e(LOG_TAG, "insert: rejected " + uri, e);
+                }
+                recordLatency(System.nanoTime() - start);
+                // The provider answers a rejected insert, e.g. for a code in use, with _ID -1
+                if (newUri != null && ContentUris.parseId(newUri) == -1) {
+                    newUri = null;
+                }
+                deliver(callback, newUri, newUri == null ? 0 : 1);
+            }
+        });
+    }
+
+    /**
+     * Update the rows selected by the URI in the background. If the previous write still waiting
+     * in the queue is an update of the same URI, the two are merged.
+     */
+    public void update(Uri uri, ContentValues values, Callback callback) {
+        synchronized (this) {
+            if (mLastQueuedUpdate != null && mLastQueuedUpdate.mUri.equals(uri)) {
+                // Later values win, and every caller hears about the single write
+                mLastQueuedUpdate.mValues.putAll(values);
+                mLastQueuedUpdate.mCallbacks.add(callback);
+                return;
+            }
+            final PendingUpdate update = new PendingUpdate(uri, new ContentValues(values));
+            update.mCallbacks.add(callback);
+            mLastQueuedUpdate = update;
+            mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    synchronized (MemberWriter.this) {
+                        // From here on the update can no longer absorb later ones
+                        if (mLastQueuedUpdate == update) {
+                            mLastQueuedUpdate = null;
+                        }
+                    }
+                    int rows = 0;
+                    long start = System.nanoTime();
+                    try {
+                        rows = mResolver.update(update.mUri, update.mValues, null, null);
+                    } catch (IllegalArgumentException | SQLException e) {
+                        Log.e(LOG_TAG, "update: rejected " + update.mUri, e);
+                    }
+                    recordLatency(System.nanoTime() - start);
+                    for (Callback callback : update.mCallbacks) {
+                        deliver(callback, update.mUri, rows);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Delete the rows matching the URI and selection in the background.
+     */
+    public void delete(final Uri uri, final String selection, final String[] selectionArgs,
+                       final Callback callback) {
+        submit(new Runnable() {
+            @Override
+            public void run() {
+                int rows = 0;
+                long start = System.nanoTime();
+                try {
+                    rows = mResolver.delete(uri, selection, selectionArgs);
+                } catch (IllegalArgumentException | SQLException e) {
+                    Log.e(LOG_TAG, "delete: rejected " + uri, e);
+                }
+                recordLatency(System.nanoTime() - start);
+                deliver(callback, uri, rows);
+            }
+        });
+    }
+
+    /**
+     * Return the given percentiles (0-100) of the recent write latencies, in milliseconds.
+     */
+    public double[] getLatencyPercentiles(double... percentiles) {
+        long[] samples;
+        synchronized (mLatencies) {
+            int count = (int) Math.min(mWriteCount, LATENCY_SAMPLES);
+            samples = Arrays.copyOf(mLatencies, count);
+        }
+        double[] result = new double[percentiles.length];
+        if (samples.length == 0) {
+            return result;
+        }
+        Arrays.sort(samples);
+        for (int i = 0; i < percentiles.length; i++) {
+            int index = (int) Math.ceil(percentiles[i] / 100 * samples.length) - 1;
+            index = Math.max(0, Math.min(samples.length - 1, index));
+            result[i] = samples[index] / 1e6;
+        }
+        return result;
+    }
+
+    /**
+     * Queue a write that is not an update; it ends the chance to merge with an earlier update.
+     */
+    private synchronized void submit(Runnable write) {
+        mLastQueuedUpdate = null;
+        mExecutor.execute(write);
+    }
+
+    private void recordLatency(long nanos) {
+        long count;
+        synchronized (mLatencies) {
+            mLatencies[(int) (mWriteCount % LATENCY_SAMPLES)] = nanos;
+            count = ++mWriteCount;
+        }
+        if (count % LOG_EVERY == 0) {
+            double[] p = getLatencyPercentiles(50, 90, 99);
+            Log.i(LOG_TAG, String.format("write latency over last %d writes: p50=%.2fms "
+                            + "p90=%.2fms p99=%.2fms", Math.min(count, LATENCY_SAMPLES),
+                    p[0], p[1], p[2]));
+        }
+    }
+
+    private void deliver(final Callback callback, final Uri uri, final int rows) {
+        if (callback == null) {
+            return;
+        }
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                callback.onWriteComplete(uri, rows);
+            }
+        });
+    }
+
+    /**
+     * An update waiting in the queue, which later updates of the same URI can still join.
+     */
+    private static final class PendingUpdate {
+
+        final Uri mUri;
+        final ContentValues mValues;
+        final ArrayList<Callback> mCallbacks = new ArrayList<>();
+
+        PendingUpdate(Uri uri, ContentValues values) {
+            mUri = uri;
+            mValues = values;
+        }
+    }
+}
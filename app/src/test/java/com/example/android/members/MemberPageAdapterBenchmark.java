@@ -0,0 +1,207 @@
+package com.example.android.members;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.CharArrayBuffer;
+import android.database.Cursor;
+import android.widget.FrameLayout;
+
+import com.example.android.members.data.Member;
+import com.example.android.members.data.MemberContract;
+import com.example.android.members.data.MemberContract.MemberEntry;
+import com.example.android.members.data.MemberProvider;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowContentResolver;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Measures the bytes allocated per bind of a list row, against binding the way the old cursor
+ * adapter did: looking the columns up and reading Strings out of the cursor for every row.
+ * Robolectric runs the real TextView, whose own work is counted for both, so the adapter's
+ * share is the difference between the two figures. Also scrolls through more members than
+ * the window holds, where each page loaded reuses the text buffers of the page it drops.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class MemberPageAdapterBenchmark {
+
+    private static final int BINDS = Integer.getInteger("members.benchmark.binds", 100000);
+
+    /** Rows bound, in the middle of the first page so binding never starts a load */
+    private static final int FIRST_ROW = MemberPageAdapter.PREFETCH_DISTANCE;
+    private static final int LAST_ROW =
+            MemberPageAdapter.PAGE_SIZE - MemberPageAdapter.PREFETCH_DISTANCE - 1;
+
+    /** Pages scrolled through after the window is full */
+    private static final int EXTRA_PAGES = 10;
+
+    @Test
+    public void allocationsPerBind() {
+        ContentResolver resolver = resolver(MemberPageAdapter.PAGE_SIZE);
+
+        MemberPageAdapter adapter = new MemberPageAdapter(resolver, null);
+        adapter.start();
+        runLoads();
+        assertEquals(MemberPageAdapter.PAGE_SIZE, adapter.getItemCount());
+        MemberPageAdapter.ViewHolder holder = adapter.onCreateViewHolder(
+                new FrameLayout(RuntimeEnvironment.application), 0);
+
+        Cursor cursor = resolver.query(MemberEntry.CONTENT_URI, new String[]{MemberEntry._ID,
+                MemberEntry.COLUMN_MEMBER_NAME, MemberEntry.COLUMN_MEMBER_FATHER_NAME}, null,
+                null, MemberEntry._ID);
+        try {
+            // Warm up both, so class loading and first-time buffers aren't counted
+            bindPages(adapter, holder, BINDS / 10);
+            bindCursor(cursor, holder, BINDS / 10);
+
+            long start = allocatedBytes();
+            bindPages(adapter, holder, BINDS);
+            long pages = allocatedBytes() - start;
+
+            start = allocatedBytes();
+            bindCursor(cursor, holder, BINDS);
+            long strings = allocatedBytes() - start;
+
+            System.out.println(String.format("bytes per bind: %.1f from pages, %.1f from cursor"
+                    + " Strings", (double) pages / BINDS, (double) strings / BINDS));
+            assertTrue(pages < strings);
+        } finally {
+            cursor.close();
+            adapter.close();
+        }
+    }
+
+    @Test
+    public void scrollingPastTheWindowKeepsOneRunOfMembers() {
+        int members = (MemberPageAdapter.MAX_PAGES + EXTRA_PAGES) * MemberPageAdapter.PAGE_SIZE;
+        ContentResolver resolver = resolver(members);
+
+        MemberPageAdapter adapter = new MemberPageAdapter(resolver, null);
+        adapter.start();
+        runLoads();
+        MemberPageAdapter.ViewHolder holder = adapter.onCreateViewHolder(
+                new FrameLayout(RuntimeEnvironment.application), 0);
+        try {
+            // Fill the window
+            while (adapter.getItemCount() < MemberPageAdapter.MAX_PAGES
+                    * MemberPageAdapter.PAGE_SIZE) {
+                adapter.onBindViewHolder(holder, adapter.getItemCount() - 1);
+                runLoads();
+            }
+
+            // Every page from here on drops one, so its text buffers should come from there
+            long start = allocatedBytes();
+            while (adapter.getItemId(adapter.getItemCount() - 1) < members) {
+                adapter.onBindViewHolder(holder, adapter.getItemCount() - 1);
+                runLoads();
+            }
+            long scrolled = allocatedBytes() - start;
+            System.out.println(String.format("bytes per page loaded into a full window: %d",
+                    scrolled / EXTRA_PAGES));
+
+            // The window ends at the last member and is still one run of _IDs. Robolectric's
+            // CursorWindow copies no text into buffers, so the rows can't be checked by name.
+            int window = MemberPageAdapter.MAX_PAGES * MemberPageAdapter.PAGE_SIZE;
+            assertEquals(window, adapter.getItemCount());
+            for (int position = 0; position < window; position++) {
+                assertEquals(members - window + 1 + position, adapter.getItemId(position));
+            }
+        } finally {
+            adapter.close();
+        }
+    }
+
+    @Test
+    public void aLoadedPageTakesTheBuffersOfTheDroppedOne() {
+        MemberPageAdapter.BufferPool pool =
+                new MemberPageAdapter.BufferPool(2 * MemberPageAdapter.PAGE_SIZE);
+        MemberPageAdapter.Page dropped =
+                new MemberPageAdapter.Page(MemberPageAdapter.PAGE_SIZE, pool);
+        pool.recycle(dropped);
+        MemberPageAdapter.Page loaded =
+                new MemberPageAdapter.Page(MemberPageAdapter.PAGE_SIZE, pool);
+
+        Set<CharArrayBuffer> before = buffers(dropped);
+        Set<CharArrayBuffer> after = buffers(loaded);
+        assertEquals(2 * MemberPageAdapter.PAGE_SIZE, after.size());
+        assertEquals(before, after);
+    }
+
+    /**
+     * Register a {@link MemberProvider}, as the data tests do, write {@code count} members to it
+     * and return the resolver. Members are numbered from 1, with _IDs to match.
+     */
+    private static ContentResolver resolver(int count) {
+        MemberProvider provider = new MemberProvider();
+        provider.attachInfo(RuntimeEnvironment.application, null);
+        ShadowContentResolver.registerProviderInternal(MemberContract.CONTENT_AUTHORITY, provider);
+        ContentResolver resolver = RuntimeEnvironment.application.getContentResolver();
+
+        ContentValues[] rows = new ContentValues[count];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = new Member("Member " + (i + 1), "Father " + (i + 1), i + 1,
+                    String.format("9%09d", i + 1), 17167, 70).toContentValues();
+        }
+        resolver.bulkInsert(MemberEntry.CONTENT_URI, rows);
+        return resolver;
+    }
+
+    /**
+     * Run the adapter's page loads to the end, and deliver their results.
+     */
+    private static void runLoads() {
+        Robolectric.flushBackgroundThreadScheduler();
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+    }
+
+    private static void bindPages(MemberPageAdapter adapter, MemberPageAdapter.ViewHolder holder,
+                                  int binds) {
+        for (int i = 0; i < binds; i++) {
+            adapter.onBindViewHolder(holder, FIRST_ROW + i % (LAST_ROW - FIRST_ROW + 1));
+        }
+    }
+
+    private static void bindCursor(Cursor cursor, MemberPageAdapter.ViewHolder holder,
+                                   int binds) {
+        for (int i = 0; i < binds; i++) {
+            cursor.moveToPosition(FIRST_ROW + i % (LAST_ROW - FIRST_ROW + 1));
+            int nameIndex = cursor.getColumnIndexOrThrow(MemberEntry.COLUMN_MEMBER_NAME);
+            int fatherIndex = cursor.getColumnIndexOrThrow(MemberEntry.COLUMN_MEMBER_FATHER_NAME);
+            holder.mNameTextView.setText(cursor.getString(nameIndex));
+            holder.mSummaryTextView.setText(String.valueOf(cursor.getString(fatherIndex)));
+        }
+    }
+
+    /**
+     * Return the text buffers of a page, compared by identity.
+     */
+    private static Set<CharArrayBuffer> buffers(MemberPageAdapter.Page page) {
+        Set<CharArrayBuffer> buffers =
+                Collections.newSetFromMap(new IdentityHashMap<CharArrayBuffer, Boolean>());
+        Collections.addAll(buffers, page.mNames);
+        Collections.addAll(buffers, page.mFathers);
+        return buffers;
+    }
+
+    /**
+     * Bytes allocated by this thread so far, as counted by HotSpot.
+     */
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.android.members.data;
+
+import android.content.ContentResolver;
+
+import com.example.android.members.BuildConfig;
+import com.example.android.members.data.MemberContract.MemberEntry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Times exporting every member to an archive and importing it back into an empty table, plain
+ * and deflated. For the 1M rows the archive is meant for, run with
+ * "-Dmembers.benchmark.sizes=1000000".
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class MemberArchiveBenchmark {
+
+    private ContentResolver mResolver;
+
+    @Before
+    public void setUp() {
+        mResolver = TestMembers.resolver();
+    }
+
+    @Test
+    public void exportAndImport() throws Exception {
+        for (int size : MemberBenchmarks.SIZES) {
+            for (boolean compress : new boolean[]{false, true}) {
+                mResolver.delete(MemberEntry.CONTENT_URI, null, null);
+                run(size, compress);
+            }
+        }
+    }
+
+    private void run(int size, boolean compress) throws Exception {
+        MemberBenchmarks.fill(mResolver, size);
+        String kind = compress ? ".deflated" : ".plain";
+        File file = File.createTempFile("members", ".archive");
+        try {
+            long start = System.nanoTime();
+            assertEquals(size, MemberArchive.export(mResolver, file, compress));
+            MemberBenchmarks.record("export" + kind, size, size, System.nanoTime() - start);
+            System.out.println(String.format("archive of %d members: %d bytes", size,
+                    file.length()));
+
+            mResolver.delete(MemberEntry.CONTENT_URI, null, null);
+            start = System.nanoTime();
+            assertEquals(size, MemberArchive.importFrom(mResolver, file));
+            MemberBenchmarks.record("import" + kind, size, size, System.nanoTime() - start);
+        } finally {
+            if (!file.delete()) {
+                file.deleteOnExit();
+            }
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.android.members.data;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+
+import com.example.android.members.data.MemberContract.MemberEntry;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+
+/**
+ * Sizes, timing and results for the *Benchmark tests. They are left out of the normal test run;
+ * "./gradlew testDebugUnitTest -Pbenchmark" runs them, and "-Dmembers.benchmark.sizes=1000,1000000"
+ * picks the member counts. Each result is printed and appended to a CSV file, by default
+ * build/benchmarks/members.csv, so the results of two builds can be diffed.
+ */
+final class MemberBenchmarks {
+
+    /** Member counts to run at, from -Dmembers.benchmark.sizes */
+    static final int[] SIZES = parseSizes(System.getProperty("members.benchmark.sizes",
+            "1000,10000"));
+
+    /** Operations timed per benchmark, for the ones that don't touch every member */
+    static final int OPERATIONS = Integer.getInteger("members.benchmark.operations", 1000);
+
+    private static final File RESULTS = new File(System.getProperty("members.benchmark.results",
+            "build/benchmarks/members.csv"));
+
+    /** Rows per bulk insert when filling the table */
+    private static final int FILL_CHUNK_ROWS = 10000;
+
+    private MemberBenchmarks() {}
+
+    /**
+     * Insert {@code count} members with codes from 1, in bulk, and return their _IDs in code
+     * order.
+     */
+    static long[] fill(ContentResolver resolver, int count) {
+        for (int first = 1; first <= count; first += FILL_CHUNK_ROWS) {
+            resolver.bulkInsert(MemberEntry.CONTENT_URI,
+                    TestMembers.members(first, Math.min(FILL_CHUNK_ROWS, count - first + 1)));
+        }
+        long[] ids = new long[count];
+        Cursor cursor = resolver.query(MemberEntry.CONTENT_URI, new String[]{MemberEntry._ID},
+                null, null, MemberEntry.COLUMN_MEMBER_CODE);
+        try {
+            for (int i = 0; cursor.moveToNext(); i++) {
+                ids[i] = cursor.getLong(0);
+            }
+        } finally {
+            cursor.close();
+        }
+        return ids;
+    }
+
+    /**
+     * Return the values of member {@code code} with a different weight, for updates.
+     */
+    static ContentValues reweighed(int code) {
+        ContentValues values = TestMembers.member(code);
+        values.put(MemberEntry.COLUMN_MEMBER_WEIGHT,
+                values.getAsInteger(MemberEntry.COLUMN_MEMBER_WEIGHT) + 1);
+        return values;
+    }
+
+    /**
+     * Print and store one result.
+     *
+     * @param operations what the time was spent on, e.g. rows inserted or queries run
+     * @param nanos      total time taken
+     */
+    static void record(String benchmark, int size, int operations, long nanos) {
+        double perOperation = operations == 0 ? 0 : (double) nanos / operations;
+        System.out.println(String.format("%s at %d members: %d operations in %d ms, %.0f ns each",
+                benchmark, size, operations, nanos / 1000000, perOperation));
+
+        boolean header = !RESULTS.exists();
+        File directory = RESULTS.getAbsoluteFile().getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            System.err.println("Can't create " + directory);
+            return;
+        }
+        try {
+            PrintWriter writer = new PrintWriter(new FileWriter(RESULTS, true));
+            try {
+                if (header) {
+                    writer.println("benchmark,size,operations,nanos,nanos_per_operation");
+                }
+                writer.println(String.format("%s,%d,%d,%d,%.1f", benchmark, size, operations,
+                        nanos, perOperation));
+            } finally {
+                writer.close();
+            }
+        } catch (IOException e) {
+            System.err.println("Can't write " + RESULTS + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Return the given percentile of the latencies, sorting them.
+     */
+    static long percentile(long[] nanos, int percent) {
+        Arrays.sort(nanos);
+        return nanos.length == 0 ? 0
+                : nanos[Math.min(nanos.length - 1, nanos.length * percent / 100)];
+    }
+
+    private static int[] parseSizes(String sizes) {
+        String[] parts = sizes.split(",");
+        int[] parsed = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            parsed[i] = Integer.parseInt(parts[i].trim());
+        }
+        return parsed;
+    }
+}
@@ -0,0 +1,68 @@
+package com.example.android.members.data;
+
+import android.content.Context;
+import android.database.DatabaseUtils;
+
+import com.example.android.members.BuildConfig;
+import com.example.android.members.data.MemberContract.CheckInEntry;
+import com.example.android.members.data.MemberContract.MemberEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class MemberCheckInsTest {
+
+    private MemberDbHelper mDbHelper;
+
+    private MemberCheckIns mCheckIns;
+
+    private long mMemberId;
+
+    @Before
+    public void setUp() {
+        Context context = RuntimeEnvironment.application;
+        mDbHelper = new MemberDbHelper(context);
+        mMemberId = mDbHelper.getWritableDatabase().insertOrThrow(MemberEntry.TABLE_NAME, null,
+                TestMembers.member(1));
+        mCheckIns = new MemberCheckIns(mDbHelper, context.getContentResolver());
+    }
+
+    @After
+    public void tearDown() {
+        mDbHelper.close();
+    }
+
+    @Test
+    public void commitStoresTheAppendedCheckIns() {
+        mCheckIns.append(mMemberId, 1000);
+        mCheckIns.append(mMemberId, 2000);
+        mCheckIns.commit();
+        assertEquals(2, DatabaseUtils.queryNumEntries(mDbHelper.getReadableDatabase(),
+                CheckInEntry.TABLE_NAME));
+    }
+
+    @Test
+    public void theLastGroupOfABurstIsSyncedWithinTheSyncInterval() throws Exception {
+        // The first commit comes right after the initial sync time, so it is too soon to sync
+        for (int i = 0; i < 3; i++) {
+            mCheckIns.append(mMemberId, 1000 + i);
+            mCheckIns.commit();
+        }
+        assertTrue(mCheckIns.hasUnsyncedCommits());
+
+        // No commit follows the burst; the scheduled sync has to cover it
+        Thread.sleep(MemberCheckIns.SYNC_INTERVAL_MS + 500);
+        assertFalse(mCheckIns.hasUnsyncedCommits());
+    }
+}
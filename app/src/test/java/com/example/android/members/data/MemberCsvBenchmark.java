@@ -0,0 +1,66 @@
+package com.example.android.members.data;
+
+import android.content.ContentResolver;
+
+import com.example.android.members.BuildConfig;
+import com.example.android.members.data.MemberContract.MemberEntry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Times a CSV import at a few batch sizes against inserting the same members one at a time,
+ * as the editor does, and times the export that produced the file.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class MemberCsvBenchmark {
+
+    private static final int[] BATCH_ROWS = {MemberCsv.DEFAULT_BATCH_ROWS, 1000};
+
+    private ContentResolver mResolver;
+
+    @Before
+    public void setUp() {
+        mResolver = TestMembers.resolver();
+    }
+
+    @Test
+    public void importAgainstOneInsertPerRow() throws Exception {
+        for (int size : MemberBenchmarks.SIZES) {
+            mResolver.delete(MemberEntry.CONTENT_URI, null, null);
+            run(size);
+        }
+    }
+
+    private void run(int size) throws Exception {
+        long start = System.nanoTime();
+        for (int code = 1; code <= size; code++) {
+            mResolver.insert(MemberEntry.CONTENT_URI, TestMembers.member(code));
+        }
+        MemberBenchmarks.record("insert.perRow", size, size, System.nanoTime() - start);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        start = System.nanoTime();
+        assertEquals(size, MemberCsv.export(mResolver, out));
+        MemberBenchmarks.record("csvExport", size, size, System.nanoTime() - start);
+        byte[] csv = out.toByteArray();
+
+        for (int batchRows : BATCH_ROWS) {
+            mResolver.delete(MemberEntry.CONTENT_URI, null, null);
+            start = System.nanoTime();
+            assertEquals(size, MemberCsv.importFrom(mResolver, new ByteArrayInputStream(csv),
+                    csv.length, batchRows, null));
+            MemberBenchmarks.record("csvImport.batch" + batchRows, size, size,
+                    System.nanoTime() - start);
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.example.android.members.data;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.DatabaseUtils;
+
+import com.example.android.members.BuildConfig;
+import com.example.android.members.data.MemberContract.DuplicateEntry;
+import com.example.android.members.data.MemberContract.MemberEntry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static com.example.android.members.data.TestMembers.count;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class MemberDuplicatesTest {
+
+    private static final String[] FIRST_NAMES = {"Ashutosh", "Rahul", "Priya", "Anjali",
+            "Vikram", "Sunita", "Arjun", "Kavita", "Rohit", "Neha", "Amit", "Pooja"};
+
+    private static final String[] LAST_NAMES = {"Sharma", "Verma", "Gupta", "Singh", "Patel",
+            "Kumar", "Yadav", "Joshi", "Mehta", "Reddy"};
+
+    /** Members compared; the phones and names they are drawn from keep blocks small */
+    private static final int MEMBERS = 1500;
+
+    private static final int PHONES = 200;
+
+    @Test
+    public void findPairsFindsEveryPairOfSmallBlocks() {
+        Random random = new Random(42);
+        long[] ids = new long[MEMBERS];
+        String[] names = new String[MEMBERS];
+        String[] fatherNames = new String[MEMBERS];
+        String[] phones = new String[MEMBERS];
+        for (int i = 0; i < MEMBERS; i++) {
+            ids[i] = i + 1;
+            String first = FIRST_NAMES[random.nextInt(FIRST_NAMES.length)];
+            String last = LAST_NAMES[random.nextInt(LAST_NAMES.length)];
+            // The keys have to see through word order and phone formatting
+            names[i] = random.nextBoolean() ? first + " " + last : last + ", " + first;
+            fatherNames[i] = LAST_NAMES[random.nextInt(LAST_NAMES.length)] + " "
+                    + FIRST_NAMES[random.nextInt(FIRST_NAMES.length)];
+            String phone = String.format("98765%05d", random.nextInt(PHONES));
+            phones[i] = random.nextBoolean() ? phone : "+91 " + phone.substring(0, 5) + "-"
+                    + phone.substring(5);
+        }
+        // Below the window, every pair in a block is scored, so nothing may be missed
+        assertTrue(largestBlock(phones, names) <= MemberDuplicates.WINDOW);
+
+        Map<String, Float> expected = new TreeMap<>();
+        for (int a = 0; a < MEMBERS; a++) {
+            for (int b = a + 1; b < MEMBERS; b++) {
+                String phoneKey = MemberDuplicates.phoneKey(phones[a]);
+                if (!phoneKey.equals(MemberDuplicates.phoneKey(phones[b]))
+                        && !MemberDuplicates.nameKey(names[a])
+                        .equals(MemberDuplicates.nameKey(names[b]))) {
+                    continue;
+                }
+                float score = MemberDuplicates.score(phoneKey,
+                        MemberTrigrams.trigrams(names[a]), MemberTrigrams.trigrams(fatherNames[a]),
+                        MemberDuplicates.phoneKey(phones[b]),
+                        MemberTrigrams.trigrams(names[b]), MemberTrigrams.trigrams(fatherNames[b]));
+                if (score >= DuplicateEntry.MIN_SCORE) {
+                    expected.put(ids[a] + "-" + ids[b], score);
+                }
+            }
+        }
+
+        MemberDuplicates.Pairs pairs = MemberDuplicates.findPairs(ids, names, fatherNames,
+                phones, 4);
+        Map<String, Float> actual = new TreeMap<>();
+        for (int i = 0; i < pairs.mSize; i++) {
+            String pair = pairs.mIds[i] + "-" + pairs.mOtherIds[i];
+            assertTrue("found twice: " + pair, actual.put(pair, pairs.mScores[i]) == null);
+        }
+        assertTrue(expected.size() > 0);
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    public void aNameAndFatherNameMakeAPairWithoutAPhone() {
+        long[] ids = {1, 2, 3};
+        String[] names = {"Rahul Verma", "Verma, Rahul", "Rahul Verma"};
+        String[] fatherNames = {"Suresh Verma", "Suresh Verma", "Mahesh Verma"};
+        String[] phones = {"9876500001", "9876500002", "9876500003"};
+
+        // Only the first two share a father name, and no two share a phone
+        MemberDuplicates.Pairs pairs = MemberDuplicates.findPairs(ids, names, fatherNames,
+                phones, 1);
+        assertEquals(1, pairs.mSize);
+        assertEquals(1, pairs.mIds[0]);
+        assertEquals(2, pairs.mOtherIds[0]);
+
+        // And so does a member inserted one at a time
+        ContentResolver resolver = TestMembers.resolver();
+        for (int i = 0; i < ids.length; i++) {
+            ContentValues values = TestMembers.member((int) ids[i]);
+            values.put(MemberEntry.COLUMN_MEMBER_NAME, names[i]);
+            values.put(MemberEntry.COLUMN_MEMBER_FATHER_NAME, fatherNames[i]);
+            values.put(MemberEntry.COLUMN_MEMBER_PHONE, phones[i]);
+            resolver.insert(MemberEntry.CONTENT_URI, values);
+        }
+        assertEquals(1, count(resolver, DuplicateEntry.CONTENT_URI));
+    }
+
+    @Test
+    public void bulkInsertStoresKeysAndLeavesThePairsToFindAll() {
+        ContentResolver resolver = TestMembers.resolver();
+        ContentValues[] rows = TestMembers.members(1, 100);
+        // Member 2 is member 1 entered again under a new code
+        ContentValues copy = TestMembers.member(1);
+        copy.put(MemberEntry.COLUMN_MEMBER_CODE, 2);
+        rows[1] = copy;
+        resolver.bulkInsert(MemberEntry.CONTENT_URI, rows);
+
+        MemberDbHelper dbHelper = new MemberDbHelper(RuntimeEnvironment.application);
+        try {
+            assertEquals(100, DatabaseUtils.queryNumEntries(dbHelper.getReadableDatabase(),
+                    MemberDuplicates.TABLE_KEYS));
+        } finally {
+            dbHelper.close();
+        }
+        assertEquals(0, count(resolver, DuplicateEntry.CONTENT_URI));
+
+        resolver.call(MemberContract.BASE_CONTENT_URI, MemberContract.METHOD_FIND_DUPLICATES,
+                null, null);
+        assertEquals(1, count(resolver, DuplicateEntry.CONTENT_URI));
+    }
+
+    private static int largestBlock(String[] phones, String[] names) {
+        Map<String, Integer> sizes = new HashMap<>();
+        int largest = 0;
+        for (int i = 0; i < phones.length; i++) {
+            for (String key : new String[]{"phone " + MemberDuplicates.phoneKey(phones[i]),
+                    "name " + MemberDuplicates.nameKey(names[i])}) {
+                Integer size = sizes.get(key);
+                size = size == null ? 1 : size + 1;
+                sizes.put(key, size);
+                largest = Math.max(largest, size);
+            }
+        }
+        return largest;
+    }
+}
@@ -0,0 +1,200 @@
+package com.example.android.members.data;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.example.android.members.BuildConfig;
+import com.example.android.members.data.MemberContract.MemberEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class MemberIndexTest {
+
+    private static final int MEMBERS = 200;
+
+    /** Phones are drawn from this many, so several members share one */
+    private static final int PHONES = 50;
+
+    private static final long LOAD_TIMEOUT_MS = 5000;
+
+    private MemberDbHelper mDbHelper;
+
+    private MemberIndex mIndex;
+
+    // What the index should hold
+    private final Map<Integer, Long> mCodes = new HashMap<>();
+    private final Map<Long, Integer> mCodeOf = new HashMap<>();
+    private final Map<Long, String> mPhoneOf = new HashMap<>();
+
+    @Before
+    public void setUp() throws Exception {
+        mDbHelper = new MemberDbHelper(RuntimeEnvironment.application);
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+        for (int code = 1; code <= MEMBERS; code++) {
+            long id = database.insertOrThrow(MemberEntry.TABLE_NAME, null,
+                    TestMembers.member(code));
+            expect(id, code, TestMembers.member(code)
+                    .getAsString(MemberEntry.COLUMN_MEMBER_PHONE));
+        }
+        mIndex = new MemberIndex(mDbHelper);
+        mIndex.load();
+        awaitLoad(1);
+    }
+
+    @After
+    public void tearDown() {
+        mDbHelper.close();
+    }
+
+    @Test
+    public void aLoadedIndexFindsEveryMember() {
+        assertMatches();
+    }
+
+    @Test
+    public void writesKeepTheIndexInStepWithTheMembers() {
+        Random random = new Random(42);
+        long nextId = MEMBERS + 1;
+        for (int i = 0; i < 2000; i++) {
+            List<Long> ids = new ArrayList<>(mCodeOf.keySet());
+            int op = random.nextInt(3);
+            if (op == 0 || ids.isEmpty()) {
+                int code = freeCode(random);
+                String phone = phone(random);
+                mIndex.put(nextId, code, phone);
+                expect(nextId++, code, phone);
+            } else if (op == 1) {
+                long id = ids.get(random.nextInt(ids.size()));
+                // Change the code, the phone or both, as an update of one column would
+                Integer code = random.nextBoolean() ? freeCode(random) : null;
+                String phone = code == null || random.nextBoolean() ? phone(random) : null;
+                mIndex.update(id, code, phone);
+                forget(id);
+                expect(id, code != null ? code : mCodeOf.get(id),
+                        phone != null ? phone : mPhoneOf.get(id));
+            } else {
+                long id = ids.get(random.nextInt(ids.size()));
+                mIndex.remove(new long[]{id});
+                forget(id);
+                mCodeOf.remove(id);
+                mPhoneOf.remove(id);
+            }
+        }
+        assertMatches();
+    }
+
+    @Test
+    public void aMissingCodeIsUnknownWhileAWriteIsUnderWay() {
+        int code = MEMBERS + 1;
+        assertEquals(MemberIndex.ABSENT, mIndex.findByCode(code));
+
+        mIndex.beginWrite();
+        assertEquals(MemberIndex.UNKNOWN, mIndex.findByCode(code));
+        // A code that is present is still answered
+        assertEquals((long) mCodes.get(1), mIndex.findByCode(1));
+        mIndex.endWrite();
+
+        assertEquals(MemberIndex.ABSENT, mIndex.findByCode(code));
+    }
+
+    @Test
+    public void theProviderFindsBulkInsertedCodesAtOnce() throws Exception {
+        ContentResolver resolver = TestMembers.resolver();
+        // Start the provider and give its index time to load, so the codes come from the index
+        resolver.query(MemberEntry.CONTENT_URI, null, null, null, null).close();
+        Thread.sleep(500);
+
+        resolver.bulkInsert(MemberEntry.CONTENT_URI, TestMembers.members(1001, 100));
+        for (int code = 1001; code <= 1100; code++) {
+            Cursor cursor = resolver.query(MemberEntry.CONTENT_URI, null,
+                    MemberEntry.COLUMN_MEMBER_CODE + "=?",
+                    new String[]{String.valueOf(code)}, null);
+            try {
+                assertEquals("code " + code, 1, cursor.getCount());
+            } finally {
+                cursor.close();
+            }
+        }
+    }
+
+    private void expect(long id, int code, String phone) {
+        mCodes.put(code, id);
+        mCodeOf.put(id, code);
+        mPhoneOf.put(id, phone);
+    }
+
+    /** Drop the member's code from the expected codes; its phone goes with its _ID */
+    private void forget(long id) {
+        mCodes.remove(mCodeOf.get(id));
+    }
+
+    private int freeCode(Random random) {
+        int code;
+        do {
+            code = 1 + random.nextInt(MEMBERS * 2);
+        } while (mCodes.containsKey(code));
+        return code;
+    }
+
+    private static String phone(Random random) {
+        return String.format("8%09d", random.nextInt(PHONES));
+    }
+
+    private void assertMatches() {
+        for (int code = 1; code <= MEMBERS * 2; code++) {
+            Long id = mCodes.get(code);
+            assertEquals("code " + code, id == null ? MemberIndex.ABSENT : id,
+                    mIndex.findByCode(code));
+        }
+
+        Map<String, List<Long>> phones = new HashMap<>();
+        for (Map.Entry<Long, String> entry : mPhoneOf.entrySet()) {
+            List<Long> ids = phones.get(entry.getValue());
+            if (ids == null) {
+                ids = new ArrayList<>();
+                phones.put(entry.getValue(), ids);
+            }
+            ids.add(entry.getKey());
+        }
+        for (Map.Entry<String, List<Long>> entry : phones.entrySet()) {
+            long[] expected = new long[entry.getValue().size()];
+            for (int i = 0; i < expected.length; i++) {
+                expected[i] = entry.getValue().get(i);
+            }
+            Arrays.sort(expected);
+            long[] actual = mIndex.findByPhone(entry.getKey());
+            Arrays.sort(actual);
+            assertArrayEquals("phone " + entry.getKey(), expected, actual);
+        }
+        assertEquals(0, mIndex.findByPhone("7000000000").length);
+    }
+
+    private void awaitLoad(int code) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + LOAD_TIMEOUT_MS;
+        while (mIndex.findByCode(code) == MemberIndex.UNKNOWN
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertNotEquals("index not loaded", MemberIndex.UNKNOWN, mIndex.findByCode(code));
+    }
+}
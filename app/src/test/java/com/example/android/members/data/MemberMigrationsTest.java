@@ -0,0 +1,205 @@
+package com.example.android.members.data;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.example.android.members.BuildConfig;
+import com.example.android.members.data.MemberContract.MemberEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class MemberMigrationsTest {
+
+    private Context mContext;
+
+    private MemberDbHelper mDbHelper;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+    }
+
+    @After
+    public void tearDown() {
+        if (mDbHelper != null) {
+            mDbHelper.close();
+        }
+    }
+
+    @Test
+    public void upgradeKeepsMembersWithDuplicateCodes() {
+        createVersion1(new int[]{7, 7, 8});
+
+        mDbHelper = new MemberDbHelper(mContext);
+        SQLiteDatabase db = mDbHelper.getWritableDatabase();
+
+        assertEquals(3, DatabaseUtils.queryNumEntries(db, MemberEntry.TABLE_NAME));
+        assertFalse(MemberMigrations.hasUniqueCodes(db));
+        // The code index is still there for lookups, just not unique
+        assertTrue(queryPlan(db, MemberEntry.COLUMN_MEMBER_CODE + " = 7")
+                .contains(MemberMigrations.INDEX_MEMBER_CODE));
+    }
+
+    @Test
+    public void codesBecomeUniqueOnceTheDuplicatesAreResolved() {
+        createVersion1(new int[]{7, 7, 8});
+        ContentValues values = new ContentValues();
+        values.put(MemberEntry.COLUMN_MEMBER_CODE, 9);
+        assertEquals(1, TestMembers.resolver().update(
+                ContentUris.withAppendedId(MemberEntry.CONTENT_URI, 2), values, null, null));
+
+        mDbHelper = new MemberDbHelper(mContext);
+        assertTrue(MemberMigrations.hasUniqueCodes(mDbHelper.getWritableDatabase()));
+    }
+
+    @Test
+    public void codesStayUnenforcedWhileDuplicatesRemain() {
+        createVersion1(new int[]{7, 7, 7});
+        ContentValues values = new ContentValues();
+        values.put(MemberEntry.COLUMN_MEMBER_CODE, 9);
+        assertEquals(1, TestMembers.resolver().update(
+                ContentUris.withAppendedId(MemberEntry.CONTENT_URI, 2), values, null, null));
+
+        mDbHelper = new MemberDbHelper(mContext);
+        assertFalse(MemberMigrations.hasUniqueCodes(mDbHelper.getWritableDatabase()));
+    }
+
+    @Test
+    public void lookupByADuplicateCodeFindsEveryMember() {
+        createVersion1(new int[]{7, 7, 8});
+        Cursor cursor = TestMembers.resolver().query(MemberEntry.CONTENT_URI, null,
+                MemberEntry.COLUMN_MEMBER_CODE + "=?", new String[]{"7"}, null);
+        try {
+            assertEquals(2, cursor.getCount());
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void upgradeMakesUniqueCodesUnique() {
+        createVersion1(new int[]{7, 8});
+        mDbHelper = new MemberDbHelper(mContext);
+        assertTrue(MemberMigrations.hasUniqueCodes(mDbHelper.getWritableDatabase()));
+    }
+
+    @Test
+    public void upgradeKeepsADateItCannotRead() {
+        createVersion1(new int[]{7, 8}, new String[]{"01/01/2017", "first of May"});
+
+        mDbHelper = new MemberDbHelper(mContext);
+        SQLiteDatabase db = mDbHelper.getWritableDatabase();
+        assertEquals(2, DatabaseUtils.queryNumEntries(db, MemberEntry.TABLE_NAME));
+        assertEquals(0, DatabaseUtils.longForQuery(db, "SELECT " + MemberEntry.COLUMN_MEMBER_DATE
+                + " FROM " + MemberEntry.TABLE_NAME + " WHERE " + MemberEntry._ID + " = 2", null));
+        assertEquals("first of May", DatabaseUtils.stringForQuery(db, "SELECT "
+                + MemberEntry.COLUMN_MEMBER_DATE + " FROM " + MemberMigrations.TABLE_LEGACY_DATES
+                + " WHERE " + MemberEntry._ID + " = 2", null));
+        assertEquals(1, DatabaseUtils.queryNumEntries(db, MemberMigrations.TABLE_LEGACY_DATES));
+
+        // Saving the member unchanged keeps the text; a real date replaces it
+        ContentValues values = new ContentValues();
+        values.put(MemberEntry.COLUMN_MEMBER_DATE, 0);
+        db.update(MemberEntry.TABLE_NAME, values, MemberEntry._ID + " = 2", null);
+        assertEquals(1, DatabaseUtils.queryNumEntries(db, MemberMigrations.TABLE_LEGACY_DATES));
+        values.put(MemberEntry.COLUMN_MEMBER_DATE, 17287);
+        db.update(MemberEntry.TABLE_NAME, values, MemberEntry._ID + " = 2", null);
+        assertEquals(0, DatabaseUtils.queryNumEntries(db, MemberMigrations.TABLE_LEGACY_DATES));
+    }
+
+    @Test
+    public void lookupsUseTheIndexes() {
+        mDbHelper = new MemberDbHelper(mContext);
+        SQLiteDatabase db = mDbHelper.getReadableDatabase();
+
+        assertTrue(queryPlan(db, MemberEntry.COLUMN_MEMBER_CODE + " = 7")
+                .contains(MemberMigrations.INDEX_MEMBER_CODE));
+        assertTrue(queryPlan(db, MemberEntry.COLUMN_MEMBER_PHONE + " = '9876543210'")
+                .contains(MemberMigrations.INDEX_MEMBER_PHONE));
+        assertTrue(queryPlan(db, MemberEntry.COLUMN_MEMBER_NAME + " = 'ram' COLLATE NOCASE")
+                .contains(MemberMigrations.INDEX_MEMBER_NAME));
+        assertTrue(queryPlan(db, MemberEntry.COLUMN_MEMBER_DATE + " BETWEEN 17000 AND 17100")
+                .contains(MemberMigrations.INDEX_MEMBER_DATE));
+    }
+
+    /**
+     * Write a version 1 database, as the first release of the app left it, with a member for
+     * each of the given codes.
+     */
+    private void createVersion1(int[] codes) {
+        String[] dates = new String[codes.length];
+        Arrays.fill(dates, "01/01/2017");
+        createVersion1(codes, dates);
+    }
+
+    /**
+     * Write a version 1 database with a member for each of the given codes, admitted on the
+     * date typed at the same index.
+     */
+    private void createVersion1(int[] codes, String[] dates) {
+        File file = mContext.getDatabasePath("gym.db");
+        file.getParentFile().mkdirs();
+        SQLiteDatabase db = SQLiteDatabase.openOrCreateDatabase(file, null);
+        try {
+            db.execSQL("CREATE TABLE " + MemberEntry.TABLE_NAME + " ("
+                    + MemberEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                    + MemberEntry.COLUMN_MEMBER_NAME + " TEXT NOT NULL, "
+                    + MemberEntry.COLUMN_MEMBER_FATHER_NAME + " TEXT NOT NULL, "
+                    + MemberEntry.COLUMN_MEMBER_CODE + " INTEGER NOT NULL, "
+                    + MemberEntry.COLUMN_MEMBER_PHONE + " TEXT NOT NULL, "
+                    + MemberEntry.COLUMN_MEMBER_DATE + " TEXT NOT NULL, "
+                    + MemberEntry.COLUMN_MEMBER_WEIGHT + " INTEGER NOT NULL );");
+            for (int i = 0; i < codes.length; i++) {
+                ContentValues values = new ContentValues();
+                values.put(MemberEntry.COLUMN_MEMBER_NAME, "Member " + i);
+                values.put(MemberEntry.COLUMN_MEMBER_FATHER_NAME, "Father " + i);
+                values.put(MemberEntry.COLUMN_MEMBER_CODE, codes[i]);
+                values.put(MemberEntry.COLUMN_MEMBER_PHONE, "98765432" + i);
+                values.put(MemberEntry.COLUMN_MEMBER_DATE, dates[i]);
+                values.put(MemberEntry.COLUMN_MEMBER_WEIGHT, 70);
+                db.insertOrThrow(MemberEntry.TABLE_NAME, null, values);
+            }
+            db.setVersion(1);
+        } finally {
+            db.close();
+        }
+    }
+
+    /**
+     * Return the details of the query plan of a members query with the given condition, one
+     * step per line.
+     */
+    private static String queryPlan(SQLiteDatabase db, String where) {
+        Cursor cursor = db.rawQuery("EXPLAIN QUERY PLAN SELECT * FROM " + MemberEntry.TABLE_NAME
+                + " WHERE " + where, null);
+        try {
+            StringBuilder plan = new StringBuilder();
+            int detail = cursor.getColumnIndexOrThrow("detail");
+            while (cursor.moveToNext()) {
+                plan.append(cursor.getString(detail)).append('\n');
+            }
+            return plan.toString();
+        } finally {
+            cursor.close();
+        }
+    }
+}
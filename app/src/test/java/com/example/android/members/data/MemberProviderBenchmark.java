@@ -0,0 +1,128 @@
+package com.example.android.members.data;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.database.Cursor;
+
+import com.example.android.members.BuildConfig;
+import com.example.android.members.data.MemberContract.MemberEntry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Times the provider's operations at each of {@link MemberBenchmarks#SIZES}: inserting one
+ * member and in bulk, reading by _ID, by code and in full, mapping rows to {@link Member}s,
+ * and updating and deleting by _ID. Runs on SQLite through Robolectric, so the numbers are for
+ * comparing builds, not for predicting a device.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class MemberProviderBenchmark {
+
+    private ContentResolver mResolver;
+
+    @Before
+    public void setUp() {
+        mResolver = TestMembers.resolver();
+    }
+
+    @Test
+    public void providerOperations() {
+        for (int size : MemberBenchmarks.SIZES) {
+            mResolver.delete(MemberEntry.CONTENT_URI, null, null);
+            run(size);
+        }
+    }
+
+    private void run(int size) {
+        long start = System.nanoTime();
+        long[] ids = MemberBenchmarks.fill(mResolver, size);
+        MemberBenchmarks.record("bulkInsert", size, size, System.nanoTime() - start);
+
+        int operations = Math.min(MemberBenchmarks.OPERATIONS, size);
+        Random random = new Random(size);
+
+        start = System.nanoTime();
+        for (int i = 1; i <= operations; i++) {
+            mResolver.insert(MemberEntry.CONTENT_URI, TestMembers.member(size + i));
+        }
+        MemberBenchmarks.record("insert", size, operations, System.nanoTime() - start);
+
+        start = System.nanoTime();
+        for (int i = 0; i < operations; i++) {
+            Cursor cursor = mResolver.query(ContentUris.withAppendedId(MemberEntry.CONTENT_URI,
+                    ids[random.nextInt(size)]), null, null, null, null);
+            try {
+                assertEquals(1, cursor.getCount());
+            } finally {
+                cursor.close();
+            }
+        }
+        MemberBenchmarks.record("queryById", size, operations, System.nanoTime() - start);
+
+        start = System.nanoTime();
+        for (int i = 0; i < operations; i++) {
+            Cursor cursor = mResolver.query(MemberEntry.CONTENT_URI, null,
+                    MemberEntry.COLUMN_MEMBER_CODE + "=?",
+                    new String[]{String.valueOf(1 + random.nextInt(size))}, null);
+            try {
+                assertEquals(1, cursor.getCount());
+            } finally {
+                cursor.close();
+            }
+        }
+        MemberBenchmarks.record("queryByCode", size, operations, System.nanoTime() - start);
+
+        start = System.nanoTime();
+        int rows = 0;
+        Cursor cursor = mResolver.query(MemberEntry.CONTENT_URI, MemberRepository.PROJECTION,
+                null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                rows++;
+            }
+        } finally {
+            cursor.close();
+        }
+        MemberBenchmarks.record("fullScan", size, rows, System.nanoTime() - start);
+
+        start = System.nanoTime();
+        rows = 0;
+        cursor = mResolver.query(MemberEntry.CONTENT_URI, MemberRepository.PROJECTION,
+                null, null, null);
+        try {
+            MemberRepository.RowMapper mapper = new MemberRepository.RowMapper(cursor);
+            while (cursor.moveToNext()) {
+                mapper.map(cursor);
+                rows++;
+            }
+        } finally {
+            cursor.close();
+        }
+        MemberBenchmarks.record("fullScanMapped", size, rows, System.nanoTime() - start);
+
+        start = System.nanoTime();
+        for (int i = 0; i < operations; i++) {
+            int index = random.nextInt(size);
+            mResolver.update(ContentUris.withAppendedId(MemberEntry.CONTENT_URI, ids[index]),
+                    MemberBenchmarks.reweighed(index + 1), null, null);
+        }
+        MemberBenchmarks.record("updateById", size, operations, System.nanoTime() - start);
+
+        start = System.nanoTime();
+        for (int i = 0; i < operations; i++) {
+            // Every member deleted is a different one; _IDs are in code order
+            mResolver.delete(ContentUris.withAppendedId(MemberEntry.CONTENT_URI,
+                    ids[i * size / operations]), null, null);
+        }
+        MemberBenchmarks.record("deleteById", size, operations, System.nanoTime() - start);
+    }
+}
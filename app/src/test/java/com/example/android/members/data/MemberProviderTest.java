@@ -0,0 +1,218 @@
+package com.example.android.members.data;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+
+import com.example.android.members.BuildConfig;
+import com.example.android.members.data.MemberContract.HistoryEntry;
+import com.example.android.members.data.MemberContract.MemberEntry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowContentResolver;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.example.android.members.data.TestMembers.count;
+import static com.example.android.members.data.TestMembers.countMembers;
+import static com.example.android.members.data.TestMembers.member;
+import static com.example.android.members.data.TestMembers.members;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.robolectric.Shadows.shadowOf;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class MemberProviderTest {
+
+    /** Rows per run of the bulk insert comparison; raise with -Dmembers.benchmark.rows=100000 */
+    private static final int BENCHMARK_ROWS = Integer.getInteger("members.benchmark.rows", 10000);
+
+    private ContentResolver mResolver;
+
+    @Before
+    public void setUp() {
+        mResolver = TestMembers.resolver();
+    }
+
+    @Test
+    public void bulkInsertStoresEveryRow() {
+        assertEquals(100, mResolver.bulkInsert(MemberEntry.CONTENT_URI, members(1, 100)));
+        assertEquals(100, countMembers(mResolver));
+    }
+
+    @Test
+    public void bulkInsertWritesNothingIfARowIsInvalid() {
+        ContentValues[] rows = members(1, 100);
+        rows[99].remove(MemberEntry.COLUMN_MEMBER_PHONE);
+        try {
+            mResolver.bulkInsert(MemberEntry.CONTENT_URI, rows);
+            fail("A member without a phone was accepted");
+        } catch (IllegalArgumentException expected) {
+        }
+        assertEquals(0, countMembers(mResolver));
+    }
+
+    @Test
+    public void bulkInsertWritesNothingIfARowIsRejected() {
+        ContentValues[] rows = members(1, 100);
+        rows[99].put(MemberEntry.COLUMN_MEMBER_CODE, 1);
+        assertEquals(0, mResolver.bulkInsert(MemberEntry.CONTENT_URI, rows));
+        assertEquals(0, countMembers(mResolver));
+    }
+
+    @Test
+    public void bulkInsertNotifiesTheMembersUriOnce() {
+        ShadowContentResolver resolver = shadowOf(mResolver);
+        int before = resolver.getNotifiedUris().size();
+        mResolver.bulkInsert(MemberEntry.CONTENT_URI, members(1, 100));
+
+        List<ShadowContentResolver.NotifiedUri> notified =
+                resolver.getNotifiedUris().subList(before, resolver.getNotifiedUris().size());
+        int members = 0;
+        for (ShadowContentResolver.NotifiedUri uri : notified) {
+            assertTrue("Row notified: " + uri.uri, !isMemberRow(uri.uri));
+            if (uri.uri.equals(MemberEntry.CONTENT_URI)) {
+                members++;
+            }
+        }
+        assertEquals(1, members);
+    }
+
+    @Test
+    public void applyBatchWritesNothingIfAnOperationFails() throws Exception {
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        for (ContentValues row : members(1, 10)) {
+            operations.add(ContentProviderOperation.newInsert(MemberEntry.CONTENT_URI)
+                    .withValues(row).build());
+        }
+        ContentValues invalid = member(11);
+        invalid.put(MemberEntry.COLUMN_MEMBER_WEIGHT, 0);
+        operations.add(ContentProviderOperation.newInsert(MemberEntry.CONTENT_URI)
+                .withValues(invalid).build());
+        try {
+            mResolver.applyBatch(MemberContract.CONTENT_AUTHORITY, operations);
+            fail("A member without a weight was accepted");
+        } catch (IllegalArgumentException expected) {
+        }
+        assertEquals(0, countMembers(mResolver));
+    }
+
+    @Test
+    public void insertOfATakenCodeIsRejected() {
+        mResolver.insert(MemberEntry.CONTENT_URI, member(1));
+        ContentValues sameCode = member(2);
+        sameCode.put(MemberEntry.COLUMN_MEMBER_CODE, 1);
+        Uri uri = mResolver.insert(MemberEntry.CONTENT_URI, sameCode);
+        assertEquals(-1, ContentUris.parseId(uri));
+        assertEquals(1, countMembers(mResolver));
+    }
+
+    @Test
+    public void updateToATakenCodeIsRejected() {
+        mResolver.insert(MemberEntry.CONTENT_URI, member(1));
+        Uri uri = mResolver.insert(MemberEntry.CONTENT_URI, member(2));
+
+        // The editor saves every column, through the compiled update
+        ContentValues values = member(2);
+        values.put(MemberEntry.COLUMN_MEMBER_CODE, 1);
+        assertEquals(0, mResolver.update(uri, values, null, null));
+        // Only the code, through SQLiteDatabase
+        ContentValues code = new ContentValues();
+        code.put(MemberEntry.COLUMN_MEMBER_CODE, 1);
+        assertEquals(0, mResolver.update(MemberEntry.CONTENT_URI, code,
+                MemberEntry.COLUMN_MEMBER_CODE + "=?", new String[]{"2"}));
+
+        Cursor cursor = mResolver.query(uri, null, null, null, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            assertEquals(2, cursor.getInt(cursor.getColumnIndex(MemberEntry.COLUMN_MEMBER_CODE)));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void onlyAChangedWeightIsRecordedInTheHistory() {
+        Uri uri = mResolver.insert(MemberEntry.CONTENT_URI, member(1));
+        assertEquals(1, count(mResolver, HistoryEntry.CONTENT_URI));
+
+        // The editor saves every column, here with a new phone but the same weight
+        ContentValues values = member(1);
+        values.put(MemberEntry.COLUMN_MEMBER_PHONE, "9000000000");
+        assertEquals(1, mResolver.update(uri, values, null, null));
+        assertEquals(1, count(mResolver, HistoryEntry.CONTENT_URI));
+
+        values.put(MemberEntry.COLUMN_MEMBER_WEIGHT, 99);
+        assertEquals(1, mResolver.update(uri, values, null, null));
+        assertEquals(2, count(mResolver, HistoryEntry.CONTENT_URI));
+    }
+
+    @Test
+    public void deletedMembersTakeTheirHistoryWithThem() {
+        mResolver.bulkInsert(MemberEntry.CONTENT_URI, members(1, 3));
+        assertEquals(3, count(mResolver, HistoryEntry.CONTENT_URI));
+
+        assertEquals(1, mResolver.delete(MemberEntry.CONTENT_URI,
+                MemberEntry.COLUMN_MEMBER_CODE + "=?", new String[]{"1"}));
+        assertEquals(2, count(mResolver, HistoryEntry.CONTENT_URI));
+
+        Cursor cursor = mResolver.query(MemberEntry.CONTENT_URI,
+                new String[]{MemberEntry._ID}, MemberEntry.COLUMN_MEMBER_CODE + "=?",
+                new String[]{"2"}, null);
+        Uri uri;
+        try {
+            assertTrue(cursor.moveToFirst());
+            uri = ContentUris.withAppendedId(MemberEntry.CONTENT_URI, cursor.getLong(0));
+        } finally {
+            cursor.close();
+        }
+        assertEquals(1, mResolver.delete(uri, null, null));
+        assertEquals(1, count(mResolver, HistoryEntry.CONTENT_URI));
+        assertEquals(1, countMembers(mResolver));
+    }
+
+    @Test
+    public void bulkInsertRecordsTheWeights() {
+        mResolver.bulkInsert(MemberEntry.CONTENT_URI, members(1, 100));
+        assertEquals(100, count(mResolver, HistoryEntry.CONTENT_URI));
+    }
+
+    /**
+     * Compare bulkInsert with one insert per row. Prints the times rather than asserting a
+     * ratio, which would depend on the machine; the bulk path only has to be the faster one.
+     */
+    @Test
+    public void bulkInsertIsFasterThanOneInsertPerRow() {
+        ContentValues[] rows = members(1, BENCHMARK_ROWS);
+        long start = System.nanoTime();
+        for (ContentValues row : rows) {
+            mResolver.insert(MemberEntry.CONTENT_URI, row);
+        }
+        long perRow = System.nanoTime() - start;
+
+        mResolver.delete(MemberEntry.CONTENT_URI, null, null);
+        start = System.nanoTime();
+        mResolver.bulkInsert(MemberEntry.CONTENT_URI, members(BENCHMARK_ROWS + 1, BENCHMARK_ROWS));
+        long bulk = System.nanoTime() - start;
+
+        System.out.println(String.format("%d rows: insert %d ms, bulkInsert %d ms",
+                BENCHMARK_ROWS, perRow / 1000000, bulk / 1000000));
+        assertEquals(BENCHMARK_ROWS, countMembers(mResolver));
+        assertTrue(bulk < perRow);
+    }
+
+    private static boolean isMemberRow(Uri uri) {
+        return uri.toString().startsWith(MemberEntry.CONTENT_URI + "/")
+                && uri.getLastPathSegment().matches("\\d+");
+    }
+}
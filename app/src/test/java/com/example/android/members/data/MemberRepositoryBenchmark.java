@@ -0,0 +1,100 @@
+package com.example.android.members.data;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+
+import com.example.android.members.BuildConfig;
+import com.example.android.members.data.MemberContract.MemberEntry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Times mapping every member's row with {@link MemberRepository.RowMapper} against the ad-hoc
+ * code EditorActivity.onLoadFinished had, which looked every column up by name for each row.
+ * Both read the same cursor, so only the mapping differs. Also times reading members by _ID
+ * one at a time against {@link MemberRepository#get(long[])}.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class MemberRepositoryBenchmark {
+
+    private ContentResolver mResolver;
+
+    private MemberRepository mRepository;
+
+    @Before
+    public void setUp() {
+        mResolver = TestMembers.resolver();
+        mRepository = new MemberRepository(mResolver);
+    }
+
+    @Test
+    public void rowMapperAgainstLookingUpColumnsPerRow() {
+        for (int size : MemberBenchmarks.SIZES) {
+            mResolver.delete(MemberEntry.CONTENT_URI, null, null);
+            run(size);
+        }
+    }
+
+    private void run(int size) {
+        long[] ids = MemberBenchmarks.fill(mResolver, size);
+
+        Cursor cursor = mResolver.query(MemberEntry.CONTENT_URI, MemberRepository.PROJECTION,
+                null, null, null);
+        try {
+            // Fill the cursor window before timing either
+            cursor.getCount();
+
+            long start = System.nanoTime();
+            int rows = 0;
+            while (cursor.moveToNext()) {
+                int idIndex = cursor.getColumnIndex(MemberEntry._ID);
+                int nameIndex = cursor.getColumnIndex(MemberEntry.COLUMN_MEMBER_NAME);
+                int fatherIndex = cursor.getColumnIndex(MemberEntry.COLUMN_MEMBER_FATHER_NAME);
+                int codeIndex = cursor.getColumnIndex(MemberEntry.COLUMN_MEMBER_CODE);
+                int phoneIndex = cursor.getColumnIndex(MemberEntry.COLUMN_MEMBER_PHONE);
+                int dateIndex = cursor.getColumnIndex(MemberEntry.COLUMN_MEMBER_DATE);
+                int weightIndex = cursor.getColumnIndex(MemberEntry.COLUMN_MEMBER_WEIGHT);
+                new Member(cursor.getLong(idIndex), cursor.getString(nameIndex),
+                        cursor.getString(fatherIndex), cursor.getInt(codeIndex),
+                        cursor.getString(phoneIndex), cursor.getLong(dateIndex),
+                        cursor.getInt(weightIndex));
+                rows++;
+            }
+            MemberBenchmarks.record("mapRows.perRowLookup", size, rows,
+                    System.nanoTime() - start);
+
+            cursor.moveToPosition(-1);
+            start = System.nanoTime();
+            rows = 0;
+            MemberRepository.RowMapper mapper = new MemberRepository.RowMapper(cursor);
+            while (cursor.moveToNext()) {
+                mapper.map(cursor);
+                rows++;
+            }
+            MemberBenchmarks.record("mapRows.rowMapper", size, rows, System.nanoTime() - start);
+        } finally {
+            cursor.close();
+        }
+
+        int operations = Math.min(MemberBenchmarks.OPERATIONS, size);
+        long[] wanted = Arrays.copyOf(ids, operations);
+        long start = System.nanoTime();
+        for (long id : wanted) {
+            mRepository.get(id);
+        }
+        MemberBenchmarks.record("get.each", size, operations, System.nanoTime() - start);
+
+        start = System.nanoTime();
+        assertEquals(operations, mRepository.get(wanted).size());
+        MemberBenchmarks.record("get.batch", size, operations, System.nanoTime() - start);
+    }
+}
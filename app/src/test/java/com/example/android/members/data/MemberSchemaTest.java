@@ -0,0 +1,77 @@
+package com.example.android.members.data;
+
+import android.database.Cursor;
+
+import com.example.android.members.BuildConfig;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Keeps the :benchmark module's copy of the schema in step with the database
+ * {@link MemberDbHelper} creates, so the JMH figures are for the tables, indexes and triggers
+ * the app really has. After a schema change, replace the file's statements with the ones this
+ * test reports.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class MemberSchemaTest {
+
+    /** Relative to the app module, where Gradle runs its unit tests */
+    private static final File BENCHMARK_SCHEMA =
+            new File("../benchmark/src/jmh/resources/members-schema.sql");
+
+    @Test
+    public void benchmarkSchemaMatchesTheDatabase() throws Exception {
+        List<String> expected = new ArrayList<>();
+        MemberDbHelper dbHelper = new MemberDbHelper(RuntimeEnvironment.application);
+        try {
+            // Leave out the framework's tables and the full-text index's own tables
+            Cursor cursor = dbHelper.getReadableDatabase().rawQuery("SELECT sql FROM "
+                    + "sqlite_master WHERE sql IS NOT NULL AND name <> 'android_metadata' AND "
+                    + "name NOT LIKE 'sqlite\\_%' ESCAPE '\\' AND name NOT IN "
+                    + "('members_fts_segments', 'members_fts_segdir', 'members_fts_docsize', "
+                    + "'members_fts_stat')", null);
+            try {
+                while (cursor.moveToNext()) {
+                    expected.add(cursor.getString(0) + ";");
+                }
+            } finally {
+                cursor.close();
+            }
+        } finally {
+            dbHelper.close();
+        }
+
+        List<String> actual = new ArrayList<>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(BENCHMARK_SCHEMA), "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("CREATE ")) {
+                    actual.add(line);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+
+        Collections.sort(expected);
+        Collections.sort(actual);
+        assertEquals(expected, actual);
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.android.members.data;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.net.Uri;
+
+import com.example.android.members.BuildConfig;
+import com.example.android.members.data.MemberContract.MemberEntry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Times searches the front desk would type against a roster of
+ * {@code -Dmembers.benchmark.search.rows} members, 100k by default: part of a name, a father's
+ * name or a phone, one page of {@link #PAGE_ROWS} results each, and names with a typo in the
+ * trigram index.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class MemberSearchBenchmark {
+
+    private static final int ROWS = Integer.getInteger("members.benchmark.search.rows", 100000);
+
+    private static final int PAGE_ROWS = 50;
+
+    private ContentResolver mResolver;
+
+    @Before
+    public void setUp() {
+        mResolver = TestMembers.resolver();
+    }
+
+    @Test
+    public void searchLatency() {
+        MemberBenchmarks.fill(mResolver, ROWS);
+        Random random = new Random(ROWS);
+        int operations = MemberBenchmarks.OPERATIONS;
+        long[] nanos = new long[operations];
+        long total = 0;
+        for (int i = 0; i < operations; i++) {
+            int code = 1 + random.nextInt(ROWS);
+            String text;
+            switch (i % 3) {
+                case 0:
+                    text = "Member " + code;
+                    break;
+                case 1:
+                    text = "Father " + code;
+                    break;
+                default:
+                    // The first digits of a phone
+                    text = String.format("9%09d", code).substring(0, 8);
+                    break;
+            }
+            Uri uri = MemberEntry.buildSearchUri(text).buildUpon()
+                    .appendQueryParameter(MemberContract.QUERY_PARAMETER_LIMIT,
+                            String.valueOf(PAGE_ROWS))
+                    .build();
+            long start = System.nanoTime();
+            Cursor cursor = mResolver.query(uri, null, null, null, null);
+            try {
+                assertTrue(text, cursor.getCount() > 0);
+            } finally {
+                cursor.close();
+            }
+            nanos[i] = System.nanoTime() - start;
+            total += nanos[i];
+        }
+        MemberBenchmarks.record("search", ROWS, operations, total);
+        printLatency("search", nanos);
+    }
+
+    /**
+     * Time the trigram index itself, once loaded, on names typed with a letter missing.
+     */
+    @Test
+    public void fuzzySearchLatency() throws Exception {
+        MemberBenchmarks.fill(mResolver, ROWS);
+        MemberDbHelper dbHelper = new MemberDbHelper(RuntimeEnvironment.application);
+        try {
+            MemberTrigrams trigrams = new MemberTrigrams(dbHelper);
+            long start = System.nanoTime();
+            while (trigrams.search("", 1) == null) {
+                Thread.sleep(10);
+            }
+            MemberBenchmarks.record("fuzzyLoad", ROWS, ROWS, System.nanoTime() - start);
+
+            Random random = new Random(ROWS);
+            int operations = MemberBenchmarks.OPERATIONS;
+            long[] nanos = new long[operations];
+            long total = 0;
+            for (int i = 0; i < operations; i++) {
+                String text = "Membr " + (1 + random.nextInt(ROWS));
+                start = System.nanoTime();
+                MemberTrigrams.Result result = trigrams.search(text, MemberTrigrams.DEFAULT_LIMIT);
+                nanos[i] = System.nanoTime() - start;
+                total += nanos[i];
+                assertTrue(text, result.ids.length > 0);
+            }
+            MemberBenchmarks.record("fuzzySearch", ROWS, operations, total);
+            printLatency("fuzzySearch", nanos);
+        } finally {
+            dbHelper.close();
+        }
+    }
+
+    private static void printLatency(String benchmark, long[] nanos) {
+        System.out.println(String.format("%s latency: p50 %.2f ms, p95 %.2f ms, max %.2f ms",
+                benchmark, MemberBenchmarks.percentile(nanos, 50) / 1e6,
+                MemberBenchmarks.percentile(nanos, 95) / 1e6,
+                MemberBenchmarks.percentile(nanos, 100) / 1e6));
+    }
+}
@@ -0,0 +1,148 @@
+package com.example.android.members.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.example.android.members.BuildConfig;
+import com.example.android.members.data.MemberContract.MemberEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Times each fixed-shape operation through the compiled {@link MemberStatements} against the
+ * same operation through SQLiteDatabase's insert, query, update and delete, which build and
+ * prepare their SQL on every call.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class MemberStatementsBenchmark {
+
+    private static final int FILL_CHUNK_ROWS = 10000;
+
+    private static final String ID_SELECTION = MemberEntry._ID + "=?";
+
+    private static final String CODE_SELECTION = MemberEntry.COLUMN_MEMBER_CODE + "=?";
+
+    private MemberDbHelper mDbHelper;
+
+    private SQLiteDatabase mDatabase;
+
+    private MemberStatements mStatements;
+
+    @Before
+    public void setUp() {
+        mDbHelper = new MemberDbHelper(RuntimeEnvironment.application);
+        mDatabase = mDbHelper.getWritableDatabase();
+        mStatements = new MemberStatements(mDatabase);
+    }
+
+    @After
+    public void tearDown() {
+        mStatements.close();
+        mDbHelper.close();
+    }
+
+    @Test
+    public void compiledStatementsAgainstSqliteDatabase() {
+        for (int size : MemberBenchmarks.SIZES) {
+            mDatabase.delete(MemberEntry.TABLE_NAME, null, null);
+            run(size);
+        }
+    }
+
+    private void run(int size) {
+        long[] ids = new long[size];
+        for (int first = 1; first <= size; first += FILL_CHUNK_ROWS) {
+            long[] chunk = mStatements.insertAll(
+                    TestMembers.members(first, Math.min(FILL_CHUNK_ROWS, size - first + 1)));
+            System.arraycopy(chunk, 0, ids, first - 1, chunk.length);
+        }
+        int operations = Math.min(MemberBenchmarks.OPERATIONS, size);
+
+        // Insert: codes above the filled ones, one range per path
+        long start = System.nanoTime();
+        for (int i = 1; i <= operations; i++) {
+            mDatabase.insert(MemberEntry.TABLE_NAME, null, TestMembers.member(size + i));
+        }
+        MemberBenchmarks.record("insert.database", size, operations, System.nanoTime() - start);
+        start = System.nanoTime();
+        for (int i = 1; i <= operations; i++) {
+            mStatements.insert(TestMembers.member(size + operations + i));
+        }
+        MemberBenchmarks.record("insert.statements", size, operations,
+                System.nanoTime() - start);
+
+        start = System.nanoTime();
+        for (int i = 0; i < operations; i++) {
+            assertRow(mDatabase.query(MemberEntry.TABLE_NAME, MemberCache.ALL_COLUMNS,
+                    ID_SELECTION, new String[]{String.valueOf(ids[i])}, null, null, null));
+        }
+        MemberBenchmarks.record("queryById.database", size, operations,
+                System.nanoTime() - start);
+        start = System.nanoTime();
+        for (int i = 0; i < operations; i++) {
+            assertRow(MemberStatements.queryById(mDatabase, String.valueOf(ids[i])));
+        }
+        MemberBenchmarks.record("queryById.statements", size, operations,
+                System.nanoTime() - start);
+
+        start = System.nanoTime();
+        for (int i = 1; i <= operations; i++) {
+            assertRow(mDatabase.query(MemberEntry.TABLE_NAME, MemberCache.ALL_COLUMNS,
+                    CODE_SELECTION, new String[]{String.valueOf(i)}, null, null, null));
+        }
+        MemberBenchmarks.record("queryByCode.database", size, operations,
+                System.nanoTime() - start);
+        start = System.nanoTime();
+        for (int i = 1; i <= operations; i++) {
+            assertRow(MemberStatements.queryByCode(mDatabase, String.valueOf(i)));
+        }
+        MemberBenchmarks.record("queryByCode.statements", size, operations,
+                System.nanoTime() - start);
+
+        start = System.nanoTime();
+        for (int i = 0; i < operations; i++) {
+            mDatabase.update(MemberEntry.TABLE_NAME, MemberBenchmarks.reweighed(i + 1),
+                    ID_SELECTION, new String[]{String.valueOf(ids[i])});
+        }
+        MemberBenchmarks.record("updateById.database", size, operations,
+                System.nanoTime() - start);
+        start = System.nanoTime();
+        for (int i = 0; i < operations; i++) {
+            mStatements.updateById(ids[i], MemberBenchmarks.reweighed(i + 1));
+        }
+        MemberBenchmarks.record("updateById.statements", size, operations,
+                System.nanoTime() - start);
+
+        // Delete: every other filled member by each path
+        start = System.nanoTime();
+        for (int i = 0; i < operations; i += 2) {
+            mDatabase.delete(MemberEntry.TABLE_NAME, ID_SELECTION,
+                    new String[]{String.valueOf(ids[i])});
+        }
+        MemberBenchmarks.record("deleteById.database", size, (operations + 1) / 2,
+                System.nanoTime() - start);
+        start = System.nanoTime();
+        for (int i = 1; i < operations; i += 2) {
+            mStatements.deleteById(ids[i]);
+        }
+        MemberBenchmarks.record("deleteById.statements", size, operations / 2,
+                System.nanoTime() - start);
+    }
+
+    private static void assertRow(Cursor cursor) {
+        try {
+            assertEquals(1, cursor.getCount());
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.example.android.members.data;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Bundle;
+
+import com.example.android.members.BuildConfig;
+import com.example.android.members.data.MemberContract.MemberEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static com.example.android.members.data.TestMembers.member;
+import static com.example.android.members.data.TestMembers.members;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class MemberSummariesTest {
+
+    /** 01/02/2017, a month after {@link TestMembers#DATE} */
+    private static final long NEXT_MONTH = TestMembers.DATE + 31;
+
+    private ContentResolver mResolver;
+
+    private MemberDbHelper mDbHelper;
+
+    @Before
+    public void setUp() {
+        mResolver = TestMembers.resolver();
+        // Members 1 to 3 weigh 61 to 63 kg and joined in January 2017
+        mResolver.bulkInsert(MemberEntry.CONTENT_URI, members(1, 3));
+        mDbHelper = new MemberDbHelper(RuntimeEnvironment.application);
+    }
+
+    @After
+    public void tearDown() {
+        mDbHelper.close();
+    }
+
+    @Test
+    public void triggersFollowUpdatesOfDateAndWeight() {
+        editMembers();
+        assertSummaries();
+        assertTrue(MemberSummaries.isConsistent(mDbHelper.getReadableDatabase()));
+    }
+
+    @Test
+    public void checkSummariesRebuildsACorruptedSummary() {
+        editMembers();
+
+        // A wrong total, a month gone missing and a range nobody is in
+        SQLiteDatabase db = mDbHelper.getWritableDatabase();
+        db.execSQL("UPDATE " + MemberSummaries.TABLE_TOTALS + " SET "
+                + MemberSummaries.COLUMN_MEMBERS + " = 99");
+        db.execSQL("DELETE FROM " + MemberSummaries.TABLE_JOINS_BY_MONTH + " WHERE "
+                + MemberSummaries.COLUMN_MONTH + " = '2017-02'");
+        db.execSQL("INSERT INTO " + MemberSummaries.TABLE_WEIGHT_BUCKETS + " VALUES (200, 5)");
+        assertFalse(MemberSummaries.isConsistent(db));
+
+        assertFalse(checkSummaries());
+        assertSummaries();
+        // Nothing left to rebuild
+        assertTrue(checkSummaries());
+    }
+
+    /**
+     * Move member 1 to February at 75 kg, and put member 2 at 95 kg.
+     */
+    private void editMembers() {
+        // The editor saves every column by the member's URI, through the compiled update
+        ContentValues values = member(1);
+        values.put(MemberEntry.COLUMN_MEMBER_DATE, NEXT_MONTH);
+        values.put(MemberEntry.COLUMN_MEMBER_WEIGHT, 75);
+        assertEquals(1, mResolver.update(ContentUris.withAppendedId(MemberEntry.CONTENT_URI, 1),
+                values, null, null));
+        // Only the weight, through SQLiteDatabase
+        ContentValues weight = new ContentValues();
+        weight.put(MemberEntry.COLUMN_MEMBER_WEIGHT, 95);
+        assertEquals(1, mResolver.update(MemberEntry.CONTENT_URI, weight,
+                MemberEntry.COLUMN_MEMBER_CODE + "=?", new String[]{"2"}));
+    }
+
+    private boolean checkSummaries() {
+        Bundle result = mResolver.call(MemberContract.BASE_CONTENT_URI,
+                MemberContract.METHOD_CHECK_SUMMARIES, null, null);
+        return result.getBoolean(MemberContract.EXTRA_SUMMARIES_CONSISTENT);
+    }
+
+    /**
+     * Assert the summaries of the members as {@link #editMembers()} left them.
+     */
+    private void assertSummaries() {
+        SQLiteDatabase db = mDbHelper.getReadableDatabase();
+        assertEquals("3,233", rows(db, "SELECT " + MemberSummaries.COLUMN_MEMBERS + ", "
+                + MemberSummaries.COLUMN_WEIGHT_SUM + " FROM " + MemberSummaries.TABLE_TOTALS));
+        assertEquals("2017-01,2;2017-02,1", rows(db, "SELECT " + MemberSummaries.COLUMN_MONTH
+                + ", " + MemberSummaries.COLUMN_MEMBERS + " FROM "
+                + MemberSummaries.TABLE_JOINS_BY_MONTH + " ORDER BY 1"));
+        assertEquals("60,1;70,1;90,1", rows(db, "SELECT " + MemberSummaries.COLUMN_BUCKET + ", "
+                + MemberSummaries.COLUMN_MEMBERS + " FROM " + MemberSummaries.TABLE_WEIGHT_BUCKETS
+                + " ORDER BY 1"));
+    }
+
+    /**
+     * Return the rows of a query as text: columns joined by commas, rows by semicolons.
+     */
+    private static String rows(SQLiteDatabase db, String sql) {
+        Cursor cursor = db.rawQuery(sql, null);
+        try {
+            StringBuilder rows = new StringBuilder();
+            while (cursor.moveToNext()) {
+                rows.append(rows.length() == 0 ? "" : ";");
+                for (int i = 0; i < cursor.getColumnCount(); i++) {
+                    rows.append(i == 0 ? "" : ",").append(cursor.getString(i));
+                }
+            }
+            return rows.toString();
+        } finally {
+            cursor.close();
+        }
+    }
+}
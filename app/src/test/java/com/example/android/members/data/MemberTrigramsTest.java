@@ -0,0 +1,169 @@
+package com.example.android.members.data;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.example.android.members.BuildConfig;
+import com.example.android.members.data.MemberContract.MemberEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class MemberTrigramsTest {
+
+    private static final String[] FIRST_NAMES = {"Ashutosh", "Rahul", "Priya", "Anjali",
+            "Vikram", "Sunita", "Arjun", "Kavita", "Rohit", "Neha", "Amit", "Pooja"};
+
+    private static final String[] LAST_NAMES = {"Sharma", "Verma", "Gupta", "Singh", "Patel",
+            "Kumar", "Yadav", "Joshi", "Mehta", "Reddy"};
+
+    private static final int MEMBERS = 500;
+
+    private static final long LOAD_TIMEOUT_MS = 5000;
+
+    private MemberDbHelper mDbHelper;
+
+    private MemberTrigrams mTrigrams;
+
+    // Every member written, by position; a removed member's names are null
+    private final List<Long> mIds = new ArrayList<>();
+    private final List<String> mNames = new ArrayList<>();
+    private final List<String> mFatherNames = new ArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        mDbHelper = new MemberDbHelper(RuntimeEnvironment.application);
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+        Random random = new Random(42);
+        for (int code = 1; code <= MEMBERS; code++) {
+            ContentValues values = TestMembers.member(code);
+            values.put(MemberEntry.COLUMN_MEMBER_NAME, name(random));
+            values.put(MemberEntry.COLUMN_MEMBER_FATHER_NAME, name(random));
+            mIds.add(database.insertOrThrow(MemberEntry.TABLE_NAME, null, values));
+            mNames.add(values.getAsString(MemberEntry.COLUMN_MEMBER_NAME));
+            mFatherNames.add(values.getAsString(MemberEntry.COLUMN_MEMBER_FATHER_NAME));
+        }
+        mTrigrams = new MemberTrigrams(mDbHelper);
+        awaitLoad();
+    }
+
+    @After
+    public void tearDown() {
+        mDbHelper.close();
+    }
+
+    @Test
+    public void searchRanksLikeEveryNameCompared() {
+        for (String text : new String[]{"Ashutosh Sharma", "Rahul Vrma", "priya", "Kumarr",
+                "Sunita Joshi Mehta", "xyz"}) {
+            assertSameResult(text);
+        }
+    }
+
+    @Test
+    public void searchFollowsWrites() {
+        Random random = new Random(7);
+        long nextId = mIds.get(mIds.size() - 1) + 1;
+        for (int i = 0; i < 200; i++) {
+            int index = random.nextInt(mIds.size());
+            long id = mIds.get(index);
+            int op = random.nextInt(3);
+            if (op == 0) {
+                String name = name(random);
+                String fatherName = name(random);
+                mTrigrams.put(nextId, name, fatherName);
+                mIds.add(nextId++);
+                mNames.add(name);
+                mFatherNames.add(fatherName);
+            } else if (op == 1 && mNames.get(index) != null) {
+                // Rename only the member, as an update of one column would
+                String name = name(random);
+                mTrigrams.update(id, name, null);
+                mNames.set(index, name);
+            } else if (mNames.get(index) != null) {
+                mTrigrams.remove(new long[]{id});
+                mNames.set(index, null);
+                mFatherNames.set(index, null);
+            }
+        }
+        assertSameResult("Ashutosh Sharma");
+        assertSameResult("Neha Gupta");
+    }
+
+    @Test
+    public void aFuzzySearchFindsATypoAtTheEndOfAName() {
+        ContentResolver resolver = TestMembers.resolver();
+        // Codes after the ones setUp wrote
+        resolver.bulkInsert(MemberEntry.CONTENT_URI, TestMembers.members(MEMBERS + 1, 100));
+        ContentValues values = TestMembers.member(MEMBERS + 101);
+        values.put(MemberEntry.COLUMN_MEMBER_NAME, "Devendra Kulkarni");
+        long id = Long.parseLong(
+                resolver.insert(MemberEntry.CONTENT_URI, values).getLastPathSegment());
+
+        // The first search may be served while the trigram index is still loading
+        for (int attempt = 0; attempt < 2; attempt++) {
+            Cursor cursor = resolver.query(MemberEntry.buildFuzzyUri("Devendra Kulkarno", 5),
+                    null, null, null, null);
+            try {
+                assertTrue(cursor.moveToFirst());
+                assertEquals(id, cursor.getLong(cursor.getColumnIndex(MemberEntry._ID)));
+            } finally {
+                cursor.close();
+            }
+        }
+    }
+
+    private void assertSameResult(String text) {
+        long[] ids = new long[mIds.size()];
+        String[] names = new String[ids.length];
+        String[] fatherNames = new String[ids.length];
+        int count = 0;
+        for (int i = 0; i < mIds.size(); i++) {
+            if (mNames.get(i) != null) {
+                ids[count] = mIds.get(i);
+                names[count] = mNames.get(i);
+                fatherNames[count] = mFatherNames.get(i);
+                count++;
+            }
+        }
+        MemberTrigrams.Result expected = MemberTrigrams.rank(text,
+                Arrays.copyOf(ids, count), Arrays.copyOf(names, count),
+                Arrays.copyOf(fatherNames, count), MemberTrigrams.MAX_LIMIT);
+        MemberTrigrams.Result actual = mTrigrams.search(text, MemberTrigrams.MAX_LIMIT);
+        assertNotNull(actual);
+        assertArrayEquals(text, expected.similarities, actual.similarities, 0);
+        assertArrayEquals(text, expected.ids, actual.ids);
+    }
+
+    private void awaitLoad() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + LOAD_TIMEOUT_MS;
+        while (mTrigrams.search("", 1) == null && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertNotNull("index not loaded", mTrigrams.search("", 1));
+    }
+
+    private static String name(Random random) {
+        return FIRST_NAMES[random.nextInt(FIRST_NAMES.length)] + " "
+                + LAST_NAMES[random.nextInt(LAST_NAMES.length)];
+    }
+}
@@ -0,0 +1,148 @@
+package com.example.android.members.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.example.android.members.BuildConfig;
+import com.example.android.members.data.MemberContract.MemberEntry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Times reads by _ID on {@link #READERS} threads while another thread keeps writing, once with
+ * the rollback journal the database used to have and once with write-ahead logging. Each mode
+ * is its own test, so each starts from a new database file. Robolectric runs every SQLite call
+ * of the process on one thread, which hides much of WAL's gain; run on a device for the real
+ * figure, and use this to catch a build that makes reads wait longer than before.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class MemberWalBenchmark {
+
+    private static final int ROWS = Integer.getInteger("members.benchmark.stress.rows", 10000);
+
+    private static final int READERS = 4;
+
+    /** Updates the writer commits per transaction */
+    private static final int WRITES_PER_TRANSACTION = 50;
+
+    private static final int FILL_CHUNK_ROWS = 10000;
+
+    @Test
+    public void readsUnderWritesWithRollbackJournal() throws Exception {
+        run("rollbackJournal", false);
+    }
+
+    @Test
+    public void readsUnderWritesWithWriteAheadLog() throws Exception {
+        run("writeAheadLog", true);
+    }
+
+    private void run(String mode, boolean writeAheadLogging) throws Exception {
+        MemberDbHelper.Settings settings = new MemberDbHelper.Settings();
+        settings.writeAheadLogging = writeAheadLogging;
+        final MemberDbHelper dbHelper = new MemberDbHelper(RuntimeEnvironment.application,
+                settings);
+        MemberStatements statements = new MemberStatements(dbHelper.getWritableDatabase());
+        final long[] ids = new long[ROWS];
+        for (int first = 1; first <= ROWS; first += FILL_CHUNK_ROWS) {
+            long[] chunk = statements.insertAll(
+                    TestMembers.members(first, Math.min(FILL_CHUNK_ROWS, ROWS - first + 1)));
+            System.arraycopy(chunk, 0, ids, first - 1, chunk.length);
+        }
+        statements.close();
+
+        ExecutorService executor = Executors.newFixedThreadPool(READERS + 1);
+        final AtomicBoolean reading = new AtomicBoolean(true);
+        try {
+            Future<Integer> writer = executor.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() {
+                    SQLiteDatabase database = dbHelper.getWritableDatabase();
+                    Random random = new Random(0);
+                    int writes = 0;
+                    while (reading.get()) {
+                        database.beginTransaction();
+                        try {
+                            for (int i = 0; i < WRITES_PER_TRANSACTION; i++) {
+                                database.execSQL("UPDATE " + MemberEntry.TABLE_NAME + " SET "
+                                                + MemberEntry.COLUMN_MEMBER_WEIGHT + "="
+                                                + MemberEntry.COLUMN_MEMBER_WEIGHT + "+1 WHERE "
+                                                + MemberEntry._ID + "=?",
+                                        new Object[]{ids[random.nextInt(ROWS)]});
+                            }
+                            database.setTransactionSuccessful();
+                        } finally {
+                            database.endTransaction();
+                        }
+                        writes += WRITES_PER_TRANSACTION;
+                    }
+                    return writes;
+                }
+            });
+
+            final int readsPerReader = MemberBenchmarks.OPERATIONS;
+            List<Future<long[]>> readers = new ArrayList<>();
+            for (int r = 0; r < READERS; r++) {
+                final Random random = new Random(r + 1);
+                readers.add(executor.submit(new Callable<long[]>() {
+                    @Override
+                    public long[] call() {
+                        long[] nanos = new long[readsPerReader];
+                        for (int i = 0; i < readsPerReader; i++) {
+                            long start = System.nanoTime();
+                            Cursor cursor = MemberStatements.queryById(
+                                    dbHelper.getReadableDatabase(),
+                                    String.valueOf(ids[random.nextInt(ROWS)]));
+                            try {
+                                assertEquals(1, cursor.getCount());
+                            } finally {
+                                cursor.close();
+                            }
+                            nanos[i] = System.nanoTime() - start;
+                        }
+                        return nanos;
+                    }
+                }));
+            }
+
+            long[] nanos = new long[READERS * readsPerReader];
+            long total = 0;
+            for (int r = 0; r < READERS; r++) {
+                long[] read = readers.get(r).get();
+                System.arraycopy(read, 0, nanos, r * readsPerReader, readsPerReader);
+                for (long n : read) {
+                    total += n;
+                }
+            }
+            reading.set(false);
+            int writes = writer.get();
+
+            MemberBenchmarks.record("readUnderWrites." + mode, ROWS, nanos.length, total);
+            System.out.println(String.format("%s: read p50 %.2f ms, p99 %.2f ms, max %.2f ms;"
+                            + " %d updates meanwhile", mode,
+                    MemberBenchmarks.percentile(nanos, 50) / 1e6,
+                    MemberBenchmarks.percentile(nanos, 99) / 1e6,
+                    MemberBenchmarks.percentile(nanos, 100) / 1e6, writes));
+        } finally {
+            reading.set(false);
+            executor.shutdown();
+            dbHelper.close();
+        }
+    }
+}
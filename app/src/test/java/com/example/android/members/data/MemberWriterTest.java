@@ -0,0 +1,85 @@
+package com.example.android.members.data;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.net.Uri;
+
+import com.example.android.members.BuildConfig;
+import com.example.android.members.data.MemberContract.MemberEntry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.example.android.members.data.TestMembers.member;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class MemberWriterTest {
+
+    /** How long to wait for the writer's thread before calling a write lost */
+    private static final long TIMEOUT_MILLIS = 10000;
+
+    @Test
+    public void editToACodeInUseIsReportedAsFailed() throws Exception {
+        ContentResolver resolver = TestMembers.resolver();
+        resolver.insert(MemberEntry.CONTENT_URI, member(1));
+        Uri uri = resolver.insert(MemberEntry.CONTENT_URI, member(2));
+        MemberWriter writer = MemberWriter.getInstance(RuntimeEnvironment.application);
+
+        // As the editor saves it, every column with the other member's code
+        ContentValues values = member(2);
+        values.put(MemberEntry.COLUMN_MEMBER_CODE, 1);
+        Result update = new Result();
+        writer.update(uri, values, update);
+        assertEquals(0, update.await());
+
+        Result insert = new Result();
+        writer.insert(MemberEntry.CONTENT_URI, member(1), insert);
+        assertEquals(0, insert.await());
+        assertNull(insert.mUris.get(0));
+
+        // The writer's thread survived both and still writes
+        Result delete = new Result();
+        writer.delete(uri, null, null, delete);
+        assertEquals(1, delete.await());
+    }
+
+    /**
+     * A callback that remembers what it was told.
+     */
+    private static final class Result implements MemberWriter.Callback {
+
+        final List<Uri> mUris = new ArrayList<>();
+        final List<Integer> mRows = new ArrayList<>();
+
+        @Override
+        public void onWriteComplete(Uri uri, int rows) {
+            mUris.add(uri);
+            mRows.add(rows);
+        }
+
+        /**
+         * Run the main thread's tasks until the writer has called back, and return the rows.
+         */
+        int await() throws InterruptedException {
+            long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+            while (mRows.isEmpty()) {
+                if (System.currentTimeMillis() > deadline) {
+                    throw new AssertionError("The writer never called back");
+                }
+                Thread.sleep(10);
+                ShadowLooper.runUiThreadTasks();
+            }
+            return mRows.get(0);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.android.members.data;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+
+import com.example.android.members.data.MemberContract.MemberEntry;
+
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.shadows.ShadowContentResolver;
+
+/**
+ * Members to write in tests. Each code gets distinct names and phone, so the members don't look
+ * like duplicates of each other.
+ */
+final class TestMembers {
+
+    /** Admission date of every test member: 01/01/2017 */
+    static final long DATE = 17167;
+
+    private TestMembers() {}
+
+    /**
+     * Register a {@link MemberProvider} for this test and return the app's resolver. Left to
+     * itself, or through registerProvider, Robolectric 3.1 calls the provider's onCreate twice,
+     * and the first instance's index loaders then hold the database file while the second one
+     * opens it.
+     */
+    static ContentResolver resolver() {
+        MemberProvider provider = new MemberProvider();
+        provider.attachInfo(RuntimeEnvironment.application, null);
+        ShadowContentResolver.registerProviderInternal(MemberContract.CONTENT_AUTHORITY, provider);
+        return RuntimeEnvironment.application.getContentResolver();
+    }
+
+    /**
+     * Return the values of a complete, valid member with the given code.
+     */
+    static ContentValues member(int code) {
+        return new Member("Member " + code, "Father " + code, code,
+                String.format("9%09d", code), DATE, 60 + code % 40).toContentValues();
+    }
+
+    /**
+     * Return {@code count} members with consecutive codes starting at {@code firstCode}.
+     */
+    static ContentValues[] members(int firstCode, int count) {
+        ContentValues[] rows = new ContentValues[count];
+        for (int i = 0; i < count; i++) {
+            rows[i] = member(firstCode + i);
+        }
+        return rows;
+    }
+
+    /**
+     * Return the number of rows the given URI queries.
+     */
+    static int count(ContentResolver resolver, Uri uri) {
+        Cursor cursor = resolver.query(uri, null, null, null, null);
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Return the number of members stored.
+     */
+    static int countMembers(ContentResolver resolver) {
+        return count(resolver, MemberEntry.CONTENT_URI);
+    }
+}
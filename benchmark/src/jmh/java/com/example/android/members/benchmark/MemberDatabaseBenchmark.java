@@ -0,0 +1,351 @@
+package com.example.android.members.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times the statements MemberStatements runs against the members table, on the JVM through
+ * SQLite JDBC, with the schema of members-schema.sql: every index and trigger a write pays for
+ * on a device. Each trial starts from a table of {@link #rows} members. The provider's own work
+ * around a statement, such as the weight history and the duplicate check, is not included; the
+ * Robolectric benchmarks in :app cover that.
+ *
+ * <p>Filling a million members takes a while, so each size is filled once into a template file
+ * in the temp directory and copied for every trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class MemberDatabaseBenchmark {
+
+    /** Rows per transaction of a batch insert, as MemberCsv imports them */
+    static final int BATCH_ROWS = 200;
+
+    private static final String SCHEMA = "members-schema.sql";
+
+    private static final String SQL_INSERT = "INSERT INTO members (name, father, code, phone, "
+            + "date, weight) VALUES (?, ?, ?, ?, ?, ?)";
+
+    private static final String SQL_UPDATE_BY_ID = "UPDATE members SET name=?, father=?, "
+            + "code=?, phone=?, date=?, weight=? WHERE _id=?";
+
+    private static final String SQL_DELETE_BY_ID = "DELETE FROM members WHERE _id=?";
+
+    private static final String SQL_SELECT_ALL_COLUMNS = "SELECT _id, name, father, code, "
+            + "phone, date, weight FROM members";
+
+    private static final String SQL_SELECT_BY_ID = SQL_SELECT_ALL_COLUMNS + " WHERE _id=?";
+
+    private static final String SQL_SELECT_BY_CODE = SQL_SELECT_ALL_COLUMNS + " WHERE code=?";
+
+    /** Members in the table when a trial starts; their _IDs and codes run from 1 */
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int rows;
+
+    private File mFile;
+    private Connection mConnection;
+    private PreparedStatement mInsert;
+    private PreparedStatement mUpdateById;
+    private PreparedStatement mDeleteById;
+    private PreparedStatement mSelectById;
+    private PreparedStatement mSelectByCode;
+    private PreparedStatement mSelectAll;
+
+    /** Code of the next member inserted, above every code in the table */
+    private int mNextCode;
+
+    private final Random mRandom = new Random(0);
+
+    /**
+     * A member read back from a row, as the provider's cache and the list keep it.
+     */
+    static final class Member {
+
+        final long id;
+        final String name;
+        final String fatherName;
+        final int code;
+        final String phone;
+        final long date;
+        final int weight;
+
+        Member(ResultSet row) throws SQLException {
+            id = row.getLong(1);
+            name = row.getString(2);
+            fatherName = row.getString(3);
+            code = row.getInt(4);
+            phone = row.getString(5);
+            date = row.getLong(6);
+            weight = row.getInt(7);
+        }
+    }
+
+    /**
+     * Holds a member for {@link #deleteById} to delete, added before each call.
+     */
+    @State(Scope.Thread)
+    public static class Victim {
+
+        long mId;
+
+        @Setup(Level.Invocation)
+        public void insert(MemberDatabaseBenchmark database) throws SQLException {
+            database.bind(database.mInsert, database.mNextCode++);
+            database.mInsert.executeUpdate();
+            ResultSet keys = database.mInsert.getGeneratedKeys();
+            try {
+                keys.next();
+                mId = keys.getLong(1);
+            } finally {
+                keys.close();
+            }
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, SQLException {
+        mFile = File.createTempFile("members", ".db");
+        Files.copy(template(rows).toPath(), mFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        mConnection = open(mFile);
+        mInsert = mConnection.prepareStatement(SQL_INSERT);
+        mUpdateById = mConnection.prepareStatement(SQL_UPDATE_BY_ID);
+        mDeleteById = mConnection.prepareStatement(SQL_DELETE_BY_ID);
+        mSelectById = mConnection.prepareStatement(SQL_SELECT_BY_ID);
+        mSelectByCode = mConnection.prepareStatement(SQL_SELECT_BY_CODE);
+        mSelectAll = mConnection.prepareStatement(SQL_SELECT_ALL_COLUMNS);
+        mNextCode = rows + 1;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        mConnection.close();
+        delete(mFile);
+    }
+
+    /**
+     * One member, committed on its own as the editor saves one.
+     */
+    @Benchmark
+    public int insertOne() throws SQLException {
+        bind(mInsert, mNextCode++);
+        return mInsert.executeUpdate();
+    }
+
+    /**
+     * {@link #BATCH_ROWS} members in one transaction, as a bulk insert writes them.
+     */
+    @Benchmark
+    @OperationsPerInvocation(BATCH_ROWS)
+    public int insertBatch() throws SQLException {
+        int inserted = 0;
+        mConnection.setAutoCommit(false);
+        try {
+            for (int i = 0; i < BATCH_ROWS; i++) {
+                bind(mInsert, mNextCode++);
+                inserted += mInsert.executeUpdate();
+            }
+            mConnection.commit();
+        } finally {
+            mConnection.setAutoCommit(true);
+        }
+        return inserted;
+    }
+
+    @Benchmark
+    public Member queryById() throws SQLException {
+        mSelectById.setLong(1, 1 + mRandom.nextInt(rows));
+        return first(mSelectById);
+    }
+
+    @Benchmark
+    public Member queryByCode() throws SQLException {
+        mSelectByCode.setInt(1, 1 + mRandom.nextInt(rows));
+        return first(mSelectByCode);
+    }
+
+    /**
+     * Every member, each row read into a {@link Member}.
+     */
+    @Benchmark
+    public List<Member> scanAll() throws SQLException {
+        List<Member> members = new ArrayList<>(rows);
+        ResultSet result = mSelectAll.executeQuery();
+        try {
+            while (result.next()) {
+                members.add(new Member(result));
+            }
+        } finally {
+            result.close();
+        }
+        return members;
+    }
+
+    /**
+     * Every column of one member with a new weight, as the editor saves an edit.
+     */
+    @Benchmark
+    public int updateById() throws SQLException {
+        int id = 1 + mRandom.nextInt(rows);
+        bind(mUpdateById, id);
+        mUpdateById.setInt(6, 60 + mRandom.nextInt(60));
+        mUpdateById.setLong(7, id);
+        return mUpdateById.executeUpdate();
+    }
+
+    @Benchmark
+    public int deleteById(Victim victim) throws SQLException {
+        mDeleteById.setLong(1, victim.mId);
+        return mDeleteById.executeUpdate();
+    }
+
+    /**
+     * Bind the member with the given code to the first six parameters, in the order of
+     * {@link #SQL_INSERT}.
+     */
+    private void bind(PreparedStatement statement, int code) throws SQLException {
+        statement.setString(1, "Member " + code);
+        statement.setString(2, "Father " + code);
+        statement.setInt(3, code);
+        statement.setString(4, String.format("9%09d", code));
+        // Joined on one of about four years of days, so the monthly summary has many rows
+        statement.setLong(5, 16000 + code % 1500);
+        statement.setInt(6, 60 + code % 40);
+    }
+
+    private static Member first(PreparedStatement query) throws SQLException {
+        ResultSet result = query.executeQuery();
+        try {
+            return result.next() ? new Member(result) : null;
+        } finally {
+            result.close();
+        }
+    }
+
+    /**
+     * Return a database file holding members 1 to {@code rows}, filling it the first time.
+     */
+    private File template(int rows) throws IOException, SQLException {
+        List<String> schema = readSchema();
+        File file = new File(System.getProperty("java.io.tmpdir"),
+                "members-" + rows + "-" + Integer.toHexString(schema.hashCode()) + ".db");
+        if (file.exists()) {
+            return file;
+        }
+        File partial = new File(file.getPath() + ".partial");
+        delete(partial);
+        Connection connection = open(partial);
+        try {
+            Statement statement = connection.createStatement();
+            try {
+                for (String sql : schema) {
+                    statement.execute(sql);
+                }
+            } finally {
+                statement.close();
+            }
+            connection.setAutoCommit(false);
+            PreparedStatement insert = connection.prepareStatement(SQL_INSERT);
+            try {
+                for (int code = 1; code <= rows; code++) {
+                    bind(insert, code);
+                    insert.executeUpdate();
+                    if (code % 10000 == 0) {
+                        connection.commit();
+                    }
+                }
+                connection.commit();
+            } finally {
+                insert.close();
+            }
+        } finally {
+            connection.close();
+        }
+        // Only a complete table becomes the template, should a fill be interrupted
+        Files.move(partial.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        return file;
+    }
+
+    /**
+     * Open a connection set up as MemberDbHelper's default settings set up the app's.
+     */
+    private static Connection open(File file) throws SQLException {
+        Connection connection = DriverManager.getConnection("jdbc:sqlite:" + file.getPath());
+        Statement statement = connection.createStatement();
+        try {
+            statement.execute("PRAGMA journal_mode=WAL");
+            statement.execute("PRAGMA synchronous=NORMAL");
+            statement.execute("PRAGMA cache_size=-2048");
+            statement.execute("PRAGMA mmap_size=0");
+            statement.execute("PRAGMA temp_store=MEMORY");
+        } finally {
+            statement.close();
+        }
+        return connection;
+    }
+
+    /**
+     * Return the statements of {@link #SCHEMA}, one per line, leaving out the comments.
+     */
+    private static List<String> readSchema() throws IOException {
+        InputStream in = MemberDatabaseBenchmark.class.getClassLoader()
+                .getResourceAsStream(SCHEMA);
+        if (in == null) {
+            throw new IOException(SCHEMA + " is missing from the classpath");
+        }
+        List<String> statements = new ArrayList<>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty() && !line.startsWith("--")) {
+                    statements.add(line);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return statements;
+    }
+
+    /**
+     * Delete a database file and the journal files SQLite may have left next to it.
+     */
+    private static void delete(File file) {
+        for (String suffix : new String[]{"", "-wal", "-shm", "-journal"}) {
+            new File(file.getPath() + suffix).delete();
+        }
+    }
+}